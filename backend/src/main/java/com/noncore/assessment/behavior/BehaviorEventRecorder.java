@@ -3,7 +3,6 @@ package com.noncore.assessment.behavior;
 import com.noncore.assessment.entity.Assignment;
 import com.noncore.assessment.entity.BehaviorEvent;
 import com.noncore.assessment.mapper.AssignmentMapper;
-import com.noncore.assessment.service.BehaviorEventService;
 import com.noncore.assessment.util.Jsons;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -21,11 +20,11 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class BehaviorEventRecorder {
 
-    private final BehaviorEventService behaviorEventService;
+    private final BehaviorEventWriteBuffer writeBuffer;
     private final AssignmentMapper assignmentMapper;
 
     /**
-     * 记录一个行为事件。
+     * 记录一个行为事件（异步批量落库，调用线程只负责入队）。
      *
      * @param studentId 学生ID
      * @param courseId 课程ID（可空；部分事件可通过关联对象推断）
@@ -42,8 +41,20 @@ public class BehaviorEventRecorder {
                        Map<String, Object> metadata) {
         if (studentId == null || type == null) return;
 
-        Long resolvedCourseId = courseId;
+        // 在调用线程固定发生时间与 metadata 副本，其余工作交给刷写线程
+        LocalDateTime occurredAt = LocalDateTime.now();
         Map<String, Object> meta = metadata == null ? new HashMap<>() : new HashMap<>(metadata);
+        writeBuffer.submit(() -> buildEvent(studentId, courseId, type, relatedType, relatedId, meta, occurredAt));
+    }
+
+    private BehaviorEvent buildEvent(Long studentId,
+                                     Long courseId,
+                                     BehaviorEventType type,
+                                     String relatedType,
+                                     Long relatedId,
+                                     Map<String, Object> meta,
+                                     LocalDateTime occurredAt) {
+        Long resolvedCourseId = courseId;
 
         // 尝试从作业关联推断 courseId（让课程筛选可用）
         if (resolvedCourseId == null && relatedId != null) {
@@ -80,9 +91,9 @@ public class BehaviorEventRecorder {
         ev.setRelatedType(relatedType);
         ev.setRelatedId(relatedId);
         ev.setMetadata(meta.isEmpty() ? null : Jsons.toJson(meta));
-        ev.setOccurredAt(LocalDateTime.now());
+        ev.setOccurredAt(occurredAt);
         ev.setCreatedAt(LocalDateTime.now());
-        behaviorEventService.save(ev);
+        return ev;
     }
 }
 
@@ -0,0 +1,197 @@
+package com.noncore.assessment.behavior;
+
+import com.noncore.assessment.entity.BehaviorEvent;
+import com.noncore.assessment.service.BehaviorEventService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 行为事件异步批量写入缓冲（有界环形队列 + 后台刷写线程）。
+ *
+ * <p>请求线程只负责入队；课程推断、metadata 序列化与落库都在刷写线程内完成，
+ * 按“条数达到 batch-size 或等待超过 flush-interval-ms”两种条件触发多行 INSERT。</p>
+ *
+ * <p>背压：队列满时请求线程最多等待 offer-timeout-ms；仍然满则计入 overflow 并在当前线程同步写入，
+ * 保证事实记录不丢失。应用关闭时停止接收并把队列完全刷空。</p>
+ */
+@Slf4j
+@Component
+public class BehaviorEventWriteBuffer {
+
+    private final BehaviorEventService behaviorEventService;
+
+    @Value("${behavior.event-buffer.capacity:10000}")
+    private int capacity;
+
+    @Value("${behavior.event-buffer.batch-size:200}")
+    private int batchSize;
+
+    @Value("${behavior.event-buffer.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${behavior.event-buffer.offer-timeout-ms:20}")
+    private long offerTimeoutMs;
+
+    @Value("${behavior.event-buffer.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    private ArrayBlockingQueue<Supplier<BehaviorEvent>> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong overflow = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    public BehaviorEventWriteBuffer(BehaviorEventService behaviorEventService) {
+        this.behaviorEventService = behaviorEventService;
+    }
+
+    @PostConstruct
+    public void start() {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.running = true;
+        this.flusher = new Thread(this::runFlushLoop, "behavior-event-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        log.info("Behavior event buffer started: capacity={}, batchSize={}, flushIntervalMs={}",
+                capacity, batchSize, flushIntervalMs);
+    }
+
+    /**
+     * 提交一个待写入事件。
+     *
+     * @param factory 事件构造逻辑（在刷写线程执行；溢出或已关闭时在调用线程执行）
+     */
+    public void submit(Supplier<BehaviorEvent> factory) {
+        if (factory == null) return;
+        if (running) {
+            try {
+                if (queue.offer(factory, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    enqueued.incrementAndGet();
+                    maxDepth.accumulateAndGet(queue.size(), Math::max);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long n = overflow.incrementAndGet();
+            if (n == 1 || n % 1000 == 0) {
+                log.warn("Behavior event buffer full, writing synchronously: overflow={}, capacity={}", n, capacity);
+            }
+        }
+        writeBatch(List.of(factory));
+    }
+
+    /**
+     * 运行指标快照（队列深度、写入量、溢出与失败计数）。
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("capacity", capacity);
+        m.put("depth", queue == null ? 0 : queue.size());
+        m.put("maxDepth", maxDepth.get());
+        m.put("enqueued", enqueued.get());
+        m.put("written", written.get());
+        m.put("batches", batches.get());
+        m.put("overflow", overflow.get());
+        m.put("failed", failed.get());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (flusher != null) {
+            try {
+                flusher.join(Math.max(0, shutdownTimeoutMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 兜底：刷写线程未能在超时内退出时，由关闭线程把剩余事件写完
+        List<Supplier<BehaviorEvent>> rest = new ArrayList<>();
+        while (queue.drainTo(rest, batchSize) > 0) {
+            writeBatch(rest);
+            rest.clear();
+        }
+        log.info("Behavior event buffer stopped: {}", stats());
+    }
+
+    private void runFlushLoop() {
+        List<Supplier<BehaviorEvent>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Supplier<BehaviorEvent> first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize || !running) break;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Supplier<BehaviorEvent> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("Behavior event flush loop error: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Supplier<BehaviorEvent>> factories) {
+        List<BehaviorEvent> events = new ArrayList<>(factories.size());
+        for (Supplier<BehaviorEvent> f : factories) {
+            try {
+                BehaviorEvent ev = f.get();
+                if (ev != null) events.add(ev);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.warn("Behavior event build failed: {}", e.getMessage());
+            }
+        }
+        if (events.isEmpty()) return;
+        try {
+            behaviorEventService.saveBatch(events);
+            written.addAndGet(events.size());
+            batches.incrementAndGet();
+        } catch (Exception batchEx) {
+            // 批量失败时逐条重试，避免单条脏数据拖垮整批
+            log.warn("Behavior event batch insert failed, retrying row by row: size={}, err={}", events.size(), batchEx.getMessage());
+            for (BehaviorEvent ev : events) {
+                try {
+                    behaviorEventService.save(ev);
+                    written.incrementAndGet();
+                } catch (Exception rowEx) {
+                    failed.incrementAndGet();
+                    log.warn("Behavior event insert failed: studentId={}, type={}, err={}",
+                            ev.getStudentId(), ev.getEventType(), rowEx.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -1,61 +1,253 @@
 package com.noncore.assessment.behavior;
 
+import com.noncore.assessment.entity.BehaviorJobCheckpoint;
 import com.noncore.assessment.entity.Enrollment;
+import com.noncore.assessment.mapper.BehaviorJobCheckpointMapper;
 import com.noncore.assessment.mapper.EnrollmentMapper;
-import com.noncore.assessment.mapper.UserMapper;
 import com.noncore.assessment.service.BehaviorAggregationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.IsoFields;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 行为摘要快照定时生成（阶段一，禁止 AI）。
  *
  * <p>说明：该定时任务只生成阶段一快照，不触发阶段二 AI；AI 解读默认由教师手动触发，避免不可控成本。</p>
+ *
+ * <p>执行方式：一条流式查询按 (studentId, courseId) 升序读取全部组合，分发到有界线程池并行生成；
+ * 连续完成的最后一个组合定期写入 behavior_job_checkpoints，进程重启后在同一 ISO 周内从检查点续跑。</p>
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class BehaviorSnapshotScheduler {
 
-    private final UserMapper userMapper;
+    static final String JOB_NAME = "behavior_weekly_snapshot_7d";
+    private static final String RANGE_KEY = "7d";
+
     private final EnrollmentMapper enrollmentMapper;
+    private final BehaviorJobCheckpointMapper checkpointMapper;
     private final BehaviorAggregationService aggregationService;
 
+    @Value("${behavior.snapshot-job.workers:4}")
+    private int workers;
+
+    @Value("${behavior.snapshot-job.checkpoint-every:200}")
+    private int checkpointEvery;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Map<String, Object> lastRunStats = Map.of();
+
     /**
      * 每周一凌晨 03:30 生成一次“7d”摘要快照。
      */
     @Scheduled(cron = "0 30 3 ? * MON")
     public void generateWeeklySnapshots() {
+        runJob(false);
+    }
+
+    /**
+     * 启动后若发现本周批次未完成（上次进程中途退出），在后台从检查点续跑。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedRun() {
         try {
-            List<com.noncore.assessment.entity.User> students = userMapper.selectUsersByRole("student");
-            if (students == null || students.isEmpty()) return;
+            BehaviorJobCheckpoint cp = checkpointMapper.selectByJobName(JOB_NAME);
+            if (cp == null || !"running".equals(cp.getStatus()) || !currentRunKey().equals(cp.getRunKey())) return;
+            Thread t = new Thread(() -> runJob(true), "behavior-snapshot-resume");
+            t.setDaemon(true);
+            t.start();
+        } catch (Exception ex) {
+            log.warn("Behavior snapshot resume check failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * 最近一次运行的统计（处理量、失败数、耗时、吞吐）。
+     */
+    public Map<String, Object> getLastRunStats() {
+        return lastRunStats;
+    }
+
+    /**
+     * 当前是否有一次生成正在执行
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
 
-            for (var u : students) {
-                if (u == null || u.getId() == null) continue;
+    private void runJob(boolean resumeOnly) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Behavior snapshot job already running, skip");
+            return;
+        }
+        try {
+            String runKey = currentRunKey();
+            BehaviorJobCheckpoint cp = checkpointMapper.selectByJobName(JOB_NAME);
+            boolean resume = cp != null && "running".equals(cp.getStatus()) && runKey.equals(cp.getRunKey());
+            if (!resume) {
+                if (resumeOnly) return;
+                cp = new BehaviorJobCheckpoint();
+                cp.setJobName(JOB_NAME);
+                cp.setRunKey(runKey);
+                cp.setStatus("running");
+                cp.setProcessedCount(0);
+                cp.setFailedCount(0);
+                cp.setStartedAt(LocalDateTime.now());
+                checkpointMapper.upsert(cp);
+            }
+            log.info("Behavior snapshot job {}: runKey={}, cursor=({}, {})",
+                    resume ? "resumed" : "started", runKey, cp.getCursorStudentId(), cp.getCursorCourseId());
+            execute(cp);
+        } catch (Exception ex) {
+            // 检查点保持 running，重启后可续跑
+            log.error("Behavior snapshot scheduler failed", ex);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void execute(BehaviorJobCheckpoint cp) throws InterruptedException {
+        int poolSize = Math.max(1, workers);
+        AtomicInteger threadSeq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "behavior-snapshot-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // 在途任务上限：读取线程在此阻塞，避免流式结果全部堆进队列
+        Semaphore inFlight = new Semaphore(poolSize * 2);
+        Progress progress = new Progress(cp);
+        long startNanos = System.nanoTime();
+        try {
+            enrollmentMapper.streamStudentCoursePairsAfter(cp.getCursorStudentId(), cp.getCursorCourseId(), ctx -> {
+                Enrollment e = ctx.getResultObject();
+                if (e == null || e.getStudentId() == null || e.getCourseId() == null) return;
+                inFlight.acquireUninterruptibly();
+                long seq = progress.begin(e.getStudentId(), e.getCourseId());
                 try {
-                    List<Enrollment> enrollments = enrollmentMapper.selectEnrollmentsByStudentId(u.getId());
-                    if (enrollments == null || enrollments.isEmpty()) continue;
-                    for (Enrollment e : enrollments) {
-                        if (e == null) continue;
-                        Long courseId = e.getCourseId();
-                        // 强制生成新快照（阶段性）
+                    pool.execute(() -> {
+                        boolean ok = true;
                         try {
-                            aggregationService.buildAndSaveSnapshot(u.getId(), courseId, "7d");
+                            aggregationService.buildAndSaveSnapshot(e.getStudentId(), e.getCourseId(), RANGE_KEY);
                         } catch (Exception ex) {
-                            log.warn("Behavior snapshot failed: studentId={}, courseId={}, err={}", u.getId(), courseId, ex.getMessage());
+                            ok = false;
+                            log.warn("Behavior snapshot failed: studentId={}, courseId={}, err={}", e.getStudentId(), e.getCourseId(), ex.getMessage());
+                        } finally {
+                            inFlight.release();
+                            progress.complete(seq, ok);
                         }
-                    }
-                } catch (Exception ex) {
-                    log.warn("Behavior snapshot student loop failed: studentId={}, err={}", u.getId(), ex.getMessage());
+                    });
+                } catch (RuntimeException rex) {
+                    inFlight.release();
+                    progress.complete(seq, false);
+                    throw rex;
                 }
+            });
+        } finally {
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Behavior snapshot job waiting for workers: {}", progress.stats(startNanos));
             }
-        } catch (Exception ex) {
-            log.error("Behavior snapshot scheduler failed", ex);
         }
+        cp.setStatus("completed");
+        cp.setFinishedAt(LocalDateTime.now());
+        progress.persist();
+        lastRunStats = progress.stats(startNanos);
+        log.info("Behavior snapshot job completed: {}", lastRunStats);
     }
-}
 
+    private String currentRunKey() {
+        LocalDate d = LocalDate.now();
+        return d.get(IsoFields.WEEK_BASED_YEAR) + "-W" + String.format("%02d", d.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    /**
+     * 并行完成顺序不确定：按提交序号维护“连续完成”的低水位，只把低水位写入检查点，
+     * 保证续跑时不会跳过尚未完成的组合（最多重复生成少量已完成组合）。
+     */
+    private final class Progress {
+        private final BehaviorJobCheckpoint cp;
+        private final TreeMap<Long, long[]> completedAhead = new TreeMap<>();
+        private final Map<Long, long[]> pending = new HashMap<>();
+        private final int baseProcessed;
+        private final int baseFailed;
+        private long nextSeq;
+        private long nextToCommit;
+        private int processed;
+        private int failed;
+        private int sinceCheckpoint;
+
+        private Progress(BehaviorJobCheckpoint cp) {
+            this.cp = cp;
+            this.baseProcessed = cp.getProcessedCount() == null ? 0 : cp.getProcessedCount();
+            this.baseFailed = cp.getFailedCount() == null ? 0 : cp.getFailedCount();
+        }
+
+        private synchronized long begin(Long studentId, Long courseId) {
+            long seq = nextSeq++;
+            pending.put(seq, new long[]{studentId, courseId});
+            return seq;
+        }
+
+        private synchronized void complete(long seq, boolean ok) {
+            processed++;
+            if (!ok) failed++;
+            long[] pair = pending.remove(seq);
+            if (pair != null) completedAhead.put(seq, pair);
+            while (!completedAhead.isEmpty() && completedAhead.firstKey() == nextToCommit) {
+                long[] p = completedAhead.pollFirstEntry().getValue();
+                cp.setCursorStudentId(p[0]);
+                cp.setCursorCourseId(p[1]);
+                nextToCommit++;
+            }
+            if (++sinceCheckpoint >= Math.max(1, checkpointEvery)) {
+                persist();
+            }
+        }
+
+        private synchronized void persist() {
+            sinceCheckpoint = 0;
+            cp.setProcessedCount(baseProcessed + processed);
+            cp.setFailedCount(baseFailed + failed);
+            try {
+                checkpointMapper.upsert(cp);
+            } catch (Exception ex) {
+                log.warn("Behavior snapshot checkpoint write failed: {}", ex.getMessage());
+            }
+        }
+
+        private synchronized Map<String, Object> stats(long startNanos) {
+            long elapsedMs = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("runKey", cp.getRunKey());
+            m.put("processed", processed);
+            m.put("failed", failed);
+            m.put("processedTotal", baseProcessed + processed);
+            m.put("failedTotal", baseFailed + failed);
+            m.put("elapsedMs", elapsedMs);
+            m.put("perSecond", elapsedMs <= 0 ? 0.0 : Math.round(processed * 100_000.0 / elapsedMs) / 100.0);
+            m.put("workers", Math.max(1, workers));
+            return m;
+        }
+    }
+}
@@ -17,6 +17,10 @@ public class AiConfigProperties {
     private Deepseek deepseek = new Deepseek(); // backward-compatible default model
     private ProxyConfig proxy = new ProxyConfig();
     private RetryConfig retry = new RetryConfig();
+    private HttpConfig http = new HttpConfig();
+    private LiveConfig live = new LiveConfig();
+    private GradingCacheConfig gradingCache = new GradingCacheConfig();
+    private GradingJobConfig gradingJob = new GradingJobConfig();
 
     @Data
     public static class Providers {
@@ -68,5 +72,70 @@ public class AiConfigProperties {
         private long backoffMs = 800;
         private long jitterMs = 200;
     }
-}
 
+    /**
+     * AI 出站 HTTP 连接池（LlmClient/GeminiClient 共用）。
+     * 对应配置：ai.http.*
+     */
+    @Data
+    public static class HttpConfig {
+        /** 连接池保留的空闲连接数 */
+        private int maxIdleConnections = 16;
+        /** 空闲连接保活时长（秒） */
+        private long keepAliveSeconds = 300;
+        /** 单个上游主机并发上限的最大值（自适应上限不会超过它；流式请求占用到结束） */
+        private int maxConcurrentPerHost = 32;
+        /** 单个上游主机的初始并发上限；之后按响应情况自适应增减（AIMD） */
+        private int initialConcurrencyPerHost = 8;
+        /** 单个上游主机排队等待名额的请求数上限，超出直接拒绝（AI_OVERLOADED） */
+        private int maxQueuePerHost = 200;
+        /** 等待并发名额的最长时间（毫秒），超时拒绝（AI_OVERLOADED） */
+        private long acquireTimeoutMs = 30000;
+        /** 连续失败（429/5xx/读超时）多少次后熔断该主机 */
+        private int breakerFailureThreshold = 5;
+        /** 熔断持续时长（毫秒），到期后放行一个探测请求 */
+        private long breakerOpenMs = 30000;
+        /** 记住“最近成功链路”的时长（秒）；过期后重新从直连开始尝试 */
+        private long preferredPlanTtlSeconds = 600;
+        /** 实时语音（Gemini Live）同时在线的上游 WebSocket 上限：每个连接占用一个调度线程读帧 */
+        private int maxLiveSessions = 200;
+        /** Live WebSocket 心跳间隔（秒） */
+        private long livePingIntervalSeconds = 20;
+    }
+
+    /**
+     * 实时语音（Gemini Live）上行发送队列。
+     * 对应配置：ai.live.*
+     */
+    @Data
+    public static class LiveConfig {
+        /** 每个会话排队的音频帧上限（控制帧不计入、不丢弃），超出丢弃最旧的音频 */
+        private int sendQueueCapacity = 50;
+        /** 音频帧排队超过该时长（毫秒）视为过期，直接丢弃不再发送 */
+        private long maxAudioAgeMs = 1500;
+        /** 上游 WebSocket 未写出字节数超过该值时暂停发送音频（背压） */
+        private long maxWsQueueBytes = 256 * 1024;
+    }
+
+    /**
+     * AI 批改结果缓存（ai_grading_cache）。
+     * 对应配置：ai.grading-cache.*
+     */
+    @Data
+    public static class GradingCacheConfig {
+        /** 结果保留时长（秒）；0 表示不启用缓存 */
+        private long ttlSeconds = 0;
+    }
+
+    /**
+     * 批量批改任务：按供应商限制同时执行的条目数（每个条目内部还可能有 2~3 次并发取样）。
+     * 对应配置：ai.grading-job.concurrency.google / ai.grading-job.concurrency.glm
+     */
+    @Data
+    public static class GradingJobConfig {
+        private java.util.Map<String, Integer> concurrency = new java.util.HashMap<>(java.util.Map.of("google", 4, "glm", 2));
+        private int defaultConcurrency = 2;
+        /** 同步批量接口等待任务完成的上限（毫秒），超时后任务继续在后台执行，可按任务ID查询 */
+        private long waitTimeoutMs = 120000;
+    }
+}
@@ -11,12 +11,12 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
-import com.noncore.assessment.service.AuthService;
 import com.noncore.assessment.exception.BusinessException;
+import com.noncore.assessment.security.TokenRevocationStore;
+import com.noncore.assessment.security.UserPrincipal;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -35,11 +35,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
     private final JwtUtil jwtUtil;
-    private final AuthService authService;
+    private final TokenRevocationStore revocationStore;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, AuthService authService) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, TokenRevocationStore revocationStore) {
         this.jwtUtil = jwtUtil;
-        this.authService = authService;
+        this.revocationStore = revocationStore;
     }
 
     @Override
@@ -51,41 +51,30 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         if (StringUtils.hasText(token)) {
             try {
-                if (jwtUtil.validateToken(token)) {
-                    // 检查令牌是否已在黑名单中（已登出）
-                    if (authService.isTokenBlacklisted(token)) {
-                        logger.warn("认证失败：令牌已登出，在黑名单中。");
-                    } else {
-                        // 令牌有效，提取用户信息
-                        String username = jwtUtil.getUsernameFromToken(token);
-                        String role = jwtUtil.getRoleFromToken(token);
-                        Long userId = jwtUtil.getUserIdFromToken(token);
-
-                        // 检查是否为访问令牌
-                        if (jwtUtil.isAccessToken(token)) {
-                            // 创建认证对象
-                            UsernamePasswordAuthenticationToken authentication =
-                                    new UsernamePasswordAuthenticationToken(
-                                            username,
-                                            null,
-                                            Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()))
-                                    );
-
-                            // 设置认证详情
-                            authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-
-                            // 将用户ID添加到认证对象中 (Note: This is not the standard way, but preserving logic)
-                            // A better approach is a custom principal object.
-                            authentication.setDetails(userId);
-
-                            // 设置到安全上下文
-                            SecurityContextHolder.getContext().setAuthentication(authentication);
-
-                            logger.debug("JWT认证成功: 用户={}, 角色={}, ID={}", username, role, userId);
-                        } else {
-                            logger.warn("令牌类型错误，期望access令牌但收到: {}", jwtUtil.getTokenTypeFromToken(token));
-                        }
-                    }
+                // 一次验签（命中缓存时仅一次哈希查找）得到不可变主体
+                JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+                // 检查令牌是否已被吊销（登出/改密等），纯内存查找
+                if (revocationStore.isRevoked(verified)) {
+                    logger.warn("认证失败：令牌已被吊销。");
+                } else if (!verified.isAccessToken()) {
+                    logger.warn("令牌类型错误，期望access令牌但收到: {}", verified.tokenType());
+                } else {
+                    UserPrincipal principal = verified.principal();
+                    String role = principal.getRole() == null ? "" : principal.getRole();
+                    UsernamePasswordAuthenticationToken authentication =
+                            new UsernamePasswordAuthenticationToken(
+                                    principal,
+                                    null,
+                                    Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()))
+                            );
+
+                    // 保持原有约定：details 中携带用户ID
+                    authentication.setDetails(principal.getId());
+
+                    // 设置到安全上下文
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+
+                    logger.debug("JWT认证成功: 用户={}, 角色={}, ID={}", principal.getName(), role, principal.getId());
                 }
             } catch (BusinessException e) {
                 // 由JwtUtil抛出的、可预期的业务异常（如令牌过期、格式错误）
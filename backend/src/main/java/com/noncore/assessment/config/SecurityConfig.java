@@ -1,6 +1,6 @@
 package com.noncore.assessment.config;
 
-import com.noncore.assessment.service.AuthService;
+import com.noncore.assessment.security.TokenRevocationStore;
 import com.noncore.assessment.util.JwtUtil;
 import lombok.Getter;
 import org.springframework.context.annotation.Bean;
@@ -56,10 +56,10 @@ public class SecurityConfig {
     public SecurityFilterChain filterChain(HttpSecurity http,
                                            JwtAccessDeniedHandler jwtAccessDeniedHandler,
                                            JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint,
-                                           AuthService authService,
+                                           TokenRevocationStore revocationStore,
                                            JwtUtil jwtUtil) throws Exception {
 
-        JwtAuthenticationFilter jwtAuthenticationFilter = new JwtAuthenticationFilter(jwtUtil, authService);
+        JwtAuthenticationFilter jwtAuthenticationFilter = new JwtAuthenticationFilter(jwtUtil, revocationStore);
 
         http
                 .csrf(AbstractHttpConfigurer::disable)
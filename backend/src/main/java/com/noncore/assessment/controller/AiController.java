@@ -1,8 +1,10 @@
 package com.noncore.assessment.controller;
 
 import com.noncore.assessment.dto.request.AiChatRequest;
+import com.noncore.assessment.dto.request.AiGradingJobRequest;
 import com.noncore.assessment.dto.request.AiVoiceTurnRequest;
 import com.noncore.assessment.dto.response.AiChatResponse;
+import com.noncore.assessment.dto.response.AiGradingJobResponse;
 import com.noncore.assessment.dto.response.AiVoiceTurnResponse;
 import com.noncore.assessment.dto.request.CreateConversationRequest;
 import com.noncore.assessment.dto.request.UpdateConversationRequest;
@@ -23,9 +25,11 @@ import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
 import com.noncore.assessment.service.AiService;
 import com.noncore.assessment.service.FileStorageService;
-import com.noncore.assessment.service.file.DocumentTextExtractor;
+import com.noncore.assessment.service.AiGradingJobService;
+import com.noncore.assessment.service.ai.AiEssayGrader;
 import com.noncore.assessment.service.ai.AiGradingEnsembler;
 import com.noncore.assessment.service.ai.AiGradingNormalizer;
+import com.noncore.assessment.service.llm.LlmStreamCancellation;
 import io.swagger.v3.oas.annotations.Operation;
 import jakarta.validation.Valid;
 import com.noncore.assessment.service.UserService;
@@ -52,9 +56,10 @@ public class AiController extends BaseController {
     private final AiQuotaService quotaService;
     private final AiVoicePracticeService voicePracticeService;
     private final FileStorageService fileStorageService;
-    private final DocumentTextExtractor documentTextExtractor;
     private final com.noncore.assessment.config.AiConfigProperties aiConfigProperties;
     private final BehaviorEventRecorder behaviorEventRecorder;
+    private final AiEssayGrader essayGrader;
+    private final AiGradingJobService gradingJobService;
 
     public AiController(AiService aiService, UserService userService,
                         AiConversationService conversationService,
@@ -62,10 +67,11 @@ public class AiController extends BaseController {
                         AiQuotaService quotaService,
                         AiVoicePracticeService voicePracticeService,
                         FileStorageService fileStorageService,
-                        DocumentTextExtractor documentTextExtractor,
                         com.noncore.assessment.service.AiGradingHistoryService historyService,
                         com.noncore.assessment.config.AiConfigProperties aiConfigProperties,
-                        BehaviorEventRecorder behaviorEventRecorder) {
+                        BehaviorEventRecorder behaviorEventRecorder,
+                        AiEssayGrader essayGrader,
+                        AiGradingJobService gradingJobService) {
         super(userService);
         this.aiService = aiService;
         this.conversationService = conversationService;
@@ -73,10 +79,11 @@ public class AiController extends BaseController {
         this.quotaService = quotaService;
         this.voicePracticeService = voicePracticeService;
         this.fileStorageService = fileStorageService;
-        this.documentTextExtractor = documentTextExtractor;
         this.historyService = historyService;
         this.aiConfigProperties = aiConfigProperties;
         this.behaviorEventRecorder = behaviorEventRecorder;
+        this.essayGrader = essayGrader;
+        this.gradingJobService = gradingJobService;
     }
 
     private final com.noncore.assessment.service.AiGradingHistoryService historyService;
@@ -233,7 +240,13 @@ public class AiController extends BaseController {
             catch (Exception ignored) { aborted.set(true); }
         }, 15, 15, TimeUnit.SECONDS);
 
-        Runnable stop = () -> { aborted.set(true); try { hb.cancel(true); } catch (Exception ignored) {} };
+        // 客户端断开时取消上游流式请求
+        LlmStreamCancellation cancellation = new LlmStreamCancellation();
+        Runnable stop = () -> {
+            aborted.set(true);
+            cancellation.cancel();
+            try { hb.cancel(true); } catch (Exception ignored) {}
+        };
         emitter.onCompletion(stop);
         emitter.onTimeout(stop);
         emitter.onError(e -> stop.run());
@@ -243,27 +256,21 @@ public class AiController extends BaseController {
                 emitter.send(SseEmitter.event().name("meta").data(java.util.Map.of(
                         "conversationId", fConvId, "model", fModel != null ? fModel : "")));
 
-                String answer = aiService.generateAnswer(request, userId);
+                // 上游增量到达即推送（前端控制打字机节奏）
+                String answer = aiService.streamAnswer(request, userId,
+                        delta -> emitter.send(SseEmitter.event().name("token").data(java.util.Map.of("text", delta))),
+                        cancellation);
 
                 if (answer == null || answer.trim().isEmpty()) {
+                    if (aborted.get()) return;
                     emitter.send(SseEmitter.event().name("error").data(java.util.Map.of("message", "大模型未返回有效文本")));
                     emitter.complete();
                     return;
                 }
 
-                // 分句推送（不做 sleep，让前端控制打字机节奏）
-                String[] paragraphs = answer.split("(?<=\\n)");
-                for (String para : paragraphs) {
-                    if (aborted.get()) break;
-                    String[] sentences = para.split("(?<=[。！？；.!?;\\n])");
-                    for (String s : sentences) {
-                        if (aborted.get()) break;
-                        if (s.isEmpty()) continue;
-                        emitter.send(SseEmitter.event().name("token").data(java.util.Map.of("text", s)));
-                    }
-                }
-
+                // 客户端中途断开：保存已生成的部分，保持会话记录与用户所见一致
                 var assistantMsg = conversationService.appendMessage(userId, fConvId, "assistant", answer, null);
+                if (aborted.get()) return;
                 emitter.send(SseEmitter.event().name("done").data(java.util.Map.of(
                         "messageId", assistantMsg != null ? assistantMsg.getId() : 0, "fullText", answer)));
                 emitter.complete();
@@ -393,105 +400,38 @@ public class AiController extends BaseController {
 
     @PostMapping("/grade/files")
     @PreAuthorize("hasRole('TEACHER')")
-    @Operation(summary = "AI 批改（按文件ID批量）", description = "从文件存储读取文本（支持 docx/pdf/txt），使用作文批改 Prompt，可选 JSON-only 输出")
+    @Operation(summary = "AI 批改（按文件ID批量）", description = "从文件存储读取文本（支持 docx/pdf/txt），使用作文批改 Prompt，可选 JSON-only 输出；按供应商并发上限并行批改")
     public ResponseEntity<ApiResponse<java.util.Map<String, Object>>> gradeByFiles(@RequestBody java.util.Map<String, Object> body) {
         Long userId = getCurrentUserId();
         java.util.List<Integer> ids = (java.util.List<Integer>) body.getOrDefault("fileIds", java.util.List.of());
         java.util.List<Long> fileIds = ids.stream().map(Integer::longValue).toList();
-        String model = (String) body.get("model");
-        // 允许 google/* 与 glm-*，其余回退默认（避免前端选了 GLM 但后端被强制改为 Gemini）
-        if (model == null || model.isBlank()) {
-            model = "google/gemini-2.5-pro";
-        } else if (!(model.startsWith("google/") || model.startsWith("glm-"))) {
-            model = "google/gemini-2.5-pro";
+        if (fileIds.isEmpty()) {
+            return ResponseEntity.ok(ApiResponse.success(java.util.Map.of("results", java.util.List.of())));
         }
+        AiGradingJobRequest jobReq = new AiGradingJobRequest();
+        jobReq.setFileIds(fileIds);
+        jobReq.setModel((String) body.get("model"));
         // 批改场景：默认强制 JSON-only
-        Boolean jsonOnly = (Boolean) body.get("jsonOnly");
-        if (jsonOnly == null) jsonOnly = Boolean.TRUE;
-        Boolean usePrompt = (Boolean) body.get("useGradingPrompt");
-        if (usePrompt == null) usePrompt = Boolean.TRUE;
+        jobReq.setJsonOnly((Boolean) body.get("jsonOnly"));
+        jobReq.setUseGradingPrompt((Boolean) body.get("useGradingPrompt"));
         // 稳定化参数（可选）：默认保持旧行为（samples=1）
-        int samplesRequested = toInt(body.get("samples"), 1);
-        if (samplesRequested < 1) samplesRequested = 1;
-        if (samplesRequested > 3) samplesRequested = 3;
-        double diffThreshold = toDouble(body.get("diffThreshold"), 0.8);
-        if (diffThreshold < 0) diffThreshold = 0;
-        if (diffThreshold > 5) diffThreshold = 5;
+        jobReq.setSamples(toInt(body.get("samples"), 1));
+        jobReq.setDiffThreshold(toDouble(body.get("diffThreshold"), 0.8));
+        jobReq.setForceRefresh((Boolean) body.get("forceRefresh"));
 
+        AiGradingJobResponse job = gradingJobService.submitAndWait(userId, jobReq);
         java.util.List<java.util.Map<String, Object>> results = new java.util.ArrayList<>();
-        for (Long fid : fileIds) {
-            try {
-                var info = fileStorageService.getFileInfo(fid);
-                String fileName = info != null ? (info.getOriginalName() != null ? info.getOriginalName() : info.getStoredName()) : ("#" + fid);
-                byte[] bytes = fileStorageService.downloadFile(fid, userId);
-                String text = documentTextExtractor.extractText(new java.io.ByteArrayInputStream(bytes), fileName, info != null ? info.getMimeType() : null);
-                // 组装请求（使用 setter 而非全参构造）
-                var req = new com.noncore.assessment.dto.request.AiChatRequest();
-                req.setMessages(java.util.List.of(new com.noncore.assessment.dto.request.AiChatRequest.Message("user", text)));
-                req.setModel(model);
-                req.setJsonOnly(jsonOnly);
-                req.setUseGradingPrompt(usePrompt);
-                // JSON-only：支持稳定化取样；非 JSON-only 保持一次调用（供前端 fallback 调试用）
-                String respText;
-                java.util.Map<String, Object> parsed;
-                if (Boolean.TRUE.equals(jsonOnly) && samplesRequested > 1) {
-                    var stable = generateStableJsonOnly(req, userId, samplesRequested, diffThreshold);
-                    parsed = stable.get("result") instanceof java.util.Map<?,?> m ? (java.util.Map<String, Object>) m : java.util.Map.of();
-                    respText = String.valueOf(stable.getOrDefault("rawJson", ""));
-                } else {
-                    respText = Boolean.TRUE.equals(jsonOnly)
-                            ? aiService.generateAnswerJsonOnly(req, userId)
-                            : aiService.generateAnswer(req, userId);
-                    java.util.Map<String, Object> p = Boolean.TRUE.equals(jsonOnly)
-                            ? com.noncore.assessment.util.Jsons.parseObject(respText)
-                            : java.util.Map.of("text", respText);
-                    // 单次也补齐 overall，保持输出一致（并同步 rawJson）
-                    if (Boolean.TRUE.equals(jsonOnly)) {
-                        p = AiGradingNormalizer.normalize(p);
-                        respText = com.noncore.assessment.util.Jsons.toJson(p);
-                    }
-                    parsed = p;
-                }
-                // save history when jsonOnly
-                if (jsonOnly) {
-                    Double finalScore = null;
-                    try {
-                        finalScore = AiGradingNormalizer.extractFinalScore05(parsed);
-                    } catch (Exception ignored) {}
-                    var rec = new com.noncore.assessment.entity.AiGradingHistory();
-                    rec.setTeacherId(userId);
-                    rec.setFileId(fid);
-                    rec.setFileName(fileName);
-                    rec.setModel(model);
-                    rec.setFinalScore(finalScore);
-                    rec.setRawJson(respText);
-                    rec.setCreatedAt(java.time.LocalDateTime.now());
-                    historyService.save(rec);
-                    java.util.Map<String, Object> row = new java.util.HashMap<>();
-                    row.put("fileId", fid);
-                    row.put("fileName", fileName);
-                    row.put("result", parsed);
-                    row.put("historyId", rec.getId());
-                    results.add(row);
-                } else {
-                    results.add(java.util.Map.of(
-                            "fileId", fid,
-                            "fileName", fileName,
-                            "result", parsed
-                    ));
-                }
-            } catch (Exception e) {
-                String fileNameFallback = null;
-                try {
-                    var info = fileStorageService.getFileInfo(fid);
-                    fileNameFallback = info != null ? (info.getOriginalName() != null ? info.getOriginalName() : info.getStoredName()) : ("#" + fid);
-                } catch (Exception ignored) {}
-                results.add(java.util.Map.of(
-                        "fileId", fid,
-                        "fileName", fileNameFallback != null ? fileNameFallback : String.valueOf(fid),
-                        "error", e.getMessage()
-                ));
+        for (java.util.Map<String, Object> item : job.getItems()) {
+            java.util.Map<String, Object> row = new java.util.HashMap<>();
+            row.put("fileId", item.get("fileId"));
+            row.put("fileName", item.getOrDefault("fileName", String.valueOf(item.get("fileId"))));
+            if ("succeeded".equals(item.get("status"))) {
+                row.put("result", item.get("result"));
+                if (item.get("historyId") != null) row.put("historyId", item.get("historyId"));
+            } else {
+                row.put("error", item.get("error"));
             }
+            results.add(row);
         }
         return ResponseEntity.ok(ApiResponse.success(java.util.Map.of("results", results)));
     }
@@ -512,17 +452,9 @@ public class AiController extends BaseController {
         // 强制 JSON-only（与接口语义一致）
         request.setJsonOnly(Boolean.TRUE);
 
-        String json;
-        java.util.Map<String, Object> parsed;
-        if (samplesRequested > 1) {
-            var stable = generateStableJsonOnly(request, userId, samplesRequested, diffThreshold);
-            parsed = stable.get("result") instanceof java.util.Map<?,?> m ? (java.util.Map<String, Object>) m : java.util.Map.of();
-            json = String.valueOf(stable.getOrDefault("rawJson", ""));
-        } else {
-            json = aiService.generateAnswerJsonOnly(request, userId);
-            parsed = AiGradingNormalizer.normalize(com.noncore.assessment.util.Jsons.parseObject(json));
-            json = com.noncore.assessment.util.Jsons.toJson(parsed);
-        }
+        var graded = essayGrader.gradeJsonOnly(request, userId, samplesRequested, diffThreshold);
+        java.util.Map<String, Object> parsed = graded.get("result") instanceof java.util.Map<?,?> m ? (java.util.Map<String, Object>) m : java.util.Map.of();
+        String json = String.valueOf(graded.getOrDefault("rawJson", ""));
         try {
             // 写入 AI 批改历史（essay 无文件ID）
             try {
@@ -557,6 +489,7 @@ public class AiController extends BaseController {
      * <p>
      * 用于解决稳定化算法（多次取样）导致的“前端等待超时”问题：
      * 后端每完成一次 run 就通过 SSE 推送该次分数，让前端弹窗逐次展示；最后推送聚合后的最终结果，并仅落库 1 条历史记录。
+     * 取样并发执行（第 3 次投机发起，前两次一致时取消），run1/run2 按完成先后推送，之后依次为 diff → run3。
      * <p>
      * 事件约定：\n
      * - event: meta -> { samplesRequested, diffThreshold }\n
@@ -622,77 +555,44 @@ public class AiController extends BaseController {
                         "diffThreshold", diffThresholdFinal
                 )));
 
-                java.util.List<java.util.Map<String, Object>> runs = new java.util.ArrayList<>();
-                java.util.List<String> rawRuns = new java.util.ArrayList<>();
-
-                // 1) 先跑两次（或一次）
-                int firstBatch = Math.min(reqFinal, 2);
-                for (int i = 0; i < firstBatch; i++) {
-                    int attemptIndex = i + 1;
-                    String json = aiService.generateAnswerJsonOnly(request, userId);
-                    rawRuns.add(json);
-                    try {
-                        java.util.Map<String, Object> parsed = com.noncore.assessment.util.Jsons.parseObject(json);
-                        java.util.Map<String, Object> normalized = AiGradingNormalizer.normalize(parsed);
-                        runs.add(normalized);
-                        double score05 = AiGradingNormalizer.extractFinalScore05(normalized);
-                        emitter.send(SseEmitter.event().name("run").data(java.util.Map.of(
-                                "index", attemptIndex,
-                                "ok", true,
-                                "finalScore05", score05
-                        )));
-                    } catch (Exception ex) {
-                        emitter.send(SseEmitter.event().name("run").data(java.util.Map.of(
-                                "index", attemptIndex,
-                                "ok", false,
-                                "error", "INVALID_JSON"
-                        )));
-                    }
-                }
-
-                // 2) 两次都有效时，计算分差，必要时触发第 3 次
-                boolean triggeredThird = false;
-                if (runs.size() >= 2 && runs.size() < 3) {
-                    double s1 = AiGradingNormalizer.extractFinalScore05(runs.get(0));
-                    double s2 = AiGradingNormalizer.extractFinalScore05(runs.get(1));
-                    double diff12 = Math.abs(s1 - s2);
-                    triggeredThird = diff12 > diffThresholdFinal;
-                    emitter.send(SseEmitter.event().name("diff").data(java.util.Map.of(
-                            "s1", s1,
-                            "s2", s2,
-                            "diff12", diff12,
-                            "threshold", diffThresholdFinal,
-                            "triggeredThird", triggeredThird
-                    )));
-                    if (triggeredThird) {
-                        try {
-                            String json3 = aiService.generateAnswerJsonOnly(request, userId);
-                            rawRuns.add(json3);
-                            java.util.Map<String, Object> parsed3 = com.noncore.assessment.util.Jsons.parseObject(json3);
-                            java.util.Map<String, Object> normalized3 = AiGradingNormalizer.normalize(parsed3);
-                            runs.add(normalized3);
-                            double s3 = AiGradingNormalizer.extractFinalScore05(normalized3);
-                            emitter.send(SseEmitter.event().name("run").data(java.util.Map.of(
-                                    "index", 3,
-                                    "ok", true,
-                                    "finalScore05", s3
-                            )));
-                        } catch (Exception ex) {
-                            emitter.send(SseEmitter.event().name("run").data(java.util.Map.of(
-                                    "index", 3,
-                                    "ok", false,
-                                    "error", "INVALID_JSON"
-                            )));
-                        }
-                    }
-                }
-
-                // 3) 聚合：至少 1 条有效结果
+                // 1) 并发取样：run 事件按完成推送，前两次分差在阈值内时取消投机的第 3 次
+                var sampling = essayGrader.sample(request, userId, reqFinal, diffThresholdFinal,
+                        new AiGradingEnsembler.SampleListener() {
+                            @Override
+                            public void onRun(int index, java.util.Map<String, Object> normalized) throws java.io.IOException {
+                                if (normalized != null) {
+                                    emitter.send(SseEmitter.event().name("run").data(java.util.Map.of(
+                                            "index", index,
+                                            "ok", true,
+                                            "finalScore05", AiGradingNormalizer.extractFinalScore05(normalized)
+                                    )));
+                                } else {
+                                    emitter.send(SseEmitter.event().name("run").data(java.util.Map.of(
+                                            "index", index,
+                                            "ok", false,
+                                            "error", "INVALID_JSON"
+                                    )));
+                                }
+                            }
+
+                            @Override
+                            public void onDiff(double s1, double s2, double diff12, boolean triggeredThird) throws java.io.IOException {
+                                emitter.send(SseEmitter.event().name("diff").data(java.util.Map.of(
+                                        "s1", s1,
+                                        "s2", s2,
+                                        "diff12", diff12,
+                                        "threshold", diffThresholdFinal,
+                                        "triggeredThird", triggeredThird
+                                )));
+                            }
+                        });
+                java.util.List<java.util.Map<String, Object>> runs = sampling.runs();
+
+                // 2) 聚合：至少 1 条有效结果
                 if (runs.isEmpty()) {
-                    String raw = rawRuns.isEmpty() ? "" : rawRuns.get(rawRuns.size() - 1);
                     emitter.send(SseEmitter.event().name("error").data(java.util.Map.of(
                             "message", "Invalid JSON returned by model",
-                            "raw", raw
+                            "raw", sampling.lastRaw()
                     )));
                     emitter.complete();
                     stop.run();
@@ -746,64 +646,6 @@ public class AiController extends BaseController {
         return emitter;
     }
 
-    /**
-     * 对 JSON-only 批改执行“2 次均值 + 分差大则第 3 次 + 取最近对”的稳定化算法，并输出聚合后的 JSON。
-     *
-     * @param baseRequest 已构造好的请求（messages/model/useGradingPrompt/jsonOnly 等）
-     * @param userId 当前教师ID
-     * @param samplesRequested 请求的取样次数（建议 2）
-     * @param diffThreshold 触发第 3 次的阈值（0~5 标尺，推荐 0.8）
-     * @return { result: Map, rawJson: String }
-     */
-    private java.util.Map<String, Object> generateStableJsonOnly(AiChatRequest baseRequest, Long userId, int samplesRequested, double diffThreshold) {
-        // 仅允许 1~3
-        int req = Math.max(1, Math.min(samplesRequested, 3));
-
-        java.util.List<java.util.Map<String, Object>> runs = new java.util.ArrayList<>();
-        java.util.List<String> rawRuns = new java.util.ArrayList<>();
-
-        // 1) 先跑两次（或一次）
-        int firstBatch = Math.min(req, 2);
-        for (int i = 0; i < firstBatch; i++) {
-            String json = aiService.generateAnswerJsonOnly(baseRequest, userId);
-            rawRuns.add(json);
-            try {
-                java.util.Map<String, Object> parsed = com.noncore.assessment.util.Jsons.parseObject(json);
-                runs.add(AiGradingNormalizer.normalize(parsed));
-            } catch (Exception ignored) {
-                // 忽略无效 JSON（后续若无可用结果则整体返回 INVALID_JSON）
-            }
-        }
-
-        // 2) 若两次都有效且分差过大，则补第 3 次（即使 samplesRequested=2，也允许触发一次“稳定补采样”）
-        if (runs.size() >= 2 && runs.size() < 3) {
-            double s1 = AiGradingNormalizer.extractFinalScore05(runs.get(0));
-            double s2 = AiGradingNormalizer.extractFinalScore05(runs.get(1));
-            if (Math.abs(s1 - s2) > diffThreshold) {
-                try {
-                    String json3 = aiService.generateAnswerJsonOnly(baseRequest, userId);
-                    rawRuns.add(json3);
-                    java.util.Map<String, Object> parsed3 = com.noncore.assessment.util.Jsons.parseObject(json3);
-                    runs.add(AiGradingNormalizer.normalize(parsed3));
-                } catch (Exception ignored) {}
-            }
-        }
-
-        // 3) 聚合：至少 1 条有效结果
-        if (runs.isEmpty()) {
-            // 将最后一次 raw 透出，便于排障
-            String raw = rawRuns.isEmpty() ? "" : rawRuns.get(rawRuns.size() - 1);
-            return java.util.Map.of(
-                    "result", java.util.Map.of("error", "INVALID_JSON", "message", "Invalid JSON returned by model", "raw", raw),
-                    "rawJson", raw
-            );
-        }
-
-        java.util.Map<String, Object> merged = AiGradingEnsembler.ensemble(runs, req, diffThreshold);
-        String rawJson = com.noncore.assessment.util.Jsons.toJson(merged);
-        return java.util.Map.of("result", merged, "rawJson", rawJson);
-    }
-
     private int toInt(Object v, int def) {
         if (v == null) return def;
         try {
@@ -826,59 +668,116 @@ public class AiController extends BaseController {
 
     @PostMapping("/grade/essay/batch")
     @PreAuthorize("hasRole('TEACHER')")
-    @Operation(summary = "AI 批量批改作文（强制 JSON 输出）")
+    @Operation(summary = "AI 批量批改作文（强制 JSON 输出）", description = "按供应商并发上限并行批改，结果顺序与请求顺序一致")
     public ResponseEntity<ApiResponse<java.util.List<java.util.Map<String, Object>>>> gradeEssayBatch(@Valid @RequestBody java.util.List<AiChatRequest> requests) {
         Long userId = getCurrentUserId();
+        if (requests.isEmpty()) {
+            return ResponseEntity.ok(ApiResponse.success(java.util.List.of()));
+        }
+        AiGradingJobRequest jobReq = new AiGradingJobRequest();
+        jobReq.setEssays(requests);
+        AiGradingJobResponse job = gradingJobService.submitAndWait(userId, jobReq);
         java.util.List<java.util.Map<String, Object>> results = new java.util.ArrayList<>();
-        for (AiChatRequest req : requests) {
-            // 稳定化参数：默认保持旧行为（samples=1）
-            int samplesRequested = req.getSamples() == null ? 1 : req.getSamples();
-            if (samplesRequested < 1) samplesRequested = 1;
-            if (samplesRequested > 3) samplesRequested = 3;
-            double diffThreshold = req.getDiffThreshold() == null ? 0.8 : req.getDiffThreshold();
-            if (diffThreshold < 0) diffThreshold = 0;
-            if (diffThreshold > 5) diffThreshold = 5;
-
-            req.setJsonOnly(Boolean.TRUE);
-
-            String json;
-            java.util.Map<String, Object> parsed;
-            if (samplesRequested > 1) {
-                var stable = generateStableJsonOnly(req, userId, samplesRequested, diffThreshold);
-                parsed = stable.get("result") instanceof java.util.Map<?,?> m ? (java.util.Map<String, Object>) m : java.util.Map.of();
-                json = String.valueOf(stable.getOrDefault("rawJson", ""));
+        for (java.util.Map<String, Object> item : job.getItems()) {
+            if ("succeeded".equals(item.get("status")) && item.get("result") instanceof java.util.Map<?, ?> r) {
+                results.add((java.util.Map<String, Object>) r);
             } else {
-                json = aiService.generateAnswerJsonOnly(req, userId);
-                parsed = AiGradingNormalizer.normalize(com.noncore.assessment.util.Jsons.parseObject(json));
-                json = com.noncore.assessment.util.Jsons.toJson(parsed);
-            }
-            try {
-                results.add(parsed);
-                // history
-                Double finalScore = null;
-                try {
-                    finalScore = AiGradingNormalizer.extractFinalScore05(parsed);
-                } catch (Exception ignored) {}
-                var rec = new com.noncore.assessment.entity.AiGradingHistory();
-                rec.setTeacherId(userId);
-                rec.setFileId(null);
-                rec.setFileName(null);
-                rec.setModel(req.getModel());
-                rec.setFinalScore(finalScore);
-                rec.setRawJson(json);
-                rec.setCreatedAt(java.time.LocalDateTime.now());
-                historyService.save(rec);
-            } catch (IllegalArgumentException ex) {
                 results.add(java.util.Map.of(
-                        "error", "INVALID_JSON",
-                        "message", ex.getMessage(),
-                        "raw", json
+                        "error", "GRADING_FAILED",
+                        "message", String.valueOf(item.getOrDefault("error", ""))
                 ));
             }
         }
         return ResponseEntity.ok(ApiResponse.success(results));
     }
 
+    /**
+     * 提交批量批改任务（立即返回任务ID），结果通过 GET /grade/jobs/{id} 轮询或 /grade/jobs/{id}/events 订阅。
+     */
+    @PostMapping("/grade/jobs")
+    @PreAuthorize("hasRole('TEACHER')")
+    @Operation(summary = "AI 批量批改任务-提交", description = "fileIds 与 essays 二选一；条目按供应商并发上限并行执行，逐条落库，重启后续跑")
+    public ResponseEntity<ApiResponse<com.noncore.assessment.entity.AiGradingJob>> submitGradingJob(@RequestBody AiGradingJobRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(gradingJobService.submit(getCurrentUserId(), request)));
+    }
+
+    @GetMapping("/grade/jobs/{id}")
+    @PreAuthorize("hasRole('TEACHER')")
+    @Operation(summary = "AI 批量批改任务-进度与结果")
+    public ResponseEntity<ApiResponse<AiGradingJobResponse>> getGradingJob(@PathVariable Long id) {
+        return ResponseEntity.ok(ApiResponse.success(gradingJobService.getJob(getCurrentUserId(), id)));
+    }
+
+    /**
+     * 批量批改任务进度（SSE）。
+     * <p>
+     * 事件约定：\n
+     * - event: snapshot -> { job, items }（订阅时的完整状态）\n
+     * - event: item -> { itemIndex, status, result?, error?, ... }（每完成一条推送一次；可能与 snapshot 重复，按 itemIndex 去重）\n
+     * - event: done -> { job }\n
+     */
+    @GetMapping(value = "/grade/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('TEACHER')")
+    @Operation(summary = "AI 批量批改任务-进度订阅（SSE）")
+    public SseEmitter gradingJobEvents(@PathVariable Long id) {
+        Long userId = getCurrentUserId();
+        SseEmitter emitter = new SseEmitter(0L);
+        AtomicBoolean closed = new AtomicBoolean(false);
+
+        ScheduledFuture<?> hb = SSE_HEARTBEAT.scheduleAtFixedRate(() -> {
+            if (closed.get()) return;
+            synchronized (emitter) {
+                try { emitter.send(SseEmitter.event().name("ping").data(java.util.Map.of("ts", System.currentTimeMillis()))); }
+                catch (Exception ignored) { closed.set(true); }
+            }
+        }, 15, 15, TimeUnit.SECONDS);
+
+        // 先订阅再发快照：快照之后完成的条目不会漏推
+        Runnable unsubscribe = gradingJobService.subscribe(userId, id, new AiGradingJobService.Listener() {
+            @Override
+            public void onItem(java.util.Map<String, Object> item) {
+                if (closed.get()) return;
+                synchronized (emitter) {
+                    try { emitter.send(SseEmitter.event().name("item").data(item)); }
+                    catch (Exception ignored) { closed.set(true); }
+                }
+            }
+
+            @Override
+            public void onCompleted(com.noncore.assessment.entity.AiGradingJob job) {
+                SSE_EXECUTOR.submit(() -> {
+                    synchronized (emitter) {
+                        if (closed.get()) return;
+                        try {
+                            emitter.send(SseEmitter.event().name("snapshot").data(gradingJobService.getJob(userId, id)));
+                            emitter.send(SseEmitter.event().name("done").data(java.util.Map.of("job", job)));
+                            emitter.complete();
+                        } catch (Exception ignored) {}
+                        closed.set(true);
+                    }
+                });
+            }
+        });
+
+        Runnable stop = () -> {
+            closed.set(true);
+            try { hb.cancel(true); } catch (Exception ignored) {}
+            unsubscribe.run();
+        };
+        emitter.onCompletion(stop);
+        emitter.onTimeout(stop);
+        emitter.onError(e -> stop.run());
+
+        SSE_EXECUTOR.submit(() -> {
+            synchronized (emitter) {
+                if (closed.get()) return;
+                try { emitter.send(SseEmitter.event().name("snapshot").data(gradingJobService.getJob(userId, id))); }
+                catch (Exception ignored) { closed.set(true); }
+            }
+        });
+        return emitter;
+    }
+
     @GetMapping("/grade/history")
     @PreAuthorize("hasRole('TEACHER')")
     @Operation(summary = "AI 批改历史-分页")
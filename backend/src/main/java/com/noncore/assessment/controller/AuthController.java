@@ -1,6 +1,7 @@
 package com.noncore.assessment.controller;
 
 import com.noncore.assessment.dto.request.LoginRequest;
+import com.noncore.assessment.dto.request.LogoutRequest;
 import com.noncore.assessment.dto.request.RegisterRequest;
 import com.noncore.assessment.dto.response.AuthResponse;
 import com.noncore.assessment.util.ApiResponse;
@@ -55,10 +56,16 @@ public class AuthController extends BaseController {
     }
 
     @PostMapping("/logout")
-    @Operation(summary = "用户登出", description = "将当前令牌加入黑名单")
-    public ResponseEntity<ApiResponse<Void>> logout(@RequestHeader("Authorization") String authHeader) {
+    @Operation(summary = "用户登出", description = "吊销当前访问令牌（可同时传入刷新令牌一并吊销）")
+    public ResponseEntity<ApiResponse<Void>> logout(@RequestHeader("Authorization") String authHeader,
+                                                    @RequestBody(required = false) LogoutRequest request) {
         String token = authHeader.replace("Bearer ", "");
         authService.logout(token);
+        // 刷新令牌放在请求体中，避免出现在 URL / 访问日志里
+        String refreshToken = request == null ? null : request.getRefreshToken();
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            authService.logout(refreshToken);
+        }
         return ResponseEntity.ok(ApiResponse.success(null));
     }
 
@@ -3,6 +3,7 @@ package com.noncore.assessment.controller;
 import com.noncore.assessment.behavior.BehaviorEventRecorder;
 import com.noncore.assessment.behavior.BehaviorEventType;
 import com.noncore.assessment.entity.FileRecord;
+import com.noncore.assessment.entity.FileUploadSession;
 import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
 import com.noncore.assessment.service.FileStorageService;
@@ -10,17 +11,23 @@ import com.noncore.assessment.service.UserService;
 import com.noncore.assessment.util.ApiResponse;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ContentDisposition;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
@@ -72,12 +79,70 @@ public class FileController extends BaseController {
     }
 
     /**
-     * 下载文件
+     * 创建分片断点续传会话（大文件：课程视频/资料）
+     */
+    @PostMapping("/uploads")
+    @Operation(summary = "创建分片上传会话", description = "声明文件名与总大小，返回会话ID；随后按偏移 PUT 分片，最后调用 complete")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<FileUploadSession>> createUploadSession(
+            @RequestParam("fileName") String fileName,
+            @RequestParam("size") long size,
+            @RequestParam(value = "mimeType", required = false) String mimeType,
+            @RequestParam(value = "purpose", defaultValue = "general") String purpose,
+            @RequestParam(value = "relatedId", required = false) Long relatedId) {
+        FileUploadSession session = fileStorageService.createUploadSession(getCurrentUserId(), fileName, size, mimeType, purpose, relatedId);
+        return ResponseEntity.ok(ApiResponse.success(session));
+    }
+
+    /**
+     * 查询上传会话（断线后据 receivedSize 续传）
+     */
+    @GetMapping("/uploads/{sessionId}")
+    @Operation(summary = "查询分片上传会话", description = "receivedSize 即下一个分片的起始偏移")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<FileUploadSession>> getUploadSession(@PathVariable String sessionId) {
+        return ResponseEntity.ok(ApiResponse.success(fileStorageService.getUploadSession(sessionId, getCurrentUserId())));
+    }
+
+    /**
+     * 上传一个分片：请求体为原始字节（application/octet-stream），直接写入目标文件，不经 multipart 临时目录
+     */
+    @PutMapping(value = "/uploads/{sessionId}/chunks", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @Operation(summary = "上传分片", description = "offset 必须等于当前 receivedSize；X-Chunk-Sha256 提供时校验分片内容")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<FileUploadSession>> uploadChunk(
+            @PathVariable String sessionId,
+            @RequestParam("offset") long offset,
+            @RequestHeader(value = "X-Chunk-Sha256", required = false) String sha256,
+            HttpServletRequest request) throws IOException {
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            throw new BusinessException(ErrorCode.FILE_EMPTY, "分片请求缺少 Content-Length");
+        }
+        FileUploadSession session = fileStorageService.appendUploadChunk(
+                sessionId, getCurrentUserId(), offset, request.getInputStream(), length, sha256);
+        return ResponseEntity.ok(ApiResponse.success(session));
+    }
+
+    /**
+     * 完成分片上传，生成文件记录
+     */
+    @PostMapping("/uploads/{sessionId}/complete")
+    @Operation(summary = "完成分片上传", description = "全部分片到齐后生成文件记录（重复调用返回同一记录）")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<FileRecord>> completeUploadSession(@PathVariable String sessionId) {
+        return ResponseEntity.ok(ApiResponse.success(fileStorageService.completeUploadSession(sessionId, getCurrentUserId())));
+    }
+
+    /**
+     * 下载文件（流式传输，支持 Range 与 ETag/Last-Modified 条件请求）
      */
     @GetMapping("/{fileId}/download")
     @Operation(summary = "下载文件", description = "根据文件ID下载文件")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable Long fileId) {
+    public ResponseEntity<?> downloadFile(@PathVariable Long fileId,
+                                          @RequestHeader(value = "Range", required = false) String rangeHeader,
+                                          @RequestHeader(value = "If-Range", required = false) String ifRange) {
         Long userId = getCurrentUserId();
 
         FileRecord fileRecord = fileStorageService.getFileInfo(fileId);
@@ -94,10 +159,11 @@ public class FileController extends BaseController {
             }
         } catch (Exception ignored) {}
 
-        byte[] fileBytes = fileStorageService.downloadFile(fileId, effectiveUserId);
+        boolean firstSegment = isFirstSegment(rangeHeader);
+        Resource resource = fileStorageService.openFileResource(fileId, effectiveUserId, firstSegment);
         // 行为记录：资源访问（只记录不评价）
         try {
-            if (hasRole("STUDENT")) {
+            if (firstSegment && hasRole("STUDENT")) {
                 String mime = safeMimeType(fileRecord);
                 java.util.Map<String, Object> meta = new java.util.HashMap<>();
                 meta.put("mimeType", mime);
@@ -115,20 +181,11 @@ public class FileController extends BaseController {
             }
         } catch (Exception ignored) {}
 
-        HttpHeaders headers = new HttpHeaders();
-        String mime = safeMimeType(fileRecord);
-        headers.setContentType(MediaType.parseMediaType(mime));
-        headers.setContentLength(fileBytes.length);
-
         String original = fileRecord.getOriginalName();
         ContentDisposition cd = ContentDisposition.inline()
                 .filename(original, StandardCharsets.UTF_8)
                 .build();
-        headers.setContentDisposition(cd);
-
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(fileBytes);
+        return rangedFileResponse(fileId, resource, MediaType.parseMediaType(safeMimeType(fileRecord)), cd, rangeHeader, ifRange);
     }
 
     /**
@@ -212,7 +269,9 @@ public class FileController extends BaseController {
     @GetMapping("/{fileId}/preview")
     @Operation(summary = "文件预览", description = "预览图片与 PDF 文件（inline）")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<byte[]> previewImage(@PathVariable Long fileId) {
+    public ResponseEntity<?> previewImage(@PathVariable Long fileId,
+                                          @RequestHeader(value = "Range", required = false) String rangeHeader,
+                                          @RequestHeader(value = "If-Range", required = false) String ifRange) {
         Long userId = getCurrentUserId();
 
         FileRecord fileRecord = fileStorageService.getFileInfo(fileId);
@@ -233,9 +292,10 @@ public class FileController extends BaseController {
             }
         } catch (Exception ignored) {}
 
-        byte[] fileBytes;
+        boolean firstSegment = isFirstSegment(rangeHeader);
+        Resource resource;
         try {
-            fileBytes = fileStorageService.downloadFile(fileId, effectiveUserId);
+            resource = fileStorageService.openFileResource(fileId, effectiveUserId, firstSegment);
         } catch (BusinessException e) {
             // 图片文件丢失：返回透明占位图，避免前端头像请求持续刷 4xx
             if (mt.startsWith("image/") && (
@@ -252,7 +312,7 @@ public class FileController extends BaseController {
         }
         // 行为记录：资源访问（只记录不评价）
         try {
-            if (hasRole("STUDENT")) {
+            if (firstSegment && hasRole("STUDENT")) {
                 java.util.Map<String, Object> meta = new java.util.HashMap<>();
                 meta.put("mimeType", mimeType);
                 meta.put("resourceType", inferResourceType(mimeType));
@@ -269,30 +329,28 @@ public class FileController extends BaseController {
             }
         } catch (Exception ignored) {}
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(mimeType));
-        headers.setContentLength(fileBytes.length);
         // 对 PDF 设置 inline filename，确保浏览器 PDF 查看器显示原始文件名
+        ContentDisposition cd = null;
         if (mt.startsWith("application/pdf")) {
-            ContentDisposition cd = ContentDisposition.inline()
+            cd = ContentDisposition.inline()
                     .filename(fileRecord.getOriginalName(), StandardCharsets.UTF_8)
                     .build();
-            headers.setContentDisposition(cd);
         }
-
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(fileBytes);
+        return rangedFileResponse(fileId, resource, MediaType.parseMediaType(mimeType), cd, rangeHeader, ifRange);
     }
 
     /**
      * 流式播放接口（支持 Range 206），用于视频播放
+     * <p>
+     * 只读取请求的字节段（ResourceRegion 按块拷贝，单次请求的堆占用与文件大小无关）；
+     * 支持多段 Range（multipart/byteranges）、ETag/Last-Modified 条件请求（304）与 If-Range。
      */
     @GetMapping("/{fileId}/stream")
-    @Operation(summary = "流式播放", description = "支持 Range 的视频流接口")
+    @Operation(summary = "流式播放", description = "支持 Range / If-Range / ETag 的视频流接口")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<byte[]> stream(@PathVariable Long fileId,
-                                         @RequestHeader(value = "Range", required = false) String rangeHeader) {
+    public ResponseEntity<?> stream(@PathVariable Long fileId,
+                                    @RequestHeader(value = "Range", required = false) String rangeHeader,
+                                    @RequestHeader(value = "If-Range", required = false) String ifRange) {
         Long userId = getCurrentUserId();
 
         FileRecord fileRecord = fileStorageService.getFileInfo(fileId);
@@ -308,10 +366,11 @@ public class FileController extends BaseController {
             }
         } catch (Exception ignored) {}
 
-        byte[] all = fileStorageService.downloadFile(fileId, effectiveUserId);
+        boolean firstSegment = isFirstSegment(rangeHeader);
+        Resource resource = fileStorageService.openFileResource(fileId, effectiveUserId, firstSegment);
         // 行为记录：资源访问（只记录不评价）
         try {
-            if (hasRole("STUDENT")) {
+            if (firstSegment && hasRole("STUDENT")) {
                 String mime = safeMimeType(fileRecord);
                 java.util.Map<String, Object> meta = new java.util.HashMap<>();
                 meta.put("mimeType", mime);
@@ -328,47 +387,79 @@ public class FileController extends BaseController {
                 );
             }
         } catch (Exception ignored) {}
-        int total = all.length;
+
+        return rangedFileResponse(fileId, resource, MediaType.parseMediaType(safeMimeType(fileRecord)), null, rangeHeader, ifRange);
+    }
+
+    /**
+     * 基于文件资源构造流式响应（不把文件读入内存，由消息转换器按块从磁盘写入响应）。
+     * <p>
+     * 始终以 200 + 文件资源返回，Range 交给 Spring 内置处理（单段 206 ResourceRegion、
+     * 多段 206 multipart/byteranges、不可满足 416 + Content-Range）；ETag/Last-Modified 命中时由 Spring 返回 304。\n
+     * - If-Range 与当前 ETag/Last-Modified 不一致，或 Range 头格式非法：忽略 Range，返回 200 全量
+     */
+    private ResponseEntity<?> rangedFileResponse(Long fileId, Resource resource, MediaType mediaType, ContentDisposition disposition,
+                                                 String rangeHeader, String ifRange) {
+        long total;
+        long lastModified;
+        try {
+            total = resource.contentLength();
+            lastModified = resource.lastModified();
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.FILE_LOST, "文件已丢失");
+        }
+        String etag = "\"" + Long.toHexString(fileId) + "-" + Long.toHexString(total) + "-" + Long.toHexString(lastModified) + "\"";
 
         HttpHeaders headers = new HttpHeaders();
         headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
-        String mime = safeMimeType(fileRecord);
-        headers.setContentType(MediaType.parseMediaType(mime));
+        headers.setContentType(mediaType);
+        headers.setETag(etag);
+        headers.setLastModified(lastModified);
+        if (disposition != null) headers.setContentDisposition(disposition);
 
-        // 无 Range：返回全量
-        if (rangeHeader == null || !rangeHeader.startsWith("bytes=")) {
+        if (rangeHeader != null && !(isParsableRange(rangeHeader) && ifRangeMatches(ifRange, etag, lastModified))) {
+            // 必须返回全量；InputStreamResource 不会被 Spring 再次按 Range 切分
             headers.setContentLength(total);
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(all);
+            try {
+                return ResponseEntity.ok().headers(headers).body(new InputStreamResource(resource.getInputStream()));
+            } catch (IOException e) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "文件读取失败: " + e.getMessage());
+            }
+        }
+        // Content-Length 由转换器按实际写出的资源/分段设置，这里不能预设为全量
+        return ResponseEntity.ok().headers(headers).body(resource);
+    }
+
+    /**
+     * Range 头能否解析；格式非法的 Range 按 RFC 9110 忽略，而不是回 416
+     */
+    private boolean isParsableRange(String rangeHeader) {
+        try {
+            return !HttpRange.parseRanges(rangeHeader).isEmpty();
+        } catch (IllegalArgumentException ex) {
+            return false;
         }
+    }
 
-        // 解析 Range: bytes=start-end
+    /**
+     * 播放器拖动/断点续传会产生大量分段请求：只在首段（无 Range 或从 0 开始）计下载次数与行为。
+     */
+    private boolean isFirstSegment(String rangeHeader) {
+        return rangeHeader == null || rangeHeader.replace(" ", "").startsWith("bytes=0-");
+    }
+
+    private boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null || ifRange.isBlank()) return true;
+        String v = ifRange.trim();
+        if (v.startsWith("\"") || v.startsWith("W/")) {
+            // If-Range 只允许强校验
+            return v.equals(etag);
+        }
         try {
-            String range = rangeHeader.substring("bytes=".length());
-            String[] parts = range.split("-");
-            int start = Integer.parseInt(parts[0]);
-            int end = (parts.length > 1 && !parts[1].isBlank()) ? Integer.parseInt(parts[1]) : (total - 1);
-            if (start < 0) start = 0;
-            if (end >= total) end = total - 1;
-            if (start > end) start = Math.max(0, end);
-
-            int len = end - start + 1;
-            byte[] slice = new byte[len];
-            System.arraycopy(all, start, slice, 0, len);
-
-            headers.set(HttpHeaders.CONTENT_LENGTH, String.valueOf(len));
-            headers.set(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, total));
-
-            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                    .headers(headers)
-                    .body(slice);
-        } catch (Exception ex) {
-            // 解析失败，退回全量
-            headers.setContentLength(total);
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(all);
+            long since = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return since / 1000 == lastModified / 1000;
+        } catch (Exception ignored) {
+            return false;
         }
     }
 
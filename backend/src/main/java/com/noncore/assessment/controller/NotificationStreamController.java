@@ -1,5 +1,6 @@
 package com.noncore.assessment.controller;
 
+import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.realtime.NotificationSseService;
 import com.noncore.assessment.util.JwtUtil;
 import io.swagger.v3.oas.annotations.Operation;
@@ -28,7 +29,7 @@ public class NotificationStreamController {
     }
 
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    @Operation(summary = "订阅通知流", description = "通过SSE订阅当前用户的通知事件。支持 token 查询参数或 Authorization 头。")
+    @Operation(summary = "订阅通知流", description = "通过SSE订阅当前用户的通知事件。支持 token 查询参数或 Authorization 头；断线重连可通过 Last-Event-ID 头或 lastEventId 参数补发错过的事件。")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<SseEmitter> stream(HttpServletRequest request) {
         String token = request.getParameter("token");
@@ -39,12 +40,26 @@ public class NotificationStreamController {
             }
         }
 
-        if (!StringUtils.hasText(token) || !jwtUtil.validateToken(token) || !jwtUtil.isAccessToken(token)) {
+        if (!StringUtils.hasText(token)) {
+            return ResponseEntity.status(401).build();
+        }
+        JwtUtil.VerifiedToken verified;
+        try {
+            verified = jwtUtil.verify(token);
+        } catch (BusinessException e) {
+            return ResponseEntity.status(401).build();
+        }
+        if (!verified.isAccessToken()) {
             return ResponseEntity.status(401).build();
         }
 
-        Long userId = jwtUtil.getUserIdFromToken(token);
-        SseEmitter emitter = sseService.register(userId);
+        Long userId = verified.principal().getId();
+        // EventSource 自动重连会带 Last-Event-ID 头；前端手动重建连接时改用查询参数
+        String lastEventId = request.getHeader("Last-Event-ID");
+        if (!StringUtils.hasText(lastEventId)) {
+            lastEventId = request.getParameter("lastEventId");
+        }
+        SseEmitter emitter = sseService.register(userId, lastEventId);
         return ResponseEntity.ok(emitter);
     }
 }
@@ -1,6 +1,17 @@
 package com.noncore.assessment.controller.admin;
 
+import com.noncore.assessment.behavior.BehaviorEventWriteBuffer;
+import com.noncore.assessment.behavior.BehaviorSnapshotScheduler;
+import com.noncore.assessment.realtime.NotificationSseService;
+import com.noncore.assessment.realtime.ai.AiLiveWebSocketHandler;
+import com.noncore.assessment.service.CacheService;
 import com.noncore.assessment.service.UserService;
+import com.noncore.assessment.security.TokenRevocationStore;
+import com.noncore.assessment.service.ai.AiGradingResultCache;
+import com.noncore.assessment.service.file.DocumentTextExtractor;
+import com.noncore.assessment.service.llm.LlmHttpTransport;
+import com.noncore.assessment.service.llm.PromptLoader;
+import com.noncore.assessment.util.JwtUtil;
 import com.noncore.assessment.service.admin.AdminDashboardService;
 import com.noncore.assessment.controller.BaseController;
 import com.noncore.assessment.util.ApiResponse;
@@ -13,6 +24,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -30,10 +42,39 @@ import java.util.Map;
 public class AdminDashboardController extends BaseController {
 
     private final AdminDashboardService adminDashboardService;
+    private final CacheService cacheService;
+    private final NotificationSseService notificationSseService;
+    private final JwtUtil jwtUtil;
+    private final TokenRevocationStore tokenRevocationStore;
+    private final LlmHttpTransport llmHttpTransport;
+    private final AiLiveWebSocketHandler aiLiveWebSocketHandler;
+    private final PromptLoader promptLoader;
+    private final AiGradingResultCache gradingResultCache;
+    private final BehaviorEventWriteBuffer behaviorEventWriteBuffer;
+    private final BehaviorSnapshotScheduler behaviorSnapshotScheduler;
+    private final DocumentTextExtractor documentTextExtractor;
 
-    public AdminDashboardController(AdminDashboardService adminDashboardService, UserService userService) {
+    public AdminDashboardController(AdminDashboardService adminDashboardService, CacheService cacheService,
+                                    NotificationSseService notificationSseService, JwtUtil jwtUtil,
+                                    TokenRevocationStore tokenRevocationStore, LlmHttpTransport llmHttpTransport,
+                                    AiLiveWebSocketHandler aiLiveWebSocketHandler, PromptLoader promptLoader,
+                                    AiGradingResultCache gradingResultCache,
+                                    BehaviorEventWriteBuffer behaviorEventWriteBuffer,
+                                    BehaviorSnapshotScheduler behaviorSnapshotScheduler,
+                                    DocumentTextExtractor documentTextExtractor, UserService userService) {
         super(userService);
         this.adminDashboardService = adminDashboardService;
+        this.cacheService = cacheService;
+        this.notificationSseService = notificationSseService;
+        this.jwtUtil = jwtUtil;
+        this.tokenRevocationStore = tokenRevocationStore;
+        this.llmHttpTransport = llmHttpTransport;
+        this.aiLiveWebSocketHandler = aiLiveWebSocketHandler;
+        this.promptLoader = promptLoader;
+        this.gradingResultCache = gradingResultCache;
+        this.behaviorEventWriteBuffer = behaviorEventWriteBuffer;
+        this.behaviorSnapshotScheduler = behaviorSnapshotScheduler;
+        this.documentTextExtractor = documentTextExtractor;
     }
 
     @GetMapping("/overview")
@@ -60,5 +101,70 @@ public class AdminDashboardController extends BaseController {
     ) {
         return ResponseEntity.ok(ApiResponse.success(adminDashboardService.getAiUsageOverview(days, limit)));
     }
-}
 
+    @GetMapping("/cache-stats")
+    @Operation(summary = "缓存命中/淘汰统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> cacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(cacheService.stats()));
+    }
+
+    @GetMapping("/sse-stats")
+    @Operation(summary = "通知 SSE 推送队列统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> sseStats() {
+        return ResponseEntity.ok(ApiResponse.success(notificationSseService.stats()));
+    }
+
+    @GetMapping("/auth-stats")
+    @Operation(summary = "JWT 已验证令牌缓存与吊销统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> authStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("verifiedCache", jwtUtil.verifiedCacheStats());
+        m.put("revocation", tokenRevocationStore.stats());
+        return ResponseEntity.ok(ApiResponse.success(m));
+    }
+
+    @GetMapping("/llm-http-stats")
+    @Operation(summary = "AI 出站连接池与链路统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> llmHttpStats() {
+        return ResponseEntity.ok(ApiResponse.success(llmHttpTransport.stats()));
+    }
+
+    @GetMapping("/live-stats")
+    @Operation(summary = "实时语音会话发送队列与音频往返延迟统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> liveStats() {
+        return ResponseEntity.ok(ApiResponse.success(aiLiveWebSocketHandler.stats()));
+    }
+
+    @GetMapping("/prompt-stats")
+    @Operation(summary = "已加载系统 Prompt 的版本与热更新统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> promptStats() {
+        return ResponseEntity.ok(ApiResponse.success(promptLoader.stats()));
+    }
+
+    @GetMapping("/grading-cache-stats")
+    @Operation(summary = "AI 批改结果缓存命中统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> gradingCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(gradingResultCache.stats()));
+    }
+
+    @GetMapping("/behavior-buffer-stats")
+    @Operation(summary = "行为事件写入缓冲队列深度、溢出与失败统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> behaviorBufferStats() {
+        return ResponseEntity.ok(ApiResponse.success(behaviorEventWriteBuffer.stats()));
+    }
+
+    @GetMapping("/behavior-snapshot-stats")
+    @Operation(summary = "行为摘要快照定时任务最近一次运行统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> behaviorSnapshotStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("running", behaviorSnapshotScheduler.isRunning());
+        m.put("lastRun", behaviorSnapshotScheduler.getLastRunStats());
+        return ResponseEntity.ok(ApiResponse.success(m));
+    }
+
+    @GetMapping("/text-cache-stats")
+    @Operation(summary = "文档抽取文本缓存命中与磁盘用量统计")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> textCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(documentTextExtractor.stats()));
+    }
+}
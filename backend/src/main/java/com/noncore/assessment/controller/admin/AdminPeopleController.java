@@ -41,8 +41,9 @@ public class AdminPeopleController extends BaseController {
     @Operation(summary = "学生详情（聚合）")
     public ResponseEntity<ApiResponse<AdminStudentDetailResponse>> getStudent(@PathVariable("id") Long id,
                                                                                @RequestParam(value = "courseId", required = false) Long courseId,
-                                                                               @RequestParam(value = "eventLimit", required = false, defaultValue = "8") Integer eventLimit) {
-        return ResponseEntity.ok(ApiResponse.success(adminPeopleService.getStudentDetail(id, courseId, eventLimit)));
+                                                                               @RequestParam(value = "eventLimit", required = false, defaultValue = "8") Integer eventLimit,
+                                                                               @RequestParam(value = "eventCursor", required = false) String eventCursor) {
+        return ResponseEntity.ok(ApiResponse.success(adminPeopleService.getStudentDetail(id, courseId, eventLimit, eventCursor)));
     }
 
     @GetMapping("/teachers/{id}")
@@ -35,6 +35,9 @@ public class AiChatRequest {
     // 选项：是否使用“作文批改”系统 Prompt（为 true 时使用系统 Prompt；为 false 时不注入）
     private Boolean useGradingPrompt;
 
+    // 选项：批改时跳过结果缓存重新调用模型（新结果覆盖缓存）
+    private Boolean forceRefresh;
+
     // 可选：覆盖系统 Prompt 文件路径（为空则使用配置中的默认路径）
     private String systemPromptPath;
 
@@ -0,0 +1,37 @@
+package com.noncore.assessment.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * AI 批量批改任务提交参数：fileIds 与 essays 二选一。
+ */
+@Data
+public class AiGradingJobRequest {
+
+    @Schema(description = "按文件ID批改（支持 docx/pdf/txt）")
+    private List<Long> fileIds;
+
+    @Schema(description = "直接提交作文请求（每项为一次 JSON-only 批改）")
+    private List<AiChatRequest> essays;
+
+    @Schema(description = "模型（files 任务仅允许 google/* 与 glm-*，其余回退默认）", example = "google/gemini-2.5-pro")
+    private String model;
+
+    @Schema(description = "是否 JSON-only（默认 true；essays 任务强制 true）")
+    private Boolean jsonOnly;
+
+    @Schema(description = "是否使用作文批改系统 Prompt（默认 true）")
+    private Boolean useGradingPrompt;
+
+    @Schema(description = "稳定化取样次数 1~3（默认 1）")
+    private Integer samples;
+
+    @Schema(description = "触发第 3 次取样的分差阈值 0~5（默认 0.8）")
+    private Double diffThreshold;
+
+    @Schema(description = "跳过批改结果缓存重新调用模型（默认 false）")
+    private Boolean forceRefresh;
+}
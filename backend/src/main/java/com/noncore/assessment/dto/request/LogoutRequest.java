@@ -0,0 +1,10 @@
+package com.noncore.assessment.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+public class LogoutRequest {
+    @Schema(description = "刷新令牌（可选，传入时一并吊销）")
+    private String refreshToken;
+}
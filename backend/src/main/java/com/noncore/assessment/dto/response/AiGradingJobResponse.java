@@ -0,0 +1,19 @@
+package com.noncore.assessment.dto.response;
+
+import com.noncore.assessment.entity.AiGradingJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AiGradingJobResponse {
+    private AiGradingJob job;
+
+    /** 条目视图：{ itemIndex, fileId?, fileName?, status, attempts, historyId?, result?, error? } */
+    private List<Map<String, Object>> items;
+}
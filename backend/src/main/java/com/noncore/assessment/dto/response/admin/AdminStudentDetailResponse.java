@@ -23,5 +23,7 @@ public class AdminStudentDetailResponse {
     private Long abilityReports;
     private List<AdminStudentCourseItemResponse> courses;
     private List<AdminStudentRecentEventResponse> recentEvents;
+    /** 最近事件下一页游标（无更多时为空） */
+    private String recentEventsNextCursor;
 }
 
@@ -7,6 +7,7 @@ import lombok.Data;
  */
 @Data
 public class AdminStudentRecentEventResponse {
+    private Long id;
     private String eventType;
     private String title;
     private Long courseId;
@@ -0,0 +1,27 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * AI 批改结果缓存：相同（规范化后的请求内容、模型、Prompt 版本、取样序号、JSON-only）的批改直接复用上次结果。
+ */
+@Data
+public class AiGradingCache {
+    private Long id;
+
+    /** 缓存键：上述要素的 SHA-256 */
+    private String cacheKey;
+
+    private String model;
+    private String promptVersion;
+    private Integer sampleIndex;
+
+    /** 模型原始返回（已校验为 JSON 对象） */
+    private String rawJson;
+
+    private Integer hitCount;
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
+}
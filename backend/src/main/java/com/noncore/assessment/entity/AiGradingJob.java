@@ -0,0 +1,39 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * AI 批量批改任务。
+ *
+ * <p>条目逐条落库（ai_grading_job_items），进程重启后未完成的任务从未完成条目继续执行。</p>
+ */
+@Data
+public class AiGradingJob {
+    private Long id;
+    private Long teacherId;
+
+    /** files（按文件ID批改）/ essays（直接提交文本） */
+    private String kind;
+
+    private String model;
+    private Integer samples;
+    private Double diffThreshold;
+    private Boolean jsonOnly;
+    private Boolean useGradingPrompt;
+
+    /** 跳过批改结果缓存（不落库：仅本次运行有效，重启续跑时按默认读取缓存） */
+    private Boolean forceRefresh;
+
+    /** running / completed */
+    private String status;
+
+    private Integer totalCount;
+    private Integer succeededCount;
+    private Integer failedCount;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,36 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * AI 批量批改任务条目（单个文件或单篇作文）。
+ */
+@Data
+public class AiGradingJobItem {
+    private Long id;
+    private Long jobId;
+
+    /** 条目在提交列表中的序号（从 0 开始） */
+    private Integer itemIndex;
+
+    private Long fileId;
+    private String fileName;
+
+    /** essays 任务：序列化的 AiChatRequest（重启续跑需要） */
+    private String inputJson;
+
+    /** pending / running / succeeded / failed */
+    private String status;
+
+    private Integer attempts;
+    private Long historyId;
+
+    /** 批改结果 JSON（jsonOnly=false 时为 {"text": ...}） */
+    private String resultJson;
+
+    private String errorMessage;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,37 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 行为事件按日汇总（由事件写入时增量维护）。
+ *
+ * <p>粒度：(学生, 课程, 事件类型, 维度键, 日期)。维度键用于 resource_view 的资源类别、
+ * voice_practice_audio_replay 的 audioRole；其余事件类型为空串。</p>
+ */
+@Data
+public class BehaviorDailyRollup {
+    private Long studentId;
+
+    /** 课程ID（事件无课程上下文时为 0，便于唯一键去重） */
+    private Long courseId;
+
+    /** 事件类型 code */
+    private String eventType;
+
+    /** 维度键（资源类别 / 复听角色；无则为空串） */
+    private String dimKey;
+
+    /** 统计日期 */
+    private LocalDate statDate;
+
+    /** 当日事件数 */
+    private Integer eventCount;
+
+    /** 当日累计秒数（目前仅口语复听使用 metadata.deltaSeconds） */
+    private Long totalSeconds;
+
+    private LocalDateTime updatedAt;
+}
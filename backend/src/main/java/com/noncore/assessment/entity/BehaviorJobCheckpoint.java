@@ -0,0 +1,35 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 行为批处理任务检查点（用于进程重启后断点续跑）。
+ *
+ * <p>游标为已连续完成的最后一个 (studentId, courseId)；续跑时只处理严格大于该游标的组合。</p>
+ */
+@Data
+public class BehaviorJobCheckpoint {
+    /** 任务名（主键） */
+    private String jobName;
+
+    /** 运行批次标识（如 ISO 周 2026-W42），同一批次内才允许续跑 */
+    private String runKey;
+
+    /** running / completed */
+    private String status;
+
+    private Long cursorStudentId;
+    private Long cursorCourseId;
+
+    /** 本批次已处理数量（含失败） */
+    private Integer processedCount;
+
+    /** 本批次失败数量 */
+    private Integer failedCount;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,19 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 缓存失效消息（jdbc 失效总线，各节点按自增ID轮询）。
+ */
+@Data
+public class CacheInvalidation {
+    private Long id;
+    private String cacheKey;
+
+    /** 发出消息的节点ID（节点跳过自己发出的消息） */
+    private String originNode;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,28 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 内容寻址文件块（按 SHA-256 去重存储）。
+ *
+ * <p>多条 file_records 可指向同一 blob（content_hash 相同），refCount 为引用它的文件记录数；
+ * 最后一条记录删除时才删除物理文件。</p>
+ */
+@Data
+public class FileBlob {
+    /** 内容 SHA-256（十六进制，主键） */
+    private String sha256;
+
+    /** 物理路径（upload-dir/.blobs/前缀/哈希） */
+    private String filePath;
+
+    private Long fileSize;
+
+    /** 引用计数 */
+    private Integer refCount;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
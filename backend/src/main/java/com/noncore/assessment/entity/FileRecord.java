@@ -57,6 +57,9 @@ public class FileRecord {
     @Schema(description = "文件MD5值", example = "d41d8cd98f00b204e9800998ecf8427e")
     private String md5Hash;
 
+    @Schema(description = "内容SHA-256（指向去重存储的 blob）")
+    private String contentHash;
+
     @Schema(description = "上传者ID", example = "1")
     private Long uploaderId;
 
@@ -0,0 +1,43 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 分片断点续传会话。
+ *
+ * <p>分片按偏移量直接写入目标目录下的 {@code storedName.part}，receivedSize 为已连续写入的字节数；
+ * 全部到齐后原地重命名为正式文件并生成 {@link FileRecord}。</p>
+ */
+@Data
+public class FileUploadSession {
+    /** 会话ID（32 位十六进制） */
+    private String id;
+
+    private Long uploaderId;
+    private String originalName;
+    private String storedName;
+    private String mimeType;
+    private String uploadPurpose;
+    private Long relatedId;
+
+    /** 声明的文件总大小（字节） */
+    private Long totalSize;
+
+    /** 已连续接收的字节数（下一个分片的起始偏移） */
+    private Long receivedSize;
+
+    /** 最终文件路径（分片写入 filePath + ".part"） */
+    private String filePath;
+
+    /** uploading / completed */
+    private String status;
+
+    /** 完成后生成的文件ID */
+    private Long fileId;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime expiresAt;
+}
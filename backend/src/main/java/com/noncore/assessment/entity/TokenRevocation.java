@@ -0,0 +1,26 @@
+package com.noncore.assessment.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 令牌吊销记录：单个令牌（kind=token，subject=jti）或某用户全部令牌（kind=user，subject=用户ID，签发早于 notBefore 的失效）。
+ */
+@Data
+public class TokenRevocation {
+    public static final String KIND_TOKEN = "token";
+    public static final String KIND_USER = "user";
+
+    private Long id;
+    private String kind;
+    private String subject;
+
+    /** kind=user 时有效：签发时间早于该时刻的令牌失效 */
+    private LocalDateTime notBefore;
+
+    /** 记录失效时间（被吊销令牌的 exp；用户级为 notBefore + 最长令牌有效期） */
+    private LocalDateTime expiresAt;
+
+    private LocalDateTime createdAt;
+}
@@ -88,7 +88,16 @@ public enum ErrorCode {
     FILE_EMPTY(1702, "文件不能为空"),
     FILE_SIZE_EXCEED(1703, "文件大小超过限制"),
     FILE_TYPE_UNSUPPORTED(1704, "不支持的文件类型"),
-    FILE_PERMISSION_DENIED(1705, "没有权限访问该文件");
+    FILE_PERMISSION_DENIED(1705, "没有权限访问该文件"),
+    UPLOAD_SESSION_NOT_FOUND(1706, "上传会话不存在或已过期"),
+    UPLOAD_OFFSET_MISMATCH(1707, "分片偏移与已接收进度不一致"),
+    UPLOAD_CHUNK_CHECKSUM_MISMATCH(1708, "分片校验和不一致"),
+    UPLOAD_INCOMPLETE(1709, "文件分片尚未全部上传"),
+
+    // AI 相关 (1800-1899)
+    AI_RATE_LIMITED(1800, "大模型服务限流或繁忙，请稍后重试"),
+    AI_CIRCUIT_OPEN(1801, "大模型服务暂时不可用，请稍后重试"),
+    AI_OVERLOADED(1802, "AI 请求排队过多，请稍后重试");
     
     private final Integer code;
     private final String message;
@@ -24,8 +24,13 @@ public interface AdminPeopleMapper {
 
     java.util.List<com.noncore.assessment.dto.response.admin.AdminStudentCourseItemResponse> listStudentCourses(@Param("studentId") Long studentId);
 
+    /**
+     * 学生最近事件（keyset 分页：before* 为上一页最后一条的 occurred_at/id，为空表示第一页）。
+     */
     java.util.List<com.noncore.assessment.dto.response.admin.AdminStudentRecentEventResponse> listStudentRecentEvents(@Param("studentId") Long studentId,
                                                                                                                       @Param("courseId") Long courseId,
+                                                                                                                      @Param("beforeOccurredAt") java.time.LocalDateTime beforeOccurredAt,
+                                                                                                                      @Param("beforeId") Long beforeId,
                                                                                                                       @Param("limit") Integer limit);
 
     Long countCoursesByTeacher(@Param("teacherId") Long teacherId);
@@ -0,0 +1,22 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.AiGradingCache;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Mapper
+public interface AiGradingCacheMapper {
+    AiGradingCache selectValid(@Param("cacheKey") String cacheKey, @Param("now") LocalDateTime now);
+
+    int upsert(AiGradingCache entry);
+
+    /**
+     * 批量累加命中次数（key 为缓存行ID，value 为本周期内的命中增量）
+     */
+    int addHits(@Param("hits") Map<Long, Long> hits);
+
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,27 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.AiGradingJobItem;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface AiGradingJobItemMapper {
+    int insertBatch(@Param("items") List<AiGradingJobItem> items);
+
+    List<AiGradingJobItem> listByJob(@Param("jobId") Long jobId);
+
+    List<AiGradingJobItem> listPendingByJob(@Param("jobId") Long jobId);
+
+    /**
+     * 进程中断时仍处于 running 的条目重置为 pending。
+     */
+    int resetRunning(@Param("jobId") Long jobId);
+
+    int markRunning(@Param("id") Long id,
+                    @Param("startedAt") LocalDateTime startedAt);
+
+    int markFinished(AiGradingJobItem item);
+}
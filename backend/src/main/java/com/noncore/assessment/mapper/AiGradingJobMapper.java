@@ -0,0 +1,31 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.AiGradingJob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface AiGradingJobMapper {
+    int insert(AiGradingJob job);
+
+    AiGradingJob selectById(@Param("id") Long id);
+
+    AiGradingJob selectByIdAndTeacher(@Param("id") Long id,
+                                      @Param("teacherId") Long teacherId);
+
+    /**
+     * 未完成的任务（启动时续跑）。
+     */
+    List<AiGradingJob> listUnfinished();
+
+    /**
+     * 按条目状态重新统计成功/失败数量。
+     */
+    int refreshCounts(@Param("id") Long id);
+
+    int markCompleted(@Param("id") Long id,
+                      @Param("finishedAt") LocalDateTime finishedAt);
+}
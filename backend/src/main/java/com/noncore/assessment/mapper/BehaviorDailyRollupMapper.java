@@ -0,0 +1,30 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.BehaviorDailyRollup;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface BehaviorDailyRollupMapper {
+
+    /**
+     * 批量累加日汇总（不存在则插入，存在则计数/秒数相加）。
+     */
+    int upsertIncrements(@Param("rows") List<BehaviorDailyRollup> rows);
+
+    /**
+     * 查询学生在日期区间内的日汇总（courseId 非空时包含“无课程”的事件，与事件查询口径一致）。
+     */
+    List<BehaviorDailyRollup> listByStudentCourseDays(@Param("studentId") Long studentId,
+                                                      @Param("courseId") Long courseId,
+                                                      @Param("fromDate") LocalDate fromDate,
+                                                      @Param("toDate") LocalDate toDate);
+
+    /**
+     * 删除某课程下的日汇总（课程删除时调用，避免残留 course_id 的汇总继续参与统计）。
+     */
+    int deleteByCourse(@Param("courseId") Long courseId);
+}
@@ -11,21 +11,30 @@ import java.util.List;
 public interface BehaviorEventMapper {
     int insert(BehaviorEvent event);
 
-    List<BehaviorEvent> listByStudentCourseRange(@Param("studentId") Long studentId,
-                                                 @Param("courseId") Long courseId,
-                                                 @Param("from") LocalDateTime from,
-                                                 @Param("to") LocalDateTime to,
-                                                 @Param("limit") Integer limit);
+    int insertBatch(@Param("events") List<BehaviorEvent> events);
 
     /**
-     * 按学生/课程/时间窗分页查询事件（按时间倒序），用于长时间窗避免硬 LIMIT 导致“旧事件不读取”。
+     * 按学生/课程/时间窗 keyset 分页查询事件（按 occurred_at DESC, id DESC）。
+     *
+     * <p>beforeOccurredAt/beforeId 为上一页最后一条的 (occurred_at, id)，为空表示第一页；
+     * 走 (student_id, occurred_at, id) 索引范围扫描，深分页代价与首页一致。</p>
+     */
+    List<BehaviorEvent> listByStudentCourseRangeBefore(@Param("studentId") Long studentId,
+                                                       @Param("courseId") Long courseId,
+                                                       @Param("from") LocalDateTime from,
+                                                       @Param("to") LocalDateTime to,
+                                                       @Param("beforeOccurredAt") LocalDateTime beforeOccurredAt,
+                                                       @Param("beforeId") Long beforeId,
+                                                       @Param("limit") Integer limit);
+
+    /**
+     * 统计时间窗内指定类型的事件数（走 (student_id, occurred_at, id) 索引范围扫描）。
      */
-    List<BehaviorEvent> listByStudentCourseRangePaged(@Param("studentId") Long studentId,
-                                                      @Param("courseId") Long courseId,
-                                                      @Param("from") LocalDateTime from,
-                                                      @Param("to") LocalDateTime to,
-                                                      @Param("offset") Integer offset,
-                                                      @Param("limit") Integer limit);
+    int countByTypesInRange(@Param("studentId") Long studentId,
+                            @Param("courseId") Long courseId,
+                            @Param("types") List<String> types,
+                            @Param("from") LocalDateTime from,
+                            @Param("to") LocalDateTime to);
 
     /**
      * 检查是否存在晚于指定时间点的事件（用于判断快照是否过期）。
@@ -0,0 +1,16 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.BehaviorJobCheckpoint;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface BehaviorJobCheckpointMapper {
+
+    BehaviorJobCheckpoint selectByJobName(@Param("jobName") String jobName);
+
+    /**
+     * 写入或覆盖检查点（以 job_name 为主键）。
+     */
+    int upsert(BehaviorJobCheckpoint checkpoint);
+}
@@ -0,0 +1,25 @@
+package com.noncore.assessment.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+
+@Mapper
+public interface CacheEntryMapper {
+
+    /**
+     * 未过期条目的 JSON 值（不存在或已过期返回 null）。
+     */
+    String selectLiveValue(@Param("cacheKey") String cacheKey,
+                           @Param("now") LocalDateTime now);
+
+    int upsert(@Param("cacheKey") String cacheKey,
+               @Param("valueJson") String valueJson,
+               @Param("expiresAt") LocalDateTime expiresAt);
+
+    int deleteByKey(@Param("cacheKey") String cacheKey);
+
+    int deleteExpired(@Param("now") LocalDateTime now,
+                      @Param("limit") int limit);
+}
@@ -0,0 +1,20 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.CacheInvalidation;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface CacheInvalidationMapper {
+    int insert(CacheInvalidation invalidation);
+
+    List<CacheInvalidation> selectAfter(@Param("afterId") long afterId,
+                                        @Param("limit") int limit);
+
+    Long selectMaxId();
+
+    int deleteBefore(@Param("before") LocalDateTime before);
+}
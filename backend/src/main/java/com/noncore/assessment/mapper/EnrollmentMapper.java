@@ -3,6 +3,7 @@ package com.noncore.assessment.mapper;
 import com.noncore.assessment.entity.Enrollment;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -83,6 +84,17 @@ public interface EnrollmentMapper {
      */
     List<Enrollment> selectEnrollmentsByStudentId(@Param("studentId") Long studentId);
 
+    /**
+     * 流式读取所有学生的 (studentId, courseId) 组合（仅填充这两个字段）。
+     *
+     * @param afterStudentId 检查点学生ID（与 afterCourseId 同时为空表示从头开始）
+     * @param afterCourseId 检查点课程ID
+     * @param handler 逐行回调
+     */
+    void streamStudentCoursePairsAfter(@Param("afterStudentId") Long afterStudentId,
+                                       @Param("afterCourseId") Long afterCourseId,
+                                       ResultHandler<Enrollment> handler);
+
     /**
      * 根据课程ID查询所有选课记录
      *
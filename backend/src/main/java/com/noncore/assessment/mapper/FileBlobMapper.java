@@ -0,0 +1,23 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.FileBlob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface FileBlobMapper {
+
+    FileBlob selectBySha256(@Param("sha256") String sha256);
+
+    /**
+     * 登记 blob 的一个引用：不存在时新建（引用计数 1），已存在时计数 +1（单条 INSERT … ON DUPLICATE KEY UPDATE）。
+     */
+    int insertOrIncrement(FileBlob blob);
+
+    int decrementRef(@Param("sha256") String sha256);
+
+    /**
+     * 删除已无引用的 blob 记录（返回 1 时由调用方删除物理文件）。
+     */
+    int deleteIfUnreferenced(@Param("sha256") String sha256);
+}
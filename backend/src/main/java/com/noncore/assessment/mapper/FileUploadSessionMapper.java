@@ -0,0 +1,40 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.FileUploadSession;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface FileUploadSessionMapper {
+    int insert(FileUploadSession session);
+
+    FileUploadSession selectById(@Param("id") String id);
+
+    /**
+     * 推进已接收字节数（以 expectedSize 做乐观校验，防止并发分片互相覆盖）。
+     */
+    int advanceReceived(@Param("id") String id,
+                        @Param("expectedSize") long expectedSize,
+                        @Param("newSize") long newSize,
+                        @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * 回退已接收字节数（磁盘上的分片文件短于记录时，以磁盘为准）。
+     */
+    int resetReceived(@Param("id") String id,
+                      @Param("receivedSize") long receivedSize);
+
+    int markCompleted(@Param("id") String id,
+                      @Param("fileId") Long fileId);
+
+    /**
+     * 已过期且未完成的会话（定时清理）。
+     */
+    List<FileUploadSession> listExpired(@Param("now") LocalDateTime now,
+                                        @Param("limit") int limit);
+
+    int deleteById(@Param("id") String id);
+}
@@ -0,0 +1,19 @@
+package com.noncore.assessment.mapper;
+
+import com.noncore.assessment.entity.TokenRevocation;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface TokenRevocationMapper {
+    int insert(TokenRevocation revocation);
+
+    List<TokenRevocation> selectActiveAfter(@Param("afterId") long afterId,
+                                            @Param("now") LocalDateTime now,
+                                            @Param("limit") int limit);
+
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
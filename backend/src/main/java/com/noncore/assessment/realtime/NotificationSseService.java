@@ -1,73 +1,199 @@
 package com.noncore.assessment.realtime;
 
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Notification SSE broadcaster
  * Manage per-user SseEmitters and provide simple broadcast APIs.
+ *
+ * <p>Sends never touch the socket on the caller's thread: each emitter owns a bounded outbound queue
+ * drained by a small dispatcher pool (one drainer per emitter at a time, so per-connection order is kept).
+ * An event equal to one already queued (same name and payload, e.g. "stats"/"refresh") is coalesced;
+ * an emitter whose queue is still full is treated as a slow consumer and closed, and the client reconnects.</p>
+ *
+ * <p>Liveness: every connection sits in one bucket of a shared timer wheel; a single ticker visits one bucket
+ * per tick, so each connection gets a heartbeat comment once per heartbeat interval (spread evenly instead of
+ * all at once) and connections that are closed or stuck on a write are pruned proactively.</p>
+ *
+ * <p>Replay: application events carry ids "{epoch}-{seq}" and are kept in a short per-user ring buffer.
+ * A reconnect with Last-Event-ID from the same server epoch gets the missed events replayed; if the gap is no
+ * longer covered (buffer overflow, expiry, or server restart) a "resync" event tells the client to reload.</p>
  */
 @Component
 public class NotificationSseService {
 
     private static final Logger logger = LoggerFactory.getLogger(NotificationSseService.class);
 
-    // userId -> list of emitters (support multi-tab)
-    private final Map<Long, CopyOnWriteArrayList<SseEmitter>> userEmitters = new ConcurrentHashMap<>();
+    // userId -> channel (connections for multi-tab + replay buffer)
+    private final Map<Long, UserChannel> userChannels = new ConcurrentHashMap<>();
+
+    @Value("${notification.sse.queue-capacity:64}")
+    private int queueCapacity;
+
+    // 0 = no servlet async timeout (dead connections are pruned by heartbeats)
+    @Value("${notification.sse.timeout-ms:0}")
+    private long emitterTimeoutMs;
+
+    @Value("${notification.sse.replay-buffer-size:64}")
+    private int replayBufferSize;
+
+    @Value("${notification.sse.replay-retention-seconds:300}")
+    private long replayRetentionSeconds;
+
+    /** Distinguishes event ids issued by this process from ids issued before a restart */
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService wheelTicker;
+    private final List<Set<Connection>> wheel;
+    private final long tickMillis;
+    private final AtomicInteger wheelCursor = new AtomicInteger();
+    private final AtomicInteger slotAssigner = new AtomicInteger();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder slowConsumersClosed = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final AtomicInteger queuedTotal = new AtomicInteger();
+
+    public NotificationSseService(@Value("${notification.sse.dispatcher-threads:4}") int dispatcherThreads,
+                                  @Value("${notification.sse.heartbeat-interval-ms:25000}") long heartbeatIntervalMs,
+                                  @Value("${notification.sse.wheel-slots:25}") int wheelSlots) {
+        AtomicInteger seq = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(Math.max(1, dispatcherThreads), r -> {
+            Thread t = new Thread(r, "notification-sse-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        int slots = Math.max(1, wheelSlots);
+        List<Set<Connection>> buckets = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            buckets.add(ConcurrentHashMap.newKeySet());
+        }
+        this.wheel = buckets;
+        this.tickMillis = Math.max(100L, heartbeatIntervalMs / slots);
+        this.wheelTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-sse-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        this.wheelTicker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
 
     /**
      * Register an emitter for a user and send initial connect event
      */
     public SseEmitter register(Long userId) {
-        // default timeout: 30 minutes
-        SseEmitter emitter = new SseEmitter(30L * 60L * 1000L);
+        return register(userId, null);
+    }
 
-        userEmitters.computeIfAbsent(userId, k -> new CopyOnWriteArrayList<>()).add(emitter);
+    /**
+     * Register an emitter for a user; events after lastEventId are replayed when still buffered
+     */
+    public SseEmitter register(Long userId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Connection conn = new Connection(userId, emitter, Math.floorMod(slotAssigner.getAndIncrement(), wheel.size()));
 
-        emitter.onCompletion(() -> removeEmitter(userId, emitter));
-        emitter.onTimeout(() -> removeEmitter(userId, emitter));
-        emitter.onError((ex) -> removeEmitter(userId, emitter));
+        emitter.onCompletion(() -> removeConnection(conn));
+        emitter.onTimeout(() -> removeConnection(conn));
+        emitter.onError((ex) -> removeConnection(conn));
 
-        try {
-            emitter.send(SseEmitter.event().name("connected").data("ok"));
-        } catch (IOException e) {
-            logger.warn("Failed to send initial connected event, removing emitter: {}", e.getMessage());
-            removeEmitter(userId, emitter);
+        // Snapshot the replay and attach under the channel lock so no event falls between the two
+        UserChannel channel;
+        while (true) {
+            channel = userChannels.computeIfAbsent(userId, k -> new UserChannel());
+            synchronized (channel) {
+                // the ticker may have expired this channel between lookup and lock
+                if (userChannels.get(userId) == channel) {
+                    attach(channel, conn, lastEventId);
+                    break;
+                }
+            }
         }
+        wheel.get(conn.slot).add(conn);
         return emitter;
     }
 
-    private void removeEmitter(Long userId, SseEmitter emitter) {
-        List<SseEmitter> list = userEmitters.get(userId);
-        if (list != null) {
-            list.remove(emitter);
-            if (list.isEmpty()) {
-                userEmitters.remove(userId);
+    // caller holds the channel lock
+    private void attach(UserChannel channel, Connection conn, String lastEventId) {
+        enqueue(conn, new Outbound("connected", "ok", null));
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            List<Outbound> missed = channel.since(lastEventId.trim());
+            if (missed == null) {
+                resyncs.increment();
+                enqueue(conn, new Outbound("resync", "reload", null));
+            } else {
+                replayed.add(missed.size());
+                for (Outbound ev : missed) {
+                    enqueue(conn, ev);
+                }
+            }
+        }
+        channel.connections.add(conn);
+        channel.lastActivityAt = System.currentTimeMillis();
+    }
+
+    private void removeConnection(Connection conn) {
+        if (!conn.closed.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (conn.queue) {
+            queuedTotal.addAndGet(-conn.queue.size());
+            conn.queue.clear();
+        }
+        wheel.get(conn.slot).remove(conn);
+        UserChannel channel = userChannels.get(conn.userId);
+        if (channel != null) {
+            // the channel (and its replay buffer) outlives the connection until retention expires
+            synchronized (channel) {
+                channel.connections.remove(conn);
+                channel.lastActivityAt = System.currentTimeMillis();
             }
         }
     }
 
     /**
-     * Send an event to a specific user
+     * Send an event to a specific user (non-blocking: queued per emitter and written by the dispatcher)
      */
     public void sendToUser(Long userId, String eventName, Object payload) {
-        List<SseEmitter> list = userEmitters.get(userId);
-        if (list == null || list.isEmpty()) {
+        UserChannel channel = userChannels.get(userId);
+        if (channel == null) {
+            // never connected (or gone longer than the retention window): the client loads in full on connect
             return;
         }
-        for (SseEmitter emitter : list) {
-            try {
-                emitter.send(SseEmitter.event().name(eventName).data(payload));
-            } catch (IOException e) {
-                removeEmitter(userId, emitter);
+        synchronized (channel) {
+            Outbound event = channel.append(eventName, payload);
+            for (Connection conn : channel.connections) {
+                enqueue(conn, event);
             }
         }
     }
@@ -80,6 +206,260 @@ public class NotificationSseService {
             sendToUser(userId, eventName, payload);
         }
     }
-}
 
+    /**
+     * Dispatcher metrics: connections, queue depth, heartbeat/prune/replay and sent / coalesced / dropped counters.
+     */
+    public Map<String, Object> stats() {
+        int connections = 0;
+        for (UserChannel channel : userChannels.values()) {
+            connections += channel.connections.size();
+        }
+        long enq = enqueued.sum();
+        long drop = dropped.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("users", userChannels.size());
+        m.put("connections", connections);
+        m.put("queueDepth", queuedTotal.get());
+        m.put("queueCapacityPerConnection", queueCapacity);
+        m.put("enqueued", enq);
+        m.put("sent", sent.sum());
+        m.put("coalesced", coalesced.sum());
+        m.put("dropped", drop);
+        m.put("dropRate", enq + drop == 0 ? 0.0 : Math.round(drop * 10_000.0 / (enq + drop)) / 10_000.0);
+        m.put("slowConsumersClosed", slowConsumersClosed.sum());
+        m.put("sendFailures", sendFailures.sum());
+        m.put("heartbeats", heartbeats.sum());
+        m.put("pruned", pruned.sum());
+        m.put("replayedEvents", replayed.sum());
+        m.put("resyncs", resyncs.sum());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wheelTicker.shutdownNow();
+        dispatcher.shutdownNow();
+    }
 
+    /**
+     * One wheel tick: heartbeat and prune the connections of the current bucket; on each full turn,
+     * also drop idle user channels whose replay buffer is past retention.
+     */
+    private void tick() {
+        try {
+            int idx = Math.floorMod(wheelCursor.getAndIncrement(), wheel.size());
+            long now = System.currentTimeMillis();
+            long stuckAfter = tickMillis * wheel.size() * 2;
+            for (Connection conn : wheel.get(idx)) {
+                if (conn.closed.get()) {
+                    wheel.get(idx).remove(conn);
+                    pruned.increment();
+                    continue;
+                }
+                // A drainer making no progress for two heartbeat intervals is blocked on a dead socket
+                if (conn.draining.get() && now - conn.lastProgressAt > stuckAfter) {
+                    pruned.increment();
+                    logger.debug("Pruning stuck SSE connection: userId={}", conn.userId);
+                    closeQuietly(conn);
+                    continue;
+                }
+                boolean idle;
+                synchronized (conn.queue) {
+                    idle = conn.queue.isEmpty();
+                }
+                // Only idle connections need a heartbeat; pending traffic already keeps the stream alive
+                if (idle) {
+                    heartbeats.increment();
+                    enqueue(conn, Outbound.HEARTBEAT);
+                }
+            }
+            if (idx == 0) {
+                long retentionMs = replayRetentionSeconds * 1000L;
+                userChannels.entrySet().removeIf(e -> {
+                    UserChannel ch = e.getValue();
+                    synchronized (ch) {
+                        return ch.connections.isEmpty() && now - ch.lastActivityAt > retentionMs;
+                    }
+                });
+            }
+        } catch (Exception e) {
+            logger.warn("SSE heartbeat tick failed: {}", e.getMessage());
+        }
+    }
+
+    private void enqueue(Connection conn, Outbound event) {
+        if (conn.closed.get()) {
+            return;
+        }
+        boolean slow = false;
+        synchronized (conn.queue) {
+            for (Outbound queued : conn.queue) {
+                if (queued.sameContent(event)) {
+                    coalesced.increment();
+                    return;
+                }
+            }
+            if (conn.queue.size() >= Math.max(1, queueCapacity)) {
+                slow = true;
+            } else {
+                conn.queue.addLast(event);
+                queuedTotal.incrementAndGet();
+                enqueued.increment();
+            }
+        }
+        if (slow) {
+            // Slow consumer: drop the event and close the stream; the client reconnects with Last-Event-ID
+            dropped.increment();
+            slowConsumersClosed.increment();
+            logger.warn("SSE consumer too slow, closing: userId={}", conn.userId);
+            closeQuietly(conn);
+            return;
+        }
+        schedule(conn);
+    }
+
+    private void schedule(Connection conn) {
+        if (conn.draining.compareAndSet(false, true)) {
+            conn.lastProgressAt = System.currentTimeMillis();
+            try {
+                dispatcher.execute(() -> drain(conn));
+            } catch (RejectedExecutionException e) {
+                conn.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Connection conn) {
+        try {
+            while (!conn.closed.get()) {
+                Outbound next;
+                synchronized (conn.queue) {
+                    next = conn.queue.pollFirst();
+                    if (next == null) break;
+                    queuedTotal.decrementAndGet();
+                }
+                try {
+                    conn.emitter.send(next.toEvent());
+                    conn.lastProgressAt = System.currentTimeMillis();
+                    sent.increment();
+                } catch (IOException | IllegalStateException e) {
+                    sendFailures.increment();
+                    removeConnection(conn);
+                    return;
+                }
+            }
+        } finally {
+            conn.draining.set(false);
+        }
+        // An event may have been queued after the last poll but before the flag was cleared
+        boolean more;
+        synchronized (conn.queue) {
+            more = !conn.queue.isEmpty();
+        }
+        if (more && !conn.closed.get()) {
+            schedule(conn);
+        }
+    }
+
+    private void closeQuietly(Connection conn) {
+        removeConnection(conn);
+        try {
+            conn.emitter.complete();
+        } catch (Exception ignore) {
+        }
+    }
+
+    private record Outbound(String name, Object payload, String id) {
+
+        /** Heartbeat is a comment line, ignored by EventSource but keeps proxies from cutting the stream */
+        static final Outbound HEARTBEAT = new Outbound(null, null, null);
+
+        /**
+         * Coalescing ignores the id: replaying a later identical event after reconnect is harmless.
+         */
+        boolean sameContent(Outbound other) {
+            return java.util.Objects.equals(name, other.name) && java.util.Objects.equals(payload, other.payload);
+        }
+
+        SseEmitter.SseEventBuilder toEvent() {
+            if (name == null) {
+                return SseEmitter.event().comment("hb");
+            }
+            SseEmitter.SseEventBuilder b = SseEmitter.event().name(name).data(payload);
+            return id == null ? b : b.id(id);
+        }
+    }
+
+    /**
+     * Per-user state; all access to seq/buffer is guarded by the channel monitor.
+     */
+    private final class UserChannel {
+        private final CopyOnWriteArrayList<Connection> connections = new CopyOnWriteArrayList<>();
+        private final ArrayDeque<Buffered> buffer = new ArrayDeque<>();
+        private long nextSeq = 1;
+        private long lastActivityAt = System.currentTimeMillis();
+
+        private Outbound append(String eventName, Object payload) {
+            long now = System.currentTimeMillis();
+            long seq = nextSeq++;
+            Outbound event = new Outbound(eventName, payload, epoch + "-" + seq);
+            buffer.addLast(new Buffered(seq, now, event));
+            long cutoff = now - replayRetentionSeconds * 1000L;
+            while (buffer.size() > Math.max(1, replayBufferSize) || (!buffer.isEmpty() && buffer.peekFirst().at() < cutoff)) {
+                buffer.pollFirst();
+            }
+            lastActivityAt = now;
+            return event;
+        }
+
+        /**
+         * Events after lastEventId, or null when the gap cannot be covered (client must reload).
+         */
+        private List<Outbound> since(String lastEventId) {
+            lastActivityAt = System.currentTimeMillis();
+            int dash = lastEventId.lastIndexOf('-');
+            if (dash <= 0 || !epoch.equals(lastEventId.substring(0, dash))) {
+                return null;
+            }
+            long lastSeq;
+            try {
+                lastSeq = Long.parseLong(lastEventId.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (lastSeq >= nextSeq) {
+                return null;
+            }
+            long cutoff = System.currentTimeMillis() - replayRetentionSeconds * 1000L;
+            long oldestAvailable = nextSeq;
+            List<Outbound> missed = new ArrayList<>();
+            for (Buffered b : buffer) {
+                if (b.at() < cutoff) continue;
+                oldestAvailable = Math.min(oldestAvailable, b.seq());
+                if (b.seq() > lastSeq) missed.add(b.event());
+            }
+            // every seq after lastSeq must still be in the buffer
+            return oldestAvailable <= lastSeq + 1 ? missed : null;
+        }
+    }
+
+    private record Buffered(long seq, long at, Outbound event) {
+    }
+
+    private static final class Connection {
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final int slot;
+        private final ArrayDeque<Outbound> queue = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile long lastProgressAt = System.currentTimeMillis();
+
+        private Connection(Long userId, SseEmitter emitter, int slot) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.slot = slot;
+        }
+    }
+}
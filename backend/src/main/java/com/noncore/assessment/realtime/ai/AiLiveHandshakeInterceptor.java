@@ -1,5 +1,7 @@
 package com.noncore.assessment.realtime.ai;
 
+import com.noncore.assessment.security.TokenRevocationStore;
+import com.noncore.assessment.security.UserPrincipal;
 import com.noncore.assessment.util.JwtUtil;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -30,13 +32,16 @@ public class AiLiveHandshakeInterceptor implements HandshakeInterceptor {
     public static final String ATTR_TOKEN = "token";
 
     private final JwtUtil jwtUtil;
+    private final TokenRevocationStore revocationStore;
 
-    public AiLiveHandshakeInterceptor(JwtUtil jwtUtil) {
+    public AiLiveHandshakeInterceptor(JwtUtil jwtUtil, TokenRevocationStore revocationStore) {
         this.jwtUtil = jwtUtil;
+        this.revocationStore = revocationStore;
     }
 
     /**
-     * 握手前：解析 token，校验 access token，并把 userId/role 放入 attributes。
+     * 握手前：解析 token，一次验签校验 access token（与 JwtAuthenticationFilter 相同，含吊销检查），
+     * 并把 userId/role 放入 attributes。
      */
     @Override
     public boolean beforeHandshake(ServerHttpRequest request,
@@ -53,11 +58,13 @@ public class AiLiveHandshakeInterceptor implements HandshakeInterceptor {
             return false;
         }
         try {
-            if (!jwtUtil.validateToken(token) || !jwtUtil.isAccessToken(token)) {
+            JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+            if (!verified.isAccessToken() || revocationStore.isRevoked(verified)) {
                 return false;
             }
-            Long userId = jwtUtil.getUserIdFromToken(token);
-            String role = jwtUtil.getRoleFromToken(token);
+            UserPrincipal principal = verified.principal();
+            Long userId = principal.getId();
+            String role = principal.getRole();
             if (userId == null || !StringUtils.hasText(role)) {
                 return false;
             }
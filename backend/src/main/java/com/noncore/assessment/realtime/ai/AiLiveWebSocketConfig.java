@@ -1,9 +1,11 @@
 package com.noncore.assessment.realtime.ai;
 
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 /**
  * AI 实时语音（Live）WebSocket 配置。
@@ -26,6 +28,16 @@ public class AiLiveWebSocketConfig implements WebSocketConfigurer {
         this.handshakeInterceptor = handshakeInterceptor;
     }
 
+    /**
+     * 容器级 WS 缓冲：音频以二进制帧上行（PCM16 原始字节），容器默认 8KB 对较大的分片不够用
+     */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxBinaryMessageBufferSize(64 * 1024);
+        return container;
+    }
+
     /**
      * 注册 WebSocket handler 与握手拦截器，并设置允许的 origin patterns。
      */
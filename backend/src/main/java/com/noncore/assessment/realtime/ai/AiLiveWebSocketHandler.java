@@ -3,15 +3,21 @@ package com.noncore.assessment.realtime.ai;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.noncore.assessment.config.AiConfigProperties;
 import com.noncore.assessment.realtime.ai.live.GeminiLiveSession;
+import com.noncore.assessment.service.llm.LlmHttpTransport;
 import com.noncore.assessment.service.llm.PromptLoader;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -21,6 +27,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * 该 handler 负责：\n
  * - 握手后立即向客户端发送 ready\n
  * - 解析/校验基础消息结构，并桥接到 Gemini Live WebSocket\n
+ * - 音频快速路径：start 时声明 binaryAudio=true 后，上行音频为二进制帧（PCM16 LE 原始字节，采样率取 start.sampleRate），
+ *   下行模型音频同样以二进制帧推送（格式变化时先发一条 assistant_audio_format 文本消息）；其余控制消息仍为 JSON\n
  *
  * @author System
  * @since 2026-02-02
@@ -32,15 +40,18 @@ public class AiLiveWebSocketHandler extends TextWebSocketHandler {
 
     private final AiConfigProperties aiConfigProperties;
     private final PromptLoader promptLoader;
+    private final LlmHttpTransport llmHttpTransport;
 
     /**
      * 每个前端 WS session 对应一个 Gemini Live 会话。
      */
     private final ConcurrentHashMap<String, GeminiLiveSession> liveSessions = new ConcurrentHashMap<>();
 
-    public AiLiveWebSocketHandler(AiConfigProperties aiConfigProperties, PromptLoader promptLoader) {
+    public AiLiveWebSocketHandler(AiConfigProperties aiConfigProperties, PromptLoader promptLoader,
+                                  LlmHttpTransport llmHttpTransport) {
         this.aiConfigProperties = aiConfigProperties;
         this.promptLoader = promptLoader;
+        this.llmHttpTransport = llmHttpTransport;
     }
 
     /**
@@ -100,10 +111,33 @@ public class AiLiveWebSocketHandler extends TextWebSocketHandler {
             handleStop(session);
             return;
         }
+        if ("stats".equalsIgnoreCase(t)) {
+            GeminiLiveSession live = liveSessions.get(session.getId());
+            sendOk(session, "stats", live != null ? live.stats() : Map.of());
+            return;
+        }
 
         sendError(session, "UNKNOWN_TYPE", "不支持的 type: " + t);
     }
 
+    /**
+     * 处理二进制消息：音频分片快速路径，不做 JSON 解析。
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        GeminiLiveSession live = liveSessions.get(session.getId());
+        if (live == null) {
+            sendError(session, "NOT_STARTED", "请先发送 start");
+            return;
+        }
+        ByteBuffer pcm = message.getPayload();
+        if (pcm.remaining() == 0 || pcm.remaining() % 2 != 0) {
+            sendError(session, "BAD_AUDIO", "音频帧须为 PCM16 原始字节");
+            return;
+        }
+        live.sendAudioPcm(pcm);
+    }
+
     /**
      * 连接关闭：留空（后续在此处释放 Gemini WS 等资源）。
      */
@@ -125,6 +159,8 @@ public class AiLiveWebSocketHandler extends TextWebSocketHandler {
         Object modeObj = payload.get("mode");
         Object localeObj = payload.get("locale");
         Object scenarioObj = payload.get("scenario");
+        boolean binaryAudio = Boolean.TRUE.equals(payload.get("binaryAudio"));
+        Integer inputSampleRate = parseSampleRate(payload.get("sampleRate"));
 
         String mode = modeObj == null ? "both" : String.valueOf(modeObj);
         String locale = localeObj == null ? "" : String.valueOf(localeObj);
@@ -153,7 +189,8 @@ public class AiLiveWebSocketHandler extends TextWebSocketHandler {
             old.close();
         }
 
-        GeminiLiveSession live = new GeminiLiveSession(aiConfigProperties, promptLoader, session);
+        GeminiLiveSession live = new GeminiLiveSession(aiConfigProperties, promptLoader, llmHttpTransport, session);
+        live.setAudioOptions(binaryAudio, inputSampleRate);
         liveSessions.put(session.getId(), live);
 
         live.connect(model, mode, locale, scenario)
@@ -163,7 +200,7 @@ public class AiLiveWebSocketHandler extends TextWebSocketHandler {
                         liveSessions.remove(session.getId());
                         try { live.close(); } catch (Exception ignore) {}
                     } else {
-                        sendOk(session, "started", Map.of("mode", mode, "model", model));
+                        sendOk(session, "started", Map.of("mode", mode, "model", model, "binaryAudio", binaryAudio));
                     }
                 });
     }
@@ -183,13 +220,15 @@ public class AiLiveWebSocketHandler extends TextWebSocketHandler {
             sendError(session, "MISSING_AUDIO", "缺少 pcm16Base64");
             return;
         }
-        Integer sr = null;
+        live.sendAudioChunk(String.valueOf(b64), parseSampleRate(rate));
+    }
+
+    private Integer parseSampleRate(Object rate) {
         try {
-            if (rate instanceof Number n) sr = n.intValue();
-            else if (rate != null) sr = Integer.parseInt(String.valueOf(rate));
+            if (rate instanceof Number n) return n.intValue();
+            if (rate != null) return Integer.parseInt(String.valueOf(rate));
         } catch (Exception ignore) {}
-
-        live.sendAudioChunk(String.valueOf(b64), sr);
+        return null;
     }
 
     /**
@@ -231,6 +270,23 @@ public class AiLiveWebSocketHandler extends TextWebSocketHandler {
         sendOk(session, "stopped", Map.of());
     }
 
+    /**
+     * 当前在线 Live 会话的发送统计
+     */
+    public Map<String, Object> stats() {
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        liveSessions.forEach((id, live) -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("sessionId", id);
+            m.putAll(live.stats());
+            sessions.add(m);
+        });
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("activeSessions", sessions.size());
+        m.put("sessions", sessions);
+        return m;
+    }
+
     private void sendError(WebSocketSession session, String code, String message) {
         try {
             Map<String, Object> err = new HashMap<>();
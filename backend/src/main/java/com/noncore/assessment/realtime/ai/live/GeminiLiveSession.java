@@ -5,10 +5,12 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.noncore.assessment.config.AiConfigProperties;
+import com.noncore.assessment.service.llm.LlmHttpTransport;
 import com.noncore.assessment.service.llm.PromptLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
@@ -25,17 +27,16 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
-import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Gemini Live API（BidiGenerateContent / WebSocket）桥接会话。
  * <p>
- * - 浏览器 <-> 本服务：Spring WebSocket（TextMessage）\n
+ * - 浏览器 <-> 本服务：Spring WebSocket（控制消息为 TextMessage；binaryAudio 模式下音频为 BinaryMessage）\n
  * - 本服务 <-> Gemini：OkHttp WebSocket（JSON message，代理更稳定）
  *
  * 该类负责：建立到 Gemini Live 的连接、发送 setup、转发音频 chunks、
@@ -55,11 +56,23 @@ public class GeminiLiveSession {
     private static final String GEMINI_LIVE_WS_ENDPOINT =
             "wss://generativelanguage.googleapis.com/ws/google.ai.generativelanguage.v1beta.GenerativeService.BidiGenerateContent";
 
+    /**
+     * 背压重试：所有会话共享一个守护线程，只负责在上游缓冲回落后重新触发 drain
+     */
+    private static final long DRAIN_RETRY_MS = 20;
+    private static final java.util.concurrent.ScheduledExecutorService DRAIN_RETRY =
+            java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "gemini-live-drain");
+                t.setDaemon(true);
+                return t;
+            });
+
     private final ObjectMapper mapper = new ObjectMapper();
     private final JsonFactory jsonFactory = mapper.getFactory();
 
     private final AiConfigProperties aiConfig;
     private final PromptLoader promptLoader;
+    private final LlmHttpTransport transport;
     private final WebSocketSession clientSession;
 
     private final AtomicBoolean connected = new AtomicBoolean(false);
@@ -68,9 +81,11 @@ public class GeminiLiveSession {
     private volatile WebSocket geminiWs;
     private volatile CompletableFuture<Void> setupCompleteFuture = null;
 
-    // 发送节流：避免无限 in-flight 堆积
-    private final AtomicInteger inFlightSends = new AtomicInteger(0);
-    private final int maxInFlight = 64;
+    // 音频选项：浏览器是否使用二进制音频帧、上行采样率
+    private volatile boolean binaryAudio = false;
+    private volatile int inputSampleRate = 16000;
+    private volatile String lastClientAudioMime = null;
+
 
     // 文本增量：用于把 modelTurn text 变为 delta
     private volatile String lastAssistantText = "";
@@ -85,15 +100,33 @@ public class GeminiLiveSession {
     // 诊断：是否收到过任何一条服务端消息
     private final AtomicBoolean receivedAnyServerMessage = new AtomicBoolean(false);
 
-    // 顺序发送队列（用于串行化 sendText，避免多线程同时 send）
-    private final ConcurrentLinkedQueue<String> sendQueue = new ConcurrentLinkedQueue<>();
+    // 顺序发送队列（串行化 send）：控制帧与音频帧同队保序；仅音频帧可因超限/过期被丢弃（受 sendQueue 锁保护）
+    private final ArrayDeque<Outbound> sendQueue = new ArrayDeque<>();
+    private int queuedAudio = 0;
     private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean drainRetryScheduled = new AtomicBoolean(false);
+
+    // 发送统计
+    private final long openedAtMillis = System.currentTimeMillis();
+    private final AtomicLong audioSent = new AtomicLong();
+    private final AtomicLong audioDroppedOverflow = new AtomicLong();
+    private final AtomicLong audioDroppedStale = new AtomicLong();
+    private final AtomicLong backpressureEvents = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final LatencyHistogram audioRoundTrip = new LatencyHistogram();
+    private final AtomicBoolean statsLogged = new AtomicBoolean(false);
+    private volatile long lastThrottleNoticeAt = 0L;
+    // 回合结束（activityEnd 入队）时刻，收到该回合第一段模型音频时计入往返直方图；0 表示无待测回合
+    private volatile long turnEndNanos = 0L;
 
     public GeminiLiveSession(AiConfigProperties aiConfig,
                              PromptLoader promptLoader,
+                             LlmHttpTransport transport,
                              WebSocketSession clientSession) {
         this.aiConfig = aiConfig;
         this.promptLoader = promptLoader;
+        this.transport = transport;
         this.clientSession = clientSession;
     }
 
@@ -347,30 +380,57 @@ public class GeminiLiveSession {
     private record ProxyTarget(String host, int port, String type) {}
     private record ConnectAttempt(String label, ProxyTarget proxyTarget) {}
 
+    /**
+     * 设置音频选项（需在 connect 前调用）。
+     *
+     * @param binaryAudio 浏览器是否使用二进制音频帧（上行/下行）
+     * @param sampleRate 上行 PCM16 采样率，空则按 16000
+     */
+    public void setAudioOptions(boolean binaryAudio, Integer sampleRate) {
+        this.binaryAudio = binaryAudio;
+        this.inputSampleRate = (sampleRate == null || sampleRate <= 0) ? 16000 : sampleRate;
+    }
+
     /**
      * 发送一段实时音频（PCM16 base64）。
      */
     public void sendAudioChunk(String pcm16Base64, Integer sampleRate) {
         if (!connected.get() || closed.get()) return;
-        if (!StringUtils.hasText(pcm16Base64)) return;
-
-        // Live API Blob: { mimeType, data }
+        if (!StringUtils.hasText(pcm16Base64) || !isBase64(pcm16Base64)) return;
         int rate = (sampleRate == null || sampleRate <= 0) ? 16000 : sampleRate;
-        Map<String, Object> blob = new HashMap<>();
-        blob.put("mimeType", "audio/pcm;rate=" + rate);
-        blob.put("data", pcm16Base64);
+        enqueueAudio(buildAudioInput(rate, pcm16Base64));
+    }
 
-        Map<String, Object> realtimeInput = new HashMap<>();
-        realtimeInput.put("audio", blob);
+    /**
+     * 发送一段实时音频（PCM16 原始字节，采样率取 {@link #setAudioOptions}）。
+     * 二进制快速路径：只做一次 base64 编码，不经过 JSON 序列化。
+     */
+    public void sendAudioPcm(ByteBuffer pcm) {
+        if (!connected.get() || closed.get()) return;
+        if (pcm == null || !pcm.hasRemaining()) return;
+        byte[] bytes = new byte[pcm.remaining()];
+        pcm.get(bytes);
+        enqueueAudio(buildAudioInput(inputSampleRate, Base64.getEncoder().encodeToString(bytes)));
+    }
 
-        Map<String, Object> msg = new HashMap<>();
-        msg.put("realtimeInput", realtimeInput);
+    /**
+     * Live API Blob: { realtimeInput: { audio: { mimeType, data } } }，data 为 base64（字符集无需转义，直接拼接）
+     */
+    private String buildAudioInput(int rate, String base64) {
+        return new StringBuilder(base64.length() + 80)
+                .append("{\"realtimeInput\":{\"audio\":{\"mimeType\":\"audio/pcm;rate=").append(rate)
+                .append("\",\"data\":\"").append(base64).append("\"}}}")
+                .toString();
+    }
 
-        try {
-            enqueueSend(mapper.writeValueAsString(msg));
-        } catch (Exception e) {
-            // ignore
+    private boolean isBase64(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            boolean ok = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '+' || c == '/' || c == '=';
+            if (!ok) return false;
         }
+        return true;
     }
 
     /**
@@ -403,6 +463,7 @@ public class GeminiLiveSession {
         msg.put("realtimeInput", realtimeInput);
         try {
             enqueueSend(mapper.writeValueAsString(msg));
+            turnEndNanos = System.nanoTime();
         } catch (Exception ignore) {
         }
     }
@@ -411,6 +472,7 @@ public class GeminiLiveSession {
      * 主动结束会话。
      */
     public void close() {
+        logStatsOnce();
         if (!closed.compareAndSet(false, true)) return;
         try {
             if (geminiWs != null) {
@@ -420,75 +482,178 @@ public class GeminiLiveSession {
         }
     }
 
+    /**
+     * 会话发送统计：队列深度、丢弃计数、发送排队延迟与音频往返（回合结束 -> 首段模型音频）直方图
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (sendQueue) {
+            m.put("queueDepth", sendQueue.size());
+            m.put("queuedAudio", queuedAudio);
+        }
+        m.put("maxQueueDepth", maxQueueDepth.get());
+        WebSocket ws = this.geminiWs;
+        m.put("wsQueueBytes", ws != null ? ws.queueSize() : 0);
+        m.put("audioSent", audioSent.get());
+        m.put("audioDroppedOverflow", audioDroppedOverflow.get());
+        m.put("audioDroppedStale", audioDroppedStale.get());
+        m.put("backpressureEvents", backpressureEvents.get());
+        m.put("sendLatency", sendLatency.snapshot());
+        m.put("audioRoundTrip", audioRoundTrip.snapshot());
+        m.put("ageSeconds", (System.currentTimeMillis() - openedAtMillis) / 1000);
+        return m;
+    }
+
+    private void logStatsOnce() {
+        if (statsLogged.compareAndSet(false, true) && audioSent.get() > 0) {
+            log.info("Gemini Live session {} send stats: {}", clientSession.getId(), stats());
+        }
+    }
+
+    /**
+     * 控制帧（setup/activityStart/activityEnd）：按序发送，永不丢弃
+     */
     private void enqueueSend(String json) {
+        enqueue(new Outbound(json, false, System.nanoTime()));
+    }
+
+    /**
+     * 音频帧：队列内音频超过上限时丢弃最旧的音频帧
+     */
+    private void enqueueAudio(String json) {
+        enqueue(new Outbound(json, true, System.nanoTime()));
+    }
+
+    private void enqueue(Outbound frame) {
         if (closed.get()) return;
-        sendQueue.add(json);
+        boolean dropped = false;
+        synchronized (sendQueue) {
+            if (frame.audio()) {
+                int capacity = Math.max(1, aiConfig.getLive().getSendQueueCapacity());
+                while (queuedAudio >= capacity && removeOldestAudio()) {
+                    audioDroppedOverflow.incrementAndGet();
+                    dropped = true;
+                }
+                queuedAudio++;
+            }
+            sendQueue.addLast(frame);
+            maxQueueDepth.accumulateAndGet(sendQueue.size(), Math::max);
+        }
+        if (dropped) {
+            notifyThrottled();
+        }
         drainSendQueue();
     }
 
+    private boolean removeOldestAudio() {
+        Iterator<Outbound> it = sendQueue.iterator();
+        while (it.hasNext()) {
+            if (it.next().audio()) {
+                it.remove();
+                queuedAudio--;
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
-     * 串行 drain 发送队列，限制 in-flight 数量。
+     * 串行 drain 发送队列。
+     * <p>
+     * OkHttp 的 send 只是写入其内部缓冲：以 queueSize()（未写出字节）作为背压信号，超过阈值时暂停，
+     * 稍后重试；音频帧出队时若已排队过久则丢弃（追赶实时），控制帧总是发送。
      */
     private void drainSendQueue() {
         if (!draining.compareAndSet(false, true)) return;
+        boolean backpressured = false;
+        boolean reachedEnd = false;
         try {
+            AiConfigProperties.LiveConfig lc = aiConfig.getLive();
+            long maxAgeNanos = java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(Math.max(1, lc.getMaxAudioAgeMs()));
             while (!closed.get()) {
-                if (inFlightSends.get() >= maxInFlight) {
-                    // 过载：丢弃后续音频（保守策略，避免内存爆）
-                    sendQueue.clear();
-                    notifyClientWarn("THROTTLED", "发送过快，已触发节流，请放慢语速或稍后重试");
-                    break;
-                }
-                String next = sendQueue.poll();
-                if (next == null) break;
                 WebSocket ws = this.geminiWs;
                 if (ws == null) break;
-                inFlightSends.incrementAndGet();
-                try {
-                    boolean ok = ws.send(next);
-                    if (!ok) {
-                        // 发送失败时不要“沉默等待 setupComplete”，直接失败并给出提示
-                        CompletableFuture<Void> f = setupCompleteFuture;
-                        if (f != null && !f.isDone()) {
-                            f.completeExceptionally(new IllegalStateException("WebSocket 发送失败（可能代理对 wss/CONNECT 不兼容或连接已关闭）"));
-                        }
-                        notifyClientError("GEMINI_WS_SEND_FAILED", "WebSocket 发送失败（可能代理不兼容），请切换 SOCKS 或检查 Clash 规则/全局模式");
-                        try { ws.close(1000, "send_failed"); } catch (Exception ignore) {}
-                        break;
+                if (ws.queueSize() > lc.getMaxWsQueueBytes()) {
+                    backpressured = true;
+                    backpressureEvents.incrementAndGet();
+                    break;
+                }
+                Outbound next;
+                synchronized (sendQueue) {
+                    next = sendQueue.pollFirst();
+                    if (next != null && next.audio()) queuedAudio--;
+                }
+                if (next == null) {
+                    reachedEnd = true;
+                    break;
+                }
+                long waitedNanos = System.nanoTime() - next.enqueuedAtNanos();
+                if (next.audio() && waitedNanos > maxAgeNanos) {
+                    audioDroppedStale.incrementAndGet();
+                    notifyThrottled();
+                    continue;
+                }
+                if (!ws.send(next.json())) {
+                    // 发送失败时不要“沉默等待 setupComplete”，直接失败并给出提示
+                    CompletableFuture<Void> f = setupCompleteFuture;
+                    if (f != null && !f.isDone()) {
+                        f.completeExceptionally(new IllegalStateException("WebSocket 发送失败（可能代理对 wss/CONNECT 不兼容或连接已关闭）"));
                     }
-                } catch (Exception ignore) {
-                } finally {
-                    inFlightSends.decrementAndGet();
+                    notifyClientError("GEMINI_WS_SEND_FAILED", "WebSocket 发送失败（可能代理不兼容），请切换 SOCKS 或检查 Clash 规则/全局模式");
+                    try { ws.close(1000, "send_failed"); } catch (Exception ignore) {}
+                    break;
+                }
+                if (next.audio()) {
+                    audioSent.incrementAndGet();
+                    sendLatency.record(java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(waitedNanos));
                 }
             }
+        } catch (Exception e) {
+            log.debug("Gemini Live drain failed: {}", e.getMessage());
         } finally {
             draining.set(false);
-            // 若 drain 过程中有新数据入队，重新触发一次
-            if (!sendQueue.isEmpty() && !closed.get()) {
-                drainSendQueue();
-            }
+        }
+        boolean pending;
+        synchronized (sendQueue) {
+            pending = !sendQueue.isEmpty();
+        }
+        if (!pending || closed.get()) return;
+        if (backpressured) {
+            scheduleDrainRetry();
+        } else if (reachedEnd) {
+            // drain 结束后才有新数据入队（其 drain 调用因 CAS 失败被跳过），重新触发一次
+            drainSendQueue();
         }
     }
 
-    private OkHttpClient buildOkHttpClient(ConnectAttempt attempt) {
-        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
-        long ct = Math.max(1000, pc != null ? pc.getConnectTimeoutMs() : 10000);
+    private void scheduleDrainRetry() {
+        if (!drainRetryScheduled.compareAndSet(false, true)) return;
+        DRAIN_RETRY.schedule(() -> {
+            drainRetryScheduled.set(false);
+            drainSendQueue();
+        }, DRAIN_RETRY_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
 
-        OkHttpClient.Builder b = new OkHttpClient.Builder()
-                .connectTimeout(Duration.ofMillis(ct))
-                .readTimeout(Duration.ZERO) // WebSocket 长连接不超时
-                .writeTimeout(Duration.ofSeconds(30))
-                .pingInterval(Duration.ofSeconds(20));
+    private void notifyThrottled() {
+        long now = System.currentTimeMillis();
+        if (now - lastThrottleNoticeAt < 5000) return;
+        lastThrottleNoticeAt = now;
+        notifyClientWarn("THROTTLED", "网络拥塞，已丢弃部分过期音频，请稍慢一点说话或检查网络");
+    }
+
+    private record Outbound(String json, boolean audio, long enqueuedAtNanos) {}
 
+    /**
+     * 取共享的 WebSocket 客户端（进程级调度器/连接池，按代理缓存），不再为每次连接尝试新建 OkHttpClient
+     */
+    private OkHttpClient buildOkHttpClient(ConnectAttempt attempt) {
         ProxyTarget target = attempt.proxyTarget();
         if (target != null) {
             Proxy.Type type = "SOCKS".equalsIgnoreCase(target.type()) ? Proxy.Type.SOCKS : Proxy.Type.HTTP;
-            b.proxy(new Proxy(type, new InetSocketAddress(target.host(), target.port())));
-        } else {
-            // 强制直连：避免系统默认代理影响
-            b.proxy(Proxy.NO_PROXY);
+            return transport.webSocketClient(new Proxy(type, new InetSocketAddress(target.host(), target.port())));
         }
-        return b.build();
+        // 强制直连：避免系统默认代理影响
+        return transport.webSocketClient(Proxy.NO_PROXY);
     }
 
     /**
@@ -637,6 +802,24 @@ public class GeminiLiveSession {
         }
     }
 
+    /**
+     * 模型音频以二进制帧推送：格式（mimeType）变化时先发一条 assistant_audio_format
+     */
+    private void sendAudioToClient(String pcm16Base64, String mimeType) {
+        if (!clientSession.isOpen()) return;
+        try {
+            byte[] pcm = Base64.getDecoder().decode(pcm16Base64);
+            if (mimeType != null && !mimeType.equals(lastClientAudioMime)) {
+                lastClientAudioMime = mimeType;
+                safeSendToClient(Map.of("type", "assistant_audio_format", "mimeType", mimeType));
+            }
+            synchronized (clientSession) {
+                clientSession.sendMessage(new BinaryMessage(pcm));
+            }
+        } catch (Exception ignore) {
+        }
+    }
+
     private void handleGeminiServerMessage(Map<?, ?> msg) {
         if (msg == null) return;
 
@@ -725,7 +908,14 @@ public class GeminiLiveSession {
                         if (inlineData instanceof Map<?, ?> id) {
                             Object data = id.get("data");
                             Object mimeType = id.get("mimeType");
-                            if (data != null) {
+                            long endedAt = turnEndNanos;
+                            if (data != null && endedAt != 0L) {
+                                turnEndNanos = 0L;
+                                audioRoundTrip.record(java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - endedAt));
+                            }
+                            if (data != null && binaryAudio) {
+                                sendAudioToClient(String.valueOf(data), mimeType != null ? String.valueOf(mimeType) : null);
+                            } else if (data != null) {
                                 safeSendToClient(Map.of(
                                         "type", "assistant_audio",
                                         "pcm16Base64", String.valueOf(data),
@@ -843,6 +1033,7 @@ public class GeminiLiveSession {
 
         @Override
         public void onClosed(WebSocket webSocket, int code, String reason) {
+            logStatsOnce();
             connected.set(false);
             closed.set(true);
             log.warn("Gemini Live WS closed: code={}, reason={}", code, reason);
@@ -0,0 +1,60 @@
+package com.noncore.assessment.realtime.ai.live;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定分桶的延迟直方图（毫秒），无锁记录，供 Live 会话统计发送延迟与音频往返时间。
+ */
+final class LatencyHistogram {
+
+    private static final long[] BOUNDS_MS = {50, 100, 200, 400, 800, 1600, 3200, 6400};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    void record(long ms) {
+        long v = Math.max(0, ms);
+        int i = 0;
+        while (i < BOUNDS_MS.length && v > BOUNDS_MS[i]) i++;
+        buckets.incrementAndGet(i);
+        count.incrementAndGet();
+        sumMs.addAndGet(v);
+        maxMs.accumulateAndGet(v, Math::max);
+    }
+
+    Map<String, Object> snapshot() {
+        long n = count.get();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", n);
+        m.put("avgMs", n == 0 ? 0 : sumMs.get() / n);
+        m.put("p50Ms", percentile(n, 0.50));
+        m.put("p95Ms", percentile(n, 0.95));
+        m.put("maxMs", maxMs.get());
+        Map<String, Long> b = new LinkedHashMap<>();
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            b.put("le" + BOUNDS_MS[i], buckets.get(i));
+        }
+        b.put("gt" + BOUNDS_MS[BOUNDS_MS.length - 1], buckets.get(BOUNDS_MS.length));
+        m.put("buckets", b);
+        return m;
+    }
+
+    /**
+     * 近似分位数：返回所在桶的上界（最后一桶返回最大值）
+     */
+    private long percentile(long n, double q) {
+        if (n == 0) return 0;
+        long target = (long) Math.ceil(n * q);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) return BOUNDS_MS[i];
+        }
+        return maxMs.get();
+    }
+}
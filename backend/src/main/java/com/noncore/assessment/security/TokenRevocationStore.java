@@ -0,0 +1,204 @@
+package com.noncore.assessment.security;
+
+import com.noncore.assessment.entity.TokenRevocation;
+import com.noncore.assessment.mapper.TokenRevocationMapper;
+import com.noncore.assessment.util.JwtUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌吊销存储。
+ *
+ * <p>内存中只保存两张表：被吊销的令牌ID（jti → exp）与用户级“不早于”时间（userId → notBefore），
+ * 鉴权时 {@link #isRevoked(JwtUtil.VerifiedToken)} 为两次哈希查找，不产生请求级 I/O。
+ * 记录写入 token_revocations 持久化：启动时加载未过期记录，运行期按自增ID轮询其他节点新增的记录；
+ * 条目到期（令牌本身已过期）后从内存和表中清理。</p>
+ */
+@Slf4j
+@Component
+public class TokenRevocationStore {
+
+    private static final int LOAD_BATCH = 1000;
+    /**
+     * 自增ID的提交顺序不保证单调，每次轮询回看最近若干ID；记录应用是幂等的，无需去重
+     */
+    private static final long REREAD_WINDOW = 200;
+
+    private final TokenRevocationMapper revocationMapper;
+    private final JwtUtil jwtUtil;
+
+    // jti -> 令牌过期时间（毫秒）
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    // userId -> 用户级吊销
+    private final Map<Long, UserCutoff> userCutoffs = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastSeenId = new AtomicLong();
+    private final AtomicLong revokedChecks = new AtomicLong();
+
+    public TokenRevocationStore(TokenRevocationMapper revocationMapper, JwtUtil jwtUtil) {
+        this.revocationMapper = revocationMapper;
+        this.jwtUtil = jwtUtil;
+    }
+
+    @PostConstruct
+    public void init() {
+        int loaded = pull(0L);
+        log.info("Token revocation store loaded {} active records (lastId={})", loaded, lastSeenId.get());
+    }
+
+    /**
+     * 令牌是否已被吊销（单令牌吊销或签发早于用户级 notBefore）
+     */
+    public boolean isRevoked(JwtUtil.VerifiedToken token) {
+        if (token == null) return false;
+        boolean revoked = revokedTokens.containsKey(token.tokenId());
+        if (!revoked && token.principal().getId() != null) {
+            UserCutoff cutoff = userCutoffs.get(token.principal().getId());
+            revoked = cutoff != null && token.issuedAtMillis() < cutoff.notBeforeMillis();
+        }
+        if (revoked) revokedChecks.incrementAndGet();
+        return revoked;
+    }
+
+    /**
+     * 吊销单个令牌（登出），记录保留到令牌过期
+     */
+    public void revokeToken(JwtUtil.VerifiedToken token) {
+        if (token.expiresAtMillis() <= System.currentTimeMillis() || token.expiresAtMillis() == Long.MAX_VALUE) return;
+        revokedTokens.merge(token.tokenId(), token.expiresAtMillis(), Math::max);
+        TokenRevocation r = new TokenRevocation();
+        r.setKind(TokenRevocation.KIND_TOKEN);
+        r.setSubject(token.tokenId());
+        r.setExpiresAt(toDateTime(token.expiresAtMillis()));
+        persist(r);
+    }
+
+    /**
+     * 吊销用户此前签发的全部令牌（改密、禁用、角色变更）
+     * JWT 的 iat 精度为秒：notBefore 取当前整秒，此后（含同一秒内）新签发的令牌不受影响
+     */
+    public void revokeAllForUser(Long userId) {
+        if (userId == null) return;
+        long notBefore = System.currentTimeMillis() / 1000 * 1000;
+        long maxLifetime = Math.max(nullToZero(jwtUtil.getExpiration()), nullToZero(jwtUtil.getRefreshExpiration()));
+        UserCutoff cutoff = new UserCutoff(notBefore, notBefore + maxLifetime + 1000);
+        userCutoffs.merge(userId, cutoff, UserCutoff::later);
+        TokenRevocation r = new TokenRevocation();
+        r.setKind(TokenRevocation.KIND_USER);
+        r.setSubject(String.valueOf(userId));
+        r.setNotBefore(toDateTime(cutoff.notBeforeMillis()));
+        r.setExpiresAt(toDateTime(cutoff.expiresAtMillis()));
+        persist(r);
+    }
+
+    /**
+     * 拉取其他节点新增的吊销记录
+     */
+    @Scheduled(fixedDelayString = "${security.token-revocation.poll-interval-ms:5000}")
+    public void poll() {
+        pull(Math.max(0L, lastSeenId.get() - REREAD_WINDOW));
+    }
+
+    /**
+     * 清理已过期的记录（对应令牌已自然失效）
+     */
+    @Scheduled(fixedDelayString = "${security.token-revocation.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(exp -> exp <= now);
+        userCutoffs.values().removeIf(c -> c.expiresAtMillis() <= now);
+        try {
+            revocationMapper.deleteExpired(LocalDateTime.now());
+        } catch (Exception e) {
+            log.warn("Token revocation purge failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 吊销存储统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("revokedTokens", revokedTokens.size());
+        m.put("userCutoffs", userCutoffs.size());
+        m.put("lastSeenId", lastSeenId.get());
+        m.put("rejected", revokedChecks.get());
+        return m;
+    }
+
+    private synchronized int pull(long afterId) {
+        int applied = 0;
+        try {
+            long cursor = afterId;
+            List<TokenRevocation> batch;
+            do {
+                batch = revocationMapper.selectActiveAfter(cursor, LocalDateTime.now(), LOAD_BATCH);
+                for (TokenRevocation r : batch) {
+                    cursor = r.getId();
+                    lastSeenId.accumulateAndGet(r.getId(), Math::max);
+                    apply(r);
+                    applied++;
+                }
+            } while (batch.size() >= LOAD_BATCH);
+        } catch (Exception e) {
+            log.warn("Token revocation sync failed: {}", e.getMessage());
+        }
+        return applied;
+    }
+
+    private void apply(TokenRevocation r) {
+        if (r.getExpiresAt() == null || r.getSubject() == null) return;
+        long expiresAt = toMillis(r.getExpiresAt());
+        if (TokenRevocation.KIND_TOKEN.equals(r.getKind())) {
+            revokedTokens.merge(r.getSubject(), expiresAt, Math::max);
+        } else if (TokenRevocation.KIND_USER.equals(r.getKind()) && r.getNotBefore() != null) {
+            try {
+                Long userId = Long.parseLong(r.getSubject());
+                userCutoffs.merge(userId, new UserCutoff(toMillis(r.getNotBefore()), expiresAt), UserCutoff::later);
+            } catch (NumberFormatException ignored) {
+                // 非法记录忽略
+            }
+        }
+    }
+
+    private void persist(TokenRevocation r) {
+        // 内存已生效；持久化失败只影响重启后与其他节点，记录日志
+        try {
+            revocationMapper.insert(r);
+            if (r.getId() != null) {
+                lastSeenId.accumulateAndGet(r.getId(), Math::max);
+            }
+        } catch (Exception e) {
+            log.warn("Token revocation persist failed: kind={}, subject={}, err={}", r.getKind(), r.getSubject(), e.getMessage());
+        }
+    }
+
+    private static long nullToZero(Long v) {
+        return v == null ? 0L : v;
+    }
+
+    private static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long toMillis(LocalDateTime t) {
+        return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private record UserCutoff(long notBeforeMillis, long expiresAtMillis) {
+        private static UserCutoff later(UserCutoff a, UserCutoff b) {
+            return new UserCutoff(Math.max(a.notBeforeMillis, b.notBeforeMillis), Math.max(a.expiresAtMillis, b.expiresAtMillis));
+        }
+    }
+}
@@ -17,10 +17,17 @@ public class UserPrincipal implements Principal, Serializable {
     @Getter
     private final Long id;
     private final String username;
+    @Getter
+    private final String role;
 
     public UserPrincipal(Long id, String username) {
+        this(id, username, null);
+    }
+
+    public UserPrincipal(Long id, String username, String role) {
         this.id = id;
         this.username = username;
+        this.role = role;
     }
 
     @Override
@@ -33,12 +40,12 @@ public class UserPrincipal implements Principal, Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         UserPrincipal that = (UserPrincipal) o;
-        return id.equals(that.id);
+        return java.util.Objects.equals(id, that.id);
     }
 
     @Override
     public int hashCode() {
-        return id.hashCode();
+        return java.util.Objects.hashCode(id);
     }
 
     @Override
@@ -46,6 +53,7 @@ public class UserPrincipal implements Principal, Serializable {
         return "UserPrincipal{" +
                 "id=" + id +
                 ", username='" + username + '\'' +
+                ", role='" + role + '\'' +
                 '}';
     }
 } 
\ No newline at end of file
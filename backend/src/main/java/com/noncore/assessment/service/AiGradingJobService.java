@@ -0,0 +1,45 @@
+package com.noncore.assessment.service;
+
+import com.noncore.assessment.dto.request.AiGradingJobRequest;
+import com.noncore.assessment.dto.response.AiGradingJobResponse;
+import com.noncore.assessment.entity.AiGradingJob;
+
+import java.util.Map;
+
+/**
+ * AI 批量批改任务：条目按供应商并发上限并行执行，结果逐条落库并可增量订阅。
+ */
+public interface AiGradingJobService {
+
+    /**
+     * 任务进度监听（回调在任务工作线程上触发）。
+     */
+    interface Listener {
+        void onItem(Map<String, Object> item);
+
+        void onCompleted(AiGradingJob job);
+    }
+
+    /**
+     * 提交任务并立即返回（后台执行）。
+     */
+    AiGradingJob submit(Long teacherId, AiGradingJobRequest request);
+
+    /**
+     * 提交任务并等待全部条目完成（供旧的同步批量接口使用）。
+     * 等待超过 ai.grading-job.wait-timeout-ms 时抛出业务异常（消息含任务ID），任务继续在后台执行。
+     */
+    AiGradingJobResponse submitAndWait(Long teacherId, AiGradingJobRequest request);
+
+    /**
+     * 任务详情（含已完成条目结果），可轮询。
+     */
+    AiGradingJobResponse getJob(Long teacherId, Long jobId);
+
+    /**
+     * 订阅任务进度；任务已结束时立即回调 onCompleted。
+     *
+     * @return 取消订阅
+     */
+    Runnable subscribe(Long teacherId, Long jobId, Listener listener);
+}
@@ -1,6 +1,8 @@
 package com.noncore.assessment.service;
 
 import com.noncore.assessment.dto.request.AiChatRequest;
+import com.noncore.assessment.service.llm.LlmStreamCancellation;
+import com.noncore.assessment.service.llm.LlmStreamListener;
 
 public interface AiService {
     /**
@@ -12,8 +14,28 @@ public interface AiService {
     String generateAnswer(AiChatRequest request, Long teacherId);
 
     /**
-     * 与 generateAnswer 类似，但强制模型以 JSON 对象输出（用于作文批改）。
+     * 与 generateAnswer 相同的上下文组装，但以流式方式调用大模型：增量文本到达即回调 listener。
+     * @param listener 增量文本回调
+     * @param cancellation 取消句柄（客户端断开时取消，立即中止上游请求）
+     * @return 完整回答（取消时为已收到的部分）
+     */
+    String streamAnswer(AiChatRequest request, Long teacherId, LlmStreamListener listener, LlmStreamCancellation cancellation);
+
+    /**
+     * 与 generateAnswer 类似，但强制模型以 JSON 对象输出；不读写批改结果缓存。
      */
     String generateAnswerJsonOnly(AiChatRequest request, Long teacherId);
+
+    /**
+     * JSON-only 调用的第 sampleIndex 次取样（从 0 开始）。
+     * useGradingCache 为 true 时（仅作文批改调用方）按取样序号读写批改结果缓存，forceRefresh 跳过读取。
+     */
+    String generateAnswerJsonOnly(AiChatRequest request, Long teacherId, int sampleIndex, boolean useGradingCache);
+
+    /**
+     * 同上；cancellation 取消时中止进行中的上游请求（用于取消不再需要的投机取样）。
+     */
+    String generateAnswerJsonOnly(AiChatRequest request, Long teacherId, int sampleIndex, boolean useGradingCache,
+                                  LlmStreamCancellation cancellation);
 }
 
@@ -39,9 +39,9 @@ public interface AuthService {
     AuthResponse refreshToken(String refreshToken);
 
     /**
-     * 用户登出
+     * 用户登出：吊销给定令牌直至其过期
      *
-     * @param token 访问令牌
+     * @param token 访问令牌或刷新令牌
      */
     void logout(String token);
 
@@ -1,7 +1,10 @@
 package com.noncore.assessment.service;
 
+import com.noncore.assessment.entity.BehaviorDailyRollup;
 import com.noncore.assessment.entity.BehaviorEvent;
+import com.noncore.assessment.util.EventCursor;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -13,17 +16,45 @@ import java.util.List;
 public interface BehaviorEventService {
     void save(BehaviorEvent event);
 
-    List<BehaviorEvent> listByStudentCourseRange(Long studentId, Long courseId, LocalDateTime from, LocalDateTime to, Integer limit);
+    /**
+     * 批量保存行为事件（单条多行 INSERT）。
+     */
+    void saveBatch(List<BehaviorEvent> events);
 
     /**
-     * 按学生/课程/时间窗分页查询事件（按时间倒序）。
+     * 按学生/课程/时间窗 keyset 分页查询事件（按时间倒序）。
+     *
+     * @param cursor 上一页最后一条事件的游标（为空表示第一页）
+     */
+    List<BehaviorEvent> listByStudentCourseRangeBefore(Long studentId,
+                                                       Long courseId,
+                                                       LocalDateTime from,
+                                                       LocalDateTime to,
+                                                       EventCursor cursor,
+                                                       Integer limit);
+
+    /**
+     * 查询日汇总（随事件写入增量维护），用于长时间窗摘要避免扫描原始事件。
+     *
+     * @param studentId 学生ID
+     * @param courseId 课程ID（可空；非空时包含无课程上下文的事件）
+     * @param fromDate 起始日期（包含，可空）
+     * @param toDate 结束日期（包含，可空）
+     * @return 日汇总行
+     */
+    List<BehaviorDailyRollup> listDailyRollups(Long studentId, Long courseId, LocalDate fromDate, LocalDate toDate);
+
+    /**
+     * 统计时间窗内指定类型的事件数（单条 COUNT 查询，不加载原始事件）。
+     *
+     * @param studentId 学生ID
+     * @param courseId 课程ID（可空；非空时包含无课程上下文的事件）
+     * @param types 事件类型code
+     * @param from 起始时间（包含，可空）
+     * @param to 结束时间（不包含，可空）
+     * @return 事件数
      */
-    List<BehaviorEvent> listByStudentCourseRangePaged(Long studentId,
-                                                      Long courseId,
-                                                      LocalDateTime from,
-                                                      LocalDateTime to,
-                                                      Integer offset,
-                                                      Integer limit);
+    int countByTypesInRange(Long studentId, Long courseId, List<String> types, LocalDateTime from, LocalDateTime to);
 
     /**
      * 判断是否存在晚于指定时间点的事件（用于判断摘要快照是否过期）。
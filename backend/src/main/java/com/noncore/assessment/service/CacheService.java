@@ -1,9 +1,15 @@
 package com.noncore.assessment.service;
 
+import java.util.Map;
 import java.util.Optional;
 
 public interface CacheService {
     <T> Optional<T> get(String key, Class<T> clazz);
     void set(String key, Object value, long timeoutInSeconds);
     void delete(String key);
-} 
\ No newline at end of file
+
+    /**
+     * 缓存统计（命中/未命中/淘汰/过期，按命名空间细分），用于运维观测。
+     */
+    Map<String, Object> stats();
+}
@@ -27,6 +27,52 @@ public interface FileStorageService {
      */
     FileRecord uploadFile(MultipartFile file, Long uploaderId, String purpose, Long relatedId);
 
+    /**
+     * 创建分片断点续传会话（预先校验类型与按用途的大小限制，并在目标目录预留 .part 文件）
+     *
+     * @param uploaderId 上传者ID
+     * @param fileName 原始文件名
+     * @param totalSize 文件总大小（字节）
+     * @param mimeType MIME类型
+     * @param purpose 上传目的
+     * @param relatedId 关联ID
+     * @return 上传会话（id 用于后续分片请求）
+     */
+    com.noncore.assessment.entity.FileUploadSession createUploadSession(Long uploaderId, String fileName, long totalSize,
+                                                                         String mimeType, String purpose, Long relatedId);
+
+    /**
+     * 查询上传会话（断线重连时据 receivedSize 决定从哪个偏移继续）
+     *
+     * @param sessionId 会话ID
+     * @param uploaderId 上传者ID
+     * @return 上传会话
+     */
+    com.noncore.assessment.entity.FileUploadSession getUploadSession(String sessionId, Long uploaderId);
+
+    /**
+     * 追加一个分片：offset 必须等于已接收字节数，内容边读边写入目标 .part 文件并计算 SHA-256
+     *
+     * @param sessionId 会话ID
+     * @param uploaderId 上传者ID
+     * @param offset 分片起始偏移
+     * @param data 分片内容（请求体原始字节流）
+     * @param length 分片长度（Content-Length）
+     * @param sha256 分片内容的 SHA-256（十六进制，可选；提供时校验失败则回滚本分片）
+     * @return 更新后的上传会话
+     */
+    com.noncore.assessment.entity.FileUploadSession appendUploadChunk(String sessionId, Long uploaderId, long offset,
+                                                                       java.io.InputStream data, long length, String sha256);
+
+    /**
+     * 完成上传：校验字节数已到齐，将 .part 原地重命名为正式文件并生成文件记录（重复调用返回同一记录）
+     *
+     * @param sessionId 会话ID
+     * @param uploaderId 上传者ID
+     * @return 文件记录
+     */
+    FileRecord completeUploadSession(String sessionId, Long uploaderId);
+
     /**
      * 下载文件
      *
@@ -36,6 +82,26 @@ public interface FileStorageService {
      */
     byte[] downloadFile(Long fileId, Long userId);
 
+    /**
+     * 解析文件的物理路径（校验权限与文件存在性，不读取内容），用于流式/分段读取
+     *
+     * @param fileId 文件ID
+     * @param userId 用户ID（用于权限检查）
+     * @param countDownload 是否计入下载次数（分段请求只在首段计数）
+     * @return 文件路径
+     */
+    java.nio.file.Path resolveFilePath(Long fileId, Long userId, boolean countDownload);
+
+    /**
+     * 以资源形式打开文件（流式读取，由调用方直接写入响应，不占用与文件大小成正比的内存）
+     *
+     * @param fileId 文件ID
+     * @param userId 用户ID（用于权限检查）
+     * @param countDownload 是否计入下载次数
+     * @return 文件资源（提供 contentLength / lastModified / InputStream）
+     */
+    org.springframework.core.io.Resource openFileResource(Long fileId, Long userId, boolean countDownload);
+
     /**
      * 删除文件
      *
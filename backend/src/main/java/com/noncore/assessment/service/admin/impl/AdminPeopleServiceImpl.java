@@ -8,9 +8,13 @@ import com.noncore.assessment.exception.ErrorCode;
 import com.noncore.assessment.mapper.AdminPeopleMapper;
 import com.noncore.assessment.mapper.UserMapper;
 import com.noncore.assessment.service.admin.AdminPeopleService;
+import com.noncore.assessment.util.EventCursor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
 /**
  * 管理员-学生/教师数据中心服务实现。
  *
@@ -21,6 +25,9 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional(readOnly = true)
 public class AdminPeopleServiceImpl implements AdminPeopleService {
 
+    /** 与 listStudentRecentEvents 中 DATE_FORMAT(occurred_at, '%Y-%m-%d %H:%i:%s') 保持一致 */
+    private static final DateTimeFormatter EVENT_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final UserMapper userMapper;
     private final AdminPeopleMapper adminPeopleMapper;
 
@@ -30,7 +37,7 @@ public class AdminPeopleServiceImpl implements AdminPeopleService {
     }
 
     @Override
-    public AdminStudentDetailResponse getStudentDetail(Long studentId, Long courseId, Integer eventLimit) {
+    public AdminStudentDetailResponse getStudentDetail(Long studentId, Long courseId, Integer eventLimit, String eventCursor) {
         User u = userMapper.selectUserById(studentId);
         if (u == null || u.isDeleted()) throw new BusinessException(ErrorCode.USER_NOT_FOUND);
         if (!"student".equalsIgnoreCase(u.getRole())) throw new BusinessException(ErrorCode.INVALID_PARAMETER, "该用户不是学生");
@@ -41,10 +48,22 @@ public class AdminPeopleServiceImpl implements AdminPeopleService {
         String lastActiveAt = adminPeopleMapper.lastActiveAt(studentId);
         Long reports = adminPeopleMapper.countAbilityReports(studentId);
         int safeLimit = (eventLimit == null || eventLimit < 1) ? 8 : Math.min(eventLimit, 30);
+        EventCursor cursor = EventCursor.parse(eventCursor);
         java.util.List<com.noncore.assessment.dto.response.admin.AdminStudentCourseItemResponse> courses =
                 adminPeopleMapper.listStudentCourses(studentId);
         java.util.List<com.noncore.assessment.dto.response.admin.AdminStudentRecentEventResponse> recentEvents =
-                adminPeopleMapper.listStudentRecentEvents(studentId, courseId, safeLimit);
+                adminPeopleMapper.listStudentRecentEvents(studentId, courseId,
+                        cursor == null ? null : cursor.getOccurredAt(),
+                        cursor == null ? null : cursor.getId(),
+                        safeLimit);
+        String nextCursor = null;
+        if (recentEvents != null && recentEvents.size() >= safeLimit) {
+            var last = recentEvents.get(recentEvents.size() - 1);
+            try {
+                EventCursor next = EventCursor.of(LocalDateTime.parse(last.getOccurredAt(), EVENT_TIME_FORMAT), last.getId());
+                nextCursor = next == null ? null : next.toString();
+            } catch (Exception ignored) { }
+        }
 
         u.setPassword(null);
         return AdminStudentDetailResponse.builder()
@@ -56,6 +75,7 @@ public class AdminPeopleServiceImpl implements AdminPeopleService {
                 .abilityReports(reports == null ? 0L : reports)
                 .courses(courses == null ? java.util.List.of() : courses)
                 .recentEvents(recentEvents == null ? java.util.List.of() : recentEvents)
+                .recentEventsNextCursor(nextCursor)
                 .build();
     }
 
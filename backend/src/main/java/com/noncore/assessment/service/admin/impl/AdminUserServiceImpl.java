@@ -7,6 +7,7 @@ import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
 import com.noncore.assessment.mapper.AdminUserMapper;
 import com.noncore.assessment.mapper.UserMapper;
+import com.noncore.assessment.security.TokenRevocationStore;
 import com.noncore.assessment.service.UserService;
 import com.noncore.assessment.service.admin.AdminUserService;
 import com.noncore.assessment.util.PageResult;
@@ -30,15 +31,18 @@ public class AdminUserServiceImpl implements AdminUserService {
     private final UserMapper userMapper;
     private final PasswordEncoder passwordEncoder;
     private final UserService userService;
+    private final TokenRevocationStore revocationStore;
 
     public AdminUserServiceImpl(AdminUserMapper adminUserMapper,
                                 UserMapper userMapper,
                                 PasswordEncoder passwordEncoder,
-                                UserService userService) {
+                                UserService userService,
+                                TokenRevocationStore revocationStore) {
         this.adminUserMapper = adminUserMapper;
         this.userMapper = userMapper;
         this.passwordEncoder = passwordEncoder;
         this.userService = userService;
+        this.revocationStore = revocationStore;
     }
 
     @Override
@@ -96,6 +100,8 @@ public class AdminUserServiceImpl implements AdminUserService {
         if (updated <= 0) {
             throw new BusinessException(ErrorCode.DATA_NOT_FOUND, "用户不存在或更新失败");
         }
+        // 令牌中携带角色：旧令牌失效，重新登录后按新角色签发
+        revocationStore.revokeAllForUser(id);
     }
 
     @Override
@@ -105,6 +111,9 @@ public class AdminUserServiceImpl implements AdminUserService {
         if (updated <= 0) {
             throw new BusinessException(ErrorCode.DATA_NOT_FOUND, "用户不存在或更新失败");
         }
+        if ("disabled".equals(s)) {
+            revocationStore.revokeAllForUser(id);
+        }
     }
 
     @Override
@@ -0,0 +1,95 @@
+package com.noncore.assessment.service.ai;
+
+import com.noncore.assessment.config.AiConfigProperties;
+import com.noncore.assessment.dto.request.AiChatRequest;
+import com.noncore.assessment.service.AiService;
+import com.noncore.assessment.util.Jsons;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 作文 JSON-only 批改（单次或稳定化多次取样）。
+ *
+ * <p>供单篇批改、SSE 逐次取样与批量批改任务共用；多次取样在独立线程池中并发执行。</p>
+ */
+@Component
+public class AiEssayGrader {
+
+    private final AiService aiService;
+
+    /**
+     * 批改取样线程池：同一篇作文的多次取样（含投机第 3 次）并发发起，结果由调用线程汇总。
+     * 线程数与单主机并发上限（ai.http.max-concurrent-per-host）一致，多出的取样在池内排队，
+     * 不会为注定要在限流器里等待的请求额外创建线程。
+     */
+    private final ThreadPoolExecutor sampleExecutor;
+
+    public AiEssayGrader(AiService aiService, AiConfigProperties aiConfig) {
+        this.aiService = aiService;
+        int size = Math.max(1, aiConfig.getHttp().getMaxConcurrentPerHost());
+        AtomicInteger seq = new AtomicInteger();
+        this.sampleExecutor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "ai-grading-sample-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.sampleExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sampleExecutor.shutdownNow();
+    }
+
+    /**
+     * 并发取样（不聚合），用于需要逐次推送进度的场景。
+     * 每次取样按发起顺序分配序号（0,1,2），批改结果缓存按序号区分各次取样。
+     */
+    public AiGradingEnsembler.Sampling sample(AiChatRequest request, Long userId, int samplesRequested, double diffThreshold,
+                                              AiGradingEnsembler.SampleListener listener) {
+        AtomicInteger sampleIndex = new AtomicInteger();
+        return AiGradingEnsembler.sample(
+                cancellation -> aiService.generateAnswerJsonOnly(request, userId, sampleIndex.getAndIncrement(), true, cancellation),
+                samplesRequested, diffThreshold, sampleExecutor, listener);
+    }
+
+    /**
+     * JSON-only 批改：samples=1 时单次调用并归一化；samples&gt;1 时执行“2 次均值 + 分差大则第 3 次 + 取最近对”的稳定化算法。
+     *
+     * @param request 已构造好的请求（messages/model/useGradingPrompt 等）
+     * @param userId 当前教师ID
+     * @param samplesRequested 请求的取样次数（1~3）
+     * @param diffThreshold 触发第 3 次的阈值（0~5 标尺，推荐 0.8）
+     * @return { result: Map, rawJson: String }；samples&gt;1 且全部无效时 result 为 INVALID_JSON 错误结构
+     */
+    public Map<String, Object> gradeJsonOnly(AiChatRequest request, Long userId, int samplesRequested, double diffThreshold) {
+        int req = Math.max(1, Math.min(samplesRequested, 3));
+        if (req == 1) {
+            // 单次调用：无效 JSON 直接抛 IllegalArgumentException（与旧接口一致）
+            String json = aiService.generateAnswerJsonOnly(request, userId, 0, true);
+            Map<String, Object> parsed = AiGradingNormalizer.normalize(Jsons.parseObject(json));
+            return Map.of("result", parsed, "rawJson", Jsons.toJson(parsed));
+        }
+
+        AiGradingEnsembler.Sampling sampling = sample(request, userId, req, diffThreshold, null);
+        List<Map<String, Object>> runs = sampling.runs();
+        if (runs.isEmpty()) {
+            // 将最后一次 raw 透出，便于排障
+            String raw = sampling.lastRaw();
+            return Map.of(
+                    "result", Map.of("error", "INVALID_JSON", "message", "Invalid JSON returned by model", "raw", raw),
+                    "rawJson", raw
+            );
+        }
+
+        Map<String, Object> merged = AiGradingEnsembler.ensemble(runs, req, diffThreshold);
+        return Map.of("result", merged, "rawJson", Jsons.toJson(merged));
+    }
+}
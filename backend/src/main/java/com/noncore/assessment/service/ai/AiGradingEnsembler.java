@@ -1,5 +1,12 @@
 package com.noncore.assessment.service.ai;
 
+import com.noncore.assessment.exception.BusinessException;
+import com.noncore.assessment.exception.ErrorCode;
+import com.noncore.assessment.service.llm.LlmStreamCancellation;
+import com.noncore.assessment.util.Jsons;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -8,6 +15,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * AI 批改结果稳定化（多次取样聚合）工具类。
@@ -19,6 +33,10 @@ import java.util.Set;
  *       取第 3 次与前两次更接近的那一次构成“最近对”，再取均值。</li>
  *   <li>解释合并：对最终用于平均的“那一对”做 evidence/suggestions 去重合并，并生成确定性的 holistic_feedback。</li>
  * </ul>
+ *
+ * <p>取样：{@link #sample} 并发发起第 1、2 次与“投机”第 3 次调用，前两次分差在阈值内即取消第 3 次，
+ * 整体耗时约等于一次模型往返。取消经由每次调用自己的 {@link LlmStreamCancellation} 直接中止上游请求
+ * （中断线程无法打断阻塞中的 OkHttp 调用）。</p>
  */
 public final class AiGradingEnsembler {
 
@@ -72,6 +90,160 @@ public final class AiGradingEnsembler {
         return merged;
     }
 
+    /**
+     * 取样过程回调（在调用 {@link #sample} 的线程上触发：run1/run2 按完成先后，之后 diff → run3）。
+     */
+    public interface SampleListener {
+        /**
+         * 单次取样完成。
+         *
+         * @param index 取样序号（1~3）
+         * @param normalized 归一化结果；无效 JSON 时为 null
+         */
+        default void onRun(int index, Map<String, Object> normalized) throws IOException {}
+
+        /**
+         * 前两次均有效时的分差判定。
+         */
+        default void onDiff(double s1, double s2, double diff12, boolean triggeredThird) throws IOException {}
+    }
+
+    /**
+     * 取样结果：有效的归一化结果（按序号排列）与全部原始文本。
+     */
+    public record Sampling(List<Map<String, Object>> runs, List<String> rawRuns) {
+        public String lastRaw() {
+            return rawRuns.isEmpty() ? "" : rawRuns.get(rawRuns.size() - 1);
+        }
+    }
+
+    /**
+     * 并发执行“2 次 + 分差大则第 3 次”的取样。
+     *
+     * <p>samplesRequested ≥ 2 时第 3 次与前两次同时发起：前两次均有效且分差 ≤ diffThreshold（或任一无效）时立即取消；
+     * 否则等待其结果。第 1、2 次调用抛出的异常原样向上抛出（与串行实现一致），第 3 次失败按无效处理。</p>
+     *
+     * @param call 单次 JSON-only 调用（入参为该次调用的取消句柄，需透传到上游请求）
+     * @param samplesRequested 请求的取样次数（1~3）
+     * @param diffThreshold 触发第 3 次的阈值（0~5 标尺）
+     * @param executor 执行模型调用的线程池
+     * @param listener 进度回调（可为 null）
+     * @return 取样结果，交由 {@link #ensemble} 聚合
+     */
+    public static Sampling sample(Function<LlmStreamCancellation, String> call, int samplesRequested, double diffThreshold,
+                                  Executor executor, SampleListener listener) {
+        int req = Math.max(1, Math.min(samplesRequested, 3));
+        SampleListener l = listener != null ? listener : new SampleListener() {};
+        CompletionService<String> cs = new ExecutorCompletionService<>(executor);
+        Map<Future<String>, Integer> indexOf = new HashMap<>();
+        Map<Future<String>, LlmStreamCancellation> handles = new HashMap<>();
+        Future<String> third = null;
+        int total = req >= 2 ? 3 : 1;
+        for (int i = 1; i <= total; i++) {
+            LlmStreamCancellation cancellation = new LlmStreamCancellation();
+            Future<String> f = cs.submit(() -> call.apply(cancellation));
+            indexOf.put(f, i);
+            handles.put(f, cancellation);
+            if (i == 3) third = f;
+        }
+
+        Map<Integer, Map<String, Object>> valid = new TreeMap<>();
+        Map<Integer, String> raw = new TreeMap<>();
+        boolean firstPairDone = false;
+        boolean needThird = false;
+        boolean thirdDone = false;
+        int pairCompleted = 0;
+        int outstanding = total;
+        try {
+            while (outstanding > 0) {
+                Future<String> f = cs.take();
+                outstanding--;
+                int index = indexOf.get(f);
+                String json;
+                try {
+                    json = f.get();
+                } catch (ExecutionException ee) {
+                    if (index < 3) throw unwrap(ee);
+                    json = null;
+                }
+                Map<String, Object> normalized = parseRun(json);
+                if (json != null) raw.put(index, json);
+                if (normalized != null) valid.put(index, normalized);
+
+                if (index == 3) {
+                    thirdDone = true;
+                    // 尚未判定前先暂存，保证事件顺序
+                    if (firstPairDone && needThird) {
+                        l.onRun(3, normalized);
+                        break;
+                    }
+                    continue;
+                }
+                l.onRun(index, normalized);
+
+                if (total == 1 || ++pairCompleted < 2) continue;
+                firstPairDone = true;
+                if (valid.containsKey(1) && valid.containsKey(2)) {
+                    double s1 = AiGradingNormalizer.extractFinalScore05(valid.get(1));
+                    double s2 = AiGradingNormalizer.extractFinalScore05(valid.get(2));
+                    double diff12 = Math.abs(s1 - s2);
+                    needThird = diff12 > diffThreshold;
+                    l.onDiff(s1, s2, diff12, needThird);
+                }
+                if (!needThird) break;
+                if (thirdDone) {
+                    l.onRun(3, valid.get(3));
+                    break;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            cancelAll(handles);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "AI 批改取样被中断");
+        } catch (IOException ioe) {
+            cancelAll(handles);
+            throw new UncheckedIOException(ioe);
+        } catch (RuntimeException rex) {
+            cancelAll(handles);
+            throw rex;
+        }
+
+        if (!needThird) {
+            // 不需要第 3 次：中止投机调用的上游请求并丢弃其结果
+            if (third != null) cancel(third, handles.get(third));
+            valid.remove(3);
+            raw.remove(3);
+        }
+        return new Sampling(new ArrayList<>(valid.values()), new ArrayList<>(raw.values()));
+    }
+
+    private static Map<String, Object> parseRun(String json) {
+        if (json == null) return null;
+        try {
+            return AiGradingNormalizer.normalize(Jsons.parseObject(json));
+        } catch (Exception ignored) {
+            // 无效 JSON：由调用方决定是否整体返回 INVALID_JSON
+            return null;
+        }
+    }
+
+    private static void cancelAll(Map<Future<String>, LlmStreamCancellation> handles) {
+        handles.forEach(AiGradingEnsembler::cancel);
+    }
+
+    private static void cancel(Future<String> f, LlmStreamCancellation cancellation) {
+        // 中断只能唤醒排队等待并发名额的调用；已发出的 OkHttp 请求由 cancellation 中止
+        f.cancel(true);
+        if (cancellation != null) cancellation.cancel();
+    }
+
+    private static RuntimeException unwrap(ExecutionException ee) {
+        Throwable c = ee.getCause();
+        if (c instanceof RuntimeException re) return re;
+        if (c instanceof Error err) throw err;
+        return new BusinessException(ErrorCode.SYSTEM_ERROR, c != null && c.getMessage() != null ? c.getMessage() : "AI 批改取样失败");
+    }
+
     // -------------------- pair merge --------------------
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,176 @@
+package com.noncore.assessment.service.ai;
+
+import com.noncore.assessment.config.AiConfigProperties;
+import com.noncore.assessment.entity.AiGradingCache;
+import com.noncore.assessment.mapper.AiGradingCacheMapper;
+import com.noncore.assessment.util.Jsons;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI 批改结果缓存（ai_grading_cache）。
+ *
+ * <p>键为（规范化后的请求消息、模型、系统 Prompt 版本、取样序号、JSON-only）的 SHA-256：
+ * 同一篇作文用同一模型与 Prompt 重复批改时直接返回上次结果，不再消耗供应商配额。
+ * 仅在配置 ai.grading-cache.ttl-seconds &gt; 0 时启用；请求可用 forceRefresh 跳过读取并覆盖旧结果。
+ * 命中次数先在内存中累计，按 ai.grading-cache.hit-flush-interval-ms 批量写回，读路径只有一次查询。</p>
+ */
+@Slf4j
+@Component
+public class AiGradingResultCache {
+
+    private final AiGradingCacheMapper cacheMapper;
+    private final AiConfigProperties aiConfig;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    /** 待写回的命中增量（缓存行ID → 次数） */
+    private final Map<Long, Long> pendingHits = new ConcurrentHashMap<>();
+
+    public AiGradingResultCache(AiGradingCacheMapper cacheMapper, AiConfigProperties aiConfig) {
+        this.cacheMapper = cacheMapper;
+        this.aiConfig = aiConfig;
+    }
+
+    public boolean isEnabled() {
+        return aiConfig.getGradingCache().getTtlSeconds() > 0;
+    }
+
+    /**
+     * 计算缓存键。消息按键排序序列化，只消除 JSON 结构上的差异；文本内容原样参与哈希（空白不同即视为不同作文）。
+     */
+    public String key(List<Map<String, Object>> payloadMessages, String model, String promptVersion,
+                      int sampleIndex, boolean jsonOnly) {
+        String material = Jsons.toJson(canonicalize(payloadMessages))
+                + '\u0000' + model
+                + '\u0000' + promptVersion
+                + '\u0000' + sampleIndex
+                + '\u0000' + jsonOnly;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(material.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    /**
+     * 读取未过期的缓存结果；未命中或缓存不可用时返回 null
+     */
+    public String get(String cacheKey) {
+        try {
+            AiGradingCache entry = cacheMapper.selectValid(cacheKey, LocalDateTime.now());
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            pendingHits.merge(entry.getId(), 1L, Long::sum);
+            return entry.getRawJson();
+        } catch (Exception e) {
+            log.warn("AI grading cache read failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入结果（仅缓存可解析为 JSON 对象的返回）；写失败不影响批改
+     */
+    public void put(String cacheKey, String model, String promptVersion, int sampleIndex, String rawJson) {
+        try {
+            Jsons.parseObject(rawJson);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        try {
+            AiGradingCache entry = new AiGradingCache();
+            entry.setCacheKey(cacheKey);
+            entry.setModel(model);
+            entry.setPromptVersion(promptVersion);
+            entry.setSampleIndex(sampleIndex);
+            entry.setRawJson(rawJson);
+            entry.setExpiresAt(LocalDateTime.now().plusSeconds(aiConfig.getGradingCache().getTtlSeconds()));
+            cacheMapper.upsert(entry);
+            writes.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("AI grading cache write failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 清理过期缓存
+     */
+    @Scheduled(fixedDelayString = "${ai.grading-cache.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        if (!isEnabled()) return;
+        try {
+            int n = cacheMapper.deleteExpired(LocalDateTime.now());
+            if (n > 0) {
+                log.info("AI grading cache purged {} expired entries", n);
+            }
+        } catch (Exception e) {
+            log.warn("AI grading cache purge failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 批量写回命中次数；写失败时把增量放回，下个周期重试
+     */
+    @Scheduled(fixedDelayString = "${ai.grading-cache.hit-flush-interval-ms:30000}")
+    @PreDestroy
+    public void flushHits() {
+        if (pendingHits.isEmpty()) return;
+        Map<Long, Long> batch = new LinkedHashMap<>();
+        for (Long id : pendingHits.keySet()) {
+            Long delta = pendingHits.remove(id);
+            if (delta != null) batch.put(id, delta);
+        }
+        if (batch.isEmpty()) return;
+        try {
+            cacheMapper.addHits(batch);
+        } catch (Exception e) {
+            batch.forEach((id, delta) -> pendingHits.merge(id, delta, Long::sum));
+            log.warn("AI grading cache hit flush failed: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", isEnabled());
+        m.put("ttlSeconds", aiConfig.getGradingCache().getTtlSeconds());
+        m.put("hits", hits.get());
+        m.put("misses", misses.get());
+        m.put("writes", writes.get());
+        m.put("pendingHitRows", pendingHits.size());
+        return m;
+    }
+
+    private static Object canonicalize(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((k, v) -> sorted.put(String.valueOf(k), canonicalize(v)));
+            return sorted;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> out = new ArrayList<>(list.size());
+            for (Object v : list) out.add(canonicalize(v));
+            return out;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,18 @@
+package com.noncore.assessment.service.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * 跨节点缓存失效消息总线：任一节点写入/删除 key 后广播，其余节点丢弃本地近缓存中的副本。
+ *
+ * <p>由 cache.cluster.bus 选择实现：local（进程内，单机与测试用）/ jdbc（MySQL 表 cache_invalidations 轮询）。
+ * 订阅者只会收到其他节点发出的消息。</p>
+ */
+public interface CacheInvalidationBus {
+
+    void publish(String key);
+
+    void subscribe(Consumer<String> listener);
+
+    String name();
+}
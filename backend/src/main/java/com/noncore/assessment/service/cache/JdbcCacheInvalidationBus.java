@@ -0,0 +1,127 @@
+package com.noncore.assessment.service.cache;
+
+import com.noncore.assessment.entity.CacheInvalidation;
+import com.noncore.assessment.mapper.CacheInvalidationMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 基于 MySQL 的失效总线：发布即插入 cache_invalidations，各节点按自增ID定时拉取新消息。
+ *
+ * <p>失效延迟上限约为一个轮询周期（cache.cluster.poll-interval-ms）；建议同时配置
+ * cache.cluster.near-max-ttl-seconds，轮询失败期间陈旧时间仍有界。启动时从当前最大ID开始，不回放历史消息。</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cache.cluster.bus", havingValue = "jdbc")
+public class JdbcCacheInvalidationBus implements CacheInvalidationBus {
+
+    private static final int POLL_BATCH = 500;
+    /**
+     * 自增ID的提交顺序不保证单调（并发事务可能后提交较小ID），每次回看最近若干ID，用已处理集合去重
+     */
+    private static final long REREAD_WINDOW = 200;
+    private static final int PROCESSED_MEMORY = 4000;
+
+    private final CacheInvalidationMapper invalidationMapper;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Value("${cache.cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${cache.cluster.retention-minutes:10}")
+    private long retentionMinutes;
+
+    private String nodeId;
+    private volatile long lastSeenId;
+    private final Set<Long> processedIds = new LinkedHashSet<>();
+
+    public JdbcCacheInvalidationBus(CacheInvalidationMapper invalidationMapper) {
+        this.invalidationMapper = invalidationMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? UUID.randomUUID().toString().replace("-", "").substring(0, 16)
+                : configuredNodeId.trim();
+        try {
+            Long max = invalidationMapper.selectMaxId();
+            this.lastSeenId = max == null ? 0L : max;
+        } catch (Exception e) {
+            log.warn("Cache invalidation bus init failed, start from 0: {}", e.getMessage());
+        }
+        log.info("Cache invalidation bus (jdbc) started: nodeId={}, fromId={}", nodeId, lastSeenId);
+    }
+
+    @Override
+    public void publish(String key) {
+        CacheInvalidation msg = new CacheInvalidation();
+        msg.setCacheKey(key);
+        msg.setOriginNode(nodeId);
+        try {
+            invalidationMapper.insert(msg);
+        } catch (Exception e) {
+            log.warn("Cache invalidation publish failed: key={}, err={}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String name() {
+        return "jdbc";
+    }
+
+    @Scheduled(fixedDelayString = "${cache.cluster.poll-interval-ms:1000}")
+    public synchronized void poll() {
+        try {
+            long cursor = Math.max(0L, lastSeenId - REREAD_WINDOW);
+            List<CacheInvalidation> batch;
+            do {
+                batch = invalidationMapper.selectAfter(cursor, POLL_BATCH);
+                for (CacheInvalidation msg : batch) {
+                    cursor = msg.getId();
+                    lastSeenId = Math.max(lastSeenId, msg.getId());
+                    if (!processedIds.add(msg.getId())) continue;
+                    if (nodeId.equals(msg.getOriginNode())) continue;
+                    for (Consumer<String> l : listeners) {
+                        l.accept(msg.getCacheKey());
+                    }
+                }
+            } while (batch.size() >= POLL_BATCH);
+            Iterator<Long> it = processedIds.iterator();
+            while (processedIds.size() > PROCESSED_MEMORY && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } catch (Exception e) {
+            log.warn("Cache invalidation poll failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cache.cluster.retention-sweep-interval-ms:300000}")
+    public void purgeOld() {
+        try {
+            invalidationMapper.deleteBefore(LocalDateTime.now().minusMinutes(Math.max(1, retentionMinutes)));
+        } catch (Exception e) {
+            log.warn("Cache invalidation purge failed: {}", e.getMessage());
+        }
+    }
+}
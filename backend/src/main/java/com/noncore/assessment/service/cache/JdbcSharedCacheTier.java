@@ -0,0 +1,79 @@
+package com.noncore.assessment.service.cache;
+
+import com.noncore.assessment.mapper.CacheEntryMapper;
+import com.noncore.assessment.util.Jsons;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * 基于 MySQL 的共享缓存层（值以 JSON 存于 cache_entries）。
+ *
+ * <p>适用于计算代价高的结果（如能力雷达聚合）：任一节点算出后，其他节点以主键查询取得。
+ * 共享层读写失败只记日志并按未命中处理，不影响业务。</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cache.cluster.shared-tier", havingValue = "jdbc")
+public class JdbcSharedCacheTier implements SharedCacheTier {
+
+    private final CacheEntryMapper cacheEntryMapper;
+
+    public JdbcSharedCacheTier(CacheEntryMapper cacheEntryMapper) {
+        this.cacheEntryMapper = cacheEntryMapper;
+    }
+
+    @Override
+    public <T> Optional<T> get(String key, Class<T> clazz) {
+        try {
+            String json = cacheEntryMapper.selectLiveValue(key, LocalDateTime.now());
+            return Optional.ofNullable(Jsons.parseAs(json, clazz));
+        } catch (Exception e) {
+            log.warn("Shared cache read failed: key={}, err={}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void put(String key, Object value, long ttlSeconds) {
+        try {
+            LocalDateTime expiresAt = ttlSeconds > 0 ? LocalDateTime.now().plusSeconds(ttlSeconds) : null;
+            cacheEntryMapper.upsert(key, Jsons.toJson(value), expiresAt);
+        } catch (Exception e) {
+            log.warn("Shared cache write failed: key={}, err={}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            cacheEntryMapper.deleteByKey(key);
+        } catch (Exception e) {
+            log.warn("Shared cache delete failed: key={}, err={}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public String name() {
+        return "jdbc";
+    }
+
+    /**
+     * 定期删除已过期条目（读取时已按 expires_at 过滤，这里只回收空间）。
+     */
+    @Scheduled(fixedDelayString = "${cache.cluster.shared-sweep-interval-ms:300000}")
+    public void purgeExpired() {
+        try {
+            int n;
+            do {
+                n = cacheEntryMapper.deleteExpired(LocalDateTime.now(), 1000);
+            } while (n >= 1000);
+        } catch (Exception e) {
+            log.warn("Shared cache purge failed: {}", e.getMessage());
+        }
+    }
+}
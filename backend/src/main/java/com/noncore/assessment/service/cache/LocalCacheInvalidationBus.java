@@ -0,0 +1,58 @@
+package com.noncore.assessment.service.cache;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内失效总线（嵌入式替身）：同一 JVM 内的多个实例互为“节点”，可用于单机部署与多节点行为的本地验证。
+ */
+@Component
+@ConditionalOnProperty(name = "cache.cluster.bus", havingValue = "local", matchIfMissing = true)
+public class LocalCacheInvalidationBus implements CacheInvalidationBus {
+
+    private static final List<LocalCacheInvalidationBus> MEMBERS = new CopyOnWriteArrayList<>();
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public LocalCacheInvalidationBus() {
+        MEMBERS.add(this);
+    }
+
+    @Override
+    public void publish(String key) {
+        for (LocalCacheInvalidationBus member : MEMBERS) {
+            if (member != this) {
+                member.deliver(key);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    /**
+     * 退出总线（容器关闭时调用，避免残留成员接收消息）。
+     */
+    @PreDestroy
+    public void leave() {
+        MEMBERS.remove(this);
+    }
+
+    private void deliver(String key) {
+        for (Consumer<String> l : listeners) {
+            l.accept(key);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.noncore.assessment.service.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * 不启用共享层：只使用本地近缓存（单节点部署默认）。
+ */
+@Component
+@ConditionalOnProperty(name = "cache.cluster.shared-tier", havingValue = "none", matchIfMissing = true)
+public class NoopSharedCacheTier implements SharedCacheTier {
+
+    @Override
+    public <T> Optional<T> get(String key, Class<T> clazz) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(String key, Object value, long ttlSeconds) {
+    }
+
+    @Override
+    public void delete(String key) {
+    }
+
+    @Override
+    public String name() {
+        return "none";
+    }
+}
@@ -0,0 +1,19 @@
+package com.noncore.assessment.service.cache;
+
+import java.util.Optional;
+
+/**
+ * 跨节点共享缓存层（两级缓存的第二级）。
+ *
+ * <p>由 cache.cluster.shared-tier 选择实现：none（不启用，单机默认）/ jdbc（MySQL 表 cache_entries）。</p>
+ */
+public interface SharedCacheTier {
+
+    <T> Optional<T> get(String key, Class<T> clazz);
+
+    void put(String key, Object value, long ttlSeconds);
+
+    void delete(String key);
+
+    String name();
+}
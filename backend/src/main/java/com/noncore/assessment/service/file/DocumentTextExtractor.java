@@ -1,34 +1,305 @@
 package com.noncore.assessment.service.file;
 
+import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.Tika;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
+/**
+ * 文档文本抽取（Tika）。
+ *
+ * <p>{@link #extractText(byte[], String, String)} 按“内容 SHA-256 + 抽取器版本”缓存结果：
+ * 内存 LRU（按字符总量限额）+ 上传目录旁的磁盘缓存（.text-cache/版本/前缀/哈希.txt）。
+ * 同一附件重复批改、聊天引用或多次取样时不再重复解析。抽取逻辑变化时需提升 {@link #EXTRACTOR_VERSION}，旧缓存自然失效。</p>
+ *
+ * <p>已知内容哈希（文件记录的 content_hash）时用 {@link #extractText(String, BytesLoader, String, String)}，
+ * 命中缓存不再读取原文件。磁盘层定期清理：超过 disk-max-age-days 未命中的条目、旧版本目录，
+ * 以及总量超过 disk-max-bytes 时按最近使用时间从旧到新淘汰。</p>
+ */
+@Slf4j
 @Component
 public class DocumentTextExtractor {
+
+    /** 抽取逻辑版本：修改解析策略/输出格式时递增 */
+    static final String EXTRACTOR_VERSION = "tika-v1";
+
     private final Tika tika = new Tika();
+    // AutoDetectParser 线程安全，可复用（避免每次重新加载解析器注册表）
+    private final AutoDetectParser parser = new AutoDetectParser();
+
+    @Value("${file.upload-dir:/tmp/uploads}")
+    private String uploadPath;
+
+    @Value("${file.text-cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${file.text-cache.memory-max-chars:33554432}")
+    private long memoryMaxChars;
+
+    @Value("${file.text-cache.disk-max-bytes:1073741824}")
+    private long diskMaxBytes;
+
+    @Value("${file.text-cache.disk-max-age-days:30}")
+    private long diskMaxAgeDays;
 
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryChars;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong diskFiles = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicLong sweptFiles = new AtomicLong();
+
+    /**
+     * 缓存未命中时才调用的原文件读取
+     */
+    @FunctionalInterface
+    public interface BytesLoader {
+        byte[] load() throws Exception;
+    }
+
+    /**
+     * 抽取文本（无缓存）。
+     */
     public String extractText(InputStream inputStream, String fileName, String mimeType) throws Exception {
         try (inputStream) {
-            // 简易策略：优先使用 AutoDetectParser，失败时回退到 tika.parseToString
+            return parse(inputStream.readAllBytes(), fileName, mimeType);
+        }
+    }
+
+    /**
+     * 抽取文本（带内容哈希缓存）。
+     *
+     * @param bytes 文件内容
+     * @param fileName 文件名（辅助类型识别）
+     * @param mimeType MIME（辅助类型识别）
+     * @return 抽取的文本
+     */
+    public String extractText(byte[] bytes, String fileName, String mimeType) throws Exception {
+        if (!cacheEnabled || bytes == null) {
+            return parse(bytes == null ? new byte[0] : bytes, fileName, mimeType);
+        }
+        String key = sha256(bytes);
+        String cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        return parseAndStore(key, bytes, fileName, mimeType);
+    }
+
+    /**
+     * 按已知内容哈希抽取文本：命中缓存时不调用 loader（不读原文件）。
+     *
+     * @param contentHash 文件内容 SHA-256（十六进制）；为空时读取内容后按内容计算
+     * @param loader 未命中时读取文件内容
+     */
+    public String extractText(String contentHash, BytesLoader loader, String fileName, String mimeType) throws Exception {
+        if (!cacheEnabled || contentHash == null || contentHash.isBlank()) {
+            return extractText(loader.load(), fileName, mimeType);
+        }
+        String key = contentHash.trim().toLowerCase();
+        String cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] bytes = loader.load();
+        return parseAndStore(key, bytes == null ? new byte[0] : bytes, fileName, mimeType);
+    }
+
+    private String lookup(String key) {
+        String cached = memoryGet(key);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            return cached;
+        }
+        Path diskFile = diskPath(key);
+        try {
+            if (Files.isRegularFile(diskFile)) {
+                String text = Files.readString(diskFile, StandardCharsets.UTF_8);
+                diskHits.incrementAndGet();
+                // 记录最近使用时间，清理时按此淘汰
+                Files.setLastModifiedTime(diskFile, FileTime.from(Instant.now()));
+                memoryPut(key, text);
+                return text;
+            }
+        } catch (Exception e) {
+            log.warn("Text cache read failed: {}, err={}", diskFile, e.getMessage());
+        }
+        return null;
+    }
+
+    private String parseAndStore(String key, byte[] bytes, String fileName, String mimeType) throws Exception {
+        misses.incrementAndGet();
+        String text = parse(bytes, fileName, mimeType);
+        if (text == null) return null;
+        memoryPut(key, text);
+        writeDisk(diskPath(key), text);
+        return text;
+    }
+
+    /**
+     * 清理磁盘缓存：删除旧抽取器版本目录与过期条目，总量超限时按最近使用时间淘汰
+     */
+    @Scheduled(fixedDelayString = "${file.text-cache.sweep-interval-ms:3600000}", initialDelay = 60000)
+    public void sweepDisk() {
+        Path root = cacheRoot();
+        if (!Files.isDirectory(root)) return;
+        Instant cutoff = Instant.now().minus(Duration.ofDays(Math.max(1, diskMaxAgeDays)));
+        Path current = root.resolve(EXTRACTOR_VERSION);
+        List<CachedFile> kept = new ArrayList<>();
+        long removed = 0;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path f : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                try {
+                    FileTime mtime = Files.getLastModifiedTime(f);
+                    if (!f.startsWith(current) || mtime.toInstant().isBefore(cutoff)) {
+                        if (Files.deleteIfExists(f)) removed++;
+                    } else {
+                        kept.add(new CachedFile(f, Files.size(f), mtime.toMillis()));
+                    }
+                } catch (IOException e) {
+                    // 并发写入/删除：下一轮再处理
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Text cache sweep failed: {}", e.getMessage());
+            return;
+        }
+        long total = kept.stream().mapToLong(CachedFile::size).sum();
+        if (total > diskMaxBytes) {
+            kept.sort(Comparator.comparingLong(CachedFile::lastUsedMillis));
+            Iterator<CachedFile> it = kept.iterator();
+            while (total > diskMaxBytes && it.hasNext()) {
+                CachedFile f = it.next();
+                try {
+                    if (Files.deleteIfExists(f.path())) removed++;
+                    total -= f.size();
+                    it.remove();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+        diskFiles.set(kept.size());
+        diskBytes.set(total);
+        sweptFiles.addAndGet(removed);
+        if (removed > 0) {
+            log.info("Text cache sweep removed {} files, remaining {} files / {} bytes", removed, kept.size(), total);
+        }
+    }
+
+    /**
+     * 缓存命中统计。
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (memory) {
+            m.put("memoryEntries", memory.size());
+            m.put("memoryChars", memoryChars);
+        }
+        m.put("memoryHits", memoryHits.get());
+        m.put("diskHits", diskHits.get());
+        m.put("misses", misses.get());
+        // 磁盘用量为最近一次清理时的统计
+        m.put("diskFiles", diskFiles.get());
+        m.put("diskBytes", diskBytes.get());
+        m.put("diskMaxBytes", diskMaxBytes);
+        m.put("sweptFiles", sweptFiles.get());
+        return m;
+    }
+
+    private String parse(byte[] bytes, String fileName, String mimeType) throws Exception {
+        // 简易策略：优先使用 AutoDetectParser，失败时回退到 tika.parseToString
+        try (InputStream in = new ByteArrayInputStream(bytes)) {
+            BodyContentHandler handler = new BodyContentHandler(-1);
+            Metadata metadata = new Metadata();
+            if (mimeType != null) metadata.set("Content-Type", mimeType);
+            if (fileName != null) metadata.set("resourceName", fileName);
+            parser.parse(in, handler, metadata);
+            return handler.toString();
+        } catch (Exception e) {
+            // fallback
+            return tika.parseToString(new ByteArrayInputStream(bytes));
+        }
+    }
+
+    private String memoryGet(String key) {
+        synchronized (memory) {
+            return memory.get(key);
+        }
+    }
+
+    private void memoryPut(String key, String text) {
+        // 单个超过总限额的文本只走磁盘缓存
+        if (text.length() > memoryMaxChars) return;
+        synchronized (memory) {
+            String prev = memory.put(key, text);
+            if (prev != null) memoryChars -= prev.length();
+            memoryChars += text.length();
+            Iterator<Map.Entry<String, String>> it = memory.entrySet().iterator();
+            while (memoryChars > memoryMaxChars && it.hasNext()) {
+                Map.Entry<String, String> eldest = it.next();
+                memoryChars -= eldest.getValue().length();
+                it.remove();
+            }
+        }
+    }
+
+    private Path cacheRoot() {
+        return Paths.get(uploadPath).toAbsolutePath().normalize().resolve(".text-cache");
+    }
+
+    private Path diskPath(String key) {
+        return cacheRoot().resolve(EXTRACTOR_VERSION).resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    private void writeDisk(Path target, String text) {
+        try {
+            Files.createDirectories(target.getParent());
+            // 先写临时文件再原子替换，避免并发读到半截内容
+            Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            Files.writeString(tmp, text, StandardCharsets.UTF_8);
             try {
-                AutoDetectParser parser = new AutoDetectParser();
-                BodyContentHandler handler = new BodyContentHandler(-1);
-                Metadata metadata = new Metadata();
-                if (mimeType != null) metadata.set("Content-Type", mimeType);
-                if (fileName != null) metadata.set("resourceName", fileName);
-                parser.parse(inputStream, handler, metadata);
-                return handler.toString();
-            } catch (Exception e) {
-                // fallback
-                return tika.parseToString(inputStream);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception atomicEx) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
             }
+        } catch (Exception e) {
+            log.warn("Text cache write failed: {}, err={}", target, e.getMessage());
         }
     }
-}
 
+    private static String sha256(byte[] bytes) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(md.digest(bytes));
+    }
 
+    private record CachedFile(Path path, long size, long lastUsedMillis) {}
+}
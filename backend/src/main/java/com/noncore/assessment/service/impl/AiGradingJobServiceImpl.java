@@ -0,0 +1,487 @@
+package com.noncore.assessment.service.impl;
+
+import com.noncore.assessment.config.AiConfigProperties;
+import com.noncore.assessment.dto.request.AiChatRequest;
+import com.noncore.assessment.dto.request.AiGradingJobRequest;
+import com.noncore.assessment.dto.response.AiGradingJobResponse;
+import com.noncore.assessment.entity.AiGradingHistory;
+import com.noncore.assessment.entity.AiGradingJob;
+import com.noncore.assessment.entity.AiGradingJobItem;
+import com.noncore.assessment.exception.BusinessException;
+import com.noncore.assessment.exception.ErrorCode;
+import com.noncore.assessment.mapper.AiGradingJobItemMapper;
+import com.noncore.assessment.mapper.AiGradingJobMapper;
+import com.noncore.assessment.service.AiGradingHistoryService;
+import com.noncore.assessment.service.AiGradingJobService;
+import com.noncore.assessment.service.AiService;
+import com.noncore.assessment.service.FileStorageService;
+import com.noncore.assessment.service.ai.AiEssayGrader;
+import com.noncore.assessment.service.ai.AiGradingNormalizer;
+import com.noncore.assessment.service.file.DocumentTextExtractor;
+import com.noncore.assessment.util.Jsons;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI 批量批改任务执行引擎。
+ *
+ * <p>每个供应商（google / glm）一个固定大小线程池，大小即该供应商同时执行的条目上限；
+ * 上游返回 429/503（{@link ErrorCode#AI_RATE_LIMITED}）时按 ai.retry 配置指数退避，
+ * 并让同一供应商的其它条目一起暂停到退避结束，避免持续撞限流；上游被熔断（{@link ErrorCode#AI_CIRCUIT_OPEN}）时
+ * 整个供应商暂停一个熔断周期再试，而不是让剩余条目立即全部失败。本地排队拒绝（{@link ErrorCode#AI_OVERLOADED}）
+ * 不是上游信号：只让该条目短暂随机延迟后重试，不暂停供应商；三类信号共用 ai.retry.max-attempts 重试预算，
+ * 用尽后条目才记为失败。</p>
+ *
+ * <p>条目开始/结束都会落库；启动时把仍为 running 的任务中未完成的条目重新排队，已完成条目不会重跑。</p>
+ */
+@Slf4j
+@Service
+public class AiGradingJobServiceImpl implements AiGradingJobService {
+
+    private static final String DEFAULT_FILE_MODEL = "google/gemini-2.5-pro";
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final AiGradingJobMapper jobMapper;
+    private final AiGradingJobItemMapper itemMapper;
+    private final AiGradingHistoryService historyService;
+    private final AiService aiService;
+    private final AiEssayGrader essayGrader;
+    private final FileStorageService fileStorageService;
+    private final DocumentTextExtractor documentTextExtractor;
+    private final AiConfigProperties aiConfig;
+
+    private final Map<String, ExecutorService> providerPools = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> providerPausedUntil = new ConcurrentHashMap<>();
+    private final Map<Long, JobRun> activeRuns = new ConcurrentHashMap<>();
+
+    public AiGradingJobServiceImpl(AiGradingJobMapper jobMapper,
+                                   AiGradingJobItemMapper itemMapper,
+                                   AiGradingHistoryService historyService,
+                                   AiService aiService,
+                                   AiEssayGrader essayGrader,
+                                   FileStorageService fileStorageService,
+                                   DocumentTextExtractor documentTextExtractor,
+                                   AiConfigProperties aiConfig) {
+        this.jobMapper = jobMapper;
+        this.itemMapper = itemMapper;
+        this.historyService = historyService;
+        this.aiService = aiService;
+        this.essayGrader = essayGrader;
+        this.fileStorageService = fileStorageService;
+        this.documentTextExtractor = documentTextExtractor;
+        this.aiConfig = aiConfig;
+    }
+
+    @Override
+    public AiGradingJob submit(Long teacherId, AiGradingJobRequest request) {
+        return start(teacherId, request).job;
+    }
+
+    @Override
+    public AiGradingJobResponse submitAndWait(Long teacherId, AiGradingJobRequest request) {
+        JobRun run = start(teacherId, request);
+        try {
+            run.done.get(Math.max(1, aiConfig.getGradingJob().getWaitTimeoutMs()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 不再占用请求线程；任务继续在后台执行并逐条落库
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "批改任务仍在执行，可通过任务ID查询结果: " + run.job.getId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "批改任务等待被中断，可通过任务ID查询结果: " + run.job.getId());
+        } catch (ExecutionException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "批改任务执行失败: " + e.getCause().getMessage());
+        }
+        return getJob(teacherId, run.job.getId());
+    }
+
+    @Override
+    public AiGradingJobResponse getJob(Long teacherId, Long jobId) {
+        AiGradingJob job = jobMapper.selectByIdAndTeacher(jobId, teacherId);
+        if (job == null) {
+            throw new BusinessException(ErrorCode.DATA_NOT_FOUND, "批改任务不存在");
+        }
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (AiGradingJobItem it : itemMapper.listByJob(jobId)) {
+            items.add(toView(it));
+        }
+        return new AiGradingJobResponse(job, items);
+    }
+
+    @Override
+    public Runnable subscribe(Long teacherId, Long jobId, Listener listener) {
+        AiGradingJob job = jobMapper.selectByIdAndTeacher(jobId, teacherId);
+        if (job == null) {
+            throw new BusinessException(ErrorCode.DATA_NOT_FOUND, "批改任务不存在");
+        }
+        JobRun run = activeRuns.get(jobId);
+        if (run != null) {
+            run.listeners.add(listener);
+            // 注册与完成之间存在竞态：注册后再确认一次
+            if (!run.done.isDone()) {
+                return () -> run.listeners.remove(listener);
+            }
+            run.listeners.remove(listener);
+        }
+        listener.onCompleted(jobMapper.selectById(jobId));
+        return () -> {};
+    }
+
+    /**
+     * 启动时续跑未完成任务（上次进程中途退出）。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        try {
+            for (AiGradingJob job : jobMapper.listUnfinished()) {
+                itemMapper.resetRunning(job.getId());
+                List<AiGradingJobItem> pending = itemMapper.listPendingByJob(job.getId());
+                log.info("Resuming AI grading job {}: pending={}", job.getId(), pending.size());
+                schedule(job, pending);
+            }
+        } catch (Exception ex) {
+            log.warn("AI grading job resume failed: {}", ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 未完成条目保留 running/pending 状态，下次启动续跑
+        providerPools.values().forEach(ExecutorService::shutdownNow);
+    }
+
+    // -------------------- submit & schedule --------------------
+
+    private JobRun start(Long teacherId, AiGradingJobRequest request) {
+        boolean files = request.getFileIds() != null && !request.getFileIds().isEmpty();
+        boolean essays = request.getEssays() != null && !request.getEssays().isEmpty();
+        if (files == essays) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "fileIds 与 essays 必须且只能提供一项");
+        }
+
+        AiGradingJob job = new AiGradingJob();
+        job.setTeacherId(teacherId);
+        job.setKind(files ? "files" : "essays");
+        job.setModel(files ? resolveFileModel(request.getModel()) : request.getModel());
+        job.setSamples(clampSamples(request.getSamples()));
+        job.setDiffThreshold(clampDiffThreshold(request.getDiffThreshold()));
+        job.setJsonOnly(essays || request.getJsonOnly() == null || request.getJsonOnly());
+        job.setUseGradingPrompt(request.getUseGradingPrompt() == null || request.getUseGradingPrompt());
+        job.setForceRefresh(Boolean.TRUE.equals(request.getForceRefresh()));
+        job.setStatus("running");
+        job.setTotalCount(files ? request.getFileIds().size() : request.getEssays().size());
+        job.setCreatedAt(LocalDateTime.now());
+        jobMapper.insert(job);
+
+        List<AiGradingJobItem> items = new ArrayList<>();
+        for (int i = 0; i < job.getTotalCount(); i++) {
+            AiGradingJobItem it = new AiGradingJobItem();
+            it.setJobId(job.getId());
+            it.setItemIndex(i);
+            if (files) {
+                it.setFileId(request.getFileIds().get(i));
+            } else {
+                AiChatRequest essay = request.getEssays().get(i);
+                if (essay.getModel() == null && request.getModel() != null) essay.setModel(request.getModel());
+                // forceRefresh 只按任务级生效且不落库
+                essay.setForceRefresh(null);
+                it.setInputJson(Jsons.toJson(essay));
+            }
+            items.add(it);
+        }
+        itemMapper.insertBatch(items);
+        return schedule(job, itemMapper.listPendingByJob(job.getId()));
+    }
+
+    private JobRun schedule(AiGradingJob job, List<AiGradingJobItem> pending) {
+        JobRun run = new JobRun(job, pending.size());
+        activeRuns.put(job.getId(), run);
+        if (pending.isEmpty()) {
+            finish(run);
+            return run;
+        }
+        for (AiGradingJobItem item : pending) {
+            String provider = providerOf(modelOf(job, item));
+            poolFor(provider).execute(() -> {
+                if (runItem(job, item, provider)) {
+                    run.itemFinished(item);
+                }
+            });
+        }
+        return run;
+    }
+
+    private ExecutorService poolFor(String provider) {
+        return providerPools.computeIfAbsent(provider, p -> {
+            Integer configured = aiConfig.getGradingJob().getConcurrency().get(p);
+            int size = Math.max(1, configured != null ? configured : aiConfig.getGradingJob().getDefaultConcurrency());
+            AtomicInteger seq = new AtomicInteger();
+            log.info("AI grading pool for provider {}: concurrency={}", p, size);
+            return Executors.newFixedThreadPool(size, r -> {
+                Thread t = new Thread(r, "ai-grading-" + p + "-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        });
+    }
+
+    // -------------------- item execution --------------------
+
+    /**
+     * @return false 表示被中断（应用关闭），条目保持 running，下次启动续跑
+     */
+    private boolean runItem(AiGradingJob job, AiGradingJobItem item, String provider) {
+        item.setStatus("running");
+        item.setAttempts((item.getAttempts() == null ? 0 : item.getAttempts()) + 1);
+        item.setStartedAt(LocalDateTime.now());
+        try {
+            itemMapper.markRunning(item.getId(), item.getStartedAt());
+            gradeWithBackoff(job, item, provider);
+            item.setStatus("succeeded");
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception ex) {
+            // 关闭时的中断常被下层包装成业务异常（如限流排队被中断），不能据此把条目记为失败
+            if (Thread.currentThread().isInterrupted() || causedByInterrupt(ex)) {
+                Thread.currentThread().interrupt();
+                log.info("AI grading item interrupted, left for resume: jobId={}, index={}", job.getId(), item.getItemIndex());
+                return false;
+            }
+            item.setStatus("failed");
+            String msg = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+            item.setErrorMessage(msg.length() > MAX_ERROR_LENGTH ? msg.substring(0, MAX_ERROR_LENGTH) : msg);
+            log.warn("AI grading item failed: jobId={}, index={}, err={}", job.getId(), item.getItemIndex(), msg);
+        }
+        item.setFinishedAt(LocalDateTime.now());
+        try {
+            itemMapper.markFinished(item);
+        } catch (Exception ex) {
+            log.warn("AI grading item write failed: jobId={}, index={}, err={}", job.getId(), item.getItemIndex(), ex.getMessage());
+        }
+        return true;
+    }
+
+    private static boolean causedByInterrupt(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof InterruptedException) return true;
+        }
+        return false;
+    }
+
+    private void gradeWithBackoff(AiGradingJob job, AiGradingJobItem item, String provider) throws Exception {
+        AiConfigProperties.RetryConfig rc = aiConfig.getRetry();
+        int attempts = Math.max(1, rc.getMaxAttempts());
+        AtomicLong pausedUntil = providerPausedUntil.computeIfAbsent(provider, p -> new AtomicLong());
+        for (int i = 1; ; i++) {
+            long wait = pausedUntil.get() - System.currentTimeMillis();
+            if (wait > 0) Thread.sleep(wait);
+            try {
+                gradeItem(job, item);
+                return;
+            } catch (BusinessException be) {
+                boolean circuitOpen = ErrorCode.AI_CIRCUIT_OPEN.getCode().equals(be.getCode());
+                boolean overloaded = ErrorCode.AI_OVERLOADED.getCode().equals(be.getCode());
+                if (!(circuitOpen || overloaded || ErrorCode.AI_RATE_LIMITED.getCode().equals(be.getCode())) || i >= attempts) throw be;
+                if (overloaded) {
+                    // 本地排队拒绝：只让当前条目稍后重排，不影响同供应商的其它条目
+                    long delay = Math.max(0, rc.getBackoffMs()) + ThreadLocalRandom.current().nextLong(Math.max(1, rc.getJitterMs()));
+                    log.info("AI grading local queue full for provider {}, retrying in {} ms (jobId={}, index={}, attempt {}/{})",
+                            provider, delay, job.getId(), item.getItemIndex(), i + 1, attempts);
+                    Thread.sleep(delay);
+                    continue;
+                }
+                long backoff = circuitOpen
+                        ? Math.max(0, aiConfig.getHttp().getBreakerOpenMs())
+                        : (long) (Math.max(0, rc.getBackoffMs()) * Math.pow(2, i - 1));
+                backoff += ThreadLocalRandom.current().nextLong(Math.max(1, rc.getJitterMs()));
+                long until = System.currentTimeMillis() + backoff;
+                pausedUntil.accumulateAndGet(until, Math::max);
+                log.warn("AI grading provider {} {}, pausing {} ms (jobId={}, index={}, attempt {}/{})",
+                        provider, circuitOpen ? "circuit open" : "rate limited", backoff, job.getId(), item.getItemIndex(), i + 1, attempts);
+            }
+        }
+    }
+
+    private void gradeItem(AiGradingJob job, AiGradingJobItem item) throws Exception {
+        Long teacherId = job.getTeacherId();
+        AiChatRequest req;
+        if ("files".equals(job.getKind())) {
+            var info = fileStorageService.getFileInfo(item.getFileId());
+            String fileName = info != null ? (info.getOriginalName() != null ? info.getOriginalName() : info.getStoredName()) : ("#" + item.getFileId());
+            item.setFileName(fileName);
+            if (!fileStorageService.hasFilePermission(item.getFileId(), teacherId)) {
+                throw new BusinessException(ErrorCode.FILE_PERMISSION_DENIED, "没有权限读取该文件");
+            }
+            // 抽取结果按内容哈希缓存：命中时不读取原文件
+            Long fileId = item.getFileId();
+            String text = documentTextExtractor.extractText(info != null ? info.getContentHash() : null,
+                    () -> fileStorageService.downloadFile(fileId, teacherId), fileName, info != null ? info.getMimeType() : null);
+            req = new AiChatRequest();
+            req.setMessages(List.of(new AiChatRequest.Message("user", text)));
+            req.setModel(job.getModel());
+            req.setJsonOnly(job.getJsonOnly());
+            req.setUseGradingPrompt(job.getUseGradingPrompt());
+            req.setForceRefresh(job.getForceRefresh());
+        } else {
+            req = Jsons.parseAs(item.getInputJson(), AiChatRequest.class);
+            req.setJsonOnly(Boolean.TRUE);
+            req.setForceRefresh(job.getForceRefresh());
+        }
+
+        if (!Boolean.TRUE.equals(job.getJsonOnly())) {
+            // 非 JSON-only 保持一次调用（供前端 fallback 调试用），不写历史
+            String text = aiService.generateAnswer(req, teacherId);
+            item.setResultJson(Jsons.toJson(Map.of("text", text == null ? "" : text)));
+            return;
+        }
+
+        // essays 条目可单独指定取样参数，未指定时沿用任务级参数
+        int samples = req.getSamples() != null ? clampSamples(req.getSamples()) : job.getSamples();
+        double diffThreshold = req.getDiffThreshold() != null ? clampDiffThreshold(req.getDiffThreshold()) : job.getDiffThreshold();
+        Map<String, Object> graded = essayGrader.gradeJsonOnly(req, teacherId, samples, diffThreshold);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> parsed = graded.get("result") instanceof Map<?, ?> m ? (Map<String, Object>) m : Map.of();
+        String rawJson = String.valueOf(graded.getOrDefault("rawJson", ""));
+
+        Double finalScore = null;
+        try {
+            finalScore = AiGradingNormalizer.extractFinalScore05(parsed);
+        } catch (Exception ignored) {}
+        var rec = new AiGradingHistory();
+        rec.setTeacherId(teacherId);
+        rec.setFileId(item.getFileId());
+        rec.setFileName(item.getFileName());
+        rec.setModel(req.getModel());
+        rec.setFinalScore(finalScore);
+        rec.setRawJson(rawJson);
+        rec.setCreatedAt(LocalDateTime.now());
+        historyService.save(rec);
+        item.setHistoryId(rec.getId());
+        item.setResultJson(Jsons.toJson(parsed));
+    }
+
+    private void finish(JobRun run) {
+        Long jobId = run.job.getId();
+        try {
+            jobMapper.refreshCounts(jobId);
+            jobMapper.markCompleted(jobId, LocalDateTime.now());
+        } catch (Exception ex) {
+            log.warn("AI grading job completion write failed: jobId={}, err={}", jobId, ex.getMessage());
+        }
+        AiGradingJob finished = jobMapper.selectById(jobId);
+        activeRuns.remove(jobId);
+        run.done.complete(finished);
+        for (Listener l : run.listeners) {
+            try {
+                l.onCompleted(finished);
+            } catch (Exception ignored) {}
+        }
+        log.info("AI grading job {} completed: total={}, succeeded={}, failed={}", jobId,
+                finished != null ? finished.getTotalCount() : null,
+                finished != null ? finished.getSucceededCount() : null,
+                finished != null ? finished.getFailedCount() : null);
+    }
+
+    // -------------------- helpers --------------------
+
+    private Map<String, Object> toView(AiGradingJobItem it) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("itemIndex", it.getItemIndex());
+        if (it.getFileId() != null) m.put("fileId", it.getFileId());
+        if (it.getFileName() != null) m.put("fileName", it.getFileName());
+        m.put("status", it.getStatus());
+        m.put("attempts", it.getAttempts());
+        if (it.getHistoryId() != null) m.put("historyId", it.getHistoryId());
+        if (it.getResultJson() != null) {
+            try {
+                m.put("result", Jsons.parseObject(it.getResultJson()));
+            } catch (Exception ignored) {
+                m.put("result", Map.of("raw", it.getResultJson()));
+            }
+        }
+        if (it.getErrorMessage() != null) m.put("error", it.getErrorMessage());
+        return m;
+    }
+
+    private String modelOf(AiGradingJob job, AiGradingJobItem item) {
+        if ("essays".equals(job.getKind())) {
+            try {
+                AiChatRequest req = Jsons.parseAs(item.getInputJson(), AiChatRequest.class);
+                if (req != null && req.getModel() != null) return req.getModel();
+            } catch (Exception ignored) {}
+        }
+        return job.getModel();
+    }
+
+    private static String providerOf(String model) {
+        if (model == null || model.isBlank() || model.startsWith("google/")) return "google";
+        if (model.startsWith("glm-")) return "glm";
+        return "default";
+    }
+
+    private static String resolveFileModel(String model) {
+        // 允许 google/* 与 glm-*，其余回退默认（避免前端选了 GLM 但后端被强制改为 Gemini）
+        if (model == null || model.isBlank()) return DEFAULT_FILE_MODEL;
+        if (!(model.startsWith("google/") || model.startsWith("glm-"))) return DEFAULT_FILE_MODEL;
+        return model;
+    }
+
+    private static int clampSamples(Integer samples) {
+        int s = samples == null ? 1 : samples;
+        return Math.max(1, Math.min(s, 3));
+    }
+
+    private static double clampDiffThreshold(Double diffThreshold) {
+        double d = diffThreshold == null ? 0.8 : diffThreshold;
+        return Math.max(0, Math.min(d, 5));
+    }
+
+    /**
+     * 单个任务在本进程内的执行状态。
+     */
+    private final class JobRun {
+        private final AiGradingJob job;
+        private final AtomicInteger remaining;
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<AiGradingJob> done = new CompletableFuture<>();
+
+        private JobRun(AiGradingJob job, int pending) {
+            this.job = job;
+            this.remaining = new AtomicInteger(pending);
+        }
+
+        private void itemFinished(AiGradingJobItem item) {
+            if (!listeners.isEmpty()) {
+                Map<String, Object> view = toView(item);
+                for (Listener l : listeners) {
+                    try {
+                        l.onItem(view);
+                    } catch (Exception ignored) {}
+                }
+            }
+            if (remaining.decrementAndGet() == 0) {
+                finish(this);
+            }
+        }
+    }
+}
@@ -13,8 +13,11 @@ import com.noncore.assessment.entity.AiConversation;
 import com.noncore.assessment.service.CourseService;
 import com.noncore.assessment.service.EnrollmentService;
 import com.noncore.assessment.service.FileStorageService;
+import com.noncore.assessment.service.ai.AiGradingResultCache;
 import com.noncore.assessment.service.file.DocumentTextExtractor;
 import com.noncore.assessment.service.llm.LlmClient;
+import com.noncore.assessment.service.llm.LlmStreamCancellation;
+import com.noncore.assessment.service.llm.LlmStreamListener;
 import com.noncore.assessment.service.llm.PromptBuilder;
 import com.noncore.assessment.config.AiConfigProperties;
 import com.noncore.assessment.service.llm.PromptLoader;
@@ -46,6 +49,7 @@ public class AiServiceImpl implements AiService {
     private final AiConversationService conversationService;
     private final AiMemoryService memoryService;
     private final DocumentTextExtractor documentTextExtractor;
+    private final AiGradingResultCache gradingResultCache;
 
     // 保护：避免用户写过长记忆/附件导致上下文溢出
     private static final int MEMORY_MAX_CHARS = 3000;
@@ -53,6 +57,31 @@ public class AiServiceImpl implements AiService {
 
     @Override
     public String generateAnswer(AiChatRequest request, Long teacherId) {
+        PreparedChat call = prepareChat(request, teacherId);
+        if (call.google()) {
+            return geminiClient.generate(call.payloadMessages(), call.model().replaceFirst("^google/", ""), call.jsonOnly(), call.baseUrl(), call.apiKey());
+        }
+        if (call.jsonOnly()) {
+            return deepseekClient.createChatCompletionJsonOnly(call.payloadMessages(), call.model(), false, call.baseUrl(), call.apiKey());
+        }
+        return deepseekClient.createChatCompletionRaw(call.payloadMessages(), call.model(), false, call.baseUrl(), call.apiKey());
+    }
+
+    @Override
+    public String streamAnswer(AiChatRequest request, Long teacherId, LlmStreamListener listener, LlmStreamCancellation cancellation) {
+        PreparedChat call = prepareChat(request, teacherId);
+        if (call.google()) {
+            return geminiClient.streamGenerate(call.payloadMessages(), call.model().replaceFirst("^google/", ""), call.jsonOnly(),
+                    call.baseUrl(), call.apiKey(), listener, cancellation);
+        }
+        return deepseekClient.streamChatCompletion(call.payloadMessages(), call.model(), call.jsonOnly(),
+                call.baseUrl(), call.apiKey(), listener, cancellation);
+    }
+
+    /**
+     * 组装一次对话调用：权限校验、系统 Prompt/记忆注入、模型选择、附件内联与供应商配置。
+     */
+    private PreparedChat prepareChat(AiChatRequest request, Long teacherId) {
         List<Message> messages = request.getMessages();
         if (CollectionUtils.isEmpty(messages)) {
             throw new BusinessException(ErrorCode.INVALID_PARAMETER, "messages 不能为空");
@@ -159,8 +188,10 @@ public class AiServiceImpl implements AiService {
                                     ? info.getOriginalName()
                                     : (info.getStoredName() != null ? info.getStoredName() : ("#" + fid));
                             if (!isSupportedDocMime(mime, name)) continue;
-                            byte[] bytes = fileStorageService.downloadFile(fid, teacherId);
-                            String extracted = documentTextExtractor.extractText(new java.io.ByteArrayInputStream(bytes), name, mime);
+                            // 先校验权限；抽取结果按内容哈希缓存，命中时不读取原文件
+                            if (!fileStorageService.hasFilePermission(fid, teacherId)) continue;
+                            String extracted = documentTextExtractor.extractText(info.getContentHash(),
+                                    () -> fileStorageService.downloadFile(fid, teacherId), name, mime);
                             extracted = normalizeExtractedText(extracted);
                             if (extracted == null || extracted.isBlank()) continue;
                             String chunk = "【附件文本：" + name + "】\n" + extracted + "\n";
@@ -219,17 +250,22 @@ public class AiServiceImpl implements AiService {
         if (baseUrl == null || baseUrl.isBlank()) {
             throw new BusinessException(ErrorCode.INVALID_PARAMETER, "LLM base-url 未配置");
         }
-        if (useGoogle) {
-            return geminiClient.generate(payloadMessages, model.replaceFirst("^google/", ""), Boolean.TRUE.equals(request.getJsonOnly()), baseUrl, apiKey);
-        }
-        if (Boolean.TRUE.equals(request.getJsonOnly())) {
-            return deepseekClient.createChatCompletionJsonOnly(payloadMessages, model, false, baseUrl, apiKey);
-        }
-        return deepseekClient.createChatCompletionRaw(payloadMessages, model, false, baseUrl, apiKey);
+        return new PreparedChat(useGoogle, model, baseUrl, apiKey, payloadMessages, Boolean.TRUE.equals(request.getJsonOnly()));
     }
 
     @Override
     public String generateAnswerJsonOnly(AiChatRequest request, Long teacherId) {
+        return generateAnswerJsonOnly(request, teacherId, 0, false);
+    }
+
+    @Override
+    public String generateAnswerJsonOnly(AiChatRequest request, Long teacherId, int sampleIndex, boolean useGradingCache) {
+        return generateAnswerJsonOnly(request, teacherId, sampleIndex, useGradingCache, null);
+    }
+
+    @Override
+    public String generateAnswerJsonOnly(AiChatRequest request, Long teacherId, int sampleIndex, boolean useGradingCache,
+                                         LlmStreamCancellation cancellation) {
         List<Message> messages = request.getMessages();
         if (org.springframework.util.CollectionUtils.isEmpty(messages)) {
             throw new BusinessException(ErrorCode.INVALID_PARAMETER, "messages 不能为空");
@@ -304,12 +340,32 @@ public class AiServiceImpl implements AiService {
         if (baseUrl == null || baseUrl.isBlank()) {
             throw new BusinessException(ErrorCode.INVALID_PARAMETER, "LLM base-url 未配置");
         }
-        if (useGoogle2) {
-            return geminiClient.generate(payloadMessages, model.replaceFirst("^google/", ""), true, baseUrl, apiKey);
+
+        // 批改结果缓存：Prompt 内容已包含在消息中，版本号单独入键便于排查
+        String cacheKey = null;
+        String promptVersion = systemPrompt == null ? "none" : promptLoader.promptVersion(request.getSystemPromptPath());
+        if (useGradingCache && gradingResultCache.isEnabled()) {
+            cacheKey = gradingResultCache.key(payloadMessages, model, promptVersion, sampleIndex, true);
+            if (!Boolean.TRUE.equals(request.getForceRefresh())) {
+                String cached = gradingResultCache.get(cacheKey);
+                if (cached != null) {
+                    return cached;
+                }
+            }
         }
-        return deepseekClient.createChatCompletionJsonOnly(payloadMessages, model, false, baseUrl, apiKey);
+
+        String raw = useGoogle2
+                ? geminiClient.generate(payloadMessages, model.replaceFirst("^google/", ""), true, baseUrl, apiKey, cancellation)
+                : deepseekClient.createChatCompletionJsonOnly(payloadMessages, model, false, baseUrl, apiKey, cancellation);
+        if (cacheKey != null) {
+            gradingResultCache.put(cacheKey, model, promptVersion, sampleIndex, raw);
+        }
+        return raw;
     }
 
+    private record PreparedChat(boolean google, String model, String baseUrl, String apiKey,
+                                List<Map<String, Object>> payloadMessages, boolean jsonOnly) {}
+
     private String buildMemorySystemPrompt(String memoryContent) {
         // 尽量用“系统级约束”表达，让模型在回答时自然参考；同时明确优先级，避免与当前问题冲突时“死守记忆”。
         return """
@@ -8,6 +8,7 @@ import com.noncore.assessment.entity.User;
 import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
 import com.noncore.assessment.mapper.UserMapper;
+import com.noncore.assessment.security.TokenRevocationStore;
 import com.noncore.assessment.service.AuthService;
 import com.noncore.assessment.service.UserService;
 import com.noncore.assessment.service.StudentService;
@@ -34,13 +35,16 @@ public class AuthServiceImpl implements AuthService {
     private final JwtUtil jwtUtil;
     private final StudentService studentService;
     private final UserService userService;
+    private final TokenRevocationStore revocationStore;
 
-    public AuthServiceImpl(UserMapper userMapper, PasswordEncoder passwordEncoder, JwtUtil jwtUtil, StudentService studentService, UserService userService) {
+    public AuthServiceImpl(UserMapper userMapper, PasswordEncoder passwordEncoder, JwtUtil jwtUtil, StudentService studentService,
+                           UserService userService, TokenRevocationStore revocationStore) {
         this.userMapper = userMapper;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtil = jwtUtil;
         this.studentService = studentService;
         this.userService = userService;
+        this.revocationStore = revocationStore;
     }
 
     @Override
@@ -146,15 +150,19 @@ public class AuthServiceImpl implements AuthService {
     public AuthResponse refreshToken(String refreshToken) {
         logger.info("刷新令牌请求");
 
-        if (!StringUtils.hasText(refreshToken) || !jwtUtil.validateToken(refreshToken)) {
+        if (!StringUtils.hasText(refreshToken)) {
             throw new BusinessException(ErrorCode.INVALID_TOKEN, "无效的刷新令牌");
         }
+        JwtUtil.VerifiedToken verified = jwtUtil.verify(refreshToken);
 
-        if (!jwtUtil.isRefreshToken(refreshToken)) {
+        if (!"refresh".equals(verified.tokenType())) {
             throw new BusinessException(ErrorCode.INVALID_TOKEN, "令牌类型错误");
         }
+        if (revocationStore.isRevoked(verified)) {
+            throw new BusinessException(ErrorCode.INVALID_TOKEN, "刷新令牌已失效");
+        }
 
-        Long userId = jwtUtil.getUserIdFromToken(refreshToken);
+        Long userId = verified.principal().getId();
         User user = userMapper.selectUserById(userId);
         if (user == null) {
             throw new BusinessException(ErrorCode.USER_NOT_FOUND, "用户不存在");
@@ -172,12 +180,25 @@ public class AuthServiceImpl implements AuthService {
 
     @Override
     public void logout(String token) {
-        // 不使用集中式黑名单；让 JWT 依赖自身过期时间
-        logger.info("用户登出");
+        if (!StringUtils.hasText(token)) return;
+        try {
+            // 吊销到令牌自身过期为止
+            revocationStore.revokeToken(jwtUtil.verify(token));
+            logger.info("用户登出");
+        } catch (BusinessException e) {
+            // 已过期或无效的令牌无需吊销
+            logger.info("用户登出（令牌已失效）");
+        }
     }
 
     @Override
-    public boolean isTokenBlacklisted(String token) { return false; }
+    public boolean isTokenBlacklisted(String token) {
+        try {
+            return revocationStore.isRevoked(jwtUtil.verify(token));
+        } catch (BusinessException e) {
+            return false;
+        }
+    }
     
     private User findUserByUsernameOrEmail(String identifier) {
         User user = userMapper.selectUserByUsername(identifier);
@@ -5,6 +5,7 @@ import com.noncore.assessment.behavior.BehaviorSchemaVersions;
 import com.noncore.assessment.dto.response.BehaviorSummaryResponse;
 import com.noncore.assessment.entity.AbilityAssessment;
 import com.noncore.assessment.entity.AbilityGoal;
+import com.noncore.assessment.entity.BehaviorDailyRollup;
 import com.noncore.assessment.entity.BehaviorEvent;
 import com.noncore.assessment.entity.BehaviorSummarySnapshot;
 import com.noncore.assessment.exception.BusinessException;
@@ -32,9 +33,10 @@ import java.util.*;
 @RequiredArgsConstructor
 public class BehaviorAggregationServiceImpl implements BehaviorAggregationService {
 
-    private static final int DEFAULT_EVENT_LIMIT = 5000;
-    private static final int PAGE_SIZE = 5000;
-    private static final int MAX_EVENTS_HARD_CAP = 100_000;
+    /** 事件级信号（证据引用、burst、反馈后修改）只读取最近的少量原始事件；计数与占比统计来自日汇总或 COUNT 查询 */
+    private static final int DETAIL_EVENT_LIMIT = 300;
+    private static final List<String> SUBMIT_TYPES = List.of(
+            BehaviorEventType.ASSIGNMENT_SUBMIT.getCode(), BehaviorEventType.ASSIGNMENT_RESUBMIT.getCode());
     private static final DateTimeFormatter EVIDENCE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
 
     private final BehaviorEventService behaviorEventService;
@@ -81,64 +83,8 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
         }
 
         LocalDateTime now = LocalDateTime.now();
-        LocalDateTime to = now;
-        LocalDateTime from = to.minusDays(rangeToDays(rk));
-
-        // 重要：避免长时间窗内事件过多导致“只取最新 N 条”，从而出现“久远行为证据不读取”
-        // 这里使用分页拉取（倒序），并设置硬上限避免极端情况下内存压力。
-        boolean truncated = false;
-        List<BehaviorEvent> events = new ArrayList<>();
-        try {
-            int offset = 0;
-            while (events.size() < MAX_EVENTS_HARD_CAP) {
-                int limit = Math.min(PAGE_SIZE, MAX_EVENTS_HARD_CAP - events.size());
-                List<BehaviorEvent> page = behaviorEventService.listByStudentCourseRangePaged(studentId, courseId, from, to, offset, limit);
-                if (page == null || page.isEmpty()) break;
-                events.addAll(page);
-                if (page.size() < limit) break;
-                offset += page.size();
-            }
-            if (events.size() >= MAX_EVENTS_HARD_CAP) truncated = true;
-        } catch (Exception ignored) {
-            // 回退：保持旧行为（最多取最新 DEFAULT_EVENT_LIMIT 条）
-            try {
-                List<BehaviorEvent> fallback = behaviorEventService.listByStudentCourseRange(studentId, courseId, from, to, DEFAULT_EVENT_LIMIT);
-                events = new ArrayList<>(fallback == null ? List.of() : fallback);
-                truncated = true;
-            } catch (Exception ignored2) {
-                events = new ArrayList<>();
-            }
-        }
-        List<BehaviorEvent> asc = new ArrayList<>(events == null ? List.of() : events);
-        asc.sort(Comparator.comparing(BehaviorEvent::getOccurredAt, Comparator.nullsLast(Comparator.naturalOrder()))
-                .thenComparing(BehaviorEvent::getId, Comparator.nullsLast(Comparator.naturalOrder())));
-
-        BehaviorSummaryResponse summary = aggregate(studentId, courseId, rk, from, to, asc, now);
-        // 若发生截断，追加提示信号（不影响 schemaVersion；仅 signals 扩展字段）
-        try {
-            if (truncated) {
-                Map<String, Object> sig = summary.getSignals() == null ? new HashMap<>() : new HashMap<>(summary.getSignals());
-                sig.put("truncated", true);
-                sig.put("truncatedMaxEvents", MAX_EVENTS_HARD_CAP);
-                summary.setSignals(sig);
-            }
-        } catch (Exception ignored) {}
-
-        BehaviorSummarySnapshot snapshot = new BehaviorSummarySnapshot();
-        snapshot.setSchemaVersion(BehaviorSchemaVersions.SUMMARY_V1);
-        snapshot.setStudentId(studentId);
-        snapshot.setCourseId(courseId);
-        snapshot.setRangeKey(rk);
-        snapshot.setPeriodFrom(from);
-        snapshot.setPeriodTo(to);
-        snapshot.setInputEventCount(summary.getMeta() != null ? summary.getMeta().getInputEventCount() : 0);
-        snapshot.setEventTypesIncluded(Jsons.toJson(summary.getMeta() != null ? summary.getMeta().getEventTypesIncluded() : List.of()));
-        snapshot.setSummaryJson(Jsons.toJson(summary));
-        snapshot.setGeneratedAt(now);
-        snapshot.setCreatedAt(now);
-        snapshotService.save(snapshot);
-
-        // 重新返回（此时直接返回聚合对象）
+        BehaviorSummaryResponse summary = buildSummary(studentId, courseId, rk, now);
+        saveSnapshot(studentId, courseId, rk, summary, windowStart(rk, now), now);
         return summary;
     }
 
@@ -149,23 +95,63 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
     public BehaviorSummarySnapshot buildAndSaveSnapshot(Long studentId, Long courseId, String range) {
         String rk = normalizeRange(range);
         LocalDateTime now = LocalDateTime.now();
+        BehaviorSummaryResponse summary = buildSummary(studentId, courseId, rk, now);
+        return saveSnapshot(studentId, courseId, rk, summary, windowStart(rk, now), now);
+    }
+
+    /**
+     * 基于日汇总 + 最近少量原始事件构建摘要。
+     *
+     * <p>时间窗按自然日对齐（含今天共 N 天），计数/类别/复听秒数/活跃天数/日上限等均来自至多 N 天的日汇总行，
+     * 不再分页扫描整个时间窗的原始事件。</p>
+     */
+    private BehaviorSummaryResponse buildSummary(Long studentId, Long courseId, String rk, LocalDateTime now) {
+        LocalDate today = now.toLocalDate();
+        LocalDateTime from = windowStart(rk, now);
+        LocalDate fromDate = from.toLocalDate();
         LocalDateTime to = now;
-        LocalDateTime from = to.minusDays(rangeToDays(rk));
 
-        List<BehaviorEvent> events = behaviorEventService.listByStudentCourseRange(studentId, courseId, from, to, DEFAULT_EVENT_LIMIT);
-        List<BehaviorEvent> asc = new ArrayList<>(events == null ? List.of() : events);
+        DailyTotals totals = DailyTotals.of(behaviorEventService.listDailyRollups(studentId, courseId, fromDate, today));
+        // 近 24h 提交数单独 COUNT：与日汇总的分母同为全量口径，不受原始事件条数上限影响
+        LocalDateTime since24h = to.minusHours(24).isBefore(from) ? from : to.minusHours(24);
+        int submitsLast24h = behaviorEventService.countByTypesInRange(studentId, courseId, SUBMIT_TYPES, since24h, to);
+
+        List<BehaviorEvent> recent = behaviorEventService.listByStudentCourseRangeBefore(studentId, courseId, from, to, null, DETAIL_EVENT_LIMIT);
+        List<BehaviorEvent> asc = new ArrayList<>(recent == null ? List.of() : recent);
         asc.sort(Comparator.comparing(BehaviorEvent::getOccurredAt, Comparator.nullsLast(Comparator.naturalOrder()))
                 .thenComparing(BehaviorEvent::getId, Comparator.nullsLast(Comparator.naturalOrder())));
 
-        BehaviorSummaryResponse summary = aggregate(studentId, courseId, rk, from, to, asc, now);
+        BehaviorSummaryResponse summary = aggregate(studentId, courseId, rk, from, to, totals, submitsLast24h, asc, now);
+        // 事件级信号只覆盖最近 DETAIL_EVENT_LIMIT 条时追加提示（计数类统计不受影响）
+        if (asc.size() >= DETAIL_EVENT_LIMIT && totals.total > asc.size()) {
+            Map<String, Object> sig = summary.getSignals() == null ? new HashMap<>() : new HashMap<>(summary.getSignals());
+            sig.put("eventDetailLimited", true);
+            sig.put("eventDetailLimit", DETAIL_EVENT_LIMIT);
+            summary.setSignals(sig);
+        }
+        return summary;
+    }
 
+    /**
+     * 时间窗起点：按自然日对齐，含今天共 rangeToDays 天。
+     */
+    private LocalDateTime windowStart(String rk, LocalDateTime now) {
+        return now.toLocalDate().minusDays(rangeToDays(rk) - 1L).atStartOfDay();
+    }
+
+    private BehaviorSummarySnapshot saveSnapshot(Long studentId,
+                                                 Long courseId,
+                                                 String rk,
+                                                 BehaviorSummaryResponse summary,
+                                                 LocalDateTime from,
+                                                 LocalDateTime now) {
         BehaviorSummarySnapshot snapshot = new BehaviorSummarySnapshot();
         snapshot.setSchemaVersion(BehaviorSchemaVersions.SUMMARY_V1);
         snapshot.setStudentId(studentId);
         snapshot.setCourseId(courseId);
         snapshot.setRangeKey(rk);
         snapshot.setPeriodFrom(from);
-        snapshot.setPeriodTo(to);
+        snapshot.setPeriodTo(now);
         snapshot.setInputEventCount(summary.getMeta() != null ? summary.getMeta().getInputEventCount() : 0);
         snapshot.setEventTypesIncluded(Jsons.toJson(summary.getMeta() != null ? summary.getMeta().getEventTypesIncluded() : List.of()));
         snapshot.setSummaryJson(Jsons.toJson(summary));
@@ -214,21 +200,24 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
                                               String rangeKey,
                                               LocalDateTime from,
                                               LocalDateTime to,
+                                              DailyTotals totals,
+                                              int submitsLast24h,
                                               List<BehaviorEvent> eventsAsc,
                                               LocalDateTime generatedAt) {
-        Map<String, Integer> countsByType = new HashMap<>();
-        Map<String, Integer> resourceByCategory = new HashMap<>();
-        Set<String> typesIncluded = new HashSet<>();
+        // 计数类统计（类型计数/资源类别/复听秒数）直接取日汇总
+        Map<String, Integer> countsByType = totals.countsByType;
+        Map<String, Integer> resourceByCategory = totals.resourceByCategory;
+        Set<String> typesIncluded = countsByType.keySet();
 
         int resubmitAfterFeedbackCount = 0;
         BehaviorEvent firstFeedbackForResubmit = null;
         BehaviorEvent firstResubmitAfterFeedback = null;
 
-        // 口语训练复听/回放：按秒累计（来自 metadata.deltaSeconds + metadata.audioRole）
-        long voiceReplaySecondsUser = 0;
-        long voiceReplaySecondsAssistant = 0;
+        // 口语训练复听/回放：按秒累计（来自 metadata.deltaSeconds + metadata.audioRole，写入时已汇总）
+        long voiceReplaySecondsUser = totals.replaySecondsUser;
+        long voiceReplaySecondsAssistant = totals.replaySecondsAssistant;
 
-        // 先分离 feedback_view 与 resubmit，做简单“反馈驱动迭代”检测（24h 内）
+        // 先分离 feedback_view 与 resubmit，做简单“反馈驱动迭代”检测（24h 内；基于最近原始事件）
         List<BehaviorEvent> feedbackViews = new ArrayList<>();
         List<BehaviorEvent> resubmits = new ArrayList<>();
 
@@ -236,37 +225,12 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
             if (e == null) continue;
             String t = e.getEventType();
             if (t == null) continue;
-            typesIncluded.add(t);
-            countsByType.put(t, countsByType.getOrDefault(t, 0) + 1);
-
             if (BehaviorEventType.FEEDBACK_VIEW.getCode().equalsIgnoreCase(t)) {
                 feedbackViews.add(e);
             }
             if (BehaviorEventType.ASSIGNMENT_RESUBMIT.getCode().equalsIgnoreCase(t)) {
                 resubmits.add(e);
             }
-
-            if (BehaviorEventType.RESOURCE_VIEW.getCode().equalsIgnoreCase(t)) {
-                Map<String, Object> meta = safeParseMeta(e.getMetadata());
-                String cat = meta.get("resourceType") != null ? String.valueOf(meta.get("resourceType"))
-                        : (meta.get("category") != null ? String.valueOf(meta.get("category")) : null);
-                if (cat != null && !cat.isBlank()) {
-                    resourceByCategory.put(cat, resourceByCategory.getOrDefault(cat, 0) + 1);
-                }
-            }
-
-            // 口语复听/回放：累计秒数（事实统计，用于阶段二解释/建议；不算分、不评价）
-            if (BehaviorEventType.VOICE_PRACTICE_AUDIO_REPLAY.getCode().equalsIgnoreCase(t)) {
-                Map<String, Object> meta = safeParseMeta(e.getMetadata());
-                String role = meta.get("audioRole") == null ? "" : String.valueOf(meta.get("audioRole")).trim().toLowerCase();
-                long delta = toLong(meta.get("deltaSeconds"));
-                if (delta <= 0) continue;
-                if ("user".equals(role)) {
-                    voiceReplaySecondsUser += delta;
-                } else if ("assistant".equals(role)) {
-                    voiceReplaySecondsAssistant += delta;
-                }
-            }
         }
 
         List<AbilityGoal> studentGoals = studentId == null
@@ -662,20 +626,19 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
         // 时间维度 + 抗刷/抗噪信号（纯事实，不评价）
         // =========================
         try {
-            signals.put("activeDays", countActiveDays(eventsAsc));
+            signals.put("activeDays", totals.activeDays.size());
 
             Map<String, Object> timeSignals = new HashMap<>();
             timeSignals.put("submitLast24hShare", safeRatio(
-                    countByTypesSince(eventsAsc, Set.of(BehaviorEventType.ASSIGNMENT_SUBMIT.getCode(), BehaviorEventType.ASSIGNMENT_RESUBMIT.getCode()),
-                            to == null ? null : to.minusHours(24)),
+                    submitsLast24h,
                     countsByType.getOrDefault(BehaviorEventType.ASSIGNMENT_SUBMIT.getCode(), 0)
                             + countsByType.getOrDefault(BehaviorEventType.ASSIGNMENT_RESUBMIT.getCode(), 0)
             ));
-            timeSignals.put("submitMaxDailyShare", maxDailyShare(eventsAsc,
+            timeSignals.put("submitMaxDailyShare", maxDailyShare(totals,
                     Set.of(BehaviorEventType.ASSIGNMENT_SUBMIT.getCode(), BehaviorEventType.ASSIGNMENT_RESUBMIT.getCode())));
-            timeSignals.put("aiMaxDailyShare", maxDailyShare(eventsAsc,
+            timeSignals.put("aiMaxDailyShare", maxDailyShare(totals,
                     Set.of(BehaviorEventType.AI_QUESTION.getCode(), BehaviorEventType.AI_FOLLOW_UP.getCode())));
-            timeSignals.put("voiceMaxDailyShare", maxDailyShare(eventsAsc,
+            timeSignals.put("voiceMaxDailyShare", maxDailyShare(totals,
                     Set.of(BehaviorEventType.VOICE_PRACTICE_TURN.getCode())));
 
             // burst：滑窗内事件数异常（提示可能“短时间刷记录”，不直接作为能力证据）
@@ -692,7 +655,7 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
 
             Map<String, Object> antiSpam = new HashMap<>();
             Map<String, Integer> caps = defaultDailyCaps();
-            Map<String, Integer> effective = applyDailyCaps(eventsAsc, caps);
+            Map<String, Integer> effective = applyDailyCaps(totals, caps);
             antiSpam.put("dailyCaps", caps);
             antiSpam.put("effectiveCountsByType", effective);
             antiSpam.put("burstAll", burstAll);
@@ -718,7 +681,7 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
                         .from(from)
                         .to(to)
                         .generatedAt(generatedAt)
-                        .inputEventCount(eventsAsc.size())
+                        .inputEventCount(totals.total)
                         .eventTypesIncluded(typesIncluded.stream().sorted().toList())
                         .build())
                 .activityStats(stats)
@@ -765,51 +728,25 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
         return null;
     }
 
-    private int countActiveDays(List<BehaviorEvent> eventsAsc) {
-        if (eventsAsc == null || eventsAsc.isEmpty()) return 0;
-        java.util.Set<LocalDate> days = new java.util.HashSet<>();
-        for (BehaviorEvent e : eventsAsc) {
-            if (e == null || e.getOccurredAt() == null) continue;
-            days.add(e.getOccurredAt().toLocalDate());
-        }
-        return days.size();
-    }
-
-    private int countByTypesSince(List<BehaviorEvent> eventsAsc, java.util.Set<String> types, LocalDateTime since) {
-        if (eventsAsc == null || eventsAsc.isEmpty() || types == null || types.isEmpty() || since == null) return 0;
-        int c = 0;
-        for (BehaviorEvent e : eventsAsc) {
-            if (e == null || e.getEventType() == null || e.getOccurredAt() == null) continue;
-            if (e.getOccurredAt().isBefore(since)) continue;
-            for (String t : types) {
-                if (t != null && t.equalsIgnoreCase(e.getEventType())) {
-                    c++;
-                    break;
-                }
-            }
-        }
-        return c;
-    }
-
     private Double safeRatio(int num, int den) {
         if (den <= 0) return 0.0;
         return Math.max(0.0, Math.min(1.0, num * 1.0 / den));
     }
 
-    private Double maxDailyShare(List<BehaviorEvent> eventsAsc, java.util.Set<String> types) {
-        if (eventsAsc == null || eventsAsc.isEmpty() || types == null || types.isEmpty()) return 0.0;
+    private Double maxDailyShare(DailyTotals totals, java.util.Set<String> types) {
+        if (totals == null || types == null || types.isEmpty()) return 0.0;
         Map<LocalDate, Integer> daily = new HashMap<>();
         int total = 0;
-        for (BehaviorEvent e : eventsAsc) {
-            if (e == null || e.getEventType() == null || e.getOccurredAt() == null) continue;
+        for (Map.Entry<String, Map<LocalDate, Integer>> byType : totals.dailyByType.entrySet()) {
             boolean match = false;
             for (String t : types) {
-                if (t != null && t.equalsIgnoreCase(e.getEventType())) { match = true; break; }
+                if (t != null && t.equalsIgnoreCase(byType.getKey())) { match = true; break; }
             }
             if (!match) continue;
-            total++;
-            LocalDate d = e.getOccurredAt().toLocalDate();
-            daily.put(d, daily.getOrDefault(d, 0) + 1);
+            for (Map.Entry<LocalDate, Integer> d : byType.getValue().entrySet()) {
+                total += d.getValue();
+                daily.merge(d.getKey(), d.getValue(), Integer::sum);
+            }
         }
         if (total <= 0) return 0.0;
         int max = 0;
@@ -835,22 +772,18 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
         return caps;
     }
 
-    private Map<String, Integer> applyDailyCaps(List<BehaviorEvent> eventsAsc, Map<String, Integer> caps) {
+    private Map<String, Integer> applyDailyCaps(DailyTotals totals, Map<String, Integer> caps) {
         Map<String, Integer> effective = new HashMap<>();
-        if (eventsAsc == null || eventsAsc.isEmpty() || caps == null || caps.isEmpty()) return effective;
-        Map<String, Map<LocalDate, Integer>> seen = new HashMap<>();
-        for (BehaviorEvent e : eventsAsc) {
-            if (e == null || e.getEventType() == null || e.getOccurredAt() == null) continue;
-            String type = e.getEventType();
+        if (totals == null || caps == null || caps.isEmpty()) return effective;
+        for (Map.Entry<String, Map<LocalDate, Integer>> byType : totals.dailyByType.entrySet()) {
+            String type = byType.getKey();
             Integer cap = findCap(caps, type);
             if (cap == null) continue; // 不在 cap 范围内则不计入 effective
-            LocalDate day = e.getOccurredAt().toLocalDate();
-            seen.putIfAbsent(type.toLowerCase(), new HashMap<>());
-            Map<LocalDate, Integer> daily = seen.get(type.toLowerCase());
-            int cur = daily.getOrDefault(day, 0);
-            if (cur >= cap) continue;
-            daily.put(day, cur + 1);
-            effective.put(type, effective.getOrDefault(type, 0) + 1);
+            int sum = 0;
+            for (Integer c : byType.getValue().values()) {
+                sum += Math.min(c == null ? 0 : c, cap);
+            }
+            if (sum > 0) effective.put(type, sum);
         }
         return effective;
     }
@@ -1229,11 +1162,6 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
         try { return Double.valueOf(String.valueOf(v)); } catch (Exception ignored) { return null; }
     }
 
-    private long toLong(Object v) {
-        if (v == null) return 0;
-        try { return Long.parseLong(String.valueOf(v)); } catch (Exception ignored) { return 0; }
-    }
-
     /**
      * 将秒数格式化为中文时长（用于阶段一摘要展示，纯事实描述）。
      */
@@ -1245,4 +1173,45 @@ public class BehaviorAggregationServiceImpl implements BehaviorAggregationServic
         if (r <= 0) return m + "分钟";
         return m + "分钟" + r + "秒";
     }
+
+    /**
+     * 日汇总在时间窗内的折叠结果（计数类统计的唯一来源）。
+     */
+    private static final class DailyTotals {
+        private final Map<String, Integer> countsByType = new HashMap<>();
+        private final Map<String, Integer> resourceByCategory = new HashMap<>();
+        private final Map<String, Map<LocalDate, Integer>> dailyByType = new HashMap<>();
+        private final Set<LocalDate> activeDays = new HashSet<>();
+        private long replaySecondsUser;
+        private long replaySecondsAssistant;
+        private int total;
+
+        private static DailyTotals of(List<BehaviorDailyRollup> rows) {
+            DailyTotals t = new DailyTotals();
+            if (rows == null) return t;
+            for (BehaviorDailyRollup r : rows) {
+                if (r == null || r.getEventType() == null || r.getStatDate() == null) continue;
+                int count = r.getEventCount() == null ? 0 : r.getEventCount();
+                if (count <= 0) continue;
+                String type = r.getEventType();
+                String dim = r.getDimKey() == null ? "" : r.getDimKey();
+                t.total += count;
+                t.countsByType.merge(type, count, Integer::sum);
+                t.dailyByType.computeIfAbsent(type, k -> new HashMap<>()).merge(r.getStatDate(), count, Integer::sum);
+                t.activeDays.add(r.getStatDate());
+                if (BehaviorEventType.RESOURCE_VIEW.getCode().equalsIgnoreCase(type) && !dim.isBlank()) {
+                    t.resourceByCategory.merge(dim, count, Integer::sum);
+                }
+                if (BehaviorEventType.VOICE_PRACTICE_AUDIO_REPLAY.getCode().equalsIgnoreCase(type)) {
+                    long seconds = r.getTotalSeconds() == null ? 0 : Math.max(0, r.getTotalSeconds());
+                    if ("user".equals(dim)) {
+                        t.replaySecondsUser += seconds;
+                    } else if ("assistant".equals(dim)) {
+                        t.replaySecondsAssistant += seconds;
+                    }
+                }
+            }
+            return t;
+        }
+    }
 }
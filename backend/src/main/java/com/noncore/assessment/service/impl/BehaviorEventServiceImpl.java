@@ -1,13 +1,23 @@
 package com.noncore.assessment.service.impl;
 
+import com.noncore.assessment.behavior.BehaviorEventType;
+import com.noncore.assessment.entity.BehaviorDailyRollup;
 import com.noncore.assessment.entity.BehaviorEvent;
+import com.noncore.assessment.mapper.BehaviorDailyRollupMapper;
 import com.noncore.assessment.mapper.BehaviorEventMapper;
 import com.noncore.assessment.service.BehaviorEventService;
+import com.noncore.assessment.util.EventCursor;
+import com.noncore.assessment.util.Jsons;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 行为事件服务实现（事实记录，append-only）。
@@ -18,14 +28,18 @@ import java.util.List;
 @RequiredArgsConstructor
 public class BehaviorEventServiceImpl implements BehaviorEventService {
 
+    private static final int DIM_KEY_MAX_LENGTH = 64;
+
     private final BehaviorEventMapper mapper;
+    private final BehaviorDailyRollupMapper rollupMapper;
 
     /**
-     * 保存行为事件（只新增，不更新、不删除）。
+     * 保存行为事件（只新增，不更新、不删除），并同步累加日汇总。
      *
      * @param event 行为事件
      */
     @Override
+    @Transactional
     public void save(BehaviorEvent event) {
         if (event == null) return;
         if (event.getOccurredAt() == null) {
@@ -35,31 +49,65 @@ public class BehaviorEventServiceImpl implements BehaviorEventService {
             event.setCreatedAt(LocalDateTime.now());
         }
         mapper.insert(event);
+        accumulateRollups(List.of(event));
     }
 
     /**
-     * 按学生/课程/时间窗查询事件。
+     * 批量保存行为事件（只新增），并同步累加日汇总。
+     *
+     * @param events 行为事件列表
+     */
+    @Override
+    @Transactional
+    public void saveBatch(List<BehaviorEvent> events) {
+        if (events == null || events.isEmpty()) return;
+        LocalDateTime now = LocalDateTime.now();
+        for (BehaviorEvent event : events) {
+            if (event.getOccurredAt() == null) {
+                event.setOccurredAt(now);
+            }
+            if (event.getCreatedAt() == null) {
+                event.setCreatedAt(now);
+            }
+        }
+        mapper.insertBatch(events);
+        accumulateRollups(events);
+    }
+
+    @Override
+    public List<BehaviorDailyRollup> listDailyRollups(Long studentId, Long courseId, LocalDate fromDate, LocalDate toDate) {
+        if (studentId == null) return List.of();
+        return rollupMapper.listByStudentCourseDays(studentId, courseId, fromDate, toDate);
+    }
+
+    /**
+     * 按学生/课程/时间窗 keyset 分页查询事件。
      *
      * @param studentId 学生ID
      * @param courseId 课程ID（可空）
      * @param from 起始时间（可空）
      * @param to 结束时间（可空）
+     * @param cursor 上一页游标（可空）
      * @param limit 限制条数（可空）
      * @return 事件列表
      */
     @Override
-    public List<BehaviorEvent> listByStudentCourseRange(Long studentId, Long courseId, LocalDateTime from, LocalDateTime to, Integer limit) {
-        return mapper.listByStudentCourseRange(studentId, courseId, from, to, limit);
+    public List<BehaviorEvent> listByStudentCourseRangeBefore(Long studentId,
+                                                              Long courseId,
+                                                              LocalDateTime from,
+                                                              LocalDateTime to,
+                                                              EventCursor cursor,
+                                                              Integer limit) {
+        return mapper.listByStudentCourseRangeBefore(studentId, courseId, from, to,
+                cursor == null ? null : cursor.getOccurredAt(),
+                cursor == null ? null : cursor.getId(),
+                limit);
     }
 
     @Override
-    public List<BehaviorEvent> listByStudentCourseRangePaged(Long studentId,
-                                                             Long courseId,
-                                                             LocalDateTime from,
-                                                             LocalDateTime to,
-                                                             Integer offset,
-                                                             Integer limit) {
-        return mapper.listByStudentCourseRangePaged(studentId, courseId, from, to, offset, limit);
+    public int countByTypesInRange(Long studentId, Long courseId, List<String> types, LocalDateTime from, LocalDateTime to) {
+        if (studentId == null || types == null || types.isEmpty()) return 0;
+        return mapper.countByTypesInRange(studentId, courseId, types, from, to);
     }
 
     /**
@@ -75,5 +123,66 @@ public class BehaviorEventServiceImpl implements BehaviorEventService {
             return false;
         }
     }
-}
 
+    /**
+     * 将一批事件折叠为 (学生, 课程, 类型, 维度, 日期) 增量后一次性累加到日汇总表。
+     */
+    private void accumulateRollups(List<BehaviorEvent> events) {
+        Map<String, BehaviorDailyRollup> deltas = new LinkedHashMap<>();
+        for (BehaviorEvent e : events) {
+            if (e == null || e.getStudentId() == null || e.getEventType() == null || e.getOccurredAt() == null) continue;
+            String type = e.getEventType();
+            String dimKey = "";
+            long seconds = 0;
+            if (BehaviorEventType.RESOURCE_VIEW.getCode().equalsIgnoreCase(type)) {
+                Map<String, Object> meta = safeParseMeta(e.getMetadata());
+                Object cat = meta.get("resourceType") != null ? meta.get("resourceType") : meta.get("category");
+                dimKey = cat == null ? "" : String.valueOf(cat);
+            } else if (BehaviorEventType.VOICE_PRACTICE_AUDIO_REPLAY.getCode().equalsIgnoreCase(type)) {
+                Map<String, Object> meta = safeParseMeta(e.getMetadata());
+                String role = meta.get("audioRole") == null ? "" : String.valueOf(meta.get("audioRole")).trim().toLowerCase();
+                if ("user".equals(role) || "assistant".equals(role)) {
+                    dimKey = role;
+                    seconds = Math.max(0, toLong(meta.get("deltaSeconds")));
+                }
+            }
+            if (dimKey.length() > DIM_KEY_MAX_LENGTH) {
+                dimKey = dimKey.substring(0, DIM_KEY_MAX_LENGTH);
+            }
+            long courseKey = e.getCourseId() == null ? 0L : e.getCourseId();
+            LocalDate day = e.getOccurredAt().toLocalDate();
+            String key = e.getStudentId() + "|" + courseKey + "|" + type + "|" + dimKey + "|" + day;
+            BehaviorDailyRollup row = deltas.get(key);
+            if (row == null) {
+                row = new BehaviorDailyRollup();
+                row.setStudentId(e.getStudentId());
+                row.setCourseId(courseKey);
+                row.setEventType(type);
+                row.setDimKey(dimKey);
+                row.setStatDate(day);
+                row.setEventCount(0);
+                row.setTotalSeconds(0L);
+                deltas.put(key, row);
+            }
+            row.setEventCount(row.getEventCount() + 1);
+            row.setTotalSeconds(row.getTotalSeconds() + seconds);
+        }
+        if (!deltas.isEmpty()) {
+            rollupMapper.upsertIncrements(new ArrayList<>(deltas.values()));
+        }
+    }
+
+    private Map<String, Object> safeParseMeta(String metadataJson) {
+        if (metadataJson == null || metadataJson.isBlank()) return java.util.Collections.emptyMap();
+        try {
+            return Jsons.parseObject(metadataJson);
+        } catch (Exception ignored) {
+            return java.util.Collections.emptyMap();
+        }
+    }
+
+    private long toLong(Object v) {
+        if (v == null) return 0;
+        try { return Long.parseLong(String.valueOf(v)); } catch (Exception ignored) { return 0; }
+    }
+}
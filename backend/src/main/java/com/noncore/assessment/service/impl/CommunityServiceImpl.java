@@ -28,13 +28,13 @@ public class CommunityServiceImpl implements CommunityService {
     private final TagMapper tagMapper;
     private final CommentLikeMapper commentLikeMapper;
     private final PostTagMapper postTagMapper;
-    private final FileRecordMapper fileRecordMapper;
+    private final com.noncore.assessment.service.FileStorageService fileStorageService;
     private final com.noncore.assessment.service.NotificationService notificationService;
 
     public CommunityServiceImpl(PostMapper postMapper, PostCommentMapper postCommentMapper,
                                 PostLikeMapper postLikeMapper, TagMapper tagMapper,
                                 CommentLikeMapper commentLikeMapper, PostTagMapper postTagMapper,
-                                FileRecordMapper fileRecordMapper,
+                                com.noncore.assessment.service.FileStorageService fileStorageService,
                                 com.noncore.assessment.service.NotificationService notificationService) {
         this.postMapper = postMapper;
         this.postCommentMapper = postCommentMapper;
@@ -42,7 +42,7 @@ public class CommunityServiceImpl implements CommunityService {
         this.tagMapper = tagMapper;
         this.commentLikeMapper = commentLikeMapper;
         this.postTagMapper = postTagMapper;
-        this.fileRecordMapper = fileRecordMapper;
+        this.fileStorageService = fileStorageService;
         this.notificationService = notificationService;
     }
 
@@ -140,18 +140,9 @@ public class CommunityServiceImpl implements CommunityService {
         postLikeMapper.deleteByPostId(id);
         // 3) 删除标签关联
         postTagMapper.deleteByPostId(id);
-        // 4) 删除关联文件记录与物理文件
+        // 4) 删除关联文件记录与物理文件（去重存储按引用计数释放）
         try {
-            List<FileRecord> files = fileRecordMapper.selectByPurposeAndRelatedId("community_post", id);
-            if (files != null) {
-                for (FileRecord f : files) {
-                    // 物理文件删除
-                    java.nio.file.Path p = java.nio.file.Paths.get(f.getFilePath());
-                    try { java.nio.file.Files.deleteIfExists(p); } catch (Exception ignore) {}
-                    // 记录删除
-                    fileRecordMapper.deleteFileRecord(f.getId());
-                }
-            }
+            fileStorageService.cleanupRelatedFiles("community_post", id);
         } catch (Exception e) {
             // ignore file cleanup errors
         }
@@ -38,19 +38,22 @@ public class CourseServiceImpl implements CourseService {
     private final com.noncore.assessment.mapper.SubmissionMapper submissionMapper;
     private final com.noncore.assessment.service.FileStorageService fileStorageService;
     private final PasswordEncoder passwordEncoder;
+    private final com.noncore.assessment.mapper.BehaviorDailyRollupMapper behaviorDailyRollupMapper;
 
     public CourseServiceImpl(CourseMapper courseMapper,
                              EnrollmentMapper enrollmentMapper,
                              com.noncore.assessment.mapper.AssignmentMapper assignmentMapper,
                              com.noncore.assessment.mapper.SubmissionMapper submissionMapper,
                              com.noncore.assessment.service.FileStorageService fileStorageService,
-                             PasswordEncoder passwordEncoder) {
+                             PasswordEncoder passwordEncoder,
+                             com.noncore.assessment.mapper.BehaviorDailyRollupMapper behaviorDailyRollupMapper) {
         this.courseMapper = courseMapper;
         this.enrollmentMapper = enrollmentMapper;
         this.assignmentMapper = assignmentMapper;
         this.submissionMapper = submissionMapper;
         this.fileStorageService = fileStorageService;
         this.passwordEncoder = passwordEncoder;
+        this.behaviorDailyRollupMapper = behaviorDailyRollupMapper;
     }
 
     @Override
@@ -162,6 +165,8 @@ public class CourseServiceImpl implements CourseService {
         try { fileStorageService.cleanupRelatedFiles("course_material", courseId); } catch (Exception e) { logger.warn("清理课程资料失败 courseId={}", courseId, e); }
         try { fileStorageService.cleanupRelatedFiles("course_video", courseId); } catch (Exception e) { logger.warn("清理课程视频失败 courseId={}", courseId, e); }
         try { fileStorageService.cleanupRelatedFiles("course_cover", courseId); } catch (Exception e) { logger.warn("清理课程封面失败 courseId={}", courseId, e); }
+        // 清理行为日汇总（原始事件随课程外键处理，汇总表无外键需显式清理）
+        try { behaviorDailyRollupMapper.deleteByCourse(courseId); } catch (Exception e) { logger.warn("清理行为日汇总失败 courseId={}", courseId, e); }
 
         if (courseMapper.deleteCourse(courseId) <= 0) {
             throw new BusinessException(ErrorCode.OPERATION_FAILED, "删除课程失败");
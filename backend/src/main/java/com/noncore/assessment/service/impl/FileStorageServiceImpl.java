@@ -1,26 +1,47 @@
 package com.noncore.assessment.service.impl;
 
+import com.noncore.assessment.entity.FileBlob;
 import com.noncore.assessment.entity.FileRecord;
+import com.noncore.assessment.entity.FileUploadSession;
 import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
+import com.noncore.assessment.mapper.FileBlobMapper;
 import com.noncore.assessment.mapper.FileRecordMapper;
+import com.noncore.assessment.mapper.FileUploadSessionMapper;
 import com.noncore.assessment.service.FileStorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import jakarta.annotation.PostConstruct;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * 文件存储服务实现类
@@ -39,10 +60,41 @@ public class FileStorageServiceImpl implements FileStorageService {
 
     private final com.noncore.assessment.mapper.ChatAttachmentMapper chatAttachmentMapper;
 
+    private final FileUploadSessionMapper uploadSessionMapper;
+
+    private final FileBlobMapper fileBlobMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 同一内容 blob 的“放置物理文件 + 登记引用”与“确认无引用后删文件”互斥（按哈希分段加锁）
+     */
+    private final Object[] blobLocks = new Object[64];
+
+    /**
+     * 分片写入按会话串行（同一会话并发 PUT 时后到者等待，再按偏移校验）
+     */
+    private final Map<String, Object> uploadSessionLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 分片上传的整文件滚动哈希（进程内）：分片按序到达时边写边算，完成时无需重读整个文件；
+     * 进程重启后丢失则在完成时重新读取 .part 计算
+     */
+    private final Map<String, RunningDigest> uploadDigests = new ConcurrentHashMap<>();
+
     public FileStorageServiceImpl(FileRecordMapper fileRecordMapper,
-                                  com.noncore.assessment.mapper.ChatAttachmentMapper chatAttachmentMapper) {
+                                  com.noncore.assessment.mapper.ChatAttachmentMapper chatAttachmentMapper,
+                                  FileUploadSessionMapper uploadSessionMapper,
+                                  FileBlobMapper fileBlobMapper,
+                                  PlatformTransactionManager transactionManager) {
         this.fileRecordMapper = fileRecordMapper;
         this.chatAttachmentMapper = chatAttachmentMapper;
+        this.uploadSessionMapper = uploadSessionMapper;
+        this.fileBlobMapper = fileBlobMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < blobLocks.length; i++) {
+            blobLocks[i] = new Object();
+        }
     }
 
     // Unified configuration keys aligned with application.yml
@@ -60,7 +112,15 @@ public class FileStorageServiceImpl implements FileStorageService {
     @Value("${file.purpose-max-sizes:}")
     private String purposeMaxSizesCsv;
 
+    // 分片上传：单个分片上限与会话有效期（每收到一个分片顺延）
+    @Value("${file.chunked-upload.max-chunk-size:32MB}")
+    private String maxChunkSizeStr;
+
+    @Value("${file.chunked-upload.session-ttl-hours:24}")
+    private long uploadSessionTtlHours;
+
     private long maxFileSize;
+    private long maxChunkSize;
     private Set<String> allowedExtensions;
     private Path baseUploadDir;
     private Map<String, Long> purposeMaxSizeBytes = new HashMap<>();
@@ -68,6 +128,7 @@ public class FileStorageServiceImpl implements FileStorageService {
     @PostConstruct
     public void initUploadConfig() {
         this.maxFileSize = parseSizeToBytes(maxFileSizeStr);
+        this.maxChunkSize = parseSizeToBytes(maxChunkSizeStr);
         this.allowedExtensions = parseExtensions(allowedExtensionsCsv);
         this.purposeMaxSizeBytes = parsePurposeMaxSizes(purposeMaxSizesCsv);
         // Resolve upload base directory to absolute path to avoid servlet temp dir resolution
@@ -86,39 +147,33 @@ public class FileStorageServiceImpl implements FileStorageService {
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public FileRecord uploadFile(MultipartFile file, Long uploaderId, String purpose, Long relatedId) {
+        // 写盘不在事务内：大文件写入期间不持有数据库连接与行锁；引用计数与文件记录在写盘后的短事务中登记
         try {
             logger.info("上传文件，用户ID: {}, 文件名: {}, 用途: {}", uploaderId, file.getOriginalFilename(), purpose);
 
             // 验证文件（按用途应用特定大小限制）
             validateFile(file, purpose);
 
-            // 创建存储目录（使用绝对路径）
-            String datePath = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
-            String purposePath = purpose != null ? purpose : "general";
-            Path storageDir = baseUploadDir.resolve(purposePath).resolve(datePath).normalize();
-            Files.createDirectories(storageDir);
-
-            // 生成唯一文件名
+            // 生成唯一文件名（保留为记录的 saved_name，物理存储按内容哈希）
             String originalName = file.getOriginalFilename();
             String extension = getFileExtension(originalName);
             String storedName = generateUniqueFileName(extension);
-            Path targetPath = storageDir.resolve(storedName).normalize();
 
-            // 保存文件（确保父目录存在，且使用绝对路径）
-            File targetFile = targetPath.toFile();
-            File parent = targetFile.getParentFile();
-            if (parent != null && !parent.exists()) {
-                // 双保险
-                parent.mkdirs();
+            // 内容寻址存储：先只读计算哈希，同内容 blob 已存在时只增加引用计数，不再写盘
+            String contentHash;
+            try (InputStream in = file.getInputStream()) {
+                contentHash = sha256Hex(in);
             }
-            file.transferTo(targetFile);
+            Path targetPath = blobPathOf(contentHash);
 
             // 创建文件记录
             FileRecord fileRecord = new FileRecord();
             fileRecord.setOriginalName(originalName);
             fileRecord.setStoredName(storedName);
             fileRecord.setFilePath(targetPath.toString());
+            fileRecord.setContentHash(contentHash);
             fileRecord.setFileSize(file.getSize());
             fileRecord.setFileType(extension);
             fileRecord.setMimeType(file.getContentType());
@@ -129,10 +184,13 @@ public class FileStorageServiceImpl implements FileStorageService {
             fileRecord.setDownloadCount(0);
             fileRecord.setStatus("active");
 
-            // 保存文件记录到数据库
-            if (fileRecordMapper.insertFileRecord(fileRecord) <= 0) {
-                throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存文件记录失败");
-            }
+            // 保存文件记录到数据库（与 blob 引用同一事务）
+            storeBlob(contentHash, file.getSize(), file::transferTo, () -> {
+                if (fileRecordMapper.insertFileRecord(fileRecord) <= 0) {
+                    throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存文件记录失败");
+                }
+                return fileRecord;
+            });
 
             logger.info("文件上传成功，文件ID: {}", fileRecord.getId());
             return fileRecord;
@@ -144,30 +202,226 @@ public class FileStorageServiceImpl implements FileStorageService {
     }
 
     @Override
-    public byte[] downloadFile(Long fileId, Long userId) {
+    public FileUploadSession createUploadSession(Long uploaderId, String fileName, long totalSize,
+                                                 String mimeType, String purpose, Long relatedId) {
+        logger.info("创建分片上传会话，用户ID: {}, 文件名: {}, 大小: {}, 用途: {}", uploaderId, fileName, totalSize, purpose);
+        if (fileName == null || fileName.isBlank() || totalSize <= 0) {
+            throw new BusinessException(ErrorCode.FILE_EMPTY, "文件不能为空");
+        }
+        validateUploadSpec(fileName, totalSize, purpose);
+
         try {
-            logger.info("下载文件，文件ID: {}, 用户ID: {}", fileId, userId);
+            String datePath = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
+            String purposePath = purpose != null ? purpose : "general";
+            Path storageDir = baseUploadDir.resolve(purposePath).resolve(datePath).normalize();
+            Files.createDirectories(storageDir);
+
+            String storedName = generateUniqueFileName(getFileExtension(fileName));
+            Path targetPath = storageDir.resolve(storedName).normalize();
+            // 分片直接写入 .part，完成时按内容哈希重命名进 blob 目录（同一文件系统，无需二次拷贝）
+            Files.createFile(partPathOf(targetPath));
+
+            LocalDateTime now = LocalDateTime.now();
+            FileUploadSession session = new FileUploadSession();
+            session.setId(UUID.randomUUID().toString().replace("-", ""));
+            session.setUploaderId(uploaderId);
+            session.setOriginalName(fileName);
+            session.setStoredName(storedName);
+            session.setMimeType(mimeType);
+            session.setUploadPurpose(purpose);
+            session.setRelatedId(relatedId);
+            session.setTotalSize(totalSize);
+            session.setReceivedSize(0L);
+            session.setFilePath(targetPath.toString());
+            session.setStatus("uploading");
+            session.setCreatedAt(now);
+            session.setExpiresAt(now.plusHours(uploadSessionTtlHours));
+            if (uploadSessionMapper.insert(session) <= 0) {
+                Files.deleteIfExists(partPathOf(targetPath));
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "创建上传会话失败");
+            }
+            return session;
+        } catch (IOException e) {
+            logger.error("创建分片上传会话失败", e);
+            throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED, "文件上传失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public FileUploadSession getUploadSession(String sessionId, Long uploaderId) {
+        FileUploadSession session = requireUploadSession(sessionId, uploaderId);
+        if ("uploading".equals(session.getStatus())) {
+            reconcileReceivedSize(session);
+        }
+        return session;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FileUploadSession appendUploadChunk(String sessionId, Long uploaderId, long offset,
+                                               InputStream data, long length, String sha256) {
+        // 不在事务内执行：分片读取取决于客户端网速，不能长时间占用数据库连接
+        FileUploadSession session = requireUploadSession(sessionId, uploaderId);
+        if (!"uploading".equals(session.getStatus())) {
+            throw new BusinessException(ErrorCode.UPLOAD_OFFSET_MISMATCH, "上传已完成");
+        }
+        if (length <= 0) {
+            throw new BusinessException(ErrorCode.FILE_EMPTY, "分片不能为空");
+        }
+        if (length > maxChunkSize) {
+            throw new BusinessException(ErrorCode.FILE_SIZE_EXCEED, "分片大小超过限制: " + maxChunkSize + " bytes");
+        }
+        if (offset < 0 || offset + length > session.getTotalSize()) {
+            throw new BusinessException(ErrorCode.FILE_SIZE_EXCEED, "分片超出声明的文件大小");
+        }
+
+        synchronized (uploadSessionLocks.computeIfAbsent(sessionId, k -> new Object())) {
+            session = requireUploadSession(sessionId, uploaderId);
+            long received = reconcileReceivedSize(session);
+            if (offset != received) {
+                throw new BusinessException(ErrorCode.UPLOAD_OFFSET_MISMATCH, "分片偏移不一致，当前已接收: " + received);
+            }
 
-            // 检查权限
-            if (!hasFilePermission(fileId, userId)) {
-                throw new BusinessException(ErrorCode.FILE_PERMISSION_DENIED, "没有权限下载该文件");
+            MessageDigest digest = sha256 == null || sha256.isBlank() ? null : newSha256();
+            MessageDigest fileDigest = nextFileDigest(sessionId, offset);
+            Path part = partPathOf(Paths.get(session.getFilePath()));
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+                channel.position(offset);
+                byte[] buf = new byte[64 * 1024];
+                long written = 0;
+                int n;
+                while (written < length && (n = data.read(buf, 0, (int) Math.min(buf.length, length - written))) != -1) {
+                    if (digest != null) digest.update(buf, 0, n);
+                    if (fileDigest != null) fileDigest.update(buf, 0, n);
+                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                    while (bb.hasRemaining()) channel.write(bb);
+                    written += n;
+                }
+                // 写失败/校验失败时不推进进度：文件尾部的残留字节会被下一次同偏移的分片覆盖并截断
+                if (written != length) {
+                    throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED, "分片数据不完整: " + written + "/" + length);
+                }
+                if (digest != null && !HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha256.trim())) {
+                    throw new BusinessException(ErrorCode.UPLOAD_CHUNK_CHECKSUM_MISMATCH, "分片校验和不一致，请重传该分片");
+                }
+                channel.truncate(offset + length);
+            } catch (IOException e) {
+                logger.warn("分片写入失败，会话: {}, 偏移: {}, 错误: {}", sessionId, offset, e.getMessage());
+                throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED, "分片写入失败: " + e.getMessage());
             }
 
-            // 获取文件记录
-            FileRecord fileRecord = fileRecordMapper.selectFileRecordById(fileId);
-            if (fileRecord == null) {
-                throw new BusinessException(ErrorCode.FILE_NOT_FOUND, "文件不存在");
+            long newSize = offset + length;
+            LocalDateTime expiresAt = LocalDateTime.now().plusHours(uploadSessionTtlHours);
+            if (uploadSessionMapper.advanceReceived(sessionId, offset, newSize, expiresAt) <= 0) {
+                throw new BusinessException(ErrorCode.UPLOAD_OFFSET_MISMATCH, "上传进度已变化，请查询会话后重试");
+            }
+            if (fileDigest != null) {
+                uploadDigests.put(sessionId, new RunningDigest(fileDigest, newSize));
             }
+            session.setReceivedSize(newSize);
+            session.setExpiresAt(expiresAt);
+            return session;
+        }
+    }
 
-            // 读取文件
-            Path filePath = Paths.get(fileRecord.getFilePath());
-            if (!Files.exists(filePath)) {
-                throw new BusinessException(ErrorCode.FILE_LOST, "文件已丢失");
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FileRecord completeUploadSession(String sessionId, Long uploaderId) {
+        // 与 uploadFile 相同：分片文件改名进 blob 目录在事务外，文件记录与会话状态在短事务中写入
+        synchronized (uploadSessionLocks.computeIfAbsent(sessionId, k -> new Object())) {
+            FileUploadSession session = requireUploadSession(sessionId, uploaderId);
+            if ("completed".equals(session.getStatus())) {
+                return fileRecordMapper.selectFileRecordById(session.getFileId());
+            }
+            long received = reconcileReceivedSize(session);
+            if (received != session.getTotalSize()) {
+                throw new BusinessException(ErrorCode.UPLOAD_INCOMPLETE,
+                        "文件分片尚未全部上传: " + received + "/" + session.getTotalSize());
             }
 
-            // 增加下载次数
-            fileRecordMapper.incrementDownloadCount(fileId);
+            Path part = partPathOf(Paths.get(session.getFilePath()));
+            String contentHash;
+            try {
+                RunningDigest running = uploadDigests.remove(sessionId);
+                if (running != null && running.length() == received) {
+                    contentHash = HexFormat.of().formatHex(running.digest().digest());
+                } else {
+                    try (InputStream in = Files.newInputStream(part)) {
+                        contentHash = sha256Hex(in);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("合并分片文件失败", e);
+                throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED, "文件上传失败: " + e.getMessage());
+            }
+            Path targetPath = blobPathOf(contentHash);
+
+            String extension = getFileExtension(session.getOriginalName());
+            FileRecord fileRecord = new FileRecord();
+            fileRecord.setOriginalName(session.getOriginalName());
+            fileRecord.setStoredName(session.getStoredName());
+            fileRecord.setFilePath(targetPath.toString());
+            fileRecord.setContentHash(contentHash);
+            fileRecord.setFileSize(session.getTotalSize());
+            fileRecord.setFileType(extension);
+            fileRecord.setMimeType(session.getMimeType());
+            fileRecord.setUploaderId(session.getUploaderId());
+            fileRecord.setUploadPurpose(session.getUploadPurpose());
+            fileRecord.setRelatedType(session.getUploadPurpose());
+            fileRecord.setRelatedId(session.getRelatedId());
+            fileRecord.setDownloadCount(0);
+            fileRecord.setStatus("active");
+            try {
+                storeBlob(contentHash, received, tmp -> Files.move(part, tmp, StandardCopyOption.REPLACE_EXISTING), () -> {
+                    if (fileRecordMapper.insertFileRecord(fileRecord) <= 0) {
+                        throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存文件记录失败");
+                    }
+                    uploadSessionMapper.markCompleted(sessionId, fileRecord.getId());
+                    return fileRecord;
+                });
+                // 命中已有 blob 时分片文件不再需要
+                Files.deleteIfExists(part);
+            } catch (IOException e) {
+                logger.error("合并分片文件失败", e);
+                throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED, "文件上传失败: " + e.getMessage());
+            }
+            logger.info("分片上传完成，会话: {}, 文件ID: {}, 大小: {} bytes", sessionId, fileRecord.getId(), session.getTotalSize());
+            return fileRecord;
+        }
+    }
+
+    /**
+     * 定时清理过期的上传会话（未完成的删除 .part 文件；已完成的只删会话记录）
+     */
+    @Scheduled(cron = "0 20 * * * ?") // 每小时执行
+    @Transactional
+    public void cleanupExpiredUploadSessionsScheduled() {
+        List<FileUploadSession> expired = uploadSessionMapper.listExpired(LocalDateTime.now(), 500);
+        int cleaned = 0;
+        for (FileUploadSession session : expired) {
+            try {
+                if ("uploading".equals(session.getStatus())) {
+                    Files.deleteIfExists(partPathOf(Paths.get(session.getFilePath())));
+                }
+                uploadSessionMapper.deleteById(session.getId());
+                uploadSessionLocks.remove(session.getId());
+                uploadDigests.remove(session.getId());
+                cleaned++;
+            } catch (Exception e) {
+                logger.warn("清理上传会话失败，会话: {}, 错误: {}", session.getId(), e.getMessage());
+            }
+        }
+        if (cleaned > 0) {
+            logger.info("已清理过期上传会话: {}", cleaned);
+        }
+    }
 
+    @Override
+    public byte[] downloadFile(Long fileId, Long userId) {
+        try {
+            logger.info("下载文件，文件ID: {}, 用户ID: {}", fileId, userId);
+
+            Path filePath = resolveFilePath(fileId, userId, true);
             byte[] fileBytes = Files.readAllBytes(filePath);
             logger.info("文件下载成功，文件ID: {}, 大小: {} bytes", fileId, fileBytes.length);
             return fileBytes;
@@ -178,6 +432,36 @@ public class FileStorageServiceImpl implements FileStorageService {
         }
     }
 
+    @Override
+    public Path resolveFilePath(Long fileId, Long userId, boolean countDownload) {
+        // 检查权限
+        if (!hasFilePermission(fileId, userId)) {
+            throw new BusinessException(ErrorCode.FILE_PERMISSION_DENIED, "没有权限下载该文件");
+        }
+
+        // 获取文件记录
+        FileRecord fileRecord = fileRecordMapper.selectFileRecordById(fileId);
+        if (fileRecord == null) {
+            throw new BusinessException(ErrorCode.FILE_NOT_FOUND, "文件不存在");
+        }
+
+        Path filePath = Paths.get(fileRecord.getFilePath());
+        if (!Files.exists(filePath)) {
+            throw new BusinessException(ErrorCode.FILE_LOST, "文件已丢失");
+        }
+
+        // 增加下载次数
+        if (countDownload) {
+            fileRecordMapper.incrementDownloadCount(fileId);
+        }
+        return filePath;
+    }
+
+    @Override
+    public Resource openFileResource(Long fileId, Long userId, boolean countDownload) {
+        return new FileSystemResource(resolveFilePath(fileId, userId, countDownload));
+    }
+
     @Override
     public boolean deleteFile(Long fileId, Long userId) {
         logger.info("删除文件，文件ID: {}, 用户ID: {}", fileId, userId);
@@ -200,16 +484,8 @@ public class FileStorageServiceImpl implements FileStorageService {
             logger.warn("清理 lesson_materials 关联失败(fileId={})，继续删除文件记录", fileId, e);
         }
 
-        // 删除物理文件
-        try {
-            Path filePath = Paths.get(fileRecord.getFilePath());
-            if (Files.exists(filePath)) {
-                Files.delete(filePath);
-            }
-        } catch (IOException e) {
-            logger.error("删除物理文件失败, path: {}", fileRecord.getFilePath(), e);
-            throw new BusinessException(ErrorCode.OPERATION_FAILED, "物理文件删除失败");
-        }
+        // 释放物理文件（去重存储按引用计数，最后一个引用删除时才删盘；删盘在事务提交后执行）
+        releaseStoredFile(fileRecord);
 
 
         // 软删除数据库记录
@@ -249,10 +525,7 @@ public class FileStorageServiceImpl implements FileStorageService {
         if (files == null || files.isEmpty()) return;
         for (FileRecord f : files) {
             try {
-                Path path = Paths.get(f.getFilePath());
-                if (Files.exists(path)) {
-                    Files.delete(path);
-                }
+                releaseStoredFile(f);
             } catch (Exception e) {
                 logger.warn("删除物理文件失败(id={}): {}", f.getId(), f.getFilePath(), e);
             }
@@ -384,20 +657,22 @@ public class FileStorageServiceImpl implements FileStorageService {
         if (file == null || file.isEmpty()) {
             throw new BusinessException(ErrorCode.FILE_EMPTY, "文件不能为空");
         }
+        validateUploadSpec(file.getOriginalFilename(), file.getSize(), purpose);
+    }
 
+    private void validateUploadSpec(String originalFilename, long size, String purpose) {
         long effectiveMax = maxFileSize;
         if (purpose != null && purposeMaxSizeBytes != null) {
             Long p = purposeMaxSizeBytes.get(purpose);
             if (p != null && p > 0) effectiveMax = p;
         }
 
-        if (file.getSize() > effectiveMax) {
+        if (size > effectiveMax) {
             long mb = effectiveMax / 1024 / 1024;
             String tip = mb >= 1024 ? String.format("%.1fGB", mb / 1024.0) : (mb + "MB");
             throw new BusinessException(ErrorCode.FILE_SIZE_EXCEED, "文件大小超过限制: " + tip);
         }
 
-        String originalFilename = file.getOriginalFilename();
         if (originalFilename != null && originalFilename.contains(".")) {
             String extension = originalFilename.substring(originalFilename.lastIndexOf(".") + 1).toLowerCase();
             if (allowedExtensions != null && !allowedExtensions.contains(extension)) {
@@ -406,6 +681,223 @@ public class FileStorageServiceImpl implements FileStorageService {
         }
     }
 
+    private FileUploadSession requireUploadSession(String sessionId, Long uploaderId) {
+        FileUploadSession session = sessionId == null ? null : uploadSessionMapper.selectById(sessionId);
+        if (session == null || !Objects.equals(session.getUploaderId(), uploaderId)) {
+            throw new BusinessException(ErrorCode.UPLOAD_SESSION_NOT_FOUND, "上传会话不存在或已过期");
+        }
+        if ("uploading".equals(session.getStatus())
+                && session.getExpiresAt() != null && session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new BusinessException(ErrorCode.UPLOAD_SESSION_NOT_FOUND, "上传会话不存在或已过期");
+        }
+        return session;
+    }
+
+    /**
+     * 以磁盘为准校正已接收字节数：进程在写完分片、更新记录之间退出时，磁盘可能短于记录（页缓存丢失）
+     */
+    private long reconcileReceivedSize(FileUploadSession session) {
+        Path part = partPathOf(Paths.get(session.getFilePath()));
+        long received = session.getReceivedSize() == null ? 0L : session.getReceivedSize();
+        long onDisk;
+        try {
+            if (!Files.exists(part)) {
+                throw new BusinessException(ErrorCode.FILE_LOST, "上传中的文件已丢失，请重新上传");
+            }
+            onDisk = Files.size(part);
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED, "读取上传进度失败: " + e.getMessage());
+        }
+        if (onDisk < received) {
+            logger.warn("上传会话进度回退，会话: {}, 记录: {}, 磁盘: {}", session.getId(), received, onDisk);
+            uploadSessionMapper.resetReceived(session.getId(), onDisk);
+            session.setReceivedSize(onDisk);
+            return onDisk;
+        }
+        return received;
+    }
+
+    /**
+     * 取得同哈希 blob 的一个引用并在同一短事务中写入文件记录。
+     * <p>
+     * 物理文件先在事务外经 writer 写到临时文件（blob 已存在时跳过）；事务内只执行一条
+     * INSERT … ON DUPLICATE KEY UPDATE ref_count = ref_count + 1（不先 UPDATE 探测，避免 REPEATABLE READ 下的间隙锁死锁），
+     * 随后把临时文件原子改名为 blob。整个事务持有该哈希的分段锁，与删除路径“确认无引用后删文件”互斥，
+     * 因此登记成功的引用一定对应存在的物理文件。
+     *
+     * @param recordWriter 事务内写入文件记录等；抛出异常时整体回滚
+     */
+    private <T> T storeBlob(String contentHash, long size, BlobWriter writer, Supplier<T> recordWriter) throws IOException {
+        Path blobPath = blobPathOf(contentHash);
+        Path staged = Files.exists(blobPath) ? null : writeTemp(blobPath, writer);
+        try {
+            synchronized (blobLockOf(contentHash)) {
+                return transactionTemplate.execute(status -> {
+                    FileBlob blob = new FileBlob();
+                    blob.setSha256(contentHash);
+                    blob.setFilePath(blobPath.toString());
+                    blob.setFileSize(size);
+                    fileBlobMapper.insertOrIncrement(blob);
+                    try {
+                        placeBlob(blobPath, staged, writer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return recordWriter.get();
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (staged != null) {
+                Files.deleteIfExists(staged);
+            }
+        }
+    }
+
+    /**
+     * 放置 blob 物理文件：有临时文件则改名覆盖（内容相同）；
+     * 写盘前 blob 已存在、但在登记前被删除的少见情况下，在此补写
+     */
+    private void placeBlob(Path blobPath, Path staged, BlobWriter writer) throws IOException {
+        if (staged != null) {
+            moveIntoPlace(staged, blobPath);
+        } else if (Files.exists(blobPath)) {
+            logger.info("内容去重命中，复用已有文件: {}", blobPath.getFileName());
+        } else {
+            Path tmp = writeTemp(blobPath, writer);
+            try {
+                moveIntoPlace(tmp, blobPath);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private Path writeTemp(Path blobPath, BlobWriter writer) throws IOException {
+        Files.createDirectories(blobPath.getParent());
+        Path tmp = blobPath.resolveSibling(blobPath.getFileName() + "." + UUID.randomUUID().toString().replace("-", "") + ".tmp");
+        try {
+            writer.writeTo(tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
+    private static void moveIntoPlace(Path tmp, Path blobPath) throws IOException {
+        try {
+            Files.move(tmp, blobPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException atomicEx) {
+            Files.move(tmp, blobPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 释放文件记录占用的物理文件：旧数据（无 content_hash）独占文件直接删除；去重存储的 blob 引用计数归零才删除。
+     * 物理删除推迟到事务提交后执行，回滚时引用计数与文件保持一致。
+     */
+    private void releaseStoredFile(FileRecord fileRecord) {
+        String contentHash = fileRecord.getContentHash();
+        if (contentHash == null || contentHash.isBlank()) {
+            Path legacy = Paths.get(fileRecord.getFilePath());
+            afterCommit(() -> deletePhysical(legacy));
+            return;
+        }
+        fileBlobMapper.decrementRef(contentHash);
+        if (fileBlobMapper.deleteIfUnreferenced(contentHash) > 0) {
+            afterCommit(() -> {
+                synchronized (blobLockOf(contentHash)) {
+                    // 提交后到删盘之间可能已有新上传重新登记了同一内容
+                    if (fileBlobMapper.selectBySha256(contentHash) == null) {
+                        deletePhysical(blobPathOf(contentHash));
+                    }
+                }
+            });
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void deletePhysical(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.error("删除物理文件失败, path: {}", path, e);
+        }
+    }
+
+    private Object blobLockOf(String contentHash) {
+        return blobLocks[Math.floorMod(contentHash.hashCode(), blobLocks.length)];
+    }
+
+    private Path blobPathOf(String contentHash) {
+        return baseUploadDir.resolve(".blobs").resolve(contentHash.substring(0, 2)).resolve(contentHash);
+    }
+
+    /**
+     * 本分片要续算的整文件哈希：进程内状态恰好停在 offset 时克隆一份续算（分片失败不污染原状态），
+     * offset 为 0 时新建，否则返回 null（完成时重读文件）
+     */
+    private MessageDigest nextFileDigest(String sessionId, long offset) {
+        if (offset == 0) {
+            return newSha256();
+        }
+        RunningDigest running = uploadDigests.get(sessionId);
+        if (running == null || running.length() != offset) {
+            uploadDigests.remove(sessionId);
+            return null;
+        }
+        try {
+            return (MessageDigest) running.digest().clone();
+        } catch (CloneNotSupportedException e) {
+            uploadDigests.remove(sessionId);
+            return null;
+        }
+    }
+
+    private static String sha256Hex(InputStream in) throws IOException {
+        MessageDigest md = newSha256();
+        byte[] buf = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            md.update(buf, 0, n);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    @FunctionalInterface
+    private interface BlobWriter {
+        void writeTo(Path tmp) throws IOException;
+    }
+
+    private record RunningDigest(MessageDigest digest, long length) {
+    }
+
+    private static Path partPathOf(Path targetPath) {
+        return targetPath.resolveSibling(targetPath.getFileName() + ".part");
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) {
             return "";
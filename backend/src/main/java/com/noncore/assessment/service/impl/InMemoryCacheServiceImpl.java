@@ -1,54 +1,237 @@
 package com.noncore.assessment.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.noncore.assessment.service.CacheService;
-import org.springframework.context.annotation.Primary;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * 基于内存的简单缓存实现（完全无 Redis 依赖）。
- * 仅在当前进程内有效，重启即失效。
+ * 基于内存的缓存实现（Caffeine，完全无 Redis 依赖）。
+ * 仅在当前进程内有效，重启即失效；作为 {@link TwoTierCacheServiceImpl} 的本地近缓存使用。
+ *
+ * <p>按估算字节数限制总权重（W-TinyLFU 淘汰），每个条目按自身 TTL 过期，由后台调度器主动清理，
+ * 不再依赖读取时惰性判断。命名空间取 key 第一个冒号前的部分（如 notification:unread_count:1 → notification），
+ * 可通过 cache.local.namespace-ttl-seconds 为命名空间统一指定 TTL（覆盖调用方传入值）。</p>
  */
+@Slf4j
 @Service("inMemoryCacheService")
-@Primary
 public class InMemoryCacheServiceImpl implements CacheService {
 
-    private static final class ValueHolder {
-        final Object value;
-        final long expireAtMillis; // <=0 表示不过期
-        ValueHolder(Object value, long expireAtMillis) {
-            this.value = value;
-            this.expireAtMillis = expireAtMillis;
-        }
-        boolean expired() {
-            return expireAtMillis > 0 && System.currentTimeMillis() > expireAtMillis;
-        }
+    /** 非基础类型对象的估算大小（字节） */
+    private static final int DEFAULT_OBJECT_WEIGHT = 256;
+    /** 集合估算时最多采样的元素数，超过则按比例外推 */
+    private static final int WEIGHT_SAMPLE_LIMIT = 64;
+
+    private record Entry(Object value, long ttlNanos, int weight) {
     }
 
-    private final Map<String, ValueHolder> store = new ConcurrentHashMap<>();
+    @Value("${cache.local.max-weight-bytes:67108864}")
+    private long maxWeightBytes;
+
+    // 命名空间 TTL，例如 "notification=300,radar=600"
+    @Value("${cache.local.namespace-ttl-seconds:}")
+    private String namespaceTtlCsv;
+
+    private Map<String, Long> namespaceTtlSeconds = Map.of();
+    private Cache<String, Entry> cache;
+
+    private final Map<String, NamespaceCounters> namespaceCounters = new ConcurrentHashMap<>();
+    private final LongAdder expirations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.namespaceTtlSeconds = parseNamespaceTtls(namespaceTtlCsv);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1024L, maxWeightBytes))
+                .weigher((String key, Entry entry) -> entry.weight())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                // 后台按到期时间主动清理过期条目（不被读取的过期 key 也会被回收）
+                .scheduler(Scheduler.systemScheduler())
+                .removalListener((String key, Entry entry, RemovalCause cause) -> {
+                    if (cause == RemovalCause.EXPIRED) {
+                        expirations.increment();
+                    }
+                })
+                .recordStats()
+                .build();
+        log.info("本地缓存已初始化: maxWeightBytes={}, namespaceTtls={}", maxWeightBytes, namespaceTtlSeconds);
+    }
 
     @Override
     public <T> Optional<T> get(String key, Class<T> clazz) {
-        ValueHolder holder = store.get(key);
-        if (holder == null) return Optional.empty();
-        if (holder.expired()) { store.remove(key); return Optional.empty(); }
-        if (clazz.isInstance(holder.value)) {
-            return Optional.of(clazz.cast(holder.value));
+        Entry entry = cache.getIfPresent(key);
+        NamespaceCounters counters = countersOf(key);
+        if (entry == null || !clazz.isInstance(entry.value())) {
+            counters.misses.increment();
+            return Optional.empty();
         }
-        return Optional.empty();
+        counters.hits.increment();
+        return Optional.of(clazz.cast(entry.value()));
     }
 
     @Override
     public void set(String key, Object value, long timeoutInSeconds) {
-        long expireAt = timeoutInSeconds > 0 ? System.currentTimeMillis() + timeoutInSeconds * 1000L : 0L;
-        store.put(key, new ValueHolder(value, expireAt));
+        if (value == null) {
+            cache.invalidate(key);
+            return;
+        }
+        putWithTtl(key, value, resolveTtlSeconds(key, timeoutInSeconds));
+    }
+
+    /**
+     * 应用命名空间 TTL 后的有效 TTL（秒，&lt;=0 表示不过期）。
+     */
+    long resolveTtlSeconds(String key, long requestedSeconds) {
+        Long nsTtl = namespaceTtlSeconds.get(namespaceOf(key));
+        return nsTtl != null ? nsTtl : requestedSeconds;
+    }
+
+    /**
+     * 按给定 TTL 写入（不再套用命名空间 TTL）。
+     *
+     * @return 是否覆盖了一个未过期的旧值
+     */
+    boolean putWithTtl(String key, Object value, long ttlSeconds) {
+        long ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : Long.MAX_VALUE;
+        return cache.asMap().put(key, new Entry(value, ttlNanos, estimateWeight(key, value))) != null;
     }
 
     @Override
     public void delete(String key) {
-        store.remove(key);
+        cache.invalidate(key);
+    }
+
+    /**
+     * 定期执行维护（合并读写缓冲、处理到期条目），空闲时也能及时回收。
+     */
+    @Scheduled(fixedDelayString = "${cache.local.sweep-interval-ms:60000}")
+    public void sweep() {
+        cache.cleanUp();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        CacheStats s = cache.stats();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", cache.estimatedSize());
+        m.put("weightBytes", cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+        m.put("maxWeightBytes", maxWeightBytes);
+        m.put("hits", s.hitCount());
+        m.put("misses", s.missCount());
+        m.put("hitRate", Math.round(s.hitRate() * 10_000.0) / 10_000.0);
+        m.put("evictions", s.evictionCount());
+        m.put("evictedWeightBytes", s.evictionWeight());
+        m.put("expirations", expirations.sum());
+        Map<String, Object> ns = new TreeMap<>();
+        namespaceCounters.forEach((name, c) -> ns.put(name, Map.of("hits", c.hits.sum(), "misses", c.misses.sum())));
+        m.put("namespaces", ns);
+        return m;
+    }
+
+    private NamespaceCounters countersOf(String key) {
+        return namespaceCounters.computeIfAbsent(namespaceOf(key), k -> new NamespaceCounters());
+    }
+
+    private static String namespaceOf(String key) {
+        int idx = key == null ? -1 : key.indexOf(':');
+        return idx > 0 ? key.substring(0, idx) : "default";
+    }
+
+    /**
+     * 粗略估算条目占用字节数（只用于权重限额，不追求精确）。
+     */
+    static int estimateWeight(String key, Object value) {
+        long w = 48L + (key == null ? 0 : key.length() * 2L) + estimate(value, 0);
+        return (int) Math.min(Integer.MAX_VALUE, w);
+    }
+
+    private static long estimate(Object v, int depth) {
+        if (v == null) return 0;
+        if (v instanceof CharSequence cs) return 40L + cs.length() * 2L;
+        if (v instanceof Number || v instanceof Boolean || v instanceof Character || v instanceof Enum<?>) return 16;
+        if (v instanceof byte[] bytes) return 16L + bytes.length;
+        if (depth >= 4) return DEFAULT_OBJECT_WEIGHT;
+        if (v instanceof Collection<?> c) {
+            return 32L + sampled(c, c.size(), depth);
+        }
+        if (v instanceof Map<?, ?> map) {
+            long sum = 0;
+            int n = 0;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                if (n++ >= WEIGHT_SAMPLE_LIMIT) break;
+                sum += 32 + estimate(e.getKey(), depth + 1) + estimate(e.getValue(), depth + 1);
+            }
+            return 48L + extrapolate(sum, Math.min(n, WEIGHT_SAMPLE_LIMIT), map.size());
+        }
+        return DEFAULT_OBJECT_WEIGHT;
+    }
+
+    private static long sampled(Iterable<?> items, int size, int depth) {
+        long sum = 0;
+        int n = 0;
+        for (Object o : items) {
+            if (n >= WEIGHT_SAMPLE_LIMIT) break;
+            sum += 8 + estimate(o, depth + 1);
+            n++;
+        }
+        return extrapolate(sum, n, size);
+    }
+
+    private static long extrapolate(long sampledSum, int sampled, int total) {
+        if (sampled <= 0 || total <= sampled) return sampledSum;
+        return sampledSum / sampled * total;
+    }
+
+    private static Map<String, Long> parseNamespaceTtls(String csv) {
+        Map<String, Long> map = new HashMap<>();
+        if (csv == null || csv.isBlank()) return map;
+        for (String pair : csv.split(",")) {
+            String[] kv = pair.split("=");
+            if (kv.length != 2) continue;
+            try {
+                map.put(kv[0].trim(), Long.parseLong(kv[1].trim()));
+            } catch (NumberFormatException e) {
+                log.warn("无法解析缓存命名空间 TTL: {}", pair);
+            }
+        }
+        return map;
+    }
+
+    private static final class NamespaceCounters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package com.noncore.assessment.service.impl;
+
+import com.noncore.assessment.service.CacheService;
+import com.noncore.assessment.service.cache.CacheInvalidationBus;
+import com.noncore.assessment.service.cache.SharedCacheTier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 两级缓存：本地近缓存（{@link InMemoryCacheServiceImpl}）+ 可插拔共享层（{@link SharedCacheTier}），
+ * 删除或覆盖已有值时经 {@link CacheInvalidationBus} 通知其他节点丢弃近缓存副本。
+ *
+ * <p>读：近缓存 → 共享层（命中后回填近缓存）；写/删：共享层 → 近缓存 → 广播失效（纯回填写入不广播）。
+ * 配置 cache.cluster.near-max-ttl-seconds 后近缓存 TTL 不超过该值，失效消息丢失时陈旧时间仍有上限。
+ * 单节点默认配置（shared-tier=none, bus=local）下行为与纯本地缓存一致。</p>
+ */
+@Slf4j
+@Service("cacheService")
+@Primary
+public class TwoTierCacheServiceImpl implements CacheService {
+
+    /** 共享层命中回填近缓存时的默认 TTL（命名空间未配置 TTL 时） */
+    private static final long REFILL_TTL_SECONDS = 60;
+
+    private final InMemoryCacheServiceImpl near;
+    private final SharedCacheTier shared;
+    private final CacheInvalidationBus bus;
+
+    @Value("${cache.cluster.near-max-ttl-seconds:0}")
+    private long nearMaxTtlSeconds;
+
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder sharedMisses = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
+
+    public TwoTierCacheServiceImpl(InMemoryCacheServiceImpl near, SharedCacheTier shared, CacheInvalidationBus bus) {
+        this.near = near;
+        this.shared = shared;
+        this.bus = bus;
+        bus.subscribe(key -> {
+            invalidationsReceived.increment();
+            near.delete(key);
+        });
+        log.info("Cache tiers: near=caffeine, shared={}, bus={}", shared.name(), bus.name());
+    }
+
+    @Override
+    public <T> Optional<T> get(String key, Class<T> clazz) {
+        Optional<T> local = near.get(key, clazz);
+        if (local.isPresent()) {
+            return local;
+        }
+        Optional<T> remote = shared.get(key, clazz);
+        if (remote.isPresent()) {
+            sharedHits.increment();
+            // 共享层不返回剩余 TTL，近缓存按上限回填
+            near.putWithTtl(key, remote.get(), nearTtl(near.resolveTtlSeconds(key, REFILL_TTL_SECONDS)));
+        } else {
+            sharedMisses.increment();
+        }
+        return remote;
+    }
+
+    @Override
+    public void set(String key, Object value, long timeoutInSeconds) {
+        long ttl = near.resolveTtlSeconds(key, timeoutInSeconds);
+        shared.put(key, value, ttl);
+        // 读穿回填（本节点此前无值）不广播：其他节点的近缓存副本仍然有效，广播只会让各节点互相驱逐；
+        // 只有覆盖已有值时才通知其他节点丢弃旧副本。数据变更统一走 delete 广播。
+        if (near.putWithTtl(key, value, nearTtl(ttl))) {
+            bus.publish(key);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        shared.delete(key);
+        near.delete(key);
+        bus.publish(key);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("near", near.stats());
+        m.put("sharedTier", shared.name());
+        m.put("sharedHits", sharedHits.sum());
+        m.put("sharedMisses", sharedMisses.sum());
+        m.put("bus", bus.name());
+        m.put("invalidationsReceived", invalidationsReceived.sum());
+        return m;
+    }
+
+    private long nearTtl(long ttlSeconds) {
+        if (nearMaxTtlSeconds <= 0) return ttlSeconds;
+        return ttlSeconds > 0 ? Math.min(ttlSeconds, nearMaxTtlSeconds) : nearMaxTtlSeconds;
+    }
+}
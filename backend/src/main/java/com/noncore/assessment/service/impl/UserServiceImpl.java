@@ -5,6 +5,7 @@ import com.noncore.assessment.dto.response.UserProfileResponse;
 import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
 import com.noncore.assessment.mapper.UserMapper;
+import com.noncore.assessment.security.TokenRevocationStore;
 import com.noncore.assessment.service.EmailService;
 import com.noncore.assessment.service.UserService;
 import com.noncore.assessment.dto.request.UpdateProfileRequest;
@@ -38,15 +39,18 @@ public class UserServiceImpl implements UserService {
 
     private final com.noncore.assessment.mapper.FileRecordMapper fileRecordMapper;
     private final com.noncore.assessment.service.FileStorageService fileStorageService;
+    private final TokenRevocationStore revocationStore;
 
     public UserServiceImpl(UserMapper userMapper, PasswordEncoder passwordEncoder, EmailService emailService,
                            com.noncore.assessment.mapper.FileRecordMapper fileRecordMapper,
-                           com.noncore.assessment.service.FileStorageService fileStorageService) {
+                           com.noncore.assessment.service.FileStorageService fileStorageService,
+                           TokenRevocationStore revocationStore) {
         this.userMapper = userMapper;
         this.passwordEncoder = passwordEncoder;
         this.emailService = emailService;
         this.fileRecordMapper = fileRecordMapper;
         this.fileStorageService = fileStorageService;
+        this.revocationStore = revocationStore;
     }
 
     @Override
@@ -170,6 +174,8 @@ public class UserServiceImpl implements UserService {
         if (result <= 0) {
             throw new BusinessException(ErrorCode.OPERATION_FAILED, "修改密码失败");
         }
+        // 改密后此前签发的令牌全部失效
+        revocationStore.revokeAllForUser(user.getId());
         logger.info("密码修改成功: {}", user.getUsername());
     }
 
@@ -205,6 +211,7 @@ public class UserServiceImpl implements UserService {
         String encodedPassword = passwordEncoder.encode(newPassword);
         userMapper.updatePassword(userId, encodedPassword);
         inMemoryTokens.remove(resetKey);
+        revocationStore.revokeAllForUser(userId);
         logger.info("用户密码重置成功，用户ID: {}", userId);
     }
 
@@ -2,73 +2,198 @@ package com.noncore.assessment.service.llm;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.*;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.util.StringUtils;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
-import com.noncore.assessment.config.AiConfigProperties;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
 
 /**
  * Google Gemini 直连客户端（v1beta, responses:generate）
  * 说明：Gemini 与 OpenAI Chat Completions 不同，这里做最小可用适配（文本-only）。
+ * 流式输出使用 streamGenerateContent?alt=sse，按 SSE 事件增量解析。
  */
 @Slf4j
 @Component
 public class GeminiClient {
 
-    private final RestTemplate directRestTemplate;
-    private final AiConfigProperties aiConfig;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final okhttp3.MediaType JSON_MEDIA_TYPE = okhttp3.MediaType.get("application/json; charset=utf-8");
+
+    private final LlmHttpTransport transport;
 
     @Autowired
-    public GeminiClient(AiConfigProperties aiConfig) {
-        this.aiConfig = aiConfig;
-        this.directRestTemplate = buildRestTemplate(false);
+    public GeminiClient(LlmHttpTransport transport) {
+        this.transport = transport;
     }
 
-    private RestTemplate buildRestTemplate(boolean useProxy) {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
-        factory.setConnectTimeout(pc.getConnectTimeoutMs());
-        factory.setReadTimeout(pc.getReadTimeoutMs());
-        if (useProxy && pc != null && pc.isEnabled()) {
-            Proxy proxy = new Proxy(
-                "SOCKS".equalsIgnoreCase(pc.getType()) ? Proxy.Type.SOCKS : Proxy.Type.HTTP,
-                new InetSocketAddress(pc.getHost(), pc.getPort())
-            );
-            factory.setProxy(proxy);
+    public String generate(List<Map<String, Object>> partsMessages, String model, boolean jsonOnly, String baseUrl, String apiKey) {
+        return generate(partsMessages, model, jsonOnly, baseUrl, apiKey, null);
+    }
+
+    /**
+     * 可取消的非流式生成：cancellation 取消时直接中止进行中的上游请求（阻塞中的 execute 立即返回）。
+     */
+    public String generate(List<Map<String, Object>> partsMessages, String model, boolean jsonOnly, String baseUrl, String apiKey,
+                           LlmStreamCancellation cancellation) {
+        var contents = buildContents(partsMessages);
+
+        String url = normalizeBaseUrl(baseUrl) + "/v1beta/models/" + model + ":generateContent";
+        String json = toJson(buildRequestBody(contents, jsonOnly));
+
+        String host = hostOf(url);
+        List<LlmHttpTransport.Plan> plans = transport.plans(host);
+        IOException last = null;
+        String lastPlan = plans.isEmpty() ? "direct" : plans.get(0).label();
+        for (int i = 0; i < plans.size(); i++) {
+            LlmHttpTransport.Plan plan = plans.get(i);
+            try {
+                log.info("Gemini generateContent {} (model={}, jsonOnly={})", plan.label(), model, jsonOnly);
+                String text = executeGenerate(plan, url, apiKey, json, cancellation);
+                transport.markSuccess(host, plan);
+                return text;
+            } catch (IOException e) {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    throw new BusinessException(ErrorCode.SYSTEM_ERROR, "AI 请求已取消");
+                }
+                last = e;
+                lastPlan = plan.label();
+                if (looksLikeNetworkIssue(e) && i < plans.size() - 1) {
+                    log.warn("Gemini {} failed, switching to {} ... err={}",
+                            plan.label(), plans.get(i + 1).label(), safeErr(e));
+                    continue;
+                }
+                log.error("Gemini request error via {}", plan.label(), e);
+                break;
+            }
+        }
+
+        String msg = rootMessage(last);
+        if (looksLikeNetworkIssue(last)) {
+            msg = msg + "（网络/代理连接异常，请检查 AI_PROXY_HOST/AI_PROXY_PORT/AI_PROXY_TYPE，或确认本机代理已启动）";
         }
-        return new RestTemplate(factory);
+        throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Gemini请求异常(model=" + model + ", via=" + lastPlan + "): " + msg);
     }
 
-    private RestTemplate buildRestTemplateForProxy(ProxyTarget target) {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
-        factory.setConnectTimeout(pc.getConnectTimeoutMs());
-        factory.setReadTimeout(pc.getReadTimeoutMs());
-        Proxy proxy = new Proxy(
-                "SOCKS".equalsIgnoreCase(target.type()) ? Proxy.Type.SOCKS : Proxy.Type.HTTP,
-                new InetSocketAddress(target.host(), target.port())
-        );
-        factory.setProxy(proxy);
-        return new RestTemplate(factory);
+    /**
+     * 流式生成（streamGenerateContent?alt=sse）：增量文本逐段回调 listener，返回完整文本。
+     * 429/503 直接以 AI_RATE_LIMITED 透出（并发收缩由 {@link LlmHttpTransport} 的自适应限流负责，不在请求线程内睡眠重试）；
+     * 已开始输出后不再切换链路；取消时中止上游请求并返回已收到的部分。
+     */
+    public String streamGenerate(List<Map<String, Object>> partsMessages, String model, boolean jsonOnly,
+                                 String baseUrl, String apiKey,
+                                 LlmStreamListener listener, LlmStreamCancellation cancellation) {
+        String url = normalizeBaseUrl(baseUrl) + "/v1beta/models/" + model + ":streamGenerateContent?alt=sse";
+        String json = toJson(buildRequestBody(buildContents(partsMessages), jsonOnly));
+
+        String host = hostOf(url);
+        List<LlmHttpTransport.Plan> plans = transport.plans(host);
+        IOException last = null;
+        String lastPlan = plans.isEmpty() ? "direct" : plans.get(0).label();
+        for (int i = 0; i < plans.size(); i++) {
+            LlmHttpTransport.Plan plan = plans.get(i);
+            StringBuilder full = new StringBuilder();
+            try {
+                streamViaTransport(plan, host, url, apiKey, json, full, listener, cancellation, model);
+                return full.toString();
+            } catch (IOException e) {
+                if (cancellation.isCancelled()) {
+                    return full.toString();
+                }
+                last = e;
+                lastPlan = plan.label();
+                if (full.length() == 0 && looksLikeNetworkIssue(e) && i < plans.size() - 1) {
+                    log.warn("Gemini stream {} failed, switching to {} ... err={}",
+                            plan.label(), plans.get(i + 1).label(), safeErr(e));
+                    continue;
+                }
+                log.error("Gemini stream error via {}", plan.label(), e);
+                break;
+            }
+        }
+
+        String msg = rootMessage(last);
+        if (looksLikeNetworkIssue(last)) {
+            msg = msg + "（网络/代理连接异常，请检查 AI_PROXY_HOST/AI_PROXY_PORT/AI_PROXY_TYPE，或确认本机代理已启动）";
+        }
+        throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Gemini请求异常(model=" + model + ", via=" + lastPlan + "): " + msg);
     }
 
-    public String generate(List<Map<String, Object>> partsMessages, String model, boolean jsonOnly, String baseUrl, String apiKey) {
+    private void streamViaTransport(LlmHttpTransport.Plan plan, String host, String url, String apiKey, String json,
+                                    StringBuilder full, LlmStreamListener listener, LlmStreamCancellation cancellation,
+                                    String model) throws IOException {
+        log.info("Gemini streamGenerateContent {} (model={})", plan.label(), model);
+        try (LlmHttpTransport.Exchange exchange = transport.open(plan, buildRequest(url, apiKey, json, true), cancellation)) {
+            Response resp = exchange.response();
+            if (!resp.isSuccessful() || resp.body() == null) {
+                throw upstreamError(resp, "Gemini stream");
+            }
+            transport.markSuccess(host, plan);
+            SseEventReader.read(resp.body().charStream(), data -> {
+                String delta = extractStreamText(data);
+                if (delta != null && !delta.isEmpty()) {
+                    full.append(delta);
+                    try {
+                        listener.onDelta(delta);
+                    } catch (Exception e) {
+                        // 下游（客户端）已断开：中止上游
+                        cancellation.cancel();
+                        return false;
+                    }
+                }
+                return !cancellation.isCancelled();
+            });
+        }
+    }
+
+    /**
+     * 解析一条流式响应：拼接 candidates[0].content.parts[].text（跳过思考摘要 part）
+     */
+    @SuppressWarnings("unchecked")
+    private String extractStreamText(String data) {
+        Map<String, Object> chunk;
+        try {
+            chunk = OBJECT_MAPPER.readValue(data, Map.class);
+        } catch (Exception e) {
+            log.debug("Gemini stream: skip non-JSON chunk: {}", data);
+            return null;
+        }
+        Object err = chunk.get("error");
+        if (err instanceof Map<?, ?> em && em.get("message") != null) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Gemini 请求失败：" + em.get("message"));
+        }
+        if (!(chunk.get("candidates") instanceof List<?> cands) || cands.isEmpty()) return null;
+        if (!(cands.get(0) instanceof Map<?, ?> cand) || !(cand.get("content") instanceof Map<?, ?> content)) return null;
+        if (!(content.get("parts") instanceof List<?> parts)) return null;
+        StringBuilder sb = new StringBuilder();
+        for (Object p : parts) {
+            if (p instanceof Map<?, ?> pm && pm.get("text") != null && !Boolean.TRUE.equals(pm.get("thought"))) {
+                sb.append(pm.get("text"));
+            }
+        }
+        return sb.toString();
+    }
+
+    private RequestBody buildRequestBody(List<Map<String, Object>> contents, boolean jsonOnly) {
+        RequestBody body = new RequestBody();
+        body.setContents(contents);
+        if (jsonOnly) {
+            // Gemini JSON 模式：使用 responseMimeType 指定 JSON
+            body.setGenerationConfig(Map.of("responseMimeType", "application/json"));
+        }
+        return body;
+    }
+
+    private List<Map<String, Object>> buildContents(List<Map<String, Object>> partsMessages) {
         // 将 OpenAI 风格的 messages（数组，包含 {type:'text', text:'...'}） 转为 Gemini 的 contents 结构
         // 约定：partsMessages 的每一项为 { role, content }；content 为字符串或数组（text parts）
         var contents = new java.util.ArrayList<Map<String, Object>>();
@@ -114,187 +239,89 @@ public class GeminiClient {
                     "parts", parts
             ));
         }
+        return contents;
+    }
 
-        String url = normalizeBaseUrl(baseUrl) + "/v1beta/models/" + model + ":generateContent";
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("x-goog-api-key", apiKey);
-
-        RequestBody body = new RequestBody();
-        body.setContents(contents);
-        if (jsonOnly) {
-            // Gemini JSON 模式：使用 responseMimeType 指定 JSON
-            body.setGenerationConfig(Map.of("responseMimeType", "application/json"));
-        }
-
-        AiConfigProperties.RetryConfig rc = aiConfig.getRetry();
-        int attempts = Math.max(1, rc.getMaxAttempts());
-        long baseBackoff = Math.max(0, rc.getBackoffMs());
-        long jitter = Math.max(0, rc.getJitterMs());
-
-        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
-        boolean proxyEnabled = pc != null && pc.isEnabled();
-        boolean alwaysProxy = proxyEnabled && pc.isAlwaysUseProxy();
-        boolean allowRetryWithProxy = proxyEnabled && pc.isAutoRetryWithProxy() && !alwaysProxy;
-
-        List<TransportPlan> plans = new ArrayList<>();
-        if (alwaysProxy) {
-            List<ProxyTarget> proxyTargets = buildProxyTargets(pc);
-            if (proxyTargets.isEmpty()) {
-                plans.add(new TransportPlan("direct", directRestTemplate));
-            } else {
-                for (ProxyTarget p : proxyTargets) {
-                    plans.add(new TransportPlan("proxy " + p.host() + ":" + p.port() + " (" + p.type() + ")", buildRestTemplateForProxy(p)));
-                }
+    @SuppressWarnings("unchecked")
+    private String executeGenerate(LlmHttpTransport.Plan plan, String url, String apiKey, String json,
+                                   LlmStreamCancellation cancellation) throws IOException {
+        try (LlmHttpTransport.Exchange exchange = transport.open(plan, buildRequest(url, apiKey, json, false), cancellation)) {
+            Response resp = exchange.response();
+            if (!resp.isSuccessful()) {
+                // 认证/权限/配额等错误：把 Google 的返回原因透出（便于定位“Key 限制/未启用 API/无权限”）
+                throw upstreamError(resp, "Gemini");
             }
-        } else {
-            plans.add(new TransportPlan("direct", directRestTemplate));
-            if (allowRetryWithProxy) {
-                for (ProxyTarget p : buildProxyTargets(pc)) {
-                    plans.add(new TransportPlan("proxy " + p.host() + ":" + p.port() + " (" + p.type() + ")", buildRestTemplateForProxy(p)));
+            String raw = resp.body() == null ? null : resp.body().string();
+            Map<String, Object> bodyMap = null;
+            if (raw != null && !raw.isBlank()) {
+                try {
+                    bodyMap = OBJECT_MAPPER.readValue(raw, Map.class);
+                } catch (Exception e) {
+                    log.warn("Gemini response is not a JSON object: {}", raw.length() > 200 ? raw.substring(0, 200) : raw);
                 }
             }
-        }
-
-        RestClientException last = null;
-        String lastPlan = plans.isEmpty() ? "direct" : plans.get(0).label();
-        for (int i = 0; i < plans.size(); i++) {
-            TransportPlan plan = plans.get(i);
-            try {
-                return executeGenerateWithRetries(plan, url, body, headers, attempts, baseBackoff, jitter, model, jsonOnly);
-            } catch (RestClientException e) {
-                last = e;
-                lastPlan = plan.label();
-                if (looksLikeNetworkIssue(e) && i < plans.size() - 1) {
-                    log.warn("Gemini {} failed, switching to {} ... err={}",
-                            plan.label(), plans.get(i + 1).label(), safeErr(e));
-                    continue;
-                }
-                log.error("Gemini request error via {}", plan.label(), e);
-                break;
+            if (bodyMap == null) {
+                log.error("Gemini empty or unparsable body: status={}", resp.code());
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Gemini错误: " + resp.code());
             }
-        }
-
-        String msg = rootMessage(last);
-        if (looksLikeNetworkIssue(last)) {
-            msg = msg + "（网络/代理连接异常，请检查 AI_PROXY_HOST/AI_PROXY_PORT/AI_PROXY_TYPE，或确认本机代理已启动）";
-        }
-        throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Gemini请求异常(model=" + model + ", via=" + lastPlan + "): " + msg);
-    }
-
-    private String executeGenerateWithRetries(TransportPlan plan,
-                                              String url,
-                                              RequestBody body,
-                                              HttpHeaders headers,
-                                              int attempts,
-                                              long baseBackoff,
-                                              long jitter,
-                                              String model,
-                                              boolean jsonOnly) {
-        for (int i = 1; i <= attempts; i++) {
-            try {
-                if (i == 1) {
-                    log.info("Gemini generateContent {} (model={}, jsonOnly={})", plan.label(), model, jsonOnly);
-                }
-                HttpEntity<RequestBody> entity = new HttpEntity<>(body, headers);
-                @SuppressWarnings("unchecked")
-                ResponseEntity<Map<String, Object>> resp = (ResponseEntity<Map<String, Object>>) (ResponseEntity<?>) plan.template().exchange(url, HttpMethod.POST, entity, Map.class);
-                if (!resp.getStatusCode().is2xxSuccessful() || resp.getBody() == null) {
-                    log.error("Gemini non-2xx or empty body: status={}, body={}", resp.getStatusCode(), resp.getBody());
-                    throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Gemini错误: " + resp.getStatusCode());
-                }
-                Map<String, Object> bodyMap = resp.getBody();
-                Object cands = bodyMap.get("candidates");
-                if (cands instanceof List<?> list && !list.isEmpty()) {
-                    Object first = list.get(0);
-                    if (first instanceof Map<?, ?> mm) {
-                        Object content = mm.get("content");
-                        if (content instanceof Map<?, ?> cm) {
-                            Object parts = cm.get("parts");
-                            if (parts instanceof List<?> pl && !pl.isEmpty()) {
-                                Object p0 = pl.get(0);
-                                if (p0 instanceof Map<?, ?> pm) {
-                                    Object text = pm.get("text");
-                                    if (text != null) return String.valueOf(text);
-                                }
+            Object cands = bodyMap.get("candidates");
+            if (cands instanceof List<?> list && !list.isEmpty()) {
+                Object first = list.get(0);
+                if (first instanceof Map<?, ?> mm) {
+                    Object content = mm.get("content");
+                    if (content instanceof Map<?, ?> cm) {
+                        Object parts = cm.get("parts");
+                        if (parts instanceof List<?> pl && !pl.isEmpty()) {
+                            Object p0 = pl.get(0);
+                            if (p0 instanceof Map<?, ?> pm) {
+                                Object text = pm.get("text");
+                                if (text != null) return String.valueOf(text);
                             }
                         }
                     }
                 }
-                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "无法解析大模型返回");
-            } catch (RestClientException e) {
-                // 认证/权限/配额等错误：把 Google 的返回原因透出（便于定位“Key 限制/未启用 API/无权限”）
-                if (e instanceof HttpStatusCodeException he) {
-                    String raw = he.getResponseBodyAsString();
-                    String brief = raw == null ? "" : raw.trim();
-                    if (brief.length() > 800) {
-                        brief = brief.substring(0, 800) + "...(truncated)";
-                    }
-                    int sc = he.getStatusCode().value();
-                    log.warn("Gemini http error status={}, body={}", sc, brief);
-                    throw new BusinessException(ErrorCode.SYSTEM_ERROR,
-                            "Gemini HTTP " + sc + (brief.isBlank() ? "" : (": " + brief)));
-                }
-
-                // 判断是否 429/503，若是则指数退避重试
-                int sc = extractStatusCode(e);
-                boolean retryable = (sc == 429 || sc == 503);
-                if (retryable && i < attempts) {
-                    long sleep = (long) (baseBackoff * Math.pow(2, i - 1) + Math.random() * jitter);
-                    log.warn("Gemini {} received (status={}), retrying in {} ms... (attempt {}/{})", sc, sc, sleep, i + 1, attempts);
-                    try {
-                        Thread.sleep(sleep);
-                    } catch (InterruptedException ignored) {
-                    }
-                    continue;
-                }
-                throw e;
             }
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "无法解析大模型返回");
         }
-        throw new RestClientException("Gemini request failed");
     }
 
-    private List<ProxyTarget> buildProxyTargets(AiConfigProperties.ProxyConfig pc) {
-        if (pc == null || !pc.isEnabled()) return List.of();
-        LinkedHashMap<String, ProxyTarget> dedup = new LinkedHashMap<>();
-        String host = pc.getHost();
-        int port = pc.getPort();
-        String type = normalizeProxyType(pc.getType());
-
-        addProxyTarget(dedup, host, port, type);
-        addProxyTarget(dedup, host, port, flipProxyType(type));
-
-        if (isLikelyLocalHost(host)) {
-            for (String h : List.of("127.0.0.1", "localhost")) {
-                for (int p : new int[]{7890, 7897}) {
-                    addProxyTarget(dedup, h, p, type);
-                    addProxyTarget(dedup, h, p, flipProxyType(type));
-                }
-            }
+    private Request buildRequest(String url, String apiKey, String json, boolean stream) {
+        Request.Builder rb = new Request.Builder()
+                .url(url)
+                .header("x-goog-api-key", apiKey == null ? "" : apiKey)
+                .post(okhttp3.RequestBody.create(json, JSON_MEDIA_TYPE));
+        if (stream) {
+            rb.header("Accept", "text/event-stream");
         }
-        return new ArrayList<>(dedup.values());
-    }
-
-    private void addProxyTarget(LinkedHashMap<String, ProxyTarget> dedup, String host, int port, String type) {
-        if (!StringUtils.hasText(host) || port <= 0) return;
-        String normalizedType = normalizeProxyType(type);
-        String key = host.trim().toLowerCase() + ":" + port + ":" + normalizedType;
-        dedup.putIfAbsent(key, new ProxyTarget(host.trim(), port, normalizedType));
+        return rb.build();
     }
 
-    private String normalizeProxyType(String type) {
-        return "SOCKS".equalsIgnoreCase(type) ? "SOCKS" : "HTTP";
+    private BusinessException upstreamError(Response resp, String what) throws IOException {
+        int sc = resp.code();
+        String raw = resp.body() != null ? resp.body().string() : "";
+        String brief = raw == null ? "" : raw.trim();
+        if (brief.length() > 800) {
+            brief = brief.substring(0, 800) + "...(truncated)";
+        }
+        log.warn("{} http error status={}, body={}", what, sc, brief);
+        return new BusinessException((sc == 429 || sc == 503) ? ErrorCode.AI_RATE_LIMITED : ErrorCode.SYSTEM_ERROR,
+                "Gemini HTTP " + sc + (brief.isBlank() ? "" : (": " + brief)));
     }
 
-    private String flipProxyType(String type) {
-        return "SOCKS".equalsIgnoreCase(type) ? "HTTP" : "SOCKS";
+    private String toJson(RequestBody body) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(body);
+        } catch (Exception e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Gemini请求序列化失败: " + e.getMessage());
+        }
     }
 
-    private boolean isLikelyLocalHost(String host) {
-        if (!StringUtils.hasText(host)) return false;
-        String h = host.trim().toLowerCase();
-        return "127.0.0.1".equals(h) || "localhost".equals(h) || "::1".equals(h);
+    private String hostOf(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "Gemini base-url 无效: " + url);
+        }
+        return parsed.host();
     }
 
     private static class InlineData {
@@ -375,18 +402,6 @@ public class GeminiClient {
 
     private String normalizeBaseUrl(String v) { return (v == null) ? "" : (v.endsWith("/") ? v.substring(0, v.length()-1) : v); }
 
-    private int extractStatusCode(RestClientException e) {
-        try {
-            if (e instanceof org.springframework.web.client.HttpStatusCodeException he) {
-                return he.getStatusCode().value();
-            }
-        } catch (Throwable ignore) { }
-        return -1;
-    }
-
-    private record ProxyTarget(String host, int port, String type) {}
-    private record TransportPlan(String label, RestTemplate template) {}
-
     @Data
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class RequestBody {
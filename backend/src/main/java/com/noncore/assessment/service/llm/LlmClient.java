@@ -8,59 +8,32 @@ import com.noncore.assessment.exception.ErrorCode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.*;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.util.StringUtils;
-
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.util.ArrayList;
+
+import java.io.IOException;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import com.noncore.assessment.config.AiConfigProperties;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 
 @Slf4j
 @Component
 public class LlmClient {
 
-    private final RestTemplate directRestTemplate;
-    private final AiConfigProperties aiConfig;
+    private final LlmHttpTransport transport;
 
     @Autowired
-    public LlmClient(AiConfigProperties aiConfig) {
-        this.aiConfig = aiConfig;
-        this.directRestTemplate = buildRestTemplate();
+    public LlmClient(LlmHttpTransport transport) {
+        this.transport = transport;
     }
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-
-    private RestTemplate buildRestTemplate() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
-        factory.setConnectTimeout(pc.getConnectTimeoutMs());
-        factory.setReadTimeout(pc.getReadTimeoutMs());
-        return new RestTemplate(factory);
-    }
-
-    private RestTemplate buildRestTemplateForProxy(ProxyTarget target) {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
-        factory.setConnectTimeout(pc.getConnectTimeoutMs());
-        factory.setReadTimeout(pc.getReadTimeoutMs());
-        Proxy proxy = new Proxy(
-                "SOCKS".equalsIgnoreCase(target.type()) ? Proxy.Type.SOCKS : Proxy.Type.HTTP,
-                new InetSocketAddress(target.host(), target.port())
-        );
-        factory.setProxy(proxy);
-        return new RestTemplate(factory);
-    }
+    private static final okhttp3.MediaType JSON_MEDIA_TYPE = okhttp3.MediaType.get("application/json; charset=utf-8");
 
     public String createChatCompletion(List<Message> messages, String model, boolean stream, String baseUrl, String apiKey) {
         // 向后兼容：仅字符串 content 的简单消息
@@ -77,31 +50,127 @@ public class LlmClient {
     public String createChatCompletionRaw(List<Map<String, Object>> payloadMessages, String model, boolean stream, String baseUrl, String apiKey) {
         String url = buildChatUrl(baseUrl);
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        if (apiKey != null && !apiKey.isBlank()) {
-            headers.set("Authorization", "Bearer " + apiKey);
-        }
-
         // 不启用 reasoning，确保广泛兼容
         RequestBody body = buildBody(payloadMessages, model, false, false);
-        return doRequest(url, headers, body);
+        return doRequest(url, apiKey, body, null);
     }
 
     /**
      * JSON-only 变体：强制上游以 JSON 对象返回（OpenAI 兼容 response_format）。
      */
     public String createChatCompletionJsonOnly(List<Map<String, Object>> payloadMessages, String model, boolean stream, String baseUrl, String apiKey) {
+        return createChatCompletionJsonOnly(payloadMessages, model, stream, baseUrl, apiKey, null);
+    }
+
+    /**
+     * 可取消的 JSON-only 调用：cancellation 取消时直接中止进行中的上游请求（阻塞中的 execute 立即返回）。
+     */
+    public String createChatCompletionJsonOnly(List<Map<String, Object>> payloadMessages, String model, boolean stream, String baseUrl, String apiKey,
+                                               LlmStreamCancellation cancellation) {
         String url = buildChatUrl(baseUrl);
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        if (apiKey != null && !apiKey.isBlank()) {
-            headers.set("Authorization", "Bearer " + apiKey);
+        RequestBody body = buildBody(payloadMessages, model, false, true);
+        return doRequest(url, apiKey, body, cancellation);
+    }
+
+    /**
+     * 流式对话（OpenAI 兼容 SSE）：增量文本逐段回调 listener，返回完整文本。
+     * 已开始输出后不再切换链路重试；取消时中止上游请求并返回已收到的部分。
+     */
+    public String streamChatCompletion(List<Map<String, Object>> payloadMessages, String model, boolean jsonOnly,
+                                       String baseUrl, String apiKey,
+                                       LlmStreamListener listener, LlmStreamCancellation cancellation) {
+        String url = buildChatUrl(baseUrl);
+        RequestBody body = buildBody(payloadMessages, model, false, jsonOnly);
+        body.setStream(true);
+        String json = toJson(body);
+
+        String host = hostOf(url);
+        List<LlmHttpTransport.Plan> plans = transport.plans(host);
+        IOException last = null;
+        String lastPlan = plans.isEmpty() ? "direct" : plans.get(0).label();
+        for (int i = 0; i < plans.size(); i++) {
+            LlmHttpTransport.Plan plan = plans.get(i);
+            StringBuilder full = new StringBuilder();
+            try {
+                streamViaTransport(plan, host, url, apiKey, json, full, listener, cancellation);
+                return full.toString();
+            } catch (IOException e) {
+                if (cancellation.isCancelled()) {
+                    return full.toString();
+                }
+                last = e;
+                lastPlan = plan.label();
+                if (full.length() == 0 && looksLikeNetworkIssue(e) && i < plans.size() - 1) {
+                    log.warn("LLM stream {} failed, switching to {} ... err={}",
+                            plan.label(), plans.get(i + 1).label(), safeErr(e));
+                    continue;
+                }
+                log.error("LLM stream error via {}", plan.label(), e);
+                break;
+            }
         }
 
-        RequestBody body = buildBody(payloadMessages, model, false, true);
-        return doRequest(url, headers, body);
+        String msg = rootMessage(last);
+        if (looksLikeNetworkIssue(last)) {
+            msg = msg + "（网络/代理连接异常，请检查 AI_PROXY_HOST/AI_PROXY_PORT/AI_PROXY_TYPE，或确认本机代理已启动）";
+        }
+        throw new BusinessException(ErrorCode.SYSTEM_ERROR, "LLM请求异常(via=" + lastPlan + "): " + msg);
+    }
+
+    private void streamViaTransport(LlmHttpTransport.Plan plan, String host, String url, String apiKey, String json,
+                                    StringBuilder full, LlmStreamListener listener, LlmStreamCancellation cancellation) throws IOException {
+        log.info("LLM stream via {} -> {}", plan.label(), url);
+        try (LlmHttpTransport.Exchange exchange = transport.open(plan, buildRequest(url, apiKey, json, true), cancellation)) {
+            Response resp = exchange.response();
+            if (!resp.isSuccessful() || resp.body() == null) {
+                throw upstreamError(resp, url);
+            }
+            transport.markSuccess(host, plan);
+            SseEventReader.read(resp.body().charStream(), data -> {
+                if ("[DONE]".equals(data.trim())) return false;
+                String delta = extractStreamDelta(data);
+                if (delta != null && !delta.isEmpty()) {
+                    full.append(delta);
+                    try {
+                        listener.onDelta(delta);
+                    } catch (Exception e) {
+                        // 下游（客户端）已断开：中止上游
+                        cancellation.cancel();
+                        return false;
+                    }
+                }
+                return !cancellation.isCancelled();
+            });
+        }
+    }
+
+    /**
+     * 解析一条流式 chunk：choices[].delta.content；chunk 内携带 error 时抛出业务异常
+     */
+    @SuppressWarnings("unchecked")
+    private String extractStreamDelta(String data) {
+        Map<String, Object> chunk;
+        try {
+            chunk = OBJECT_MAPPER.readValue(data, Map.class);
+        } catch (Exception e) {
+            log.debug("LLM stream: skip non-JSON chunk: {}", data);
+            return null;
+        }
+        Object err = chunk.get("error");
+        if (err instanceof Map<?, ?> em && em.get("message") != null) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "LLM 请求失败：" + em.get("message"));
+        }
+        Object choices = chunk.get("choices");
+        if (!(choices instanceof List<?> list)) return null;
+        StringBuilder sb = new StringBuilder();
+        for (Object c : list) {
+            if (c instanceof Map<?, ?> cm && cm.get("delta") instanceof Map<?, ?> delta) {
+                String text = extractContentText(delta.get("content"));
+                if (text != null) sb.append(text);
+            }
+        }
+        return sb.toString();
     }
 
     private RequestBody buildBody(List<Map<String, Object>> payloadMessages, String model, boolean includeReasoning, boolean jsonOnly) {
@@ -118,19 +187,23 @@ public class LlmClient {
         return body;
     }
 
-    private String doRequest(String url, HttpHeaders headers, RequestBody body) {
-        List<TransportPlan> plans = buildTransportPlans();
-        RestClientException last = null;
+    private String doRequest(String url, String apiKey, RequestBody body, LlmStreamCancellation cancellation) {
+        String json = toJson(body);
+        String host = hostOf(url);
+        List<LlmHttpTransport.Plan> plans = transport.plans(host);
+        IOException last = null;
         String lastPlan = plans.isEmpty() ? "direct" : plans.get(0).label();
 
         for (int i = 0; i < plans.size(); i++) {
-            TransportPlan plan = plans.get(i);
+            LlmHttpTransport.Plan plan = plans.get(i);
             try {
-                return doRequestViaTransport(plan, url, headers, body);
-            } catch (BusinessException be) {
-                // 上游已返回可读业务错误（401/402/403/5xx等），不切链路重试
-                throw be;
-            } catch (RestClientException e) {
+                String result = doRequestViaTransport(plan, url, apiKey, json, cancellation);
+                transport.markSuccess(host, plan);
+                return result;
+            } catch (IOException e) {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    throw new BusinessException(ErrorCode.SYSTEM_ERROR, "AI 请求已取消");
+                }
                 last = e;
                 lastPlan = plan.label();
                 if (looksLikeNetworkIssue(e) && i < plans.size() - 1) {
@@ -150,29 +223,71 @@ public class LlmClient {
         throw new BusinessException(ErrorCode.SYSTEM_ERROR, "LLM请求异常(via=" + lastPlan + "): " + msg);
     }
 
-    private String doRequestViaTransport(TransportPlan plan, String url, HttpHeaders headers, RequestBody body) {
-        try {
-            log.info("LLM request via {} -> {}", plan.label(), url);
-            HttpEntity<RequestBody> entity = new HttpEntity<>(body, headers);
-            @SuppressWarnings("unchecked")
-            ResponseEntity<Map<String, Object>> resp = (ResponseEntity<Map<String, Object>>) (ResponseEntity<?>) plan.template().exchange(url, HttpMethod.POST, entity, Map.class);
-            return parseSuccessfulResponse(resp);
-        } catch (RestClientException e) {
-            if (e instanceof HttpStatusCodeException statusEx) {
-                String message = buildFriendlyError(statusEx, url);
-                throw new BusinessException(ErrorCode.SYSTEM_ERROR, message);
+    private String doRequestViaTransport(LlmHttpTransport.Plan plan, String url, String apiKey, String json,
+                                         LlmStreamCancellation cancellation) throws IOException {
+        log.info("LLM request via {} -> {}", plan.label(), url);
+        // 上游已返回可读业务错误（401/402/403/5xx等）时抛 BusinessException，不切链路重试
+        try (LlmHttpTransport.Exchange exchange = transport.open(plan, buildRequest(url, apiKey, json, false), cancellation)) {
+            Response resp = exchange.response();
+            if (!resp.isSuccessful()) {
+                throw upstreamError(resp, url);
             }
-            throw e;
+            return parseSuccessfulResponse(resp.body() == null ? null : resp.body().string(), resp.code());
+        }
+    }
+
+    private Request buildRequest(String url, String apiKey, String json, boolean stream) {
+        Request.Builder rb = new Request.Builder()
+                .url(url)
+                .post(okhttp3.RequestBody.create(json, JSON_MEDIA_TYPE));
+        if (stream) {
+            rb.header("Accept", "text/event-stream");
+        }
+        if (apiKey != null && !apiKey.isBlank()) {
+            rb.header("Authorization", "Bearer " + apiKey);
+        }
+        return rb.build();
+    }
+
+    private BusinessException upstreamError(Response resp, String url) throws IOException {
+        int sc = resp.code();
+        String errBody = resp.body() != null ? resp.body().string() : null;
+        // 429/503：单独的错误码，便于批量任务按供应商退避
+        ErrorCode code = (sc == 429 || sc == 503) ? ErrorCode.AI_RATE_LIMITED : ErrorCode.SYSTEM_ERROR;
+        return new BusinessException(code, buildFriendlyError(HttpStatusCode.valueOf(sc), errBody, url));
+    }
+
+    private String toJson(RequestBody body) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(body);
+        } catch (Exception e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "LLM请求序列化失败: " + e.getMessage());
         }
     }
 
-    private String parseSuccessfulResponse(ResponseEntity<Map<String, Object>> resp) {
-        if (!resp.getStatusCode().is2xxSuccessful() || resp.getBody() == null) {
-            log.error("LLM non-2xx or empty body: status={}, body={}", resp.getStatusCode(), resp.getBody());
-            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "LLM错误: " + resp.getStatusCode());
+    private String hostOf(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "LLM base-url 无效: " + url);
+        }
+        return parsed.host();
+    }
+
+    @SuppressWarnings("unchecked")
+    private String parseSuccessfulResponse(String raw, int status) {
+        Map<String, Object> respBody = null;
+        if (raw != null && !raw.isBlank()) {
+            try {
+                respBody = OBJECT_MAPPER.readValue(raw, Map.class);
+            } catch (Exception e) {
+                log.warn("LLM response is not a JSON object: {}", raw.length() > 200 ? raw.substring(0, 200) : raw);
+            }
+        }
+        if (respBody == null) {
+            log.error("LLM empty or unparsable body: status={}", status);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "LLM错误: " + status);
         }
 
-        Map<String, Object> respBody = resp.getBody();
         // GLM 有时会包裹一层 data，或在顶层返回 output_text/text
         Map<?, ?> root = unwrapData(respBody);
 
@@ -209,79 +324,6 @@ public class LlmClient {
         throw new BusinessException(ErrorCode.SYSTEM_ERROR, "无法解析大模型返回");
     }
 
-    private List<TransportPlan> buildTransportPlans() {
-        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
-        boolean proxyEnabled = pc != null && pc.isEnabled();
-        boolean alwaysProxy = proxyEnabled && pc.isAlwaysUseProxy();
-        boolean allowRetryWithProxy = proxyEnabled && pc.isAutoRetryWithProxy() && !alwaysProxy;
-
-        List<TransportPlan> plans = new ArrayList<>();
-        if (alwaysProxy) {
-            List<ProxyTarget> targets = buildProxyTargets(pc);
-            if (targets.isEmpty()) {
-                plans.add(new TransportPlan("direct", directRestTemplate));
-            } else {
-                for (ProxyTarget target : targets) {
-                    plans.add(new TransportPlan(
-                            "proxy " + target.host() + ":" + target.port() + " (" + target.type() + ")",
-                            buildRestTemplateForProxy(target)));
-                }
-            }
-            return plans;
-        }
-
-        plans.add(new TransportPlan("direct", directRestTemplate));
-        if (allowRetryWithProxy) {
-            for (ProxyTarget target : buildProxyTargets(pc)) {
-                plans.add(new TransportPlan(
-                        "proxy " + target.host() + ":" + target.port() + " (" + target.type() + ")",
-                        buildRestTemplateForProxy(target)));
-            }
-        }
-        return plans;
-    }
-
-    private List<ProxyTarget> buildProxyTargets(AiConfigProperties.ProxyConfig pc) {
-        if (pc == null || !pc.isEnabled()) return List.of();
-        LinkedHashMap<String, ProxyTarget> dedup = new LinkedHashMap<>();
-        String host = pc.getHost();
-        int port = pc.getPort();
-        String type = normalizeProxyType(pc.getType());
-
-        addProxyTarget(dedup, host, port, type);
-        addProxyTarget(dedup, host, port, flipProxyType(type));
-        if (isLikelyLocalHost(host)) {
-            for (String h : List.of("127.0.0.1", "localhost")) {
-                for (int p : new int[]{7890, 7897}) {
-                    addProxyTarget(dedup, h, p, type);
-                    addProxyTarget(dedup, h, p, flipProxyType(type));
-                }
-            }
-        }
-        return new ArrayList<>(dedup.values());
-    }
-
-    private void addProxyTarget(LinkedHashMap<String, ProxyTarget> dedup, String host, int port, String type) {
-        if (!StringUtils.hasText(host) || port <= 0) return;
-        String normalizedType = normalizeProxyType(type);
-        String key = host.trim().toLowerCase() + ":" + port + ":" + normalizedType;
-        dedup.putIfAbsent(key, new ProxyTarget(host.trim(), port, normalizedType));
-    }
-
-    private String normalizeProxyType(String type) {
-        return "SOCKS".equalsIgnoreCase(type) ? "SOCKS" : "HTTP";
-    }
-
-    private String flipProxyType(String type) {
-        return "SOCKS".equalsIgnoreCase(type) ? "HTTP" : "SOCKS";
-    }
-
-    private boolean isLikelyLocalHost(String host) {
-        if (!StringUtils.hasText(host)) return false;
-        String h = host.trim().toLowerCase();
-        return "127.0.0.1".equals(h) || "localhost".equals(h) || "::1".equals(h);
-    }
-
     private boolean looksLikeNetworkIssue(Throwable e) {
         if (e == null) return false;
         Throwable t = e;
@@ -328,11 +370,10 @@ public class LlmClient {
         return (m == null || m.isBlank()) ? t.getClass().getSimpleName() : m;
     }
 
-    private String buildFriendlyError(HttpStatusCodeException ex, String url) {
+    private String buildFriendlyError(HttpStatusCode status, String responseBody, String url) {
         String provider = url != null && url.contains("open.bigmodel.cn") ? "GLM" : "LLM";
-        String upstreamMessage = extractErrorMessage(ex.getResponseBodyAsString());
+        String upstreamMessage = extractErrorMessage(responseBody);
     
-        HttpStatusCode status = ex.getStatusCode();
         String reason;
     
         // 兼容 Spring Boot 3：HttpStatusCode 不再有 getReasonPhrase()，必须判断类型
@@ -494,8 +535,6 @@ public class LlmClient {
         return normalized + "/v1/chat/completions";
     }
 
-    private record ProxyTarget(String host, int port, String type) {}
-    private record TransportPlan(String label, RestTemplate template) {}
 
     @Data
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -0,0 +1,304 @@
+package com.noncore.assessment.service.llm;
+
+import com.noncore.assessment.config.AiConfigProperties;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AI 出站 HTTP 传输层（LlmClient / GeminiClient 共用）。
+ *
+ * <p>所有请求共用一个 OkHttp 连接池（keep-alive，TLS 下经 ALPN 协商 HTTP/2），代理链路由同一基础客户端派生，
+ * 共享连接池与调度器。每个上游主机有自适应并发上限与熔断器（{@link ProviderLimiter}）；并记住各主机最近一次成功的链路
+ * （直连或某个代理），后续请求优先走该链路，省去“直连失败再切代理”的等待与重复握手。</p>
+ *
+ * <p>实时语音（Gemini Live）的 WebSocket 客户端同样由基础客户端派生：进程内只有一个调度器线程池与连接池，
+ * 每个会话只额外占用一个读帧线程（调度器按 maxLiveSessions 限额）。</p>
+ */
+@Slf4j
+@Component
+public class LlmHttpTransport {
+
+    private final AiConfigProperties aiConfig;
+    private final OkHttpClient baseClient;
+    private final Map<String, OkHttpClient> proxiedClients = new ConcurrentHashMap<>();
+    private final Map<Proxy, OkHttpClient> webSocketClients = new ConcurrentHashMap<>();
+    private final Map<String, ProviderLimiter> limiters = new ConcurrentHashMap<>();
+    private final Map<String, PreferredPlan> preferredPlans = new ConcurrentHashMap<>();
+
+    public LlmHttpTransport(AiConfigProperties aiConfig) {
+        this.aiConfig = aiConfig;
+        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
+        AiConfigProperties.HttpConfig hc = aiConfig.getHttp();
+        // 同步请求不受调度器限额约束；限额只作用于异步调用，即 Live WebSocket（握手后一直占用读帧线程）
+        Dispatcher dispatcher = new Dispatcher();
+        int maxLive = Math.max(1, hc.getMaxLiveSessions());
+        dispatcher.setMaxRequests(Math.max(64, maxLive));
+        dispatcher.setMaxRequestsPerHost(maxLive);
+        this.baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(Math.max(1, hc.getMaxIdleConnections()),
+                        Math.max(1, hc.getKeepAliveSeconds()), TimeUnit.SECONDS))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(Duration.ofMillis(pc.getConnectTimeoutMs()))
+                // 流式请求：readTimeout 为两次数据到达之间的最长间隔
+                .readTimeout(Duration.ofMillis(pc.getReadTimeoutMs()))
+                .writeTimeout(Duration.ofSeconds(30))
+                // 强制直连：避免系统默认代理影响
+                .proxy(Proxy.NO_PROXY)
+                .build();
+    }
+
+    /**
+     * 共享的基础客户端（直连），供需要自定义参数的调用方 newBuilder() 派生，以复用连接池与调度器
+     */
+    public OkHttpClient baseClient() {
+        return baseClient;
+    }
+
+    /**
+     * Live WebSocket 客户端：与基础客户端共享调度器和连接池，读超时为 0（长连接）并定时 ping。
+     * 按代理缓存，同一代理的所有会话复用同一实例。
+     *
+     * @param proxy 代理；直连传 {@link Proxy#NO_PROXY}
+     */
+    public OkHttpClient webSocketClient(Proxy proxy) {
+        Proxy key = proxy == null ? Proxy.NO_PROXY : proxy;
+        return webSocketClients.computeIfAbsent(key, p -> baseClient.newBuilder()
+                .proxy(p)
+                .readTimeout(Duration.ZERO)
+                .pingInterval(Duration.ofSeconds(Math.max(1, aiConfig.getHttp().getLivePingIntervalSeconds())))
+                .build());
+    }
+
+    /**
+     * 按代理配置生成链路列表；该主机最近成功的链路（未过期）排在最前
+     */
+    public List<Plan> plans(String host) {
+        AiConfigProperties.ProxyConfig pc = aiConfig.getProxy();
+        boolean proxyEnabled = pc != null && pc.isEnabled();
+        boolean alwaysProxy = proxyEnabled && pc.isAlwaysUseProxy();
+        boolean allowRetryWithProxy = proxyEnabled && pc.isAutoRetryWithProxy() && !alwaysProxy;
+
+        List<ProxyTarget> targets = (alwaysProxy || allowRetryWithProxy) ? buildProxyTargets(pc) : List.of();
+        List<Plan> plans = new ArrayList<>();
+        if (!alwaysProxy || targets.isEmpty()) {
+            plans.add(new Plan("direct", baseClient));
+        }
+        for (ProxyTarget target : targets) {
+            plans.add(new Plan(target.label(), proxiedClient(target)));
+        }
+
+        PreferredPlan preferred = host == null ? null : preferredPlans.get(host);
+        if (preferred != null && !preferred.isExpired(aiConfig.getHttp().getPreferredPlanTtlSeconds())) {
+            for (int i = 1; i < plans.size(); i++) {
+                if (plans.get(i).label().equals(preferred.label())) {
+                    plans.add(0, plans.remove(i));
+                    break;
+                }
+            }
+        }
+        return plans;
+    }
+
+    /**
+     * 记录某主机本次成功的链路
+     */
+    public void markSuccess(String host, Plan plan) {
+        if (host == null || plan == null) return;
+        PreferredPlan prev = preferredPlans.get(host);
+        if (prev == null || !prev.label().equals(plan.label())) {
+            log.info("AI transport for {} now prefers {}", host, plan.label());
+        }
+        preferredPlans.put(host, new PreferredPlan(plan.label(), System.currentTimeMillis()));
+    }
+
+    /**
+     * 发起请求：占用该主机的一个并发名额直到 {@link Exchange} 关闭（流式请求即读完为止）。
+     * 名额不足时排队至 acquireTimeoutMs；熔断打开时立即拒绝（{@code AI_CIRCUIT_OPEN}）。
+     * 响应头到达时按状态码反馈给限流器：429/503 收缩并发，5xx 与读超时计入熔断。
+     *
+     * @param cancellation 可为空；绑定后调用方取消会立即中止该请求
+     */
+    public Exchange open(Plan plan, Request request, LlmStreamCancellation cancellation) throws IOException {
+        String host = request.url().host();
+        ProviderLimiter limiter = limiters.computeIfAbsent(host, h -> new ProviderLimiter(h, aiConfig.getHttp()));
+        boolean probe = limiter.acquire();
+        long start = System.nanoTime();
+        ProviderLimiter.Outcome outcome = ProviderLimiter.Outcome.IGNORED;
+        try {
+            Call call = plan.client().newCall(request);
+            if (cancellation != null) {
+                cancellation.bind(call::cancel);
+            }
+            Response response = call.execute();
+            outcome = classify(response.code());
+            return new Exchange(response, limiter);
+        } catch (IOException | RuntimeException e) {
+            outcome = classify(e);
+            limiter.release();
+            throw e;
+        } finally {
+            limiter.onOutcome(probe, outcome, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private static ProviderLimiter.Outcome classify(int status) {
+        if (status == 429 || status == 503) return ProviderLimiter.Outcome.RATE_LIMITED;
+        if (status >= 500) return ProviderLimiter.Outcome.FAILURE;
+        return ProviderLimiter.Outcome.SUCCESS;
+    }
+
+    /**
+     * 仅读超时说明上游过载；连接失败多为链路（代理）问题，交给换链路处理，不计入熔断
+     */
+    private static ProviderLimiter.Outcome classify(Exception e) {
+        if (e instanceof SocketTimeoutException && !"connect timed out".equals(e.getMessage())) {
+            return ProviderLimiter.Outcome.FAILURE;
+        }
+        if (e instanceof InterruptedIOException && "timeout".equals(e.getMessage())) {
+            // OkHttp callTimeout 触发
+            return ProviderLimiter.Outcome.FAILURE;
+        }
+        return ProviderLimiter.Outcome.IGNORED;
+    }
+
+    /**
+     * 连接池与链路统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        ConnectionPool pool = baseClient.connectionPool();
+        m.put("connections", pool.connectionCount());
+        m.put("idleConnections", pool.idleConnectionCount());
+        m.put("proxiedClients", proxiedClients.size());
+        Dispatcher dispatcher = baseClient.dispatcher();
+        m.put("webSocketClients", webSocketClients.size());
+        m.put("dispatcherRunning", dispatcher.runningCallsCount());
+        m.put("dispatcherQueued", dispatcher.queuedCallsCount());
+        m.put("dispatcherMaxPerHost", dispatcher.getMaxRequestsPerHost());
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limiters.forEach((host, limiter) -> limits.put(host, limiter.stats()));
+        m.put("limiterByHost", limits);
+        Map<String, Object> preferred = new LinkedHashMap<>();
+        preferredPlans.forEach((host, p) -> preferred.put(host, p.label()));
+        m.put("preferredPlanByHost", preferred);
+        return m;
+    }
+
+    private OkHttpClient proxiedClient(ProxyTarget target) {
+        return proxiedClients.computeIfAbsent(target.label(), k -> baseClient.newBuilder()
+                .proxy(new Proxy(
+                        "SOCKS".equalsIgnoreCase(target.type()) ? Proxy.Type.SOCKS : Proxy.Type.HTTP,
+                        new InetSocketAddress(target.host(), target.port())))
+                .build());
+    }
+
+    private List<ProxyTarget> buildProxyTargets(AiConfigProperties.ProxyConfig pc) {
+        if (pc == null || !pc.isEnabled()) return List.of();
+        LinkedHashMap<String, ProxyTarget> dedup = new LinkedHashMap<>();
+        String host = pc.getHost();
+        int port = pc.getPort();
+        String type = normalizeProxyType(pc.getType());
+
+        addProxyTarget(dedup, host, port, type);
+        addProxyTarget(dedup, host, port, flipProxyType(type));
+        if (isLikelyLocalHost(host)) {
+            for (String h : List.of("127.0.0.1", "localhost")) {
+                for (int p : new int[]{7890, 7897}) {
+                    addProxyTarget(dedup, h, p, type);
+                    addProxyTarget(dedup, h, p, flipProxyType(type));
+                }
+            }
+        }
+        return new ArrayList<>(dedup.values());
+    }
+
+    private void addProxyTarget(LinkedHashMap<String, ProxyTarget> dedup, String host, int port, String type) {
+        if (!StringUtils.hasText(host) || port <= 0) return;
+        String normalizedType = normalizeProxyType(type);
+        String key = host.trim().toLowerCase() + ":" + port + ":" + normalizedType;
+        dedup.putIfAbsent(key, new ProxyTarget(host.trim(), port, normalizedType));
+    }
+
+    private String normalizeProxyType(String type) {
+        return "SOCKS".equalsIgnoreCase(type) ? "SOCKS" : "HTTP";
+    }
+
+    private String flipProxyType(String type) {
+        return "SOCKS".equalsIgnoreCase(type) ? "HTTP" : "SOCKS";
+    }
+
+    private boolean isLikelyLocalHost(String host) {
+        if (!StringUtils.hasText(host)) return false;
+        String h = host.trim().toLowerCase();
+        return "127.0.0.1".equals(h) || "localhost".equals(h) || "::1".equals(h);
+    }
+
+    /**
+     * 一条传输链路：直连或某个代理
+     */
+    public record Plan(String label, OkHttpClient client) {}
+
+    private record ProxyTarget(String host, int port, String type) {
+        String label() {
+            return "proxy " + host + ":" + port + " (" + type + ")";
+        }
+    }
+
+    private record PreferredPlan(String label, long atMillis) {
+        boolean isExpired(long ttlSeconds) {
+            return System.currentTimeMillis() - atMillis > TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+        }
+    }
+
+    /**
+     * 一次请求的响应；关闭时释放连接（回到连接池）与并发名额
+     */
+    public static final class Exchange implements AutoCloseable {
+        private final Response response;
+        private final ProviderLimiter limiter;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Exchange(Response response, ProviderLimiter limiter) {
+            this.response = response;
+            this.limiter = limiter;
+        }
+
+        public Response response() {
+            return response;
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    limiter.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.noncore.assessment.service.llm;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 流式调用的取消句柄：调用方（如 SSE 客户端断开）调用 {@link #cancel()} 后，
+ * 正在进行的上游请求立即中止，已收到的部分文本照常返回。
+ */
+public final class LlmStreamCancellation {
+
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile Runnable canceller;
+
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) {
+            Runnable r = canceller;
+            if (r != null) r.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * 绑定当前进行中的上游请求（切换链路重试时会重新绑定）；已取消则立即中止。
+     */
+    void bind(Runnable canceller) {
+        this.canceller = canceller;
+        if (cancelled.get()) canceller.run();
+    }
+}
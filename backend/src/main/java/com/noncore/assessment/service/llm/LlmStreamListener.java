@@ -0,0 +1,14 @@
+package com.noncore.assessment.service.llm;
+
+/**
+ * 大模型流式输出回调：每收到一段增量文本调用一次（在读取上游响应的线程中执行）。
+ */
+@FunctionalInterface
+public interface LlmStreamListener {
+
+    /**
+     * @param text 增量文本（非空）
+     * @throws Exception 回调失败（如客户端已断开）时中止流式读取
+     */
+    void onDelta(String text) throws Exception;
+}
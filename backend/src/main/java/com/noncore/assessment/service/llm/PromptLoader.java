@@ -1,39 +1,68 @@
 package com.noncore.assessment.service.llm;
 
 import com.noncore.assessment.config.AiConfigProperties;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 负责按需读取系统 Prompt。每次调用时读取，保证热更新能力（例如替换文件后无需重启生效）。
+ * 系统 Prompt 注册表。
+ * <p>
+ * 首次使用时读取并按路径缓存（内容 + SHA-256 版本号），之后请求路径上不再有文件 I/O；
+ * 文件系统上的 Prompt（含开发时 classpath 展开目录）通过 WatchService 监听所在目录，
+ * 文件变更后自动重新加载，保持热更新能力（替换文件后无需重启生效）。
  */
+@Slf4j
 @Component
-@RequiredArgsConstructor
 public class PromptLoader {
 
+    private static final String DEFAULT_LOCATION = "classpath:/prompts/essay_evaluation_system_prompt.txt";
+
     private final ResourceLoader resourceLoader;
     private final AiConfigProperties aiConfigProperties;
 
+    // location -> 已加载的 Prompt
+    private final Map<String, PromptEntry> prompts = new ConcurrentHashMap<>();
+    // 被监听文件 -> 引用它的 location（同一文件可能以不同写法引用）
+    private final Map<Path, Set<String>> watchedFiles = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+    private final AtomicLong reloads = new AtomicLong();
+
+    private volatile WatchService watchService;
+
+    public PromptLoader(ResourceLoader resourceLoader, AiConfigProperties aiConfigProperties) {
+        this.resourceLoader = resourceLoader;
+        this.aiConfigProperties = aiConfigProperties;
+    }
+
     /**
      * 读取系统 Prompt 文本。
      * 支持路径前缀：classpath: 或文件系统路径。
      * 若读取失败抛出运行时异常，由上层统一处理。
      */
     public String loadSystemPrompt() {
-        String location = aiConfigProperties.getSystemPromptPath();
-        if (location == null || location.isBlank()) {
-            // 默认兜底，不返回空
-            location = "classpath:/prompts/essay_evaluation_system_prompt.txt";
-        }
-        return readResource(location);
+        return prompt(defaultLocation()).content();
     }
 
     /**
@@ -43,27 +72,169 @@ public class PromptLoader {
         if (overrideLocation == null || overrideLocation.isBlank()) {
             return loadSystemPrompt();
         }
-        return readResource(overrideLocation);
+        return prompt(overrideLocation).content();
     }
 
-    private String readResource(String location) {
+    /**
+     * 当前生效的 Prompt 版本（内容 SHA-256 前 12 位）；路径为空时取默认 Prompt
+     */
+    public String promptVersion(String location) {
+        String loc = (location == null || location.isBlank()) ? defaultLocation() : location;
+        return prompt(loc).version();
+    }
+
+    /**
+     * 已加载 Prompt 的版本与重载统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        Map<String, Object> items = new LinkedHashMap<>();
+        prompts.forEach((loc, p) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("version", p.version());
+            item.put("length", p.content().length());
+            item.put("loadedAt", p.loadedAt().toString());
+            item.put("watched", p.file() != null);
+            items.put(loc, item);
+        });
+        m.put("prompts", items);
+        m.put("watchedDirs", watchedDirs.size());
+        m.put("reloads", reloads.get());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        WatchService ws = watchService;
+        if (ws != null) {
+            try {
+                ws.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private String defaultLocation() {
+        String location = aiConfigProperties.getSystemPromptPath();
+        // 默认兜底，不返回空
+        return (location == null || location.isBlank()) ? DEFAULT_LOCATION : location;
+    }
+
+    private PromptEntry prompt(String location) {
+        PromptEntry entry = prompts.get(location);
+        if (entry != null) {
+            return entry;
+        }
+        return prompts.computeIfAbsent(location, loc -> {
+            PromptEntry loaded = readResource(loc);
+            if (loaded.file() != null) {
+                watch(loaded.file(), loc);
+            }
+            return loaded;
+        });
+    }
+
+    private PromptEntry readResource(String location) {
         Resource resource = resourceLoader.getResource(location);
         if (!resource.exists()) {
             throw new IllegalStateException("System prompt resource not found: " + location);
         }
-        try (InputStream is = resource.getInputStream();
-             InputStreamReader isr = new InputStreamReader(is, StandardCharsets.UTF_8);
-             BufferedReader br = new BufferedReader(isr)) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line).append('\n');
-            }
-            return sb.toString().trim();
+        String content;
+        try (InputStream is = resource.getInputStream()) {
+            content = new String(is.readAllBytes(), StandardCharsets.UTF_8).trim();
         } catch (IOException e) {
             throw new IllegalStateException("Failed to read system prompt: " + location, e);
         }
+        Path file = null;
+        try {
+            if (resource.isFile()) {
+                file = resource.getFile().toPath().toAbsolutePath().normalize();
+            }
+        } catch (IOException ignore) {
+            // jar 内资源不可变，无需监听
+        }
+        return new PromptEntry(content, versionOf(content), LocalDateTime.now(), file);
+    }
+
+    private void watch(Path file, String location) {
+        watchedFiles.computeIfAbsent(file, f -> ConcurrentHashMap.newKeySet()).add(location);
+        Path dir = file.getParent();
+        if (dir == null || !watchedDirs.add(dir)) return;
+        try {
+            dir.register(watchService(),
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | RuntimeException e) {
+            watchedDirs.remove(dir);
+            log.warn("Prompt watch unavailable for {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private synchronized WatchService watchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread t = new Thread(this::watchLoop, "prompt-watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+        return watchService;
+    }
+
+    private void watchLoop() {
+        WatchService ws = watchService;
+        while (true) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    watchedFiles.keySet().stream().filter(f -> dir.equals(f.getParent())).forEach(this::reload);
+                } else if (event.context() instanceof Path name) {
+                    reload(dir.resolve(name).normalize());
+                }
+            }
+            if (!key.reset()) {
+                watchedDirs.remove(dir);
+            }
+        }
+    }
+
+    private void reload(Path file) {
+        Set<String> locations = watchedFiles.get(file);
+        if (locations == null) return;
+        for (String location : locations) {
+            try {
+                PromptEntry next = readResource(location);
+                if (next.content().isEmpty()) {
+                    // 编辑器保存过程中可能短暂为空，保留旧版本等待下一次事件
+                    continue;
+                }
+                PromptEntry prev = prompts.put(location, next);
+                if (prev == null || !prev.version().equals(next.version())) {
+                    reloads.incrementAndGet();
+                    log.info("System prompt reloaded: {} version {} -> {}", location,
+                            prev == null ? "-" : prev.version(), next.version());
+                }
+            } catch (Exception e) {
+                // 文件被删除或暂不可读：继续使用已缓存版本
+                log.warn("System prompt reload failed, keeping cached version: {} ({})", location, e.getMessage());
+            }
+        }
     }
-}
 
+    private static String versionOf(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest).substring(0, 12);
+        } catch (Exception e) {
+            return Integer.toHexString(content.hashCode());
+        }
+    }
 
+    private record PromptEntry(String content, String version, LocalDateTime loadedAt, Path file) {}
+}
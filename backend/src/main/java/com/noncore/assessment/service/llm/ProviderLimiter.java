@@ -0,0 +1,223 @@
+package com.noncore.assessment.service.llm;
+
+import com.noncore.assessment.config.AiConfigProperties;
+import com.noncore.assessment.exception.BusinessException;
+import com.noncore.assessment.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个上游主机（供应商）的自适应并发限制 + 熔断器。
+ *
+ * <p>并发上限按 AIMD 调整：每次正常响应（且并发确实用满过半）上限 +1/limit，
+ * 429/503 或读超时时上限减半（同一冷却窗口内只减一次），范围 [1, maxConcurrentPerHost]。
+ * 超过上限的请求排队，等待超过 acquireTimeoutMs 或队列已满时以 {@code AI_OVERLOADED} 拒绝：
+ * 这是本地过载而非上游限流，调用方不应退避重试或暂停整个供应商。</p>
+ *
+ * <p>熔断：连续失败达到阈值后打开，打开期间直接拒绝；到期后放行一个探测请求（半开），
+ * 探测成功则关闭，失败则重新打开。</p>
+ */
+@Slf4j
+final class ProviderLimiter {
+
+    enum Outcome { SUCCESS, RATE_LIMITED, FAILURE, IGNORED }
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final long DECREASE_COOLDOWN_MS = 1000;
+
+    private final String host;
+    private final AiConfigProperties.HttpConfig cfg;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition changed = lock.newCondition();
+
+    // 以下字段受 lock 保护
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long lastDecreaseAt;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private double latencyEwmaMs;
+
+    private long acquired;
+    private long rejectedTimeout;
+    private long rejectedQueueFull;
+    private long rejectedOpen;
+    private long rateLimited;
+    private long failures;
+    private long breakerOpens;
+    private long queueWaitTotalMs;
+    private long queueWaitMaxMs;
+
+    ProviderLimiter(String host, AiConfigProperties.HttpConfig cfg) {
+        this.host = host;
+        this.cfg = cfg;
+        this.limit = Math.max(1, Math.min(cfg.getInitialConcurrencyPerHost(), maxLimit()));
+    }
+
+    /**
+     * 获取一个并发名额；返回值表示该请求是否为半开探测
+     */
+    boolean acquire() {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (breakerRejects()) {
+                rejectedOpen++;
+                throw circuitOpen();
+            }
+            if (state == State.HALF_OPEN) {
+                probeInFlight = true;
+                inFlight++;
+                acquired++;
+                return true;
+            }
+            if (inFlight >= (int) limit && waiting >= Math.max(0, cfg.getMaxQueuePerHost())) {
+                rejectedQueueFull++;
+                throw new BusinessException(ErrorCode.AI_OVERLOADED, "AI 上游排队已满，请稍后重试（host=" + host + "）");
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(Math.max(0, cfg.getAcquireTimeoutMs()));
+            waiting++;
+            try {
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejectedTimeout++;
+                        throw new BusinessException(ErrorCode.AI_OVERLOADED, "AI 上游并发已满，请稍后重试（host=" + host + "）");
+                    }
+                    remaining = changed.awaitNanos(remaining);
+                    if (state != State.CLOSED) {
+                        rejectedOpen++;
+                        throw circuitOpen();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "AI 请求被中断");
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+            acquired++;
+            long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            queueWaitTotalMs += waitedMs;
+            queueWaitMaxMs = Math.max(queueWaitMaxMs, waitedMs);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录上游响应结果（拿到响应头或失败时调用，早于 release）
+     */
+    void onOutcome(boolean probe, Outcome outcome, long latencyMs) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            switch (outcome) {
+                case SUCCESS -> {
+                    consecutiveFailures = 0;
+                    if (state == State.HALF_OPEN) {
+                        state = State.CLOSED;
+                        log.info("LLM circuit for {} closed", host);
+                    }
+                    latencyEwmaMs = latencyEwmaMs == 0 ? latencyMs : latencyEwmaMs * 0.9 + latencyMs * 0.1;
+                    // 仅在并发确实被用到时才加性增长，避免空闲期上限无意义膨胀
+                    if (inFlight * 2 >= (int) limit) {
+                        limit = Math.min(maxLimit(), limit + 1.0 / limit);
+                    }
+                }
+                case RATE_LIMITED, FAILURE -> {
+                    if (outcome == Outcome.RATE_LIMITED) rateLimited++;
+                    else failures++;
+                    if (now - lastDecreaseAt >= DECREASE_COOLDOWN_MS) {
+                        limit = Math.max(1, limit * BACKOFF_RATIO);
+                        lastDecreaseAt = now;
+                    }
+                    consecutiveFailures++;
+                    if (state == State.HALF_OPEN
+                            || (state == State.CLOSED && consecutiveFailures >= Math.max(1, cfg.getBreakerFailureThreshold()))) {
+                        state = State.OPEN;
+                        openedAt = now;
+                        breakerOpens++;
+                        log.warn("LLM circuit for {} opened after {} consecutive failures (limit={})",
+                                host, consecutiveFailures, (int) limit);
+                    }
+                }
+                case IGNORED -> {
+                }
+            }
+            if (probe) {
+                probeInFlight = false;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            inFlight = Math.max(0, inFlight - 1);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("state", state.name());
+            m.put("limit", (int) limit);
+            m.put("inFlight", inFlight);
+            m.put("waiting", waiting);
+            m.put("acquired", acquired);
+            m.put("avgQueueWaitMs", acquired == 0 ? 0 : queueWaitTotalMs / acquired);
+            m.put("maxQueueWaitMs", queueWaitMaxMs);
+            m.put("latencyEwmaMs", Math.round(latencyEwmaMs));
+            m.put("rateLimited", rateLimited);
+            m.put("failures", failures);
+            m.put("rejectedTimeout", rejectedTimeout);
+            m.put("rejectedQueueFull", rejectedQueueFull);
+            m.put("rejectedOpen", rejectedOpen);
+            m.put("breakerOpens", breakerOpens);
+            return m;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 打开期间拒绝；到期转为半开，仅放行一个探测请求
+     */
+    private boolean breakerRejects() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < Math.max(0, cfg.getBreakerOpenMs())) {
+                return true;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        return state == State.HALF_OPEN && probeInFlight;
+    }
+
+    private BusinessException circuitOpen() {
+        return new BusinessException(ErrorCode.AI_CIRCUIT_OPEN, "AI 上游连续失败，已暂停调用，请稍后重试（host=" + host + "）");
+    }
+
+    private int maxLimit() {
+        return Math.max(1, cfg.getMaxConcurrentPerHost());
+    }
+}
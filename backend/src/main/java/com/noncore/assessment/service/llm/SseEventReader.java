@@ -0,0 +1,50 @@
+package com.noncore.assessment.service.llm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 最小 SSE（text/event-stream）解析：按空行切分事件，拼接同一事件的多行 data。
+ * 供 OpenAI 兼容流（GLM）与 Gemini streamGenerateContent?alt=sse 共用。
+ */
+final class SseEventReader {
+
+    /**
+     * 事件 data 处理器；返回 false 表示结束读取（如收到 [DONE]）。
+     */
+    @FunctionalInterface
+    interface DataHandler {
+        boolean onData(String data) throws IOException;
+    }
+
+    private SseEventReader() {
+    }
+
+    static void read(Reader source, DataHandler handler) throws IOException {
+        BufferedReader reader = source instanceof BufferedReader br ? br : new BufferedReader(source);
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    boolean more = handler.onData(data.toString());
+                    data.setLength(0);
+                    if (!more) return;
+                }
+                continue;
+            }
+            if (line.startsWith(":")) continue; // 注释/心跳
+            if (line.startsWith("data:")) {
+                String v = line.substring(5);
+                if (v.startsWith(" ")) v = v.substring(1);
+                if (data.length() > 0) data.append('\n');
+                data.append(v);
+            }
+            // event:/id:/retry: 字段上游未使用，忽略
+        }
+        if (data.length() > 0) {
+            handler.onData(data.toString());
+        }
+    }
+}
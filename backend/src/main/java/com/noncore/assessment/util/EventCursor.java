@@ -0,0 +1,61 @@
+package com.noncore.assessment.util;
+
+import com.noncore.assessment.exception.BusinessException;
+import com.noncore.assessment.exception.ErrorCode;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 行为事件 keyset 游标：(occurred_at, id)，对应 ORDER BY occurred_at DESC, id DESC。
+ *
+ * <p>文本形式为 {@code yyyyMMddHHmmss_id}，可直接作为查询参数回传；下一页条件为
+ * “occurred_at 更早，或同一时刻 id 更小”，深分页与首页代价一致。</p>
+ */
+public final class EventCursor {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final LocalDateTime occurredAt;
+    private final Long id;
+
+    private EventCursor(LocalDateTime occurredAt, Long id) {
+        this.occurredAt = occurredAt;
+        this.id = id;
+    }
+
+    public static EventCursor of(LocalDateTime occurredAt, Long id) {
+        if (occurredAt == null || id == null) return null;
+        return new EventCursor(occurredAt.withNano(0), id);
+    }
+
+    /**
+     * 解析游标文本（空串返回 null 表示从第一页开始）。
+     */
+    public static EventCursor parse(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        String s = cursor.trim();
+        int sep = s.indexOf('_');
+        if (sep <= 0 || sep == s.length() - 1) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "无效的分页游标");
+        }
+        try {
+            return new EventCursor(LocalDateTime.parse(s.substring(0, sep), FORMAT), Long.valueOf(s.substring(sep + 1)));
+        } catch (Exception e) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "无效的分页游标");
+        }
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return occurredAt.format(FORMAT) + "_" + id;
+    }
+}
@@ -38,6 +38,22 @@ public final class Jsons {
         }
     }
 
+    /**
+     * 将 JSON 字符串反序列化为指定类型。
+     *
+     * @param json JSON 字符串
+     * @param type 目标类型
+     * @return 对象（json 为空时返回 null；解析失败抛出 IllegalArgumentException）
+     */
+    public static <T> T parseAs(String json, Class<T> type) {
+        if (json == null || json.isBlank()) return null;
+        try {
+            return MAPPER.readValue(json, type);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to parse JSON as " + type.getSimpleName(), e);
+        }
+    }
+
     /**
      * 将对象序列化为 JSON 字符串。
      *
@@ -1,23 +1,39 @@
 package com.noncore.assessment.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.noncore.assessment.exception.BusinessException;
 import com.noncore.assessment.exception.ErrorCode;
+import com.noncore.assessment.security.UserPrincipal;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWT工具类
  * 用于生成、验证和解析JWT令牌
  *
+ * <p>请求鉴权走 {@link #verify(String)}：一次验签解析出不可变的 {@link VerifiedToken}，
+ * 并按令牌 SHA-256 缓存到令牌自身的 exp 为止；同一令牌后续请求只需一次哈希查找。</p>
+ *
  * @author System
  * @version 1.0.0
  * @since 2024-12-28
@@ -36,15 +52,65 @@ public class JwtUtil {
     @Value("${jwt.refresh-expiration:604800000}")
     private Long jwtRefreshExpiration;
 
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private long verifiedCacheMaxSize;
+
+    // 密钥与解析器只构建一次（延迟到首次使用，未配置密钥时不影响启动）
+    private volatile SecretKey signingKey;
+    private volatile JwtParser parser;
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(Math.max(0L, verifiedCacheMaxSize))
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, value.expiresAtMillis() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
     public Long getExpiration() {
         return jwtExpiration;
     }
 
+    public Long getRefreshExpiration() {
+        return jwtRefreshExpiration;
+    }
+
     /**
      * 生成签名密钥
      */
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+        SecretKey key = signingKey;
+        if (key == null) {
+            key = Keys.hmacShaKeyFor(secret.getBytes());
+            signingKey = key;
+        }
+        return key;
+    }
+
+    private JwtParser getParser() {
+        JwtParser p = parser;
+        if (p == null) {
+            p = Jwts.parser().verifyWith(getSigningKey()).build();
+            parser = p;
+        }
+        return p;
     }
 
     /**
@@ -95,6 +161,8 @@ public class JwtUtil {
 
         return Jwts.builder()
                 .claims(claims)
+                // jti：登出吊销按令牌ID记录
+                .id(UUID.randomUUID().toString().replace("-", ""))
                 .subject(subject)
                 .issuedAt(now)
                 .expiration(expiryDate)
@@ -119,16 +187,7 @@ public class JwtUtil {
      * @return 用户ID
      */
     public Long getUserIdFromToken(String token) {
-        return getClaimFromToken(token, claims -> {
-            Object v = claims.get("userId");
-            if (v == null) return null;
-            if (v instanceof Number n) return n.longValue();
-            try {
-                return Long.parseLong(String.valueOf(v));
-            } catch (Exception e) {
-                return null;
-            }
-        });
+        return getClaimFromToken(token, claims -> toUserId(claims.get("userId")));
     }
 
     /**
@@ -182,11 +241,7 @@ public class JwtUtil {
      */
     private Claims getAllClaimsFromToken(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            return getParser().parseSignedClaims(token).getPayload();
         } catch (ExpiredJwtException e) {
             logger.warn("解析JWT令牌失败: 令牌已过期 - {}", e.getMessage());
             throw new BusinessException(ErrorCode.TOKEN_INVALID, "令牌已过期");
@@ -196,6 +251,70 @@ public class JwtUtil {
         }
     }
 
+    /**
+     * 验签并解析令牌（带缓存）
+     * 同一令牌在 exp 之前只验签一次；无效或过期令牌抛出 BusinessException(TOKEN_INVALID)，不缓存
+     *
+     * @param token JWT令牌
+     * @return 已验证的令牌信息
+     */
+    public VerifiedToken verify(String token) {
+        String key = tokenHash(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        // 缓存过期由后台惰性清理，这里再按 exp 精确判断一次
+        if (cached != null && cached.expiresAtMillis() > System.currentTimeMillis()) {
+            return cached;
+        }
+        Claims claims = getAllClaimsFromToken(token);
+        Date exp = claims.getExpiration();
+        Date iat = claims.getIssuedAt();
+        // 旧令牌没有 jti 时以令牌哈希作为ID
+        String tokenId = claims.getId() == null || claims.getId().isBlank() ? key : claims.getId();
+        VerifiedToken verified = new VerifiedToken(
+                new UserPrincipal(toUserId(claims.get("userId")), claims.getSubject(), claims.get("role", String.class)),
+                claims.get("tokenType", String.class),
+                tokenId,
+                iat == null ? 0L : iat.getTime(),
+                exp == null ? Long.MAX_VALUE : exp.getTime());
+        if (exp != null) {
+            verifiedTokens.put(key, verified);
+        }
+        return verified;
+    }
+
+    /**
+     * 已验证令牌缓存统计
+     */
+    public Map<String, Object> verifiedCacheStats() {
+        CacheStats st = verifiedTokens.stats();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("size", verifiedTokens.estimatedSize());
+        m.put("maxSize", verifiedCacheMaxSize);
+        m.put("hits", st.hitCount());
+        m.put("misses", st.missCount());
+        m.put("evictions", st.evictionCount());
+        return m;
+    }
+
+    private static String tokenHash(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Long toUserId(Object v) {
+        if (v == null) return null;
+        if (v instanceof Number n) return n.longValue();
+        try {
+            return Long.parseLong(String.valueOf(v));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     /**
      * 检查令牌是否过期
      *
@@ -263,6 +382,23 @@ public class JwtUtil {
         return Math.max(0, remaining / 1000);
     }
 
+    /**
+     * 一次验签得到的令牌信息（不可变）
+     *
+     * @param principal 用户主体（ID、用户名、角色）
+     * @param tokenType 令牌类型（access/refresh）
+     * @param tokenId 令牌ID（jti；旧令牌为令牌哈希）
+     * @param issuedAtMillis 签发时间戳（毫秒，JWT 精度为秒）
+     * @param expiresAtMillis 过期时间戳（毫秒）
+     */
+    public record VerifiedToken(UserPrincipal principal, String tokenType, String tokenId,
+                                long issuedAtMillis, long expiresAtMillis) {
+
+        public boolean isAccessToken() {
+            return "access".equals(tokenType);
+        }
+    }
+
     /**
      * 声明解析器函数式接口
      */
@@ -0,0 +1,25 @@
+-- Migration script
+-- 新增 AI 批改结果缓存表：相同作文文本 + 模型 + Prompt 版本 + 取样序号的批改直接复用结果（需配置 ai.grading-cache.ttl-seconds 开启）
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS ai_grading_cache
+(
+    id             bigint auto_increment
+        primary key,
+    cache_key      char(64)      not null comment '缓存键（规范化请求要素的 SHA-256）',
+    model          varchar(128)  null,
+    prompt_version varchar(32)   null comment '系统 Prompt 版本',
+    sample_index   int           not null comment '取样序号（从0开始）',
+    raw_json       longtext      not null comment '模型原始返回（JSON 对象）',
+    hit_count      int default 0 not null comment '命中次数',
+    created_at     datetime      not null,
+    expires_at     datetime      not null comment '过期时间',
+    constraint uk_ai_grading_cache_key
+        unique (cache_key)
+)
+    comment 'AI 批改结果缓存' charset = utf8mb4;
+
+CREATE INDEX idx_ai_grading_cache_expires
+    on ai_grading_cache (expires_at);
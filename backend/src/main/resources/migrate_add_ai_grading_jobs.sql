@@ -0,0 +1,53 @@
+-- Migration script
+-- 新增 AI 批量批改任务表（并行批改、增量结果、重启续跑）
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS ai_grading_job_items
+(
+    id            bigint auto_increment
+        primary key,
+    job_id        bigint                 not null comment '批改任务ID',
+    item_index    int                    not null comment '条目序号（从0开始）',
+    file_id       bigint                 null comment '文件ID（files 任务）',
+    file_name     varchar(255)           null,
+    input_json    longtext               null comment '作文请求JSON（essays 任务）',
+    status        varchar(16)            not null comment '状态(pending/running/succeeded/failed)',
+    attempts      int         default 0  not null comment '执行次数',
+    history_id    bigint                 null comment '对应批改历史ID',
+    result_json   longtext               null comment '批改结果JSON',
+    error_message varchar(1000)          null,
+    started_at    datetime               null,
+    finished_at   datetime               null,
+    constraint uk_ai_grading_job_items_job_index
+        unique (job_id, item_index)
+)
+    comment 'AI 批量批改任务条目' charset = utf8mb4;
+
+CREATE TABLE IF NOT EXISTS ai_grading_jobs
+(
+    id                 bigint auto_increment
+        primary key,
+    teacher_id         bigint                             not null,
+    kind               varchar(16)                        not null comment '任务类型(files/essays)',
+    model              varchar(128)                       null,
+    samples            int         default 1              not null comment '稳定化取样次数',
+    diff_threshold     double      default 0.8            not null comment '触发第3次取样的分差阈值',
+    json_only          tinyint(1)  default 1              not null,
+    use_grading_prompt tinyint(1)  default 1              not null,
+    status             varchar(16)                        not null comment '状态(running/completed)',
+    total_count        int         default 0              not null,
+    succeeded_count    int         default 0              not null,
+    failed_count       int         default 0              not null,
+    created_at         datetime                           not null,
+    updated_at         datetime                           not null,
+    finished_at        datetime                           null
+)
+    comment 'AI 批量批改任务' charset = utf8mb4;
+
+CREATE INDEX idx_ai_grading_jobs_teacher
+    on ai_grading_jobs (teacher_id, created_at);
+
+CREATE INDEX idx_ai_grading_jobs_status
+    on ai_grading_jobs (status);
@@ -0,0 +1,60 @@
+-- Migration script
+-- 新增行为事件日汇总表，并由历史 behavior_events 回填。
+-- 建议在停写（或部署新版本前）执行一次；之后由应用在事件写入时增量维护。
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS behavior_daily_rollups
+(
+    student_id    bigint                                 not null comment '学生ID',
+    course_id     bigint   default 0                     not null comment '课程ID（无课程上下文为0）',
+    event_type    varchar(64)                            not null comment '事件类型code',
+    dim_key       varchar(64) default ''                 not null comment '维度键（资源类别/复听角色，无则为空串）',
+    stat_date     date                                   not null comment '统计日期',
+    event_count   int      default 0                     not null comment '当日事件数',
+    total_seconds bigint   default 0                     not null comment '当日累计秒数（口语复听）',
+    updated_at    datetime default CURRENT_TIMESTAMP      not null comment '最后累加时间',
+    primary key (student_id, course_id, event_type, dim_key, stat_date),
+    index idx_behavior_rollups_student_date (student_id, stat_date),
+    constraint fk_behavior_rollups_student
+        foreign key (student_id) references users (id)
+            on delete cascade
+)
+    comment '行为事件日汇总表（随事件写入增量维护）' charset = utf8mb4;
+
+-- 回填：先清空再整体重算，保证可重复执行
+DELETE FROM behavior_daily_rollups;
+
+INSERT INTO behavior_daily_rollups (student_id, course_id, event_type, dim_key, stat_date, event_count, total_seconds)
+SELECT t.student_id,
+       t.course_id,
+       t.event_type,
+       t.dim_key,
+       t.stat_date,
+       COUNT(*),
+       SUM(t.seconds)
+FROM (
+    SELECT e.student_id,
+           COALESCE(e.course_id, 0) AS course_id,
+           e.event_type,
+           CASE
+               WHEN e.event_type = 'resource_view' THEN
+                   LEFT(COALESCE(NULLIF(JSON_UNQUOTE(JSON_EXTRACT(e.metadata, '$.resourceType')), 'null'),
+                                 NULLIF(JSON_UNQUOTE(JSON_EXTRACT(e.metadata, '$.category')), 'null'),
+                                 ''), 64)
+               WHEN e.event_type = 'voice_practice_audio_replay'
+                    AND LOWER(TRIM(JSON_UNQUOTE(JSON_EXTRACT(e.metadata, '$.audioRole')))) IN ('user', 'assistant') THEN
+                   LOWER(TRIM(JSON_UNQUOTE(JSON_EXTRACT(e.metadata, '$.audioRole'))))
+               ELSE ''
+           END AS dim_key,
+           DATE(e.occurred_at) AS stat_date,
+           CASE
+               WHEN e.event_type = 'voice_practice_audio_replay'
+                    AND LOWER(TRIM(JSON_UNQUOTE(JSON_EXTRACT(e.metadata, '$.audioRole')))) IN ('user', 'assistant') THEN
+                   GREATEST(COALESCE(CAST(JSON_UNQUOTE(JSON_EXTRACT(e.metadata, '$.deltaSeconds')) AS SIGNED), 0), 0)
+               ELSE 0
+           END AS seconds
+    FROM behavior_events e
+) t
+GROUP BY t.student_id, t.course_id, t.event_type, t.dim_key, t.stat_date;
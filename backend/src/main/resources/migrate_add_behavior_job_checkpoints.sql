@@ -0,0 +1,21 @@
+-- Migration script
+-- 新增行为批处理任务检查点表（周快照任务断点续跑）
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS behavior_job_checkpoints
+(
+    job_name          varchar(64)                            not null comment '任务名'
+        primary key,
+    run_key           varchar(32)                            not null comment '运行批次（如ISO周 2026-W42）',
+    status            varchar(16)                            not null comment '状态(running/completed)',
+    cursor_student_id bigint                                 null comment '已连续完成的最后学生ID',
+    cursor_course_id  bigint                                 null comment '已连续完成的最后课程ID',
+    processed_count   int      default 0                     not null comment '本批次已处理数量',
+    failed_count      int      default 0                     not null comment '本批次失败数量',
+    started_at        datetime                               not null comment '批次开始时间',
+    updated_at        datetime default CURRENT_TIMESTAMP      not null comment '最后检查点时间',
+    finished_at       datetime                               null comment '批次完成时间'
+)
+    comment '行为批处理任务检查点（断点续跑）' charset = utf8mb4;
@@ -0,0 +1,32 @@
+-- Migration script
+-- 新增多实例缓存支持：共享缓存层（cache_entries）与跨节点失效消息（cache_invalidations）
+-- 仅在 cache.cluster.shared-tier=jdbc / cache.cluster.bus=jdbc 时使用
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS cache_entries
+(
+    cache_key  varchar(255)                       not null comment '缓存key'
+        primary key,
+    value_json mediumtext                         not null comment '缓存值JSON',
+    expires_at datetime                           null comment '过期时间（空为不过期）',
+    updated_at datetime                           not null
+)
+    comment '共享缓存条目' charset = utf8mb4;
+
+CREATE INDEX idx_cache_entries_expires
+    on cache_entries (expires_at);
+
+CREATE TABLE IF NOT EXISTS cache_invalidations
+(
+    id          bigint auto_increment
+        primary key,
+    cache_key   varchar(255)                       not null comment '失效的缓存key',
+    origin_node varchar(64)                        not null comment '发出节点ID',
+    created_at  datetime(3)                        not null
+)
+    comment '缓存跨节点失效消息' charset = utf8mb4;
+
+CREATE INDEX idx_cache_invalidations_created
+    on cache_invalidations (created_at);
@@ -0,0 +1,24 @@
+-- Migration script
+-- 新增内容寻址去重存储：file_blobs（SHA-256 + 引用计数），file_records.content_hash 指向 blob
+-- 旧记录 content_hash 为空，仍按原路径读取与删除
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS file_blobs
+(
+    sha256     char(64)                           not null comment '内容SHA-256'
+        primary key,
+    file_path  varchar(500)                       not null comment '物理路径',
+    file_size  bigint                             not null comment '文件大小（字节）',
+    ref_count  int         default 0              not null comment '引用计数（file_records 条数）',
+    created_at datetime                           not null,
+    updated_at datetime                           not null
+)
+    comment '内容寻址文件块（去重存储）' charset = utf8mb4;
+
+ALTER TABLE file_records
+    ADD COLUMN content_hash char(64) null comment '内容SHA-256（file_blobs.sha256，旧数据为空）' AFTER download_count;
+
+CREATE INDEX idx_file_records_content_hash
+    on file_records (content_hash);
@@ -0,0 +1,32 @@
+-- Migration script
+-- 新增分片断点续传会话表（大文件分片直写目标文件、断线后按偏移续传）
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS file_upload_sessions
+(
+    id             varchar(32)                        not null comment '上传会话ID'
+        primary key,
+    uploader_id    bigint                             not null comment '上传者ID',
+    original_name  varchar(255)                       not null comment '原始文件名',
+    stored_name    varchar(255)                       not null comment '保存文件名',
+    mime_type      varchar(100)                       null comment 'MIME类型',
+    upload_purpose varchar(50)                        null comment '上传用途',
+    related_id     bigint                             null comment '关联ID',
+    total_size     bigint                             not null comment '文件总大小（字节）',
+    received_size  bigint      default 0              not null comment '已连续接收字节数',
+    file_path      varchar(500)                       not null comment '最终文件路径（分片写入 .part）',
+    status         varchar(16)                        not null comment '状态(uploading/completed)',
+    file_id        bigint                             null comment '完成后的文件ID',
+    created_at     datetime                           not null,
+    updated_at     datetime                           not null,
+    expires_at     datetime                           not null comment '过期时间（每个分片顺延）'
+)
+    comment '分片断点续传会话' charset = utf8mb4;
+
+CREATE INDEX idx_file_upload_sessions_uploader
+    on file_upload_sessions (uploader_id);
+
+CREATE INDEX idx_file_upload_sessions_expires
+    on file_upload_sessions (expires_at);
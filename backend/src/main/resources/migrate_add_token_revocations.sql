@@ -0,0 +1,21 @@
+-- Migration script
+-- 新增令牌吊销表：登出吊销单个令牌（jti），改密/禁用/改角色吊销用户此前签发的全部令牌
+-- 各节点启动时加载未过期记录，运行期按自增ID轮询增量
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+CREATE TABLE IF NOT EXISTS token_revocations
+(
+    id         bigint auto_increment
+        primary key,
+    kind       varchar(16)                        not null comment '吊销类型：token/user',
+    subject    varchar(64)                        not null comment 'jti 或用户ID',
+    not_before datetime(3)                        null comment 'kind=user：签发早于此时刻的令牌失效',
+    expires_at datetime(3)                        not null comment '记录失效时间',
+    created_at datetime(3)                        not null
+)
+    comment '令牌吊销记录' charset = utf8mb4;
+
+CREATE INDEX idx_token_revocations_expires
+    on token_revocations (expires_at);
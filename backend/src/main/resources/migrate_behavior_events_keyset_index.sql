@@ -0,0 +1,42 @@
+-- Migration script
+-- 行为事件 keyset 分页索引：(student_id, occurred_at, id) 对应 ORDER BY occurred_at DESC, id DESC
+-- database: MySQL 8.x
+
+USE student_assessment_system;
+
+SET @add_keyset_index_sql = (
+    SELECT IF(
+        EXISTS (
+            SELECT 1
+            FROM INFORMATION_SCHEMA.STATISTICS
+            WHERE TABLE_SCHEMA = DATABASE()
+              AND TABLE_NAME = 'behavior_events'
+              AND INDEX_NAME = 'idx_behavior_events_student_time_id'
+        ),
+        'SELECT ''idx_behavior_events_student_time_id already exists''',
+        'CREATE INDEX idx_behavior_events_student_time_id ON behavior_events (student_id, occurred_at, id)'
+    )
+);
+
+PREPARE stmt FROM @add_keyset_index_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 旧索引 (student_id, occurred_at) 已被新索引覆盖
+SET @drop_old_index_sql = (
+    SELECT IF(
+        EXISTS (
+            SELECT 1
+            FROM INFORMATION_SCHEMA.STATISTICS
+            WHERE TABLE_SCHEMA = DATABASE()
+              AND TABLE_NAME = 'behavior_events'
+              AND INDEX_NAME = 'idx_behavior_events_student_time'
+        ),
+        'DROP INDEX idx_behavior_events_student_time ON behavior_events',
+        'SELECT ''idx_behavior_events_student_time already removed'''
+    )
+);
+
+PREPARE stmt FROM @drop_old_index_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -186,6 +186,26 @@ create index idx_pinned
 create index idx_user_id
     on student_assessment_system.ai_conversations (user_id);
 
+create table if not exists student_assessment_system.ai_grading_cache
+(
+    id             bigint auto_increment
+        primary key,
+    cache_key      char(64)      not null comment '缓存键（规范化请求要素的 SHA-256）',
+    model          varchar(128)  null,
+    prompt_version varchar(32)   null comment '系统 Prompt 版本',
+    sample_index   int           not null comment '取样序号（从0开始）',
+    raw_json       longtext      not null comment '模型原始返回（JSON 对象）',
+    hit_count      int default 0 not null comment '命中次数',
+    created_at     datetime      not null,
+    expires_at     datetime      not null comment '过期时间',
+    constraint uk_ai_grading_cache_key
+        unique (cache_key)
+)
+    comment 'AI 批改结果缓存' charset = utf8mb4;
+
+create index idx_ai_grading_cache_expires
+    on student_assessment_system.ai_grading_cache (expires_at);
+
 create table if not exists student_assessment_system.ai_grading_history
 (
     id          bigint auto_increment
@@ -203,6 +223,54 @@ create table if not exists student_assessment_system.ai_grading_history
 create index idx_ai_grading_history_teacher
     on student_assessment_system.ai_grading_history (teacher_id, created_at);
 
+create table if not exists student_assessment_system.ai_grading_job_items
+(
+    id            bigint auto_increment
+        primary key,
+    job_id        bigint                 not null comment '批改任务ID',
+    item_index    int                    not null comment '条目序号（从0开始）',
+    file_id       bigint                 null comment '文件ID（files 任务）',
+    file_name     varchar(255)           null,
+    input_json    longtext               null comment '作文请求JSON（essays 任务）',
+    status        varchar(16)            not null comment '状态(pending/running/succeeded/failed)',
+    attempts      int         default 0  not null comment '执行次数',
+    history_id    bigint                 null comment '对应批改历史ID',
+    result_json   longtext               null comment '批改结果JSON',
+    error_message varchar(1000)          null,
+    started_at    datetime               null,
+    finished_at   datetime               null,
+    constraint uk_ai_grading_job_items_job_index
+        unique (job_id, item_index)
+)
+    comment 'AI 批量批改任务条目' charset = utf8mb4;
+
+create table if not exists student_assessment_system.ai_grading_jobs
+(
+    id                 bigint auto_increment
+        primary key,
+    teacher_id         bigint                             not null,
+    kind               varchar(16)                        not null comment '任务类型(files/essays)',
+    model              varchar(128)                       null,
+    samples            int         default 1              not null comment '稳定化取样次数',
+    diff_threshold     double      default 0.8            not null comment '触发第3次取样的分差阈值',
+    json_only          tinyint(1)  default 1              not null,
+    use_grading_prompt tinyint(1)  default 1              not null,
+    status             varchar(16)                        not null comment '状态(running/completed)',
+    total_count        int         default 0              not null,
+    succeeded_count    int         default 0              not null,
+    failed_count       int         default 0              not null,
+    created_at         datetime                           not null,
+    updated_at         datetime                           not null,
+    finished_at        datetime                           null
+)
+    comment 'AI 批量批改任务' charset = utf8mb4;
+
+create index idx_ai_grading_jobs_teacher
+    on student_assessment_system.ai_grading_jobs (teacher_id, created_at);
+
+create index idx_ai_grading_jobs_status
+    on student_assessment_system.ai_grading_jobs (status);
+
 create table if not exists student_assessment_system.ai_memories
 (
     id         bigint auto_increment comment '主键'
@@ -323,6 +391,32 @@ create index idx_status
 create index idx_teacher_id
     on student_assessment_system.assignments (teacher_id);
 
+create table if not exists student_assessment_system.cache_entries
+(
+    cache_key  varchar(255)                       not null comment '缓存key'
+        primary key,
+    value_json mediumtext                         not null comment '缓存值JSON',
+    expires_at datetime                           null comment '过期时间（空为不过期）',
+    updated_at datetime                           not null
+)
+    comment '共享缓存条目' charset = utf8mb4;
+
+create index idx_cache_entries_expires
+    on student_assessment_system.cache_entries (expires_at);
+
+create table if not exists student_assessment_system.cache_invalidations
+(
+    id          bigint auto_increment
+        primary key,
+    cache_key   varchar(255)                       not null comment '失效的缓存key',
+    origin_node varchar(64)                        not null comment '发出节点ID',
+    created_at  datetime(3)                        not null
+)
+    comment '缓存跨节点失效消息' charset = utf8mb4;
+
+create index idx_cache_invalidations_created
+    on student_assessment_system.cache_invalidations (created_at);
+
 create table if not exists student_assessment_system.chapters
 (
     id          bigint auto_increment
@@ -554,6 +648,18 @@ alter table student_assessment_system.enrollments
         foreign key (course_id) references student_assessment_system.courses (id)
             on delete cascade;
 
+create table if not exists student_assessment_system.file_blobs
+(
+    sha256     char(64)                           not null comment '内容SHA-256'
+        primary key,
+    file_path  varchar(500)                       not null comment '物理路径',
+    file_size  bigint                             not null comment '文件大小（字节）',
+    ref_count  int         default 0              not null comment '引用计数（file_records 条数）',
+    created_at datetime                           not null,
+    updated_at datetime                           not null
+)
+    comment '内容寻址文件块（去重存储）' charset = utf8mb4;
+
 create table if not exists student_assessment_system.file_records
 (
     id             bigint auto_increment comment '文件ID'
@@ -568,6 +674,7 @@ create table if not exists student_assessment_system.file_records
     related_type   varchar(50)                         null comment '关联类型（assignment, submission, profile等）',
     related_id     bigint                              null comment '关联ID',
     download_count int       default 0                 null comment '下载次数',
+    content_hash   char(64)                            null comment '内容SHA-256（file_blobs.sha256，旧数据为空）',
     created_at     timestamp default CURRENT_TIMESTAMP null comment '创建时间'
 )
     comment '文件记录表' charset = utf8mb4;
@@ -586,6 +693,36 @@ create index idx_related
 create index idx_uploader_id
     on student_assessment_system.file_records (uploader_id);
 
+create index idx_file_records_content_hash
+    on student_assessment_system.file_records (content_hash);
+
+create table if not exists student_assessment_system.file_upload_sessions
+(
+    id             varchar(32)                        not null comment '上传会话ID'
+        primary key,
+    uploader_id    bigint                             not null comment '上传者ID',
+    original_name  varchar(255)                       not null comment '原始文件名',
+    stored_name    varchar(255)                       not null comment '保存文件名',
+    mime_type      varchar(100)                       null comment 'MIME类型',
+    upload_purpose varchar(50)                        null comment '上传用途',
+    related_id     bigint                             null comment '关联ID',
+    total_size     bigint                             not null comment '文件总大小（字节）',
+    received_size  bigint      default 0              not null comment '已连续接收字节数',
+    file_path      varchar(500)                       not null comment '最终文件路径（分片写入 .part）',
+    status         varchar(16)                        not null comment '状态(uploading/completed)',
+    file_id        bigint                             null comment '完成后的文件ID',
+    created_at     datetime                           not null,
+    updated_at     datetime                           not null,
+    expires_at     datetime                           not null comment '过期时间（每个分片顺延）'
+)
+    comment '分片断点续传会话' charset = utf8mb4;
+
+create index idx_file_upload_sessions_uploader
+    on student_assessment_system.file_upload_sessions (uploader_id);
+
+create index idx_file_upload_sessions_expires
+    on student_assessment_system.file_upload_sessions (expires_at);
+
 create table if not exists student_assessment_system.grades
 (
     id             bigint auto_increment comment '成绩ID'
@@ -1259,6 +1396,21 @@ alter table student_assessment_system.tags
     add constraint name
         unique (name);
 
+create table if not exists student_assessment_system.token_revocations
+(
+    id         bigint auto_increment
+        primary key,
+    kind       varchar(16)                        not null comment '吊销类型：token/user',
+    subject    varchar(64)                        not null comment 'jti 或用户ID',
+    not_before datetime(3)                        null comment 'kind=user：签发早于此时刻的令牌失效',
+    expires_at datetime(3)                        not null comment '记录失效时间',
+    created_at datetime(3)                        not null
+)
+    comment '令牌吊销记录' charset = utf8mb4;
+
+create index idx_token_revocations_expires
+    on student_assessment_system.token_revocations (expires_at);
+
 create table if not exists student_assessment_system.users
 (
     id             bigint auto_increment comment '用户ID'
@@ -1492,8 +1644,8 @@ create table student_assessment_system.behavior_events
 )
     comment '行为事件表（事实记录，append-only）' charset = utf8mb4;
 
-create index idx_behavior_events_student_time
-    on student_assessment_system.behavior_events (student_id, occurred_at);
+create index idx_behavior_events_student_time_id
+    on student_assessment_system.behavior_events (student_id, occurred_at, id);
 
 create index idx_behavior_events_course_time
     on student_assessment_system.behavior_events (course_id, occurred_at);
@@ -1511,6 +1663,44 @@ alter table student_assessment_system.behavior_events
         foreign key (course_id) references student_assessment_system.courses (id)
             on delete set null;
 
+create table student_assessment_system.behavior_daily_rollups
+(
+    student_id    bigint                                 not null comment '学生ID',
+    course_id     bigint   default 0                     not null comment '课程ID（无课程上下文为0）',
+    event_type    varchar(64)                            not null comment '事件类型code',
+    dim_key       varchar(64) default ''                 not null comment '维度键（资源类别/复听角色，无则为空串）',
+    stat_date     date                                   not null comment '统计日期',
+    event_count   int      default 0                     not null comment '当日事件数',
+    total_seconds bigint   default 0                     not null comment '当日累计秒数（口语复听）',
+    updated_at    datetime default CURRENT_TIMESTAMP      not null comment '最后累加时间',
+    primary key (student_id, course_id, event_type, dim_key, stat_date)
+)
+    comment '行为事件日汇总表（随事件写入增量维护）' charset = utf8mb4;
+
+create index idx_behavior_rollups_student_date
+    on student_assessment_system.behavior_daily_rollups (student_id, stat_date);
+
+alter table student_assessment_system.behavior_daily_rollups
+    add constraint fk_behavior_rollups_student
+        foreign key (student_id) references student_assessment_system.users (id)
+            on delete cascade;
+
+create table student_assessment_system.behavior_job_checkpoints
+(
+    job_name          varchar(64)                            not null comment '任务名'
+        primary key,
+    run_key           varchar(32)                            not null comment '运行批次（如ISO周 2026-W42）',
+    status            varchar(16)                            not null comment '状态(running/completed)',
+    cursor_student_id bigint                                 null comment '已连续完成的最后学生ID',
+    cursor_course_id  bigint                                 null comment '已连续完成的最后课程ID',
+    processed_count   int      default 0                     not null comment '本批次已处理数量',
+    failed_count      int      default 0                     not null comment '本批次失败数量',
+    started_at        datetime                               not null comment '批次开始时间',
+    updated_at        datetime default CURRENT_TIMESTAMP      not null comment '最后检查点时间',
+    finished_at       datetime                               null comment '批次完成时间'
+)
+    comment '行为批处理任务检查点（断点续跑）' charset = utf8mb4;
+
 create table student_assessment_system.behavior_summary_snapshots
 (
     id                  bigint auto_increment comment '摘要快照ID'
@@ -0,0 +1,108 @@
+package com.noncore.assessment.controller;
+
+import com.noncore.assessment.behavior.BehaviorEventRecorder;
+import com.noncore.assessment.entity.FileRecord;
+import com.noncore.assessment.entity.User;
+import com.noncore.assessment.service.FileStorageService;
+import com.noncore.assessment.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 文件下载/预览的 Range 支持：由 Spring 内置的 Resource 处理产出 206，格式非法的 Range 回退为 200 全量
+ */
+class FileControllerRangeTest {
+
+    private static final long FILE_ID = 42L;
+    private static final int FILE_SIZE = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path file = tempDir.resolve("sample.png");
+        Files.write(file, new byte[FILE_SIZE]);
+
+        FileRecord record = new FileRecord();
+        record.setId(FILE_ID);
+        record.setOriginalName("sample.png");
+        record.setMimeType("image/png");
+        record.setUploaderId(1L);
+
+        FileStorageService fileStorageService = mock(FileStorageService.class);
+        when(fileStorageService.getFileInfo(FILE_ID)).thenReturn(record);
+        when(fileStorageService.openFileResource(eq(FILE_ID), anyLong(), anyBoolean()))
+                .thenAnswer(inv -> new FileSystemResource(file));
+
+        User user = new User();
+        user.setId(1L);
+        UserService userService = mock(UserService.class);
+        when(userService.getUserProfile("teacher")).thenReturn(user);
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "teacher", null, List.of(new SimpleGrantedAuthority("ROLE_TEACHER"))));
+
+        FileController controller = new FileController(fileStorageService, mock(BehaviorEventRecorder.class), userService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void downloadWithRangeReturnsPartialContent() throws Exception {
+        mockMvc.perform(get("/files/{id}/download", FILE_ID).header(HttpHeaders.RANGE, "bytes=0-99"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-99/" + FILE_SIZE))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "100"));
+    }
+
+    @Test
+    void previewWithRangeReturnsPartialContent() throws Exception {
+        mockMvc.perform(get("/files/{id}/preview", FILE_ID).header(HttpHeaders.RANGE, "bytes=0-99"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-99/" + FILE_SIZE));
+    }
+
+    @Test
+    void malformedRangeReturnsFullContent() throws Exception {
+        mockMvc.perform(get("/files/{id}/download", FILE_ID).header(HttpHeaders.RANGE, "bytes=abc"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, String.valueOf(FILE_SIZE)));
+    }
+
+    @Test
+    void unsatisfiableRangeReturns416() throws Exception {
+        mockMvc.perform(get("/files/{id}/download", FILE_ID).header(HttpHeaders.RANGE, "bytes=5000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + FILE_SIZE));
+    }
+}
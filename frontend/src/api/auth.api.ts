@@ -9,7 +9,9 @@ export const authApi = {
   register: (data: RegisterRequest): Promise<void> => {
     return api.post('/auth/register', data);
   },
+  // 一并吊销刷新令牌（如有）
   logout: (): Promise<void> => {
-    return api.post('/auth/logout');
+    const refreshToken = localStorage.getItem('refreshToken');
+    return api.post('/auth/logout', refreshToken ? { refreshToken } : {});
   },
 };
@@ -8,6 +8,11 @@ export function createNotificationStream() {
   const es = ref<EventSource | null>(null)
   const connected = ref(false)
   const notificationsStore = useNotificationsStore()
+  // 最近收到的事件 id：重连时带上，由服务端补发断线期间错过的事件
+  let lastEventId = ''
+  const trackEventId = (ev: MessageEvent) => {
+    if (ev?.lastEventId) lastEventId = ev.lastEventId
+  }
 
   const connect = () => {
     if (es.value) return
@@ -15,6 +20,7 @@ export function createNotificationStream() {
     if (!token) return
 
     const url = `${baseURL.replace(/\/$/, '')}/notifications/stream?token=${encodeURIComponent(token.replace(/^Bearer\s+/i, ''))}`
+      + (lastEventId ? `&lastEventId=${encodeURIComponent(lastEventId)}` : '')
     const source = new EventSource(url, { withCredentials: true })
     es.value = source
 
@@ -24,6 +30,7 @@ export function createNotificationStream() {
     })
 
     source.addEventListener('new', async (ev: MessageEvent) => {
+      trackEventId(ev)
       try {
         const payload = ev?.data ? JSON.parse(ev.data) : null
         if (payload && typeof payload === 'object') {
@@ -46,6 +53,7 @@ export function createNotificationStream() {
     })
 
     source.addEventListener('update', async (ev: MessageEvent) => {
+      trackEventId(ev)
       try {
         const payload = ev?.data ? JSON.parse(ev.data) : null
         if (payload && typeof payload === 'object') {
@@ -57,6 +65,7 @@ export function createNotificationStream() {
     })
 
     source.addEventListener('delete', async (ev: MessageEvent) => {
+      trackEventId(ev)
       try {
         const payload = ev?.data ? JSON.parse(ev.data) : null
         const id = payload?.id ?? payload?.notificationId
@@ -67,10 +76,17 @@ export function createNotificationStream() {
       await notificationsStore.refreshStatsFromSse()
     })
 
-    source.addEventListener('stats', async () => {
+    source.addEventListener('stats', async (ev: MessageEvent) => {
+      trackEventId(ev)
       await notificationsStore.refreshStatsFromSse()
     })
 
+    // 断线太久或服务端已重启，无法补发：整体刷新
+    source.addEventListener('resync', async () => {
+      lastEventId = ''
+      await notificationsStore.refresh()
+    })
+
     source.onerror = () => {
       disconnect()
       // Basic backoff reconnect